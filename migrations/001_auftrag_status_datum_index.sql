@@ -0,0 +1,13 @@
+-- --------------------------------------------------------
+-- Migration 001: indexes for the filtered, keyset-paginated order listing
+--
+-- GET /api/de/v1/order/all filters by `status` and a `datum` range and pages
+-- through the result ordered by (datum, auftragsnummer). The composite index
+-- serves the filtered listing as a pure index range scan; the second index
+-- serves the unfiltered listing in the same order.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE INDEX `idx_auftrag_status_datum` ON `auftrag` (`status`, `datum`, `auftragsnummer`);
+CREATE INDEX `idx_auftrag_datum` ON `auftrag` (`datum`, `auftragsnummer`);
@@ -0,0 +1,20 @@
+-- --------------------------------------------------------
+-- Migration 002: persisted idempotency keys
+--
+-- Only used with webstore.idempotency.persist=true. A row is inserted with
+-- NULL status_code when a request claims its key and completed with the
+-- response once the request has finished. Rows older than
+-- webstore.idempotency.ttl-minutes are purged periodically.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `idempotenz_schluessel` (
+  `schluessel` varchar(255) NOT NULL,
+  `fingerabdruck` char(64) NOT NULL,
+  `status_code` int(11) DEFAULT NULL,
+  `antwort` text DEFAULT NULL,
+  `erstellt` timestamp NOT NULL,
+  PRIMARY KEY (`schluessel`),
+  KEY `idx_idempotenz_erstellt` (`erstellt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,48 @@
+-- --------------------------------------------------------
+-- Migration 003: sales rollups
+--
+-- `umsatz_tag` holds the number of closed orders, the quantity sold and the
+-- revenue (preis * menge) per order date, `umsatz_produkt` the quantity sold
+-- and the revenue per product. Both are updated in the transaction that
+-- closes an order, so the reporting endpoints read a handful of rows instead
+-- of joining the order history. The statements at the end backfill the
+-- rollups from the orders closed before this migration.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `umsatz_tag` (
+  `datum` date NOT NULL,
+  `auftraege` int(11) NOT NULL DEFAULT 0,
+  `menge` bigint(20) NOT NULL DEFAULT 0,
+  `umsatz` decimal(15,2) NOT NULL DEFAULT 0.00,
+  PRIMARY KEY (`datum`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `umsatz_produkt` (
+  `produkt_fk` varchar(36) NOT NULL,
+  `menge` bigint(20) NOT NULL DEFAULT 0,
+  `umsatz` decimal(15,2) NOT NULL DEFAULT 0.00,
+  PRIMARY KEY (`produkt_fk`),
+  KEY `idx_umsatz_produkt_umsatz` (`umsatz`),
+  KEY `idx_umsatz_produkt_menge` (`menge`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- Backfill from the orders closed so far
+INSERT INTO `umsatz_tag` (`datum`, `auftraege`, `menge`, `umsatz`)
+SELECT a.`datum`, COUNT(DISTINCT a.`auftragsnummer`), COALESCE(SUM(p.`menge`), 0), COALESCE(SUM(p.`menge` * pr.`preis`), 0)
+FROM `auftrag` a
+LEFT JOIN `position` p ON p.`auftragsnummer` = a.`auftragsnummer`
+LEFT JOIN `produkt` pr ON pr.`produktnummer` = p.`produktnummer`
+WHERE a.`status` = 'geschlossen'
+GROUP BY a.`datum`
+ON DUPLICATE KEY UPDATE `auftraege` = VALUES(`auftraege`), `menge` = VALUES(`menge`), `umsatz` = VALUES(`umsatz`);
+
+INSERT INTO `umsatz_produkt` (`produkt_fk`, `menge`, `umsatz`)
+SELECT p.`produktnummer`, SUM(p.`menge`), SUM(p.`menge` * pr.`preis`)
+FROM `position` p
+JOIN `auftrag` a ON a.`auftragsnummer` = p.`auftragsnummer`
+JOIN `produkt` pr ON pr.`produktnummer` = p.`produktnummer`
+WHERE a.`status` = 'geschlossen'
+GROUP BY p.`produktnummer`
+ON DUPLICATE KEY UPDATE `menge` = VALUES(`menge`), `umsatz` = VALUES(`umsatz`);
@@ -0,0 +1,32 @@
+-- --------------------------------------------------------
+-- Migration 004: archive tables for closed orders
+--
+-- Closed orders never change again. With webstore.archive.enabled=true a
+-- scheduled job moves closed orders older than webstore.archive.min-age-days
+-- together with their positions from `auftrag`/`position` into these tables
+-- in chunks, so the live tables and their indexes only hold recent orders.
+-- Lookups of a single order fall back to the archive. The sales rollups of
+-- migration 003 are not affected by the move.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `auftrag_archiv` (
+  `auftragsnummer` varchar(36) NOT NULL,
+  `datum` date NOT NULL,
+  `status` enum('offen','geschlossen') NOT NULL DEFAULT 'geschlossen',
+  PRIMARY KEY (`auftragsnummer`),
+  KEY `idx_auftrag_archiv_datum` (`datum`, `auftragsnummer`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `position_archiv` (
+  `positionsnummer` varchar(36) NOT NULL,
+  `produktnummer` varchar(36) NOT NULL,
+  `auftragsnummer` varchar(36) NOT NULL,
+  `menge` int(11) NOT NULL,
+  PRIMARY KEY (`positionsnummer`),
+  KEY `produktnummer` (`produktnummer`),
+  KEY `auftragsnummer` (`auftragsnummer`),
+  CONSTRAINT `position_archiv_ibfk_1` FOREIGN KEY (`produktnummer`) REFERENCES `produkt` (`produktnummer`),
+  CONSTRAINT `position_archiv_ibfk_2` FOREIGN KEY (`auftragsnummer`) REFERENCES `auftrag_archiv` (`auftragsnummer`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,23 @@
+-- --------------------------------------------------------
+-- Migration 005: transactional outbox
+--
+-- Every write of the order, warehouse and product services appends a row
+-- to `outbox_ereignis` in the same transaction. A relay reads the table in
+-- `id` order and streams the events to subscribers of
+-- GET /api/de/v1/events (Server-Sent Events); clients resume from the last
+-- `id` they received. Rows older than webstore.outbox.retention-hours are
+-- purged periodically.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `outbox_ereignis` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `aggregat` varchar(32) NOT NULL,
+  `aggregat_id` varchar(36) NOT NULL,
+  `typ` varchar(64) NOT NULL,
+  `nutzdaten` text NOT NULL,
+  `erstellt` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`id`),
+  KEY `idx_outbox_erstellt` (`erstellt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,33 @@
+-- --------------------------------------------------------
+-- Migration 006: change tracking for the product catalog
+--
+-- Every product write takes the next number from `produkt_sequenz` and
+-- stores it as the version of the product in `produkt_version`. Deleted
+-- products keep their row with `geloescht` = 1 as a tombstone. The sequence
+-- row stays locked until the writing transaction commits, so versions become
+-- visible in ascending order and
+-- GET /api/de/v1/product/changes?since=<version> never skips a change.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `produkt_sequenz` (
+  `id` tinyint(4) NOT NULL,
+  `wert` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `produkt_version` (
+  `produktnummer` varchar(36) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  `geloescht` tinyint(1) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`produktnummer`),
+  UNIQUE KEY `idx_produkt_version_version` (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- Number the existing products
+INSERT INTO `produkt_version` (`produktnummer`, `version`, `geloescht`)
+SELECT `produktnummer`, ROW_NUMBER() OVER (ORDER BY `produktnummer`), 0 FROM `produkt`;
+
+INSERT INTO `produkt_sequenz` (`id`, `wert`)
+SELECT 1, COUNT(*) FROM `produkt_version`;
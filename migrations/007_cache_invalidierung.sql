@@ -0,0 +1,22 @@
+-- --------------------------------------------------------
+-- Migration 007: cache invalidation messages
+--
+-- Only needed with webstore.cache.bus.transport=jdbc. Every instance
+-- inserts the invalidations of its in-memory product and stock caches
+-- into `cache_invalidierung` and polls the table for the rows of the
+-- other instances. Rows older than
+-- webstore.cache.bus.jdbc.retention-minutes are purged periodically.
+-- --------------------------------------------------------
+
+USE `warehouse_database_uuid_de`;
+
+CREATE TABLE IF NOT EXISTS `cache_invalidierung` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `knoten` varchar(64) NOT NULL,
+  `bereich` varchar(32) NOT NULL,
+  `schluessel` varchar(255) NOT NULL,
+  `version` bigint(20) NOT NULL DEFAULT 0,
+  `erstellt` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`id`),
+  KEY `idx_cache_invalidierung_erstellt` (`erstellt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
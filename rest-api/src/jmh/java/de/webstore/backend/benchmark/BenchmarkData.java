@@ -0,0 +1,154 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic data of a benchmark trial.
+ * <p>
+ * For a data size of {@code n} the database holds {@code n} products, each stocked in two of
+ * {@value #WAREHOUSES} warehouses with enough quantity for every close of the trial, and {@code n} orders of the
+ * last year with two positions each, half of them open and half closed. The data is generated from a fixed seed,
+ * so every run of the same size sees the same database.
+ */
+final class BenchmarkData {
+
+    static final int WAREHOUSES = 20;
+    static final int POSITIONS_PER_ORDER = 2;
+    static final int STOCK_PER_PRODUCT_AND_WAREHOUSE = 10_000_000;
+
+    private static final int BATCH_SIZE = 1000;
+
+    final String[] productIds;
+    final int[] warehouseNumbers;
+    final String[] openOrderIds;
+    final String[] closedOrderIds;
+
+    private BenchmarkData(int size) {
+        this.productIds = new String[size];
+        this.warehouseNumbers = new int[WAREHOUSES];
+        this.openOrderIds = new String[(size + 1) / 2];
+        this.closedOrderIds = new String[size / 2];
+    }
+
+    /**
+     * Returns a warehouse that stocks the product.
+     *
+     * @param productIndex the index of the product in {@link #productIds}
+     * @param which        0 or 1, for the first or second warehouse of the product
+     * @return the warehouse number
+     */
+    int warehouseOf(int productIndex, int which) {
+        return warehouseNumbers[(productIndex + which * 7) % WAREHOUSES];
+    }
+
+    /**
+     * Fills an empty database.
+     *
+     * @param conn the connection to the database
+     * @param size the number of products and orders
+     * @return the IDs of the generated rows
+     * @throws SQLException if a database access error occurs
+     */
+    static BenchmarkData seed(Connection conn, int size) throws SQLException {
+        BenchmarkData data = new BenchmarkData(size);
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO lager (lagernummer, menge, aktiv) VALUES (?, 0, 1)")) {
+            for (int i = 0; i < WAREHOUSES; i++) {
+                data.warehouseNumbers[i] = i + 1;
+                pstmt.setInt(1, i + 1);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        try (PreparedStatement product = conn.prepareStatement("INSERT INTO produkt (produktnummer, name, einheit, preis) VALUES (?, ?, ?, ?)");
+             PreparedStatement version = conn.prepareStatement("INSERT INTO produkt_version (produktnummer, version, geloescht) VALUES (?, ?, 0)");
+             PreparedStatement lagert = conn.prepareStatement("INSERT INTO lagert (produkt_fk, lager_fk) VALUES (?, ?)");
+             PreparedStatement stock = conn.prepareStatement("INSERT INTO produktlagermenge (produkt_fk, lager_fk, menge) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < size; i++) {
+                String productId = new UUID(random.nextLong(), random.nextLong()).toString();
+                data.productIds[i] = productId;
+                product.setString(1, productId);
+                product.setString(2, "Produkt " + i);
+                product.setString(3, "Piece");
+                product.setBigDecimal(4, BigDecimal.valueOf(random.nextInt(100_000) + 1, 2));
+                product.addBatch();
+                version.setString(1, productId);
+                version.setLong(2, i + 1L);
+                version.addBatch();
+                for (int which = 0; which < 2; which++) {
+                    lagert.setString(1, productId);
+                    lagert.setInt(2, data.warehouseOf(i, which));
+                    lagert.addBatch();
+                    stock.setString(1, productId);
+                    stock.setInt(2, data.warehouseOf(i, which));
+                    stock.setInt(3, STOCK_PER_PRODUCT_AND_WAREHOUSE);
+                    stock.addBatch();
+                }
+                if (i % BATCH_SIZE == BATCH_SIZE - 1) {
+                    product.executeBatch();
+                    version.executeBatch();
+                    lagert.executeBatch();
+                    stock.executeBatch();
+                }
+            }
+            product.executeBatch();
+            version.executeBatch();
+            lagert.executeBatch();
+            stock.executeBatch();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE produkt_sequenz SET wert = ? WHERE id = 1")) {
+            pstmt.setLong(1, size);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE lager l SET menge = (SELECT COALESCE(SUM(menge), 0) FROM produktlagermenge WHERE lager_fk = l.lagernummer)")) {
+            pstmt.executeUpdate();
+        }
+
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement order = conn.prepareStatement("INSERT INTO auftrag (auftragsnummer, datum, status) VALUES (?, ?, ?)");
+             PreparedStatement position = conn.prepareStatement("INSERT INTO position (positionsnummer, produktnummer, auftragsnummer, menge) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < size; i++) {
+                String orderId = new UUID(random.nextLong(), random.nextLong()).toString();
+                boolean open = i % 2 == 0;
+                if (open) {
+                    data.openOrderIds[i / 2] = orderId;
+                } else {
+                    data.closedOrderIds[i / 2] = orderId;
+                }
+                order.setString(1, orderId);
+                order.setDate(2, Date.valueOf(today.minusDays(random.nextInt(365))));
+                order.setString(3, open ? "offen" : "geschlossen");
+                order.addBatch();
+                for (int p = 0; p < POSITIONS_PER_ORDER; p++) {
+                    position.setString(1, new UUID(random.nextLong(), random.nextLong()).toString());
+                    position.setString(2, data.productIds[random.nextInt(size)]);
+                    position.setString(3, orderId);
+                    position.setInt(4, random.nextInt(10) + 1);
+                    position.addBatch();
+                }
+                if (i % BATCH_SIZE == BATCH_SIZE - 1) {
+                    order.executeBatch();
+                    position.executeBatch();
+                }
+            }
+            order.executeBatch();
+            position.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+        return data;
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import de.webstore.backend.Application;
+import de.webstore.backend.service.OrderService;
+import de.webstore.backend.service.ProductService;
+import de.webstore.backend.service.WarehouseService;
+
+/**
+ * The application context of a benchmark trial, running against an embedded H2 database in MySQL mode.
+ * <p>
+ * Each trial creates a fresh in-memory database, seeds it with {@code dataSize} products and the same number of
+ * orders (see {@link BenchmarkData}) and then boots the application without the web server. The services are
+ * taken from the context, so caches, metrics and the outbox behave as in production. The services pick the H2
+ * variants of their MySQL-specific statements from the JDBC URL (see {@link de.webstore.backend.config.SqlDialect}).
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    /**
+     * Number of products and orders in the database.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int dataSize;
+
+    private ConfigurableApplicationContext context;
+
+    ProductService productService;
+    WarehouseService warehouseService;
+    OrderService orderService;
+    BenchmarkData data;
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+        String url = "jdbc:h2:mem:webstore-" + dataSize + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("RUNSCRIPT FROM 'classpath:benchmark/schema-h2.sql'");
+            data = BenchmarkData.seed(conn, dataSize);
+        }
+
+        // Command line arguments take precedence over application.properties
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url,
+                     "--spring.datasource.username=sa",
+                     "--spring.datasource.password=",
+                     "--spring.datasource.driver-class-name=org.h2.Driver",
+                     "--spring.jpa.hibernate.ddl-auto=none",
+                     "--spring.main.banner-mode=off",
+                     "--logging.level.root=WARN",
+                     // Keep the outbox relay from polling during the measurements
+                     "--webstore.outbox.poll-ms=3600000");
+        productService = context.getBean(ProductService.class);
+        warehouseService = context.getBean(WarehouseService.class);
+        orderService = context.getBean(OrderService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    String randomProductId() {
+        return data.productIds[ThreadLocalRandom.current().nextInt(data.productIds.length)];
+    }
+
+    int randomWarehouseNumber() {
+        return data.warehouseNumbers[ThreadLocalRandom.current().nextInt(data.warehouseNumbers.length)];
+    }
+
+    String randomOpenOrderId() {
+        return data.openOrderIds[ThreadLocalRandom.current().nextInt(data.openOrderIds.length)];
+    }
+
+    String randomClosedOrderId() {
+        return data.closedOrderIds[ThreadLocalRandom.current().nextInt(data.closedOrderIds.length)];
+    }
+}
@@ -0,0 +1,52 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the service benchmarks once per thread count and writes the results of each run as JSON, so the
+ * results of two releases can be compared file by file.
+ * <p>
+ * System properties (set by {@code ./gradlew jmh -P<name>=<value>}):
+ * <ul>
+ *   <li>{@code jmh.include}: regular expression selecting the benchmarks, default all</li>
+ *   <li>{@code jmh.threads}: comma-separated thread counts, default {@code 1,4}</li>
+ *   <li>{@code jmh.dataSizes}: comma-separated data sizes, default the values of {@link BenchmarkDatabase#dataSize}</li>
+ *   <li>{@code jmh.forks}: number of forks per benchmark, default 1</li>
+ *   <li>{@code jmh.resultDir}: directory of the result files, default {@code build/reports/jmh}</li>
+ * </ul>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = System.getProperty("jmh.include", BenchmarkMain.class.getPackageName() + "\\..*Benchmark");
+        String dataSizes = System.getProperty("jmh.dataSizes");
+        int forks = Integer.parseInt(System.getProperty("jmh.forks", "1"));
+        Path resultDir = Path.of(System.getProperty("jmh.resultDir", "build/reports/jmh"));
+        Files.createDirectories(resultDir);
+
+        for (String threads : System.getProperty("jmh.threads", "1,4").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .forks(forks)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultDir.resolve("results-" + threadCount + "-threads.json").toString());
+            if (dataSizes != null) {
+                options.param("dataSize", dataSizes.split(","));
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.webstore.backend.dto.BulkOrderRequestDTO;
+import de.webstore.backend.dto.BulkOrderResultDTO;
+import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.OrderDetailDTO;
+import de.webstore.backend.dto.OrderResultDTO;
+import de.webstore.backend.dto.PositionDTO;
+
+/**
+ * Benchmarks of the public methods of {@link de.webstore.backend.service.OrderService}.
+ * <p>
+ * Closing and deleting consume their orders, so these benchmarks get fresh open orders from a per-thread
+ * {@link OpenOrders} state that is prepared before every invocation, outside of the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderServiceBenchmark {
+
+    // Orders per call of the batch benchmarks
+    static final int BATCH = 10;
+
+    /**
+     * Open orders with positions, created before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class OpenOrders {
+
+        List<String> orderIds = new ArrayList<>();
+
+        @Setup(Level.Invocation)
+        public void prepare(BenchmarkDatabase db) {
+            orderIds.clear();
+            for (int i = 0; i < BATCH; i++) {
+                OrderDTO order = db.orderService.createOrder(new OrderDTO(null, LocalDate.now(), "offen"));
+                for (int p = 0; p < BenchmarkData.POSITIONS_PER_ORDER; p++) {
+                    db.orderService.addOrderPosition(order.getOrderId(), new PositionDTO(null, db.randomProductId(), null, 1));
+                }
+                orderIds.add(order.getOrderId());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<OrderDTO> findAllOpenPage(BenchmarkDatabase db) {
+        return db.orderService.findAll("offen", null, null, null, null, 100);
+    }
+
+    @Benchmark
+    public OrderDTO findOpenById(BenchmarkDatabase db) {
+        return db.orderService.findById(db.randomOpenOrderId());
+    }
+
+    @Benchmark
+    public OrderDTO findClosedById(BenchmarkDatabase db) {
+        return db.orderService.findById(db.randomClosedOrderId());
+    }
+
+    @Benchmark
+    public OrderDetailDTO findDetailById(BenchmarkDatabase db) {
+        return db.orderService.findDetailById(db.randomOpenOrderId(), false);
+    }
+
+    @Benchmark
+    public OrderDetailDTO findDetailByIdWithProducts(BenchmarkDatabase db) {
+        return db.orderService.findDetailById(db.randomOpenOrderId(), true);
+    }
+
+    @Benchmark
+    public boolean checkOrderExists(BenchmarkDatabase db) {
+        return db.orderService.checkOrderExists(db.randomOpenOrderId());
+    }
+
+    @Benchmark
+    public boolean checkOrderExistsAndOpen(BenchmarkDatabase db) {
+        return db.orderService.checkOrderExistsAndOpen(db.randomOpenOrderId());
+    }
+
+    @Benchmark
+    public OrderDTO createOrder(BenchmarkDatabase db) {
+        return db.orderService.createOrder(new OrderDTO(null, LocalDate.now(), "offen"));
+    }
+
+    @Benchmark
+    public PositionDTO addOrderPosition(BenchmarkDatabase db, OpenOrders orders) {
+        String orderId = orders.orderIds.get(ThreadLocalRandom.current().nextInt(BATCH));
+        return db.orderService.addOrderPosition(orderId, new PositionDTO(null, db.randomProductId(), null, 1));
+    }
+
+    @Benchmark
+    public void addAndDeleteOrderPosition(BenchmarkDatabase db, OpenOrders orders) {
+        String orderId = orders.orderIds.get(0);
+        PositionDTO position = db.orderService.addOrderPosition(orderId, new PositionDTO(null, db.randomProductId(), null, 1));
+        db.orderService.deleteOrderPosition(orderId, position.getPositionId());
+    }
+
+    @Benchmark
+    public void addAndDeleteOrderPositionById(BenchmarkDatabase db, OpenOrders orders) {
+        String orderId = orders.orderIds.get(0);
+        PositionDTO position = db.orderService.addOrderPosition(orderId, new PositionDTO(null, db.randomProductId(), null, 1));
+        db.orderService.deleteOrderPosition(position.getPositionId());
+    }
+
+    @Benchmark
+    public void deleteOrder(BenchmarkDatabase db, OpenOrders orders) {
+        db.orderService.deleteOrder(orders.orderIds.get(0));
+    }
+
+    @Benchmark
+    public boolean closeOrder(BenchmarkDatabase db, OpenOrders orders) {
+        return db.orderService.closeOrder(orders.orderIds.get(0));
+    }
+
+    @Benchmark
+    public List<OrderResultDTO> closeOrders(BenchmarkDatabase db, OpenOrders orders) {
+        return db.orderService.closeOrders(orders.orderIds);
+    }
+
+    @Benchmark
+    public BulkOrderResultDTO closeOrdersInBulk(BenchmarkDatabase db, OpenOrders orders) {
+        BulkOrderRequestDTO request = new BulkOrderRequestDTO();
+        request.setOrderIds(orders.orderIds);
+        return db.orderService.closeOrdersInBulk(request);
+    }
+
+    @Benchmark
+    public BulkOrderResultDTO deleteOrdersInBulk(BenchmarkDatabase db, OpenOrders orders) {
+        BulkOrderRequestDTO request = new BulkOrderRequestDTO();
+        request.setOrderIds(orders.orderIds);
+        return db.orderService.deleteOrdersInBulk(request);
+    }
+}
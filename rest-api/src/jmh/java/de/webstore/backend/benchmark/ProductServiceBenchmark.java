@@ -0,0 +1,81 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.webstore.backend.cache.VersionedCache;
+import de.webstore.backend.dto.ProductChangesDTO;
+import de.webstore.backend.dto.ProductDTO;
+import de.webstore.backend.dto.ProductUpdateDTO;
+
+/**
+ * Benchmarks of the public methods of {@link de.webstore.backend.service.ProductService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    @Benchmark
+    public List<ProductDTO> findAll(BenchmarkDatabase db) {
+        return db.productService.findAll();
+    }
+
+    @Benchmark
+    public ProductDTO findById(BenchmarkDatabase db) {
+        return db.productService.findById(db.randomProductId());
+    }
+
+    @Benchmark
+    public boolean exists(BenchmarkDatabase db) {
+        return db.productService.exists(db.randomProductId());
+    }
+
+    @Benchmark
+    public VersionedCache.Entry<ProductDTO> findVersionedById(BenchmarkDatabase db) {
+        return db.productService.findVersionedById(db.randomProductId());
+    }
+
+    @Benchmark
+    public Long findCatalogVersion(BenchmarkDatabase db) {
+        return db.productService.findCatalogVersion();
+    }
+
+    @Benchmark
+    public ProductChangesDTO findChanges(BenchmarkDatabase db) {
+        return db.productService.findChanges(ThreadLocalRandom.current().nextLong(db.dataSize), 100);
+    }
+
+    @Benchmark
+    public ProductDTO addProduct(BenchmarkDatabase db) {
+        return db.productService.addProduct(new ProductDTO(null, "Benchmark", "Piece", new BigDecimal("9.99")));
+    }
+
+    @Benchmark
+    public ProductUpdateDTO updateProduct(BenchmarkDatabase db) {
+        BigDecimal price = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(100_000) + 1, 2);
+        return db.productService.updateProduct(db.randomProductId(), new ProductUpdateDTO("Benchmark", "Piece", price));
+    }
+
+    /**
+     * A product can only be deleted once, so each invocation adds the product it deletes.
+     */
+    @Benchmark
+    public void addAndDeleteProduct(BenchmarkDatabase db) {
+        ProductDTO product = db.productService.addProduct(new ProductDTO(null, "Benchmark", "Piece", new BigDecimal("9.99")));
+        db.productService.deleteProduct(product.getProductId());
+    }
+}
@@ -0,0 +1,83 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.webstore.backend.dto.WarehouseDTO;
+
+/**
+ * Benchmarks of the public methods of {@link de.webstore.backend.service.WarehouseService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseServiceBenchmark {
+
+    @Benchmark
+    public List<WarehouseDTO> findAllActive(BenchmarkDatabase db) {
+        return db.warehouseService.findAllActive();
+    }
+
+    @Benchmark
+    public WarehouseDTO findById(BenchmarkDatabase db) {
+        return db.warehouseService.findById(db.randomWarehouseNumber());
+    }
+
+    @Benchmark
+    public boolean exists(BenchmarkDatabase db) {
+        return db.warehouseService.exists(db.randomWarehouseNumber());
+    }
+
+    @Benchmark
+    public boolean productAndWarehouseExist(BenchmarkDatabase db) {
+        return db.warehouseService.productAndWarehouseExist(db.randomProductId(), db.randomWarehouseNumber());
+    }
+
+    @Benchmark
+    public int calculateTotalProductQuantity(BenchmarkDatabase db) {
+        return db.warehouseService.calculateTotalProductQuantity(db.randomProductId());
+    }
+
+    @Benchmark
+    public int sumProductsInWarehouse(BenchmarkDatabase db) {
+        return db.warehouseService.sumProductsInWarehouse(db.randomWarehouseNumber());
+    }
+
+    @Benchmark
+    public void updateAllWarehouseQuantities(BenchmarkDatabase db) {
+        db.warehouseService.updateWarehouseQuantities();
+    }
+
+    @Benchmark
+    public void updateWarehouseQuantities(BenchmarkDatabase db) {
+        WarehouseDTO warehouse = new WarehouseDTO();
+        warehouse.setWarehouseNumber(db.randomWarehouseNumber());
+        db.warehouseService.updateWarehouseQuantities(List.of(warehouse));
+    }
+
+    @Benchmark
+    public void addProductQuantityAndUpdateWarehouse(BenchmarkDatabase db) {
+        int product = ThreadLocalRandom.current().nextInt(db.data.productIds.length);
+        db.warehouseService.addProductQuantityAndUpdateWarehouse(db.data.productIds[product],
+                db.data.warehouseOf(product, ThreadLocalRandom.current().nextInt(2)), 1);
+    }
+
+    @Benchmark
+    public void reduceProductQuantityAndUpdateWarehouse(BenchmarkDatabase db) {
+        int product = ThreadLocalRandom.current().nextInt(db.data.productIds.length);
+        db.warehouseService.reduceProductQuantityAndUpdateWarehouse(db.data.productIds[product],
+                db.data.warehouseOf(product, ThreadLocalRandom.current().nextInt(2)), 1);
+    }
+}
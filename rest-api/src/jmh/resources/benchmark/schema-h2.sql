@@ -0,0 +1,142 @@
+-- --------------------------------------------------------
+-- Schema of warehouse_database_uuid_de.sql and migrations 001 to 007
+-- for the embedded H2 database of the benchmarks (MODE=MySQL).
+-- Keep in sync with the MySQL schema.
+-- --------------------------------------------------------
+
+CREATE TABLE auftrag (
+  auftragsnummer varchar(36) NOT NULL,
+  datum date NOT NULL,
+  status enum('offen','geschlossen') NOT NULL DEFAULT 'offen',
+  PRIMARY KEY (auftragsnummer)
+);
+CREATE INDEX idx_auftrag_status_datum ON auftrag (status, datum, auftragsnummer);
+CREATE INDEX idx_auftrag_datum ON auftrag (datum, auftragsnummer);
+
+CREATE TABLE lager (
+  lagernummer int NOT NULL AUTO_INCREMENT,
+  menge int NOT NULL DEFAULT 0,
+  aktiv tinyint DEFAULT 1,
+  PRIMARY KEY (lagernummer)
+);
+
+CREATE TABLE produkt (
+  produktnummer varchar(36) NOT NULL,
+  name varchar(100) NOT NULL,
+  einheit varchar(50) NOT NULL,
+  preis decimal(10,2) NOT NULL,
+  PRIMARY KEY (produktnummer)
+);
+
+CREATE TABLE lagert (
+  produkt_fk varchar(36) NOT NULL,
+  lager_fk int NOT NULL,
+  PRIMARY KEY (produkt_fk, lager_fk),
+  CONSTRAINT lagert_ibfk_1 FOREIGN KEY (produkt_fk) REFERENCES produkt (produktnummer),
+  CONSTRAINT lagert_ibfk_2 FOREIGN KEY (lager_fk) REFERENCES lager (lagernummer)
+);
+CREATE INDEX lagert_lager_fk ON lagert (lager_fk);
+
+CREATE TABLE position (
+  positionsnummer varchar(36) NOT NULL,
+  produktnummer varchar(36) NOT NULL,
+  auftragsnummer varchar(36) NOT NULL,
+  menge int NOT NULL,
+  PRIMARY KEY (positionsnummer),
+  CONSTRAINT position_ibfk_1 FOREIGN KEY (produktnummer) REFERENCES produkt (produktnummer),
+  CONSTRAINT position_ibfk_2 FOREIGN KEY (auftragsnummer) REFERENCES auftrag (auftragsnummer)
+);
+CREATE INDEX position_produktnummer ON position (produktnummer);
+CREATE INDEX position_auftragsnummer ON position (auftragsnummer);
+
+CREATE TABLE produktlagermenge (
+  produkt_fk varchar(36) NOT NULL,
+  lager_fk int NOT NULL,
+  menge int NOT NULL DEFAULT 0,
+  PRIMARY KEY (produkt_fk, lager_fk),
+  CONSTRAINT produktlagermenge_ibfk_1 FOREIGN KEY (produkt_fk) REFERENCES produkt (produktnummer),
+  CONSTRAINT produktlagermenge_ibfk_2 FOREIGN KEY (lager_fk) REFERENCES lager (lagernummer)
+);
+CREATE INDEX produktlagermenge_lager_fk ON produktlagermenge (lager_fk);
+
+CREATE TABLE idempotenz_schluessel (
+  schluessel varchar(255) NOT NULL,
+  fingerabdruck char(64) NOT NULL,
+  status_code int DEFAULT NULL,
+  antwort text DEFAULT NULL,
+  erstellt timestamp NOT NULL,
+  PRIMARY KEY (schluessel)
+);
+CREATE INDEX idx_idempotenz_erstellt ON idempotenz_schluessel (erstellt);
+
+CREATE TABLE umsatz_tag (
+  datum date NOT NULL,
+  auftraege int NOT NULL DEFAULT 0,
+  menge bigint NOT NULL DEFAULT 0,
+  umsatz decimal(15,2) NOT NULL DEFAULT 0.00,
+  PRIMARY KEY (datum)
+);
+
+CREATE TABLE umsatz_produkt (
+  produkt_fk varchar(36) NOT NULL,
+  menge bigint NOT NULL DEFAULT 0,
+  umsatz decimal(15,2) NOT NULL DEFAULT 0.00,
+  PRIMARY KEY (produkt_fk)
+);
+CREATE INDEX idx_umsatz_produkt_umsatz ON umsatz_produkt (umsatz);
+CREATE INDEX idx_umsatz_produkt_menge ON umsatz_produkt (menge);
+
+CREATE TABLE auftrag_archiv (
+  auftragsnummer varchar(36) NOT NULL,
+  datum date NOT NULL,
+  status enum('offen','geschlossen') NOT NULL DEFAULT 'geschlossen',
+  PRIMARY KEY (auftragsnummer)
+);
+CREATE INDEX idx_auftrag_archiv_datum ON auftrag_archiv (datum, auftragsnummer);
+
+CREATE TABLE position_archiv (
+  positionsnummer varchar(36) NOT NULL,
+  produktnummer varchar(36) NOT NULL,
+  auftragsnummer varchar(36) NOT NULL,
+  menge int NOT NULL,
+  PRIMARY KEY (positionsnummer),
+  CONSTRAINT position_archiv_ibfk_1 FOREIGN KEY (produktnummer) REFERENCES produkt (produktnummer),
+  CONSTRAINT position_archiv_ibfk_2 FOREIGN KEY (auftragsnummer) REFERENCES auftrag_archiv (auftragsnummer)
+);
+CREATE INDEX position_archiv_auftragsnummer ON position_archiv (auftragsnummer);
+
+CREATE TABLE outbox_ereignis (
+  id bigint NOT NULL AUTO_INCREMENT,
+  aggregat varchar(32) NOT NULL,
+  aggregat_id varchar(36) NOT NULL,
+  typ varchar(64) NOT NULL,
+  nutzdaten text NOT NULL,
+  erstellt timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_outbox_erstellt ON outbox_ereignis (erstellt);
+
+CREATE TABLE produkt_sequenz (
+  id tinyint NOT NULL,
+  wert bigint NOT NULL,
+  PRIMARY KEY (id)
+);
+INSERT INTO produkt_sequenz (id, wert) VALUES (1, 0);
+
+CREATE TABLE produkt_version (
+  produktnummer varchar(36) NOT NULL,
+  version bigint NOT NULL,
+  geloescht tinyint NOT NULL DEFAULT 0,
+  PRIMARY KEY (produktnummer)
+);
+CREATE UNIQUE INDEX idx_produkt_version_version ON produkt_version (version);
+
+CREATE TABLE cache_invalidierung (
+  id bigint NOT NULL AUTO_INCREMENT,
+  knoten varchar(64) NOT NULL,
+  bereich varchar(32) NOT NULL,
+  schluessel varchar(255) NOT NULL,
+  version bigint NOT NULL DEFAULT 0,
+  erstellt timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (id)
+);
@@ -0,0 +1,169 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.admission;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Concurrency limit of the API that adapts to the observed latency (AIMD).
+ * <p>
+ * The latencies of the admitted requests are averaged per window. The baseline is the lowest window average, drifting
+ * slowly upwards so that it follows a permanently changed workload. At the end of each window:
+ * <ul>
+ *   <li>if the average exceeded the baseline by the tolerance factor, or requests were rejected further down
+ *       (bulkheads), the limit is multiplied by the backoff ratio</li>
+ *   <li>otherwise, if the requests in flight reached half the limit, the limit grows by one</li>
+ * </ul>
+ * When the database slows down, the limit therefore shrinks within a few windows, and the requests above it are
+ * rejected at once instead of queuing in Tomcat until all of them time out.
+ * <p>
+ * A request of a {@link Priority} is admitted while the requests in flight are below its share of the limit, so
+ * reports are shed first and order close and stock changes last. Exports {@code webstore.admission.limit},
+ * {@code webstore.admission.inflight} and {@code webstore.admission.rejected} (by priority).
+ */
+@Component
+public class AdaptiveLimiter {
+
+    // A window's average above the baseline moves the baseline up by this fraction of the difference
+    private static final double BASELINE_DRIFT = 0.05;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final long windowNanos;
+    private final int minSamples;
+    private final Map<Priority, Double> shares = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> rejections = new EnumMap<>(Priority.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // Current window, guarded by windowLock
+    private final ReentrantLock windowLock = new ReentrantLock();
+    private long windowStart = System.nanoTime();
+    private long windowLatencySum;
+    private int windowSamples;
+    private int windowDrops;
+    private int windowMaxInFlight;
+    private double baselineNanos;
+
+    @Autowired
+    public AdaptiveLimiter(MeterRegistry registry,
+                           @Value("${webstore.admission.enabled:true}") boolean enabled,
+                           @Value("${webstore.admission.initial-limit:100}") int initialLimit,
+                           @Value("${webstore.admission.min-limit:10}") int minLimit,
+                           @Value("${webstore.admission.max-limit:400}") int maxLimit,
+                           @Value("${webstore.admission.tolerance:2.0}") double tolerance,
+                           @Value("${webstore.admission.backoff-ratio:0.9}") double backoffRatio,
+                           @Value("${webstore.admission.window-ms:500}") long windowMs,
+                           @Value("${webstore.admission.min-samples:20}") int minSamples,
+                           @Value("${webstore.admission.normal-share:0.9}") double normalShare,
+                           @Value("${webstore.admission.low-share:0.5}") double lowShare) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.minSamples = minSamples;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        shares.put(Priority.CRITICAL, 1.0);
+        shares.put(Priority.NORMAL, normalShare);
+        shares.put(Priority.LOW, lowShare);
+        for (Priority priority : Priority.values()) {
+            rejections.put(priority, Counter.builder("webstore.admission.rejected")
+                    .description("Requests shed by the adaptive concurrency limit").tag("priority", priority.label())
+                    .register(registry));
+        }
+        Gauge.builder("webstore.admission.limit", this, limiter -> limiter.limit)
+                .description("Current adaptive concurrency limit").register(registry);
+        Gauge.builder("webstore.admission.inflight", inFlight, AtomicInteger::get)
+                .description("Requests in flight under the adaptive concurrency limit").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Admits a request if the requests in flight are below the share of the limit for its priority; on success,
+     * call {@link #release(long, boolean)} when it is done.
+     *
+     * @param priority the priority of the request
+     * @return true if admitted, false if the request is to be rejected
+     */
+    public boolean tryAcquire(Priority priority) {
+        int allowed = Math.max(1, (int) (limit * shares.get(priority)));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejections.get(priority).increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and feeds its latency into the limit.
+     *
+     * @param latencyNanos the time the request took
+     * @param dropped      whether the request was rejected further down for lack of capacity
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        windowLock.lock();
+        try {
+            if (dropped) {
+                windowDrops++;
+            } else {
+                windowLatencySum += latencyNanos;
+                windowSamples++;
+            }
+            windowMaxInFlight = Math.max(windowMaxInFlight, current);
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos && windowSamples + windowDrops >= minSamples) {
+                adjust();
+                windowStart = now;
+                windowLatencySum = 0;
+                windowSamples = 0;
+                windowDrops = 0;
+                windowMaxInFlight = 0;
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    private void adjust() {
+        double average = windowSamples > 0 ? (double) windowLatencySum / windowSamples : 0;
+        if (windowSamples > 0) {
+            baselineNanos = baselineNanos == 0 || average < baselineNanos
+                    ? average : baselineNanos + (average - baselineNanos) * BASELINE_DRIFT;
+        }
+        if (windowDrops > 0 || average > baselineNanos * tolerance) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (windowMaxInFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+}
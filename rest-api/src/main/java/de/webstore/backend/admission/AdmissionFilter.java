@@ -0,0 +1,77 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.admission;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.exception.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Sheds API requests above the {@link AdaptiveLimiter}'s limit before they reach the bulkheads and the controllers.
+ * <p>
+ * Runs after the observation filter, so shed requests appear in {@code http.server.requests}, and before the
+ * bulkhead filter. Requests rejected by a bulkhead (503) count as drops and lower the limit.
+ */
+@Component
+@Order(AdmissionFilter.ORDER)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
+    private final AdaptiveLimiter limiter;
+    private final ObjectMapper objectMapper;
+
+    // Status of shed requests: 503, or 429 for clients that only back off on that
+    @Value("${webstore.admission.reject-status:503}")
+    private int rejectStatus;
+
+    @Value("${webstore.admission.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    @Autowired
+    public AdmissionFilter(AdaptiveLimiter limiter, ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Priority priority = limiter.isEnabled()
+                ? Priority.of(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()))
+                : null;
+        if (priority == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!limiter.tryAcquire(priority)) {
+            response.setStatus(rejectStatus);
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                    new ErrorResponse("The service is overloaded, please retry later."));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limiter.release(System.nanoTime() - start, response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+}
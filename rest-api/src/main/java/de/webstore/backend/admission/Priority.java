@@ -0,0 +1,57 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.admission;
+
+import java.util.Locale;
+
+import de.webstore.backend.bulkhead.BulkheadGroup;
+
+/**
+ * Priority of a request under load. Lower priorities may only use a part of the concurrency limit, so they are
+ * shed first.
+ */
+public enum Priority {
+
+    // Closing orders and changing stock: the work that must not be lost
+    CRITICAL,
+    // Order entry, catalog reads
+    NORMAL,
+    // Full lists and reports
+    LOW;
+
+    /**
+     * Returns the priority of a request.
+     *
+     * @param method the HTTP method
+     * @param path   the request path without the context path
+     * @return the priority, or null for requests that are not admission controlled (event stream, actuator)
+     */
+    public static Priority of(String method, String path) {
+        BulkheadGroup group = BulkheadGroup.of(method, path);
+        if (group == null) {
+            return null;
+        }
+        return switch (group) {
+            case STOCK -> CRITICAL;
+            case REPORT -> LOW;
+            case ORDER -> isClose(method, path) ? CRITICAL : NORMAL;
+            case CATALOG -> NORMAL;
+        };
+    }
+
+    // PUT /order/close/{orderId} and POST /order/bulk/close; polling a close job (GET /order/close/job/{jobId}) is not
+    private static boolean isClose(String method, String path) {
+        if ("PUT".equals(method)) {
+            return path.contains("/order/close/") && !path.contains("/order/close/job/");
+        }
+        return "POST".equals(method) && path.endsWith("/order/bulk/close");
+    }
+
+    /**
+     * Returns the name used in metric tags.
+     *
+     * @return e.g. {@code critical}
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
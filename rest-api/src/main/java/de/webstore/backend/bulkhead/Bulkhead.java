@@ -0,0 +1,123 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Bounds the concurrent requests of one {@link BulkheadGroup} and the database connections they hold.
+ * <p>
+ * A request or connection that finds the limit reached waits at most the configured time for a permit and is then
+ * rejected. Records:
+ * <ul>
+ *   <li>{@code webstore.bulkhead.queue}: time spent waiting for a permit, by group, resource and outcome</li>
+ *   <li>{@code webstore.bulkhead.rejected}: rejections, by group and resource</li>
+ *   <li>{@code webstore.bulkhead.active}: permits in use, by group and resource</li>
+ * </ul>
+ */
+public class Bulkhead {
+
+    private final BulkheadGroup group;
+    private final long maxWaitNanos;
+    private final Semaphore requests;
+    private final Semaphore connections;
+    private final Timer requestAdmitted;
+    private final Timer requestRejected;
+    private final Timer connectionAdmitted;
+    private final Timer connectionRejected;
+    private final Counter requestRejections;
+    private final Counter connectionRejections;
+
+    /**
+     * Creates a bulkhead and registers its metrics.
+     *
+     * @param group          the group
+     * @param maxRequests    concurrent requests
+     * @param maxConnections concurrent database connections, at most one per request
+     * @param maxWaitMs      how long a request or connection waits for a permit
+     * @param registry       the meter registry
+     */
+    public Bulkhead(BulkheadGroup group, int maxRequests, int maxConnections, long maxWaitMs, MeterRegistry registry) {
+        this.group = group;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.requests = new Semaphore(maxRequests, true);
+        this.connections = new Semaphore(maxConnections, true);
+        this.requestAdmitted = queueTimer(registry, "request", "admitted");
+        this.requestRejected = queueTimer(registry, "request", "rejected");
+        this.connectionAdmitted = queueTimer(registry, "connection", "admitted");
+        this.connectionRejected = queueTimer(registry, "connection", "rejected");
+        this.requestRejections = rejectionCounter(registry, "request");
+        this.connectionRejections = rejectionCounter(registry, "connection");
+        Gauge.builder("webstore.bulkhead.active", requests, permits -> maxRequests - permits.availablePermits())
+                .description("Permits of the bulkhead in use").tag("group", group.label()).tag("resource", "request")
+                .register(registry);
+        Gauge.builder("webstore.bulkhead.active", connections, permits -> maxConnections - permits.availablePermits())
+                .description("Permits of the bulkhead in use").tag("group", group.label()).tag("resource", "connection")
+                .register(registry);
+    }
+
+    public BulkheadGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Admits a request, waiting at most the configured time; release it with {@link #releaseRequest()}.
+     *
+     * @return true if admitted, false if the group is saturated
+     */
+    public boolean tryAcquireRequest() {
+        return acquire(requests, requestAdmitted, requestRejected, requestRejections);
+    }
+
+    public void releaseRequest() {
+        requests.release();
+    }
+
+    /**
+     * Admits a database connection, waiting at most the configured time; release it with
+     * {@link #releaseConnection()}.
+     *
+     * @return true if admitted, false if the connections of the group are all in use
+     */
+    public boolean tryAcquireConnection() {
+        return acquire(connections, connectionAdmitted, connectionRejected, connectionRejections);
+    }
+
+    public void releaseConnection() {
+        connections.release();
+    }
+
+    private boolean acquire(Semaphore permits, Timer admitted, Timer rejected, Counter rejections) {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        long waited = System.nanoTime() - start;
+        if (acquired) {
+            admitted.record(waited, TimeUnit.NANOSECONDS);
+        } else {
+            rejected.record(waited, TimeUnit.NANOSECONDS);
+            rejections.increment();
+        }
+        return acquired;
+    }
+
+    private Timer queueTimer(MeterRegistry registry, String resource, String outcome) {
+        return Timer.builder("webstore.bulkhead.queue").description("Time waited for a permit of the bulkhead")
+                .tag("group", group.label()).tag("resource", resource).tag("outcome", outcome).register(registry);
+    }
+
+    private Counter rejectionCounter(MeterRegistry registry, String resource) {
+        return Counter.builder("webstore.bulkhead.rejected").description("Requests and connections rejected by the bulkhead")
+                .tag("group", group.label()).tag("resource", resource).register(registry);
+    }
+}
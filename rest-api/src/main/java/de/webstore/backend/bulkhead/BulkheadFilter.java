@@ -0,0 +1,88 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.exception.BulkheadFullException;
+import de.webstore.backend.exception.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Admits each API request to the bulkhead of its {@link BulkheadGroup}, and answers 503 with Retry-After when the
+ * group is saturated, either on admission or when the request finds no connection left
+ * ({@link BulkheadFullException}).
+ * <p>
+ * Runs after the observation filter, so rejected requests appear in {@code http.server.requests}.
+ */
+@Component
+@Order(BulkheadFilter.ORDER)
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 20;
+
+    private final Bulkheads bulkheads;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public BulkheadFilter(Bulkheads bulkheads, ObjectMapper objectMapper) {
+        this.bulkheads = bulkheads;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        BulkheadGroup group = bulkheads.isEnabled()
+                ? BulkheadGroup.of(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()))
+                : null;
+        if (group == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!bulkheads.enter(group)) {
+            reject(response, "Too many concurrent " + group.label() + " requests, please retry later.");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } catch (ServletException | RuntimeException e) {
+            if (!causedByFullBulkhead(e) || response.isCommitted()) {
+                throw e;
+            }
+            response.resetBuffer();
+            reject(response, "No database connection left for " + group.label() + " requests, please retry later.");
+        } finally {
+            bulkheads.exit();
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(bulkheads.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(message));
+    }
+
+    private static boolean causedByFullBulkhead(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BulkheadFullException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import java.util.Locale;
+
+/**
+ * The groups of endpoints that get a bulkhead of their own.
+ */
+public enum BulkheadGroup {
+
+    // Product and warehouse reads by ID and the product changes
+    CATALOG,
+    // Adding and reducing stock
+    STOCK,
+    // Order entry, close and lookup by ID
+    ORDER,
+    // Full lists and reports: /product/all, /warehouse/all (recomputes the warehouse totals), /order/all, /report/**
+    REPORT;
+
+    private static final String PREFIX = "/api/de/v1/";
+
+    /**
+     * Returns the group of a request.
+     *
+     * @param method the HTTP method
+     * @param path   the request path without the context path, e.g. {@code /api/de/v1/warehouse/all}
+     * @return the group, or null for requests outside the bulkheads (event stream, actuator, API docs)
+     */
+    public static BulkheadGroup of(String method, String path) {
+        if (!path.startsWith(PREFIX)) {
+            return null;
+        }
+        String endpoint = path.substring(PREFIX.length());
+        boolean read = "GET".equals(method) || "HEAD".equals(method);
+        if (endpoint.startsWith("report/") || endpoint.equals("product/all") || endpoint.equals("warehouse/all")
+                || endpoint.equals("order/all")) {
+            return REPORT;
+        }
+        if (endpoint.startsWith("warehouse/")) {
+            return read ? CATALOG : STOCK;
+        }
+        if (endpoint.startsWith("product/")) {
+            // Product writes are rare and share the catalog bulkhead
+            return CATALOG;
+        }
+        if (endpoint.startsWith("order/")) {
+            return ORDER;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name used in properties and metric tags.
+     *
+     * @return e.g. {@code catalog}
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
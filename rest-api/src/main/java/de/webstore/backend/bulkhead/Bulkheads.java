@@ -0,0 +1,176 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.exception.BulkheadFullException;
+import de.webstore.backend.metrics.JdbcMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The bulkheads of the endpoint groups, and the one the current request has been admitted to.
+ * <p>
+ * The {@link BulkheadFilter} admits each request to the bulkhead of its group. Connections obtained from
+ * {@link de.webstore.backend.config.DatabaseConnection} on the request thread, or in tasks of the request wrapped
+ * with {@link #propagate(Runnable)}, then count against the connections
+ * of that group: the first one takes a permit that is released when the last one is closed, so nested connections
+ * of one request never wait for each other. Connections of scheduled jobs and workers are not limited.
+ */
+@Component
+public class Bulkheads {
+
+    private final boolean enabled;
+    private final long retryAfterSeconds;
+    private final Map<BulkheadGroup, Bulkhead> bulkheads = new EnumMap<>(BulkheadGroup.class);
+    private final ThreadLocal<Admission> current = new ThreadLocal<>();
+
+    @Autowired
+    public Bulkheads(MeterRegistry registry,
+                     @Value("${webstore.bulkhead.enabled:true}") boolean enabled,
+                     @Value("${webstore.bulkhead.max-wait-ms:50}") long maxWaitMs,
+                     @Value("${webstore.bulkhead.retry-after-seconds:1}") long retryAfterSeconds,
+                     @Value("${webstore.bulkhead.catalog.max-requests:80}") int catalogRequests,
+                     @Value("${webstore.bulkhead.catalog.max-connections:20}") int catalogConnections,
+                     @Value("${webstore.bulkhead.stock.max-requests:40}") int stockRequests,
+                     @Value("${webstore.bulkhead.stock.max-connections:10}") int stockConnections,
+                     @Value("${webstore.bulkhead.order.max-requests:60}") int orderRequests,
+                     @Value("${webstore.bulkhead.order.max-connections:20}") int orderConnections,
+                     @Value("${webstore.bulkhead.report.max-requests:16}") int reportRequests,
+                     @Value("${webstore.bulkhead.report.max-connections:4}") int reportConnections) {
+        this.enabled = enabled;
+        this.retryAfterSeconds = retryAfterSeconds;
+        bulkheads.put(BulkheadGroup.CATALOG, new Bulkhead(BulkheadGroup.CATALOG, catalogRequests, catalogConnections, maxWaitMs, registry));
+        bulkheads.put(BulkheadGroup.STOCK, new Bulkhead(BulkheadGroup.STOCK, stockRequests, stockConnections, maxWaitMs, registry));
+        bulkheads.put(BulkheadGroup.ORDER, new Bulkhead(BulkheadGroup.ORDER, orderRequests, orderConnections, maxWaitMs, registry));
+        bulkheads.put(BulkheadGroup.REPORT, new Bulkhead(BulkheadGroup.REPORT, reportRequests, reportConnections, maxWaitMs, registry));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Admits the current request to the bulkhead of a group; on success, call {@link #exit()} when it is done.
+     *
+     * @param group the group of the request
+     * @return true if admitted, false if the group is saturated
+     */
+    public boolean enter(BulkheadGroup group) {
+        Bulkhead bulkhead = bulkheads.get(group);
+        if (!bulkhead.tryAcquireRequest()) {
+            return false;
+        }
+        current.set(new Admission(bulkhead));
+        return true;
+    }
+
+    /**
+     * Releases the bulkhead the current request was admitted to.
+     */
+    public void exit() {
+        Admission admission = current.get();
+        current.remove();
+        if (admission != null) {
+            admission.bulkhead.releaseRequest();
+        }
+    }
+
+    /**
+     * Wraps a task that does work for the current request on another thread, so that the connections it obtains
+     * count against the connections of the request's bulkhead as well. The task does not hold a request permit.
+     *
+     * @param task the task
+     * @return the task, running within the current request's bulkhead
+     */
+    public Runnable propagate(Runnable task) {
+        Admission admission = current.get();
+        if (admission == null) {
+            return task;
+        }
+        Bulkhead bulkhead = admission.bulkhead;
+        return () -> {
+            current.set(new Admission(bulkhead));
+            try {
+                task.run();
+            } finally {
+                current.remove();
+            }
+        };
+    }
+
+    /**
+     * Obtains a connection within the connection limit of the current request's bulkhead.
+     *
+     * @param connector obtains the connection
+     * @return the connection; closing it releases the permit
+     * @throws SQLException if the connection cannot be obtained
+     * @throws BulkheadFullException if the group has no connection left
+     */
+    public Connection connect(JdbcMetrics.Connector connector) throws SQLException {
+        Admission admission = current.get();
+        if (admission == null) {
+            return connector.connect();
+        }
+        boolean first = admission.openConnections == 0;
+        if (first && !admission.bulkhead.tryAcquireConnection()) {
+            throw new BulkheadFullException("All connections of the "
+                    + admission.bulkhead.getGroup().label() + " bulkhead are in use.");
+        }
+        Connection connection;
+        try {
+            connection = connector.connect();
+        } catch (SQLException | RuntimeException e) {
+            if (first) {
+                admission.bulkhead.releaseConnection();
+            }
+            throw e;
+        }
+        admission.openConnections++;
+        return releasingOnClose(connection, admission);
+    }
+
+    private static Connection releasingOnClose(Connection connection, Admission admission) {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Bulkheads.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && !closed[0]) {
+                            closed[0] = true;
+                            if (--admission.openConnections == 0) {
+                                admission.bulkhead.releaseConnection();
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * The bulkhead a request has been admitted to and the connections it holds; used by one thread only.
+     */
+    private static final class Admission {
+
+        private final Bulkhead bulkhead;
+        private int openConnections;
+
+        private Admission(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+    }
+}
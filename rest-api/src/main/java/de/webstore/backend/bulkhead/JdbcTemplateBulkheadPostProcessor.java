@@ -0,0 +1,69 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the connections the {@link JdbcTemplate} takes from its pool on a request thread against the bulkhead of
+ * the request, like those of {@link de.webstore.backend.config.DatabaseConnection}.
+ * <p>
+ * {@link Bulkheads} is looked up lazily, so the meter registry is not created while the post processors are being
+ * set up.
+ */
+@Component
+public class JdbcTemplateBulkheadPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<Bulkheads> bulkheads;
+
+    public JdbcTemplateBulkheadPostProcessor(ObjectProvider<Bulkheads> bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof JdbcTemplate jdbcTemplate) {
+            DataSource dataSource = jdbcTemplate.getDataSource();
+            if (dataSource != null) {
+                jdbcTemplate.setDataSource(limit(dataSource));
+            }
+        }
+        return bean;
+    }
+
+    private DataSource limit(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(JdbcTemplateBulkheadPostProcessor.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return bulkheads.getObject().connect(() -> (Connection) invoke(dataSource, method, args));
+                    }
+                    return invoke(dataSource, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws SQLException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
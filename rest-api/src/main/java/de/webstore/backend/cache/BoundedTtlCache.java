@@ -0,0 +1,211 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A thread-safe, size-bounded in-memory cache with optional time-to-live.
+ * <p>
+ * Entries are kept in least-recently-used order; once the cache holds more than {@code maxEntries} entries,
+ * the least recently used entry is evicted. If a TTL is configured, entries older than the TTL are treated as
+ * absent and removed lazily on access; insertions also sweep all expired entries, at most once per
+ * {@value #SWEEPS_PER_TTL}th of the TTL.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class BoundedTtlCache<K, V> {
+
+    // Full sweeps for expired entries per TTL period
+    private static final int SWEEPS_PER_TTL = 8;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    // System.nanoTime() of the last sweep, guarded by lock
+    private long lastSweep = System.nanoTime();
+
+    /**
+     * Creates a cache that evicts by size only.
+     *
+     * @param maxEntries the maximum number of entries to keep
+     */
+    public BoundedTtlCache(int maxEntries) {
+        this(maxEntries, Duration.ZERO);
+    }
+
+    /**
+     * Creates a cache that evicts by size and by age.
+     *
+     * @param maxEntries the maximum number of entries to keep
+     * @param ttl        the maximum age of an entry, or {@link Duration#ZERO} for no age limit
+     */
+    public BoundedTtlCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > BoundedTtlCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the value for the given key, or {@code null} if it is absent or expired.
+     *
+     * @param key the key
+     * @return the cached value or {@code null}
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry, System.nanoTime())) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a value, replacing any previous value for the key.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            removeExpired();
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a value only if no live value is present for the key.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the value already present, or {@code null} if the given value was stored
+     */
+    public V putIfAbsent(K key, V value) {
+        lock.lock();
+        try {
+            V existing = get(key);
+            if (existing != null) {
+                return existing;
+            }
+            put(key, value);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cached value for the key, computing and storing it if absent.
+     * <p>
+     * The mapping function is called outside the lock, so concurrent callers may compute the same value twice;
+     * it must therefore be side-effect free. If it returns {@code null}, nothing is cached.
+     *
+     * @param key             the key
+     * @param mappingFunction computes the value on a miss
+     * @return the cached or computed value
+     */
+    public V computeIfAbsent(K key, Function<K, V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = mappingFunction.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the entry for the given key.
+     *
+     * @param key the key
+     */
+    public void remove(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries, including expired entries that have not been removed yet.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must be called while holding the lock
+    private void removeExpired() {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastSweep < ttlNanos / SWEEPS_PER_TTL) {
+            return;
+        }
+        lastSweep = now;
+        // Iteration order is access order, not age: a recently read entry can be expired behind a live one,
+        // so the whole map is swept. Limiting the sweeps keeps the cost per insertion low.
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (isExpired(it.next(), now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdAt > ttlNanos;
+    }
+
+    private record Entry<V>(V value, long createdAt) {}
+}
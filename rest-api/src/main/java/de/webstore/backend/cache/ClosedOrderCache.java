@@ -0,0 +1,148 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.OrderDetailDTO;
+import de.webstore.backend.dto.OrderLineDTO;
+
+/**
+ * In-memory cache of closed orders.
+ * <p>
+ * An order never changes again once its status is 'geschlossen', so closed orders and their details are
+ * cached without expiry and only evicted when the cache is full. Open orders are never cached because they
+ * can still change. In addition, order IDs that were not found are remembered for a short time, so repeated
+ * lookups of unknown orders do not reach the database either.
+ * <p>
+ * Only the unchanging part of a closed order's details is cached: its positions with product ID and quantity.
+ * Prices can still change, so the line totals and the order total are left out and have to be computed from the
+ * current prices on every read, like an uncached read does.
+ */
+@Component
+public class ClosedOrderCache {
+
+    private static final String CLOSED = "geschlossen";
+
+    // Closed orders by order ID
+    private final BoundedTtlCache<String, OrderDTO> orders;
+
+    // Details of closed orders by order ID: positions without product data and without totals
+    private final BoundedTtlCache<String, OrderDetailDTO> details;
+
+    // Order IDs recently found not to exist
+    private final BoundedTtlCache<String, Boolean> missing;
+
+    public ClosedOrderCache(@Value("${webstore.cache.closed-orders.max-entries:50000}") int maxEntries,
+                            @Value("${webstore.cache.closed-orders.max-details:10000}") int maxDetails,
+                            @Value("${webstore.cache.missing-orders.max-entries:10000}") int maxMissing,
+                            @Value("${webstore.cache.missing-orders.ttl-seconds:30}") long missingTtlSeconds) {
+        this.orders = new BoundedTtlCache<>(maxEntries);
+        this.details = new BoundedTtlCache<>(maxDetails);
+        this.missing = new BoundedTtlCache<>(maxMissing, Duration.ofSeconds(missingTtlSeconds));
+    }
+
+    /**
+     * Returns the cached closed order.
+     *
+     * @param orderId the order ID
+     * @return the closed order, or null if it is not cached
+     */
+    public OrderDTO getOrder(String orderId) {
+        return orders.get(orderId);
+    }
+
+    /**
+     * Returns the cached details of a closed order.
+     *
+     * @param orderId the order ID
+     * @return a copy of the order details without line totals and a total of zero, or null if they are not cached
+     */
+    public OrderDetailDTO getDetail(String orderId) {
+        OrderDetailDTO cached = details.get(orderId);
+        return cached != null ? withoutTotals(cached) : null;
+    }
+
+    /**
+     * Caches an order if it is closed; open orders are ignored.
+     *
+     * @param order the order read from the database
+     */
+    public void putOrder(OrderDTO order) {
+        if (order != null && CLOSED.equals(order.getStatus())) {
+            orders.put(order.getOrderId(), order);
+            missing.remove(order.getOrderId());
+        }
+    }
+
+    /**
+     * Caches the details of an order if it is closed; open orders are ignored.
+     *
+     * @param detail the order details read from the database, without product data
+     */
+    public void putDetail(OrderDetailDTO detail) {
+        if (detail != null && CLOSED.equals(detail.getStatus())) {
+            details.put(detail.getOrderId(), withoutTotals(detail));
+            orders.put(detail.getOrderId(), new OrderDTO(detail.getOrderId(), detail.getDate(), detail.getStatus()));
+        }
+    }
+
+    /**
+     * Checks whether an order is known to be closed without asking the database.
+     *
+     * @param orderId the order ID
+     * @return true if the order is known to be closed; false if it is open or not cached
+     */
+    public boolean isKnownClosed(String orderId) {
+        return orders.get(orderId) != null;
+    }
+
+    /**
+     * Remembers that an order does not exist.
+     *
+     * @param orderId the order ID
+     */
+    public void markMissing(String orderId) {
+        missing.put(orderId, Boolean.TRUE);
+    }
+
+    /**
+     * Checks whether an order was recently found not to exist.
+     *
+     * @param orderId the order ID
+     * @return true if the order was recently not found
+     */
+    public boolean isKnownMissing(String orderId) {
+        return missing.get(orderId) != null;
+    }
+
+    /**
+     * Forgets that an order was not found, e.g. because it has just been created.
+     *
+     * @param orderId the order ID
+     */
+    public void clearMissing(String orderId) {
+        missing.remove(orderId);
+    }
+
+    /**
+     * Copies order details, leaving out the totals and product data that depend on the current prices.
+     */
+    private static OrderDetailDTO withoutTotals(OrderDetailDTO detail) {
+        OrderDetailDTO copy = new OrderDetailDTO();
+        copy.setOrderId(detail.getOrderId());
+        copy.setDate(detail.getDate());
+        copy.setStatus(detail.getStatus());
+        for (OrderLineDTO line : detail.getPositions()) {
+            OrderLineDTO lineCopy = new OrderLineDTO();
+            lineCopy.setPositionId(line.getPositionId());
+            lineCopy.setProductId(line.getProductId());
+            lineCopy.setQuantity(line.getQuantity());
+            copy.getPositions().add(lineCopy);
+        }
+        return copy;
+    }
+}
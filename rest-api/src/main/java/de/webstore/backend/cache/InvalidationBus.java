@@ -0,0 +1,99 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Broadcasts cache invalidations to the other instances of the service.
+ * <p>
+ * Caches register a handler for their region. A write invalidates the local cache itself and then publishes
+ * the invalidation, which the configured {@link InvalidationTransport} delivers to the handlers of the same
+ * region on all other instances. Messages sent by this instance are ignored when they come back.
+ */
+@Component
+public class InvalidationBus {
+
+    /**
+     * Applies an invalidation received from another instance.
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Invalidates a key.
+         *
+         * @param key     the key
+         * @param version the version written, or 0 if unknown
+         */
+        void invalidate(String key, long version);
+    }
+
+    private final InvalidationTransport transport;
+    private final String nodeId;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InvalidationBus(InvalidationTransport transport,
+                           @Value("${webstore.cache.bus.node-id:}") String nodeId) {
+        this.transport = transport;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    /**
+     * Registers the handler applying invalidations of a region on this instance.
+     *
+     * @param region  the name of the cache
+     * @param handler applies the invalidations
+     */
+    public void register(String region, Handler handler) {
+        handlers.put(region, handler);
+    }
+
+    /**
+     * Sends an invalidation to the other instances. The local cache must already have been invalidated.
+     *
+     * @param region  the name of the cache
+     * @param key     the invalidated key
+     * @param version the version written, or 0 if the cache is not versioned
+     */
+    public void publish(String region, String key, long version) {
+        try {
+            transport.send(new InvalidationMessage(nodeId, region, key, version));
+        } catch (RuntimeException e) {
+            System.out.println("Error publishing cache invalidation: " + e.getMessage());
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        transport.start(this::receive);
+    }
+
+    @PreDestroy
+    void stop() {
+        transport.stop();
+    }
+
+    private void receive(InvalidationMessage message) {
+        if (nodeId.equals(message.nodeId())) {
+            return;
+        }
+        Handler handler = handlers.get(message.region());
+        if (handler != null) {
+            try {
+                handler.invalidate(message.key(), message.version());
+            } catch (RuntimeException e) {
+                System.out.println("Error applying cache invalidation " + message + ": " + e.getMessage());
+            }
+        }
+    }
+}
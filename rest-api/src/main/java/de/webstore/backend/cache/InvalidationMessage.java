@@ -0,0 +1,44 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+/**
+ * A cache invalidation sent to the other instances of the service.
+ * <p>
+ * The version is the version of the data after the write that caused the invalidation, or 0 for caches
+ * whose entries are not versioned. Versioned caches only drop entries older than the message, so late or
+ * duplicate messages are harmless.
+ *
+ * @param nodeId  the ID of the instance that sent the message
+ * @param region  the cache the key belongs to
+ * @param key     the invalidated key
+ * @param version the version written, or 0 if unknown
+ */
+public record InvalidationMessage(String nodeId, String region, String key, long version) {
+
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * Encodes the message as a single line of text; the key comes last, so it may contain any character
+     * except a line break.
+     *
+     * @return the encoded message
+     */
+    public String encode() {
+        return nodeId + SEPARATOR + region + SEPARATOR + version + SEPARATOR + key;
+    }
+
+    /**
+     * Decodes a message created by {@link #encode()}.
+     *
+     * @param text the encoded message
+     * @return the message
+     * @throws IllegalArgumentException if the text is not a valid message
+     */
+    public static InvalidationMessage decode(String text) {
+        String[] parts = text.split(String.valueOf(SEPARATOR), 4);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid invalidation message: " + text);
+        }
+        return new InvalidationMessage(parts[0], parts[1], parts[3], Long.parseLong(parts[2]));
+    }
+}
@@ -0,0 +1,33 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries cache invalidations between the instances of the service.
+ * <p>
+ * The transport is selected with {@code webstore.cache.bus.transport}: {@code local} (single instance, the
+ * default), {@code udp} or {@code jdbc}. Delivery is best effort; the caches bound the staleness of a lost
+ * message by their TTL.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Starts receiving messages from other instances.
+     *
+     * @param receiver called for every received message; messages sent by this instance may be included
+     */
+    void start(Consumer<InvalidationMessage> receiver);
+
+    /**
+     * Sends a message to the other instances.
+     *
+     * @param message the message
+     */
+    void send(InvalidationMessage message);
+
+    /**
+     * Stops receiving messages.
+     */
+    void stop();
+}
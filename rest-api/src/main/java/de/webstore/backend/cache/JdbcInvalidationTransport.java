@@ -0,0 +1,157 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.config.DatabaseConnection;
+
+/**
+ * Transport exchanging invalidations through the table {@code cache_invalidierung} (migration 007).
+ * <p>
+ * Every instance inserts its invalidations into the table and polls it for rows above the highest ID it has
+ * read. As with the outbox relay, IDs become visible on commit, so a young gap in the IDs is waited for up to
+ * {@code webstore.cache.bus.jdbc.gap-timeout-ms} before it is skipped. Rows older than the retention are purged.
+ */
+@Component
+@ConditionalOnProperty(name = "webstore.cache.bus.transport", havingValue = "jdbc")
+public class JdbcInvalidationTransport implements InvalidationTransport {
+
+    private final DatabaseConnection databaseConnection;
+    private volatile Consumer<InvalidationMessage> receiver;
+
+    // Highest row ID delivered; -1 until the first poll
+    private long watermark = -1;
+
+    // When the poller started waiting for the gap above the watermark, 0 if there is none
+    private long gapSince;
+
+    // Serializes polls; a lock instead of synchronized, so a virtual thread blocked on JDBC does not pin its carrier
+    private final ReentrantLock pollLock = new ReentrantLock();
+
+    // Rows read per poll
+    @Value("${webstore.cache.bus.jdbc.batch-size:500}")
+    private int batchSize;
+
+    // How long the poller waits for a missing row ID before skipping it
+    @Value("${webstore.cache.bus.jdbc.gap-timeout-ms:5000}")
+    private long gapTimeoutMs;
+
+    // How long rows are kept
+    @Value("${webstore.cache.bus.jdbc.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Autowired
+    public JdbcInvalidationTransport(DatabaseConnection databaseConnection) {
+        this.databaseConnection = databaseConnection;
+    }
+
+    @Override
+    public void start(Consumer<InvalidationMessage> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void send(InvalidationMessage message) {
+        String sql = "INSERT INTO cache_invalidierung (knoten, bereich, schluessel, version) VALUES (?, ?, ?, ?)";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, message.nodeId());
+            pstmt.setString(2, message.region());
+            pstmt.setString(3, message.key());
+            pstmt.setLong(4, message.version());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Error sending cache invalidation: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.receiver = null;
+    }
+
+    /**
+     * Delivers the invalidations written since the last poll.
+     */
+    @Scheduled(fixedDelayString = "${webstore.cache.bus.jdbc.poll-ms:500}")
+    public void poll() {
+        pollLock.lock();
+        try {
+            deliverNew();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private void deliverNew() {
+        Consumer<InvalidationMessage> current = receiver;
+        if (current == null) {
+            return;
+        }
+        String sql = "SELECT id, knoten, bereich, schluessel, version FROM cache_invalidierung WHERE id > ? ORDER BY id LIMIT ?";
+        try (Connection conn = databaseConnection.getConnection()) {
+            if (watermark < 0) {
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM cache_invalidierung");
+                     ResultSet rs = pstmt.executeQuery()) {
+                    watermark = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, watermark);
+                pstmt.setInt(2, batchSize);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong("id");
+                        if (id != watermark + 1) {
+                            // An earlier ID is not visible yet: still committing, or rolled back
+                            long now = System.currentTimeMillis();
+                            if (gapSince == 0) {
+                                gapSince = now;
+                            }
+                            if (now - gapSince < gapTimeoutMs) {
+                                break;
+                            }
+                        }
+                        gapSince = 0;
+                        watermark = id;
+                        current.accept(new InvalidationMessage(rs.getString("knoten"), rs.getString("bereich"),
+                                rs.getString("schluessel"), rs.getLong("version")));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading cache invalidations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes rows older than the configured retention.
+     */
+    @Scheduled(fixedDelayString = "${webstore.cache.bus.jdbc.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        String sql = databaseConnection.getDialect().deleteChunk("cache_invalidierung", "id", "erstellt < ?", 10000);
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.from(Instant.now().minus(Duration.ofMinutes(retentionMinutes))));
+            while (pstmt.executeUpdate() > 0) {
+                // Delete the next chunk
+            }
+        } catch (SQLException e) {
+            System.out.println("Error purging cache invalidations: " + e.getMessage());
+        }
+    }
+}
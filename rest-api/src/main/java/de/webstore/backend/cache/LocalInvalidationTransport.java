@@ -0,0 +1,30 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.util.function.Consumer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Transport for a single instance: there are no peers, so nothing is sent or received.
+ */
+@Component
+@ConditionalOnProperty(name = "webstore.cache.bus.transport", havingValue = "local", matchIfMissing = true)
+public class LocalInvalidationTransport implements InvalidationTransport {
+
+    @Override
+    public void start(Consumer<InvalidationMessage> receiver) {
+        // No peers
+    }
+
+    @Override
+    public void send(InvalidationMessage message) {
+        // No peers
+    }
+
+    @Override
+    public void stop() {
+        // No peers
+    }
+}
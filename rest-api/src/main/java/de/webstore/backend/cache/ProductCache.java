@@ -0,0 +1,84 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.dto.ProductDTO;
+
+/**
+ * In-memory cache of products, kept coherent across instances by the {@link InvalidationBus}.
+ * <p>
+ * Entries carry the product version of migration 006. Writes invalidate at the version they wrote, so an
+ * invalidation that arrives late or twice from another instance never removes a newer entry.
+ */
+@Component
+public class ProductCache {
+
+    static final String REGION = "product";
+
+    private final VersionedCache<String, ProductDTO> products;
+    private final InvalidationBus invalidationBus;
+
+    public ProductCache(InvalidationBus invalidationBus,
+                        @Value("${webstore.cache.products.max-entries:10000}") int maxEntries,
+                        @Value("${webstore.cache.products.ttl-seconds:300}") long ttlSeconds) {
+        this.products = new VersionedCache<>(maxEntries, Duration.ofSeconds(ttlSeconds));
+        this.invalidationBus = invalidationBus;
+        invalidationBus.register(REGION, products::invalidate);
+    }
+
+    /**
+     * Returns the cached product.
+     *
+     * @param productId the product ID
+     * @return the product, or null if it is not cached
+     */
+    public ProductDTO get(String productId) {
+        return products.get(productId);
+    }
+
+    /**
+     * Returns the cached product together with its version, e.g. to answer conditional requests without a query.
+     *
+     * @param productId the product ID
+     * @return the product and its version, or null if it is not cached
+     */
+    public VersionedCache.Entry<ProductDTO> getEntry(String productId) {
+        return products.getEntry(productId);
+    }
+
+    /**
+     * Caches a product read from the database.
+     *
+     * @param product the product
+     * @param version the product version, read before the product itself
+     */
+    public void put(ProductDTO product, long version) {
+        products.put(product.getProductId(), product, version);
+    }
+
+    /**
+     * Invalidates a product on this and all other instances; call after the write has been committed.
+     *
+     * @param productId the product ID
+     * @param version   the product version written
+     */
+    public void invalidate(String productId, long version) {
+        products.invalidate(productId, version);
+        invalidationBus.publish(REGION, productId, version);
+    }
+
+    /**
+     * Invalidates a product on this instance only, e.g. after the read replica has applied a change that the
+     * writing instance has already published.
+     *
+     * @param productId the product ID
+     * @param version   the product version applied
+     */
+    public void invalidateLocally(String productId, long version) {
+        products.invalidate(productId, version);
+    }
+}
@@ -0,0 +1,199 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory cache that reloads entries in the background before they expire.
+ * <p>
+ * An entry is fresh for {@code ttl}. Once less than {@code refreshAhead} of its lifetime is left, the next read
+ * still returns the cached value but starts a reload on the executor, so frequently read entries are replaced
+ * before they expire and readers never wait for the database. If the reload has not finished when the entry
+ * expires, the old value is served for at most {@code maxStale} longer; after that a read loads the value itself.
+ * <p>
+ * {@link #invalidate(Object)} and {@link #invalidateAll()} remove entries immediately. A load of a key that was
+ * started before an invalidation of that key does not store its result, so a value read before a write can never
+ * replace the invalidated entry; loads of other keys are not affected. {@code null} values are not cached.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class RefreshAheadCache<K, V> {
+
+    private final BoundedTtlCache<K, Entry<V>> entries;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    // Serializes storing a loaded value with the invalidations of its key
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Loads in progress per key, guarded by lock
+    private final Map<K, List<Load>> loading = new HashMap<>();
+    private final Executor executor;
+    private final long ttlNanos;
+    private final long refreshAtNanos;
+    private final long staleLimitNanos;
+
+    /**
+     * Creates a refresh-ahead cache.
+     *
+     * @param maxEntries   the maximum number of entries to keep, least recently used entries are evicted first
+     * @param ttl          how long an entry is fresh
+     * @param refreshAhead how long before expiry a read starts a background reload
+     * @param maxStale     how long after expiry the old value may still be served while it is reloaded
+     * @param executor     runs the background reloads
+     */
+    public RefreshAheadCache(int maxEntries, Duration ttl, Duration refreshAhead, Duration maxStale, Executor executor) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive.");
+        }
+        this.entries = new BoundedTtlCache<>(maxEntries);
+        this.executor = executor;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAtNanos = Math.max(0, ttlNanos - refreshAhead.toNanos());
+        this.staleLimitNanos = ttlNanos + Math.max(0, maxStale.toNanos());
+    }
+
+    /**
+     * Returns the cached value for the key, loading it if it is absent or too old.
+     *
+     * @param key    the key
+     * @param loader reads the current value; called on the caller's thread on a miss and on the executor for
+     *               background reloads
+     * @return the cached or loaded value, or {@code null} if the loader returned {@code null}
+     */
+    public V get(K key, Supplier<V> loader) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            long age = System.nanoTime() - entry.loadedAt();
+            if (age < refreshAtNanos) {
+                return entry.value();
+            }
+            if (age < staleLimitNanos) {
+                refreshAsync(key, loader);
+                return entry.value();
+            }
+        }
+        return load(key, loader);
+    }
+
+    /**
+     * Removes the entry for the key and discards the results of loads that are still running.
+     *
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+            List<Load> loads = loading.get(key);
+            if (loads != null) {
+                loads.forEach(Load::discard);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries and discards the results of loads that are still running.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            for (List<Load> loads : loading.values()) {
+                loads.forEach(Load::discard);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private V load(K key, Supplier<V> loader) {
+        Load load = new Load(System.nanoTime());
+        lock.lock();
+        try {
+            loading.computeIfAbsent(key, k -> new ArrayList<>()).add(load);
+        } finally {
+            lock.unlock();
+        }
+
+        V value = null;
+        boolean loaded = false;
+        try {
+            value = loader.get();
+            loaded = true;
+        } finally {
+            lock.lock();
+            try {
+                List<Load> loads = loading.get(key);
+                loads.remove(load);
+                if (loads.isEmpty()) {
+                    loading.remove(key);
+                }
+                // Only store the value if no write has invalidated the key while it was being read
+                if (loaded && !load.discarded) {
+                    if (value != null) {
+                        entries.put(key, new Entry<>(value, load.startedAt));
+                    } else {
+                        entries.remove(key);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return value;
+    }
+
+    private void refreshAsync(K key, Supplier<V> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (RuntimeException e) {
+                    // Drop the entry, so the next read loads it itself and sees the error
+                    entries.remove(key);
+                    System.out.println("Error refreshing cache entry " + key + ": " + e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The refresh threads are busy; the entry is reloaded by a later read
+            refreshing.remove(key);
+        }
+    }
+
+    private record Entry<V>(V value, long loadedAt) {}
+
+    /**
+     * A load in progress; discarded when its key is invalidated before it completes. Guarded by lock.
+     */
+    private static final class Load {
+
+        private final long startedAt;
+        private boolean discarded;
+
+        private Load(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        private void discard() {
+            discarded = true;
+        }
+    }
+}
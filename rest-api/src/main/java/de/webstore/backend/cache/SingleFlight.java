@@ -0,0 +1,127 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Coalesces concurrent identical reads into a single call.
+ * <p>
+ * The first caller for a key executes the load; callers arriving with the same key while that load is
+ * still running wait for it and receive the same result (or the same exception) instead of issuing their
+ * own query. Nothing is kept once the load has finished, so results are never older than the call that
+ * produced them.
+ * <p>
+ * The load is shared, so it does not run under the deadline of the request that happens to start it but under
+ * a deadline of its own, see {@link RequestDeadline#callWithin(long, Supplier)}. A caller with a deadline, the one
+ * starting the load included, hands the load to the executor and gives up when its own deadline passes, without
+ * affecting the load; a caller without a deadline runs the load itself.
+ * <p>
+ * The counter {@code webstore.singleflight.calls} counts executed and coalesced calls per name.
+ *
+ * @param <K> the type of the keys identifying identical reads
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter coalesced;
+    private final long maxLoadMs;
+    private final Executor executor;
+
+    /**
+     * Creates a single-flight group.
+     *
+     * @param name      the name of the read, used as metric tag
+     * @param registry  the registry to report the call counts to
+     * @param maxLoadMs the deadline of each load in milliseconds
+     * @param executor  runs the loads started by callers with a deadline
+     */
+    public SingleFlight(String name, MeterRegistry registry, long maxLoadMs, Executor executor) {
+        this.maxLoadMs = maxLoadMs;
+        this.executor = executor;
+        this.executed = Counter.builder("webstore.singleflight.calls")
+                .description("Reads executed or coalesced into a running identical read")
+                .tag("name", name).tag("result", "executed").register(registry);
+        this.coalesced = Counter.builder("webstore.singleflight.calls")
+                .description("Reads executed or coalesced into a running identical read")
+                .tag("name", name).tag("result", "coalesced").register(registry);
+    }
+
+    /**
+     * Returns the result of the load for the key, sharing a load that is already running.
+     *
+     * @param key    identifies identical reads
+     * @param loader performs the read; only called if no read for the key is running
+     * @return the result of the load
+     * @throws DeadlineExceededException if the caller's deadline passes first
+     */
+    public V execute(K key, Supplier<V> loader) {
+        RequestDeadline.check();
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        executed.increment();
+        if (RequestDeadline.remainingMillis() == Long.MAX_VALUE) {
+            load(key, own, loader);
+            return await(own);
+        }
+        try {
+            executor.execute(() -> load(key, own, loader));
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            inFlight.remove(key, own);
+            throw e;
+        }
+        return await(own);
+    }
+
+    private void load(K key, CompletableFuture<V> own, Supplier<V> loader) {
+        try {
+            own.complete(RequestDeadline.callWithin(maxLoadMs, loader));
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) {
+        long remaining = RequestDeadline.remainingMillis();
+        try {
+            if (remaining == Long.MAX_VALUE) {
+                return running.join();
+            }
+            return running.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("The request deadline has passed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+}
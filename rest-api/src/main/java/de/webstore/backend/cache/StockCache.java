@@ -0,0 +1,184 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.dto.WarehouseDTO;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Refresh-ahead cache of the stock aggregates: the list of active warehouses, single warehouses and the total
+ * quantity of a product across all warehouses.
+ * <p>
+ * These are read far more often than stock changes. Entries are reloaded in the background shortly before they
+ * expire (see {@link RefreshAheadCache}), so readers do not see a latency spike on expiry. Every write to the
+ * stock must call {@link #invalidate(String, int)}, {@link #invalidate(String, Collection)} or {@link #invalidateAll()}
+ * after its commit; the invalidation
+ * is also sent to the other instances over the {@link InvalidationBus}. Stock aggregates have no version, so
+ * received invalidations are always applied; applying one twice only causes an extra reload.
+ */
+@Component
+public class StockCache {
+
+    static final String REGION = "stock";
+
+    private static final String ACTIVE = "active";
+
+    // Key of an invalidation of all aggregates
+    private static final String ALL = "*";
+
+    // Warehouse numbers per invalidation message, keeps the key within the 255 characters of the JDBC transport
+    private static final int WAREHOUSES_PER_MESSAGE = 20;
+
+    private final InvalidationBus invalidationBus;
+
+    private final ThreadPoolExecutor refreshExecutor;
+
+    // The list of active warehouses, under a single key
+    private final RefreshAheadCache<String, List<WarehouseDTO>> activeWarehouses;
+
+    // Warehouses by warehouse number
+    private final RefreshAheadCache<Integer, WarehouseDTO> warehouses;
+
+    // Total quantity across all warehouses by product ID
+    private final RefreshAheadCache<String, Integer> totalQuantities;
+
+    public StockCache(InvalidationBus invalidationBus,
+                      @Value("${webstore.cache.stock.max-entries:10000}") int maxEntries,
+                      @Value("${webstore.cache.stock.ttl-ms:5000}") long ttlMs,
+                      @Value("${webstore.cache.stock.refresh-ahead-ms:1000}") long refreshAheadMs,
+                      @Value("${webstore.cache.stock.max-stale-ms:2000}") long maxStaleMs,
+                      @Value("${webstore.cache.stock.refresh-threads:2}") int refreshThreads,
+                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        // Virtual threads like the requests; the pool size still bounds the concurrent refresh queries
+        Thread.Builder threads = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        // Bounded queue; refreshes that do not fit are dropped and retried by a later read
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(100, maxEntries / 10)), threads.name("stock-cache-refresh-", 0).factory());
+
+        Duration ttl = Duration.ofMillis(ttlMs);
+        Duration refreshAhead = Duration.ofMillis(refreshAheadMs);
+        Duration maxStale = Duration.ofMillis(maxStaleMs);
+        this.activeWarehouses = new RefreshAheadCache<>(1, ttl, refreshAhead, maxStale, refreshExecutor);
+        this.warehouses = new RefreshAheadCache<>(maxEntries, ttl, refreshAhead, maxStale, refreshExecutor);
+        this.totalQuantities = new RefreshAheadCache<>(maxEntries, ttl, refreshAhead, maxStale, refreshExecutor);
+
+        this.invalidationBus = invalidationBus;
+        invalidationBus.register(REGION, (key, version) -> applyInvalidation(key));
+    }
+
+    /**
+     * Returns the active warehouses.
+     *
+     * @param loader reads the active warehouses from the database
+     * @return the active warehouses; the list must not be modified
+     */
+    public List<WarehouseDTO> getActiveWarehouses(Supplier<List<WarehouseDTO>> loader) {
+        return activeWarehouses.get(ACTIVE, () -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Returns a warehouse.
+     *
+     * @param warehouseNumber the warehouse number
+     * @param loader          reads the warehouse from the database
+     * @return the warehouse, or null if it does not exist
+     */
+    public WarehouseDTO getWarehouse(int warehouseNumber, Supplier<WarehouseDTO> loader) {
+        return warehouses.get(warehouseNumber, loader);
+    }
+
+    /**
+     * Returns the total quantity of a product across all warehouses.
+     *
+     * @param productId the product ID
+     * @param loader    reads the total quantity from the database
+     * @return the total quantity
+     */
+    public int getTotalQuantity(String productId, Supplier<Integer> loader) {
+        return totalQuantities.get(productId, loader);
+    }
+
+    /**
+     * Invalidates the aggregates affected by a stock change of one product in one warehouse.
+     *
+     * @param productId       the product ID
+     * @param warehouseNumber the warehouse number
+     */
+    public void invalidate(String productId, int warehouseNumber) {
+        String key = productId + "/" + warehouseNumber;
+        applyInvalidation(key);
+        invalidationBus.publish(REGION, key, 0);
+    }
+
+    /**
+     * Invalidates the aggregates affected by a stock change of one product in several warehouses, e.g. when an
+     * order close deducts the product from every warehouse that stocks it.
+     *
+     * @param productId        the product ID
+     * @param warehouseNumbers the numbers of the warehouses whose stock of the product changed
+     */
+    public void invalidate(String productId, Collection<Integer> warehouseNumbers) {
+        List<Integer> numbers = new ArrayList<>(warehouseNumbers);
+        int from = 0;
+        do {
+            List<Integer> part = numbers.subList(from, Math.min(from + WAREHOUSES_PER_MESSAGE, numbers.size()));
+            StringBuilder key = new StringBuilder(productId).append('/');
+            for (int i = 0; i < part.size(); i++) {
+                key.append(i > 0 ? "," : "").append(part.get(i));
+            }
+            applyInvalidation(key.toString());
+            invalidationBus.publish(REGION, key.toString(), 0);
+            from += WAREHOUSES_PER_MESSAGE;
+        } while (from < numbers.size());
+    }
+
+    /**
+     * Invalidates all aggregates, e.g. after a change of stock that cannot be attributed to single products.
+     */
+    public void invalidateAll() {
+        applyInvalidation(ALL);
+        invalidationBus.publish(REGION, ALL, 0);
+    }
+
+    /**
+     * Invalidates all aggregates on this instance only, e.g. after the read replica has applied stock changes.
+     */
+    public void invalidateAllLocally() {
+        applyInvalidation(ALL);
+    }
+
+    private void applyInvalidation(String key) {
+        if (ALL.equals(key)) {
+            totalQuantities.invalidateAll();
+            warehouses.invalidateAll();
+            activeWarehouses.invalidateAll();
+            return;
+        }
+        // productId/warehouseNumber[,warehouseNumber...]
+        int slash = key.lastIndexOf('/');
+        totalQuantities.invalidate(key.substring(0, slash));
+        String warehouseNumbers = key.substring(slash + 1);
+        if (!warehouseNumbers.isEmpty()) {
+            for (String warehouseNumber : warehouseNumbers.split(",")) {
+                warehouses.invalidate(Integer.parseInt(warehouseNumber));
+            }
+        }
+        activeWarehouses.invalidateAll();
+    }
+
+    @PreDestroy
+    void stop() {
+        refreshExecutor.shutdownNow();
+    }
+}
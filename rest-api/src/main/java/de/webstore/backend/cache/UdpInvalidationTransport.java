@@ -0,0 +1,112 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Transport sending every invalidation as a UDP datagram to a fixed list of peers.
+ * <p>
+ * Each instance listens on {@code webstore.cache.bus.udp.port} and sends to the {@code host:port} pairs in
+ * {@code webstore.cache.bus.udp.peers}. Several instances on one machine can talk over the loopback interface
+ * by giving each its own port and listing the ports of the others.
+ */
+@Component
+@ConditionalOnProperty(name = "webstore.cache.bus.transport", havingValue = "udp")
+public class UdpInvalidationTransport implements InvalidationTransport {
+
+    // Larger datagrams may be fragmented or dropped
+    private static final int MAX_DATAGRAM_BYTES = 1400;
+
+    private final String bindAddress;
+    private final int port;
+    private final List<InetSocketAddress> peers = new ArrayList<>();
+    private DatagramSocket socket;
+    private Thread listener;
+    private volatile boolean running;
+
+    public UdpInvalidationTransport(@Value("${webstore.cache.bus.udp.bind-address:0.0.0.0}") String bindAddress,
+                                    @Value("${webstore.cache.bus.udp.port:47100}") int port,
+                                    @Value("${webstore.cache.bus.udp.peers:}") List<String> peers) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        for (String peer : peers) {
+            String trimmed = peer.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Peer must be given as host:port: " + trimmed);
+            }
+            this.peers.add(new InetSocketAddress(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+    }
+
+    @Override
+    public synchronized void start(Consumer<InvalidationMessage> receiver) {
+        try {
+            socket = new DatagramSocket(new InetSocketAddress(bindAddress, port));
+        } catch (SocketException e) {
+            throw new IllegalStateException("Cannot listen for cache invalidations on port " + port, e);
+        }
+        running = true;
+        listener = new Thread(() -> receive(receiver), "cache-invalidation-udp");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void send(InvalidationMessage message) {
+        byte[] data = message.encode().getBytes(StandardCharsets.UTF_8);
+        if (data.length > MAX_DATAGRAM_BYTES) {
+            System.out.println("Cache invalidation too large to send: " + message);
+            return;
+        }
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (IOException e) {
+                System.out.println("Error sending cache invalidation to " + peer + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (socket != null) {
+            // Unblocks the listener
+            socket.close();
+        }
+    }
+
+    private void receive(Consumer<InvalidationMessage> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        while (running) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                String text = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
+                receiver.accept(InvalidationMessage.decode(text));
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Error receiving cache invalidation: " + e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Error applying cache invalidation: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded in-memory cache whose entries carry the version of the data they were read at.
+ * <p>
+ * An invalidation only removes entries older than its version and remembers the version, so a value read
+ * before the write cannot be stored afterwards. Invalidations that arrive late or twice therefore never remove
+ * a newer entry. The TTL bounds how long an entry survives a lost invalidation.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class VersionedCache<K, V> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BoundedTtlCache<K, Entry<V>> entries;
+
+    // Highest version invalidated per key
+    private final BoundedTtlCache<K, Long> invalidated;
+
+    /**
+     * Creates a versioned cache.
+     *
+     * @param maxEntries the maximum number of entries to keep
+     * @param ttl        the maximum age of an entry
+     */
+    public VersionedCache(int maxEntries, Duration ttl) {
+        this.entries = new BoundedTtlCache<>(maxEntries, ttl);
+        this.invalidated = new BoundedTtlCache<>(maxEntries, ttl);
+    }
+
+    /**
+     * Returns the cached value for the key.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if it is not cached
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Returns the cached value for the key together with the version it was read at.
+     *
+     * @param key the key
+     * @return the entry, or {@code null} if it is not cached
+     */
+    public Entry<V> getEntry(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Stores a value unless a newer value is cached or the key has been invalidated at a newer version.
+     *
+     * @param key     the key
+     * @param value   the value
+     * @param version the version the value was read at; read it before the value itself
+     */
+    public void put(K key, V value, long version) {
+        lock.lock();
+        try {
+            Long invalidatedVersion = invalidated.get(key);
+            if (invalidatedVersion != null && version < invalidatedVersion) {
+                return;
+            }
+            Entry<V> current = entries.get(key);
+            if (current == null || current.version() <= version) {
+                entries.put(key, new Entry<>(value, version));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry for the key if it is older than the given version.
+     *
+     * @param key     the key
+     * @param version the version written
+     */
+    public void invalidate(K key, long version) {
+        lock.lock();
+        try {
+            Long invalidatedVersion = invalidated.get(key);
+            if (invalidatedVersion == null || invalidatedVersion < version) {
+                invalidated.put(key, version);
+            }
+            Entry<V> current = entries.get(key);
+            if (current != null && current.version() < version) {
+                entries.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A cached value and the version it was read at.
+     *
+     * @param value   the value
+     * @param version the version
+     * @param <V>     the type of the value
+     */
+    public record Entry<V>(V value, long version) {}
+}
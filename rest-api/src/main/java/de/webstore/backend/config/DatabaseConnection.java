@@ -4,8 +4,15 @@
  */
 package de.webstore.backend.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+
+import de.webstore.backend.bulkhead.Bulkheads;
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.metrics.JdbcMetrics;
+import de.webstore.backend.replica.ReadReplica;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -34,22 +41,87 @@ public class DatabaseConnection {
     @Value("${spring.datasource.driver-class-name}")
     private String driverClassName;
 
+    // Records connection acquire times and the statements run on the connections
+    private final JdbcMetrics jdbcMetrics;
+
+    // Limits the connections of each endpoint group
+    private final Bulkheads bulkheads;
+
+    // Local read replica, present only if webstore.replica.enabled is set; looked up lazily, it depends on this bean
+    private final ObjectProvider<ReadReplica> readReplica;
+
+    // SQL dialect of the database, derived from the URL on first use
+    private volatile SqlDialect dialect;
+
+    @Autowired
+    public DatabaseConnection(JdbcMetrics jdbcMetrics, Bulkheads bulkheads, ObjectProvider<ReadReplica> readReplica) {
+        this.jdbcMetrics = jdbcMetrics;
+        this.bulkheads = bulkheads;
+        this.readReplica = readReplica;
+    }
+
     /**
      * Obtains a new database connection using the configured parameters.
      * <p>
      * This method leverages the DriverManager to create a connection to the database using the URL, username, and password provided.
      * It explicitly loads the driver class to ensure compatibility with older JDBC drivers.
+     * The connection is instrumented with {@link JdbcMetrics}. On a request thread it counts against the connections
+     * of the request's bulkhead, see {@link Bulkheads}.
      *
      * @return a Connection object that represents a connection to the database.
      * @throws SQLException if a database access error occurs or the URL is null.
      */
     public Connection getConnection() throws SQLException {
+        // No new connection for a request the client has given up on
+        RequestDeadline.check();
         try {
             // Explicitly load the driver class
             Class.forName(driverClassName);
         } catch (ClassNotFoundException e) {
             throw new SQLException("JDBC Driver class not found: " + driverClassName, e);
         }
-        return DriverManager.getConnection(url, username, password);
+        return bulkheads.connect(() -> jdbcMetrics.acquire("driver-manager", () -> DriverManager.getConnection(url, username, password)));
+    }
+
+    /**
+     * Obtains a connection for reads of the catalog and the stock that may be up to one sync interval behind.
+     * <p>
+     * If the read replica is enabled and loaded, the connection is one to the local SQLite replica, otherwise one
+     * to the primary database as from {@link #getConnection()}. Writes, and reads that writes depend on, must use
+     * {@link #getConnection()}.
+     *
+     * @return a Connection object for reading
+     * @throws SQLException if a database access error occurs
+     */
+    public Connection getReadConnection() throws SQLException {
+        ReadReplica replica = readReplica.getIfAvailable();
+        if (replica != null && replica.isReady()) {
+            return replica.getConnection();
+        }
+        return getConnection();
+    }
+
+    /**
+     * Tells whether {@link #getReadConnection()} is currently served by the read replica rather than the primary.
+     *
+     * @return true if reads go to the replica
+     */
+    public boolean isReadFromReplica() {
+        ReadReplica replica = readReplica.getIfAvailable();
+        return replica != null && replica.isReady();
+    }
+
+    /**
+     * Returns the SQL dialect of the configured database, derived from the JDBC URL.
+     *
+     * @return the dialect
+     */
+    public SqlDialect getDialect() {
+        SqlDialect current = dialect;
+        if (current == null) {
+            current = SqlDialect.fromUrl(url);
+            dialect = current;
+        }
+        return current;
     }
-}
\ No newline at end of file
+}
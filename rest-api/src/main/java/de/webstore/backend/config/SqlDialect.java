@@ -0,0 +1,194 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.config;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The SQL that differs between the databases the services run on.
+ * <p>
+ * The services are written for MySQL. The few statements MySQL spells differently from the other databases are
+ * built through this class:
+ * <ul>
+ *   <li>upserts: {@code ON DUPLICATE KEY UPDATE} on MySQL and H2, {@code ON CONFLICT ... DO UPDATE} on SQLite</li>
+ *   <li>clamping at zero: {@code GREATEST} on MySQL and H2, the scalar {@code MAX} on SQLite</li>
+ *   <li>updates from a joined table: {@code UPDATE ... JOIN} on MySQL, {@code MERGE} on H2, {@code UPDATE ... FROM}
+ *       on SQLite</li>
+ *   <li>row locks: {@code FOR UPDATE} on MySQL and H2; SQLite has none and locks the whole database on the first
+ *       write of a transaction</li>
+ *   <li>chunked deletes: {@code DELETE ... ORDER BY ... LIMIT} on MySQL, a subquery on H2 and SQLite</li>
+ *   <li>duplicate keys: reported with different error codes, and by sqlite-jdbc without SQLState</li>
+ * </ul>
+ * H2 is expected to run in {@code MODE=MySQL}, as in the benchmarks. The dialect is chosen from the JDBC URL, see
+ * {@link DatabaseConnection#getDialect()}.
+ */
+public enum SqlDialect {
+
+    MYSQL,
+    H2,
+    SQLITE;
+
+    /**
+     * Returns the dialect of a JDBC URL.
+     *
+     * @param url the JDBC URL, e.g. {@code jdbc:sqlite:webstore.db}
+     * @return the dialect; MySQL for URLs of other databases
+     */
+    public static SqlDialect fromUrl(String url) {
+        String lower = url == null ? "" : url.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("jdbc:h2:")) {
+            return H2;
+        }
+        if (lower.startsWith("jdbc:sqlite:")) {
+            return SQLITE;
+        }
+        if (!lower.startsWith("jdbc:mysql:") && !lower.startsWith("jdbc:mariadb:")) {
+            System.out.println("Unknown database in " + url + ", using the MySQL dialect.");
+        }
+        return MYSQL;
+    }
+
+    /**
+     * Returns an expression that is the given expression, but at least 0.
+     *
+     * @param expression the SQL expression, e.g. {@code menge - ?}
+     * @return e.g. {@code GREATEST(0, menge - ?)}
+     */
+    public String atLeastZero(String expression) {
+        return (this == SQLITE ? "MAX(0, " : "GREATEST(0, ") + expression + ")";
+    }
+
+    /**
+     * Returns the clause to append to an INSERT so that a row whose key exists already is updated with the new
+     * values instead. Without columns, an existing row is left as it is.
+     *
+     * @param keys    the columns of the primary or unique key
+     * @param columns the columns to overwrite with the inserted values
+     * @return the clause, starting with a space
+     */
+    public String onConflictReplace(List<String> keys, String... columns) {
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns) {
+            assignments.add(column + " = " + inserted(column));
+        }
+        return onConflict(keys, assignments);
+    }
+
+    /**
+     * Returns the clause to append to an INSERT so that the inserted values are added to a row whose key exists
+     * already.
+     *
+     * @param keys    the columns of the primary or unique key
+     * @param columns the columns to add the inserted values to
+     * @return the clause, starting with a space
+     */
+    public String onConflictAdd(List<String> keys, String... columns) {
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns) {
+            assignments.add(column + " = " + column + " + " + inserted(column));
+        }
+        return onConflict(keys, assignments);
+    }
+
+    private String onConflict(List<String> keys, List<String> assignments) {
+        if (this == SQLITE) {
+            String target = " ON CONFLICT (" + String.join(", ", keys) + ")";
+            return assignments.isEmpty() ? target + " DO NOTHING" : target + " DO UPDATE SET " + String.join(", ", assignments);
+        }
+        if (assignments.isEmpty()) {
+            // A no-op update; INSERT IGNORE would also hide other errors
+            return " ON DUPLICATE KEY UPDATE " + keys.get(0) + " = " + keys.get(0);
+        }
+        return " ON DUPLICATE KEY UPDATE " + String.join(", ", assignments);
+    }
+
+    private String inserted(String column) {
+        return this == SQLITE ? "excluded." + column : "VALUES(" + column + ")";
+    }
+
+    /**
+     * Returns an UPDATE of a table from the matching rows of another table or subquery.
+     *
+     * @param table       the table to update
+     * @param alias       the alias of the table
+     * @param source      the table or parenthesized subquery to update from
+     * @param sourceAlias the alias of the source
+     * @param on          the join condition, using both aliases
+     * @param assignments the assignments, with unqualified target columns, e.g. {@code menge = plm.totalMenge}
+     * @param where       an additional condition on the table to update, using its alias, or null
+     * @return the statement
+     */
+    public String updateFrom(String table, String alias, String source, String sourceAlias, String on,
+                             String assignments, String where) {
+        return switch (this) {
+            case MYSQL -> "UPDATE " + table + " " + alias + " JOIN " + source + " " + sourceAlias + " ON " + on
+                    + " SET " + qualify(assignments, alias) + (where != null ? " WHERE " + where : "");
+            case H2 -> "MERGE INTO " + table + " " + alias + " USING " + source + " " + sourceAlias
+                    + " ON (" + on + (where != null ? " AND " + where : "") + ")"
+                    + " WHEN MATCHED THEN UPDATE SET " + assignments;
+            case SQLITE -> "UPDATE " + table + " AS " + alias + " SET " + assignments + " FROM " + source + " AS " + sourceAlias
+                    + " WHERE " + on + (where != null ? " AND " + where : "");
+        };
+    }
+
+    /**
+     * Qualifies the target columns of comma separated assignments with an alias.
+     */
+    private static String qualify(String assignments, String alias) {
+        List<String> qualified = new ArrayList<>();
+        for (String assignment : assignments.split(",")) {
+            qualified.add(alias + "." + assignment.trim());
+        }
+        return String.join(", ", qualified);
+    }
+
+    /**
+     * Returns the clause that locks the selected rows until the end of the transaction.
+     *
+     * @return the clause, starting with a space, or an empty string if the database has no row locks
+     */
+    public String forUpdate() {
+        return this == SQLITE ? "" : " FOR UPDATE";
+    }
+
+    /**
+     * Returns a DELETE that removes at most {@code limit} matching rows, oldest ID first. Executed repeatedly, it
+     * deletes a large number of rows in short transactions.
+     *
+     * @param table the table
+     * @param id    the ID column
+     * @param where the condition of the rows to delete
+     * @param limit the maximum number of rows per execution
+     * @return the statement
+     */
+    public String deleteChunk(String table, String id, String where, int limit) {
+        if (this == MYSQL) {
+            return "DELETE FROM " + table + " WHERE " + where + " ORDER BY " + id + " LIMIT " + limit;
+        }
+        return "DELETE FROM " + table + " WHERE " + id + " IN (SELECT " + id + " FROM " + table + " WHERE " + where
+                + " ORDER BY " + id + " LIMIT " + limit + ")";
+    }
+
+    /**
+     * Returns whether an exception reports an INSERT of a key that exists already.
+     *
+     * @param e the exception
+     * @return true for a violated primary or unique key, false for all other errors including other constraints
+     */
+    public boolean isDuplicateKey(SQLException e) {
+        if ("23505".equals(e.getSQLState())) {
+            return true;
+        }
+        return switch (this) {
+            // ER_DUP_ENTRY, ER_DUP_ENTRY_WITH_KEY_NAME
+            case MYSQL -> e.getErrorCode() == 1062 || e.getErrorCode() == 1586;
+            // DUPLICATE_KEY_1
+            case H2 -> e.getErrorCode() == 23505;
+            // SQLITE_CONSTRAINT_PRIMARYKEY, SQLITE_CONSTRAINT_UNIQUE, or SQLITE_CONSTRAINT without extended codes
+            case SQLITE -> e.getErrorCode() == 1555 || e.getErrorCode() == 2067
+                    || (e.getErrorCode() == 19 && e.getMessage() != null && e.getMessage().contains("UNIQUE constraint failed"));
+        };
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Helpers for conditional GET requests.
+ * <p>
+ * ETags are either derived from a version number maintained by the database or hashed from the fields of the
+ * representation. Either way they are computed without serializing the response body, so a request whose
+ * {@code If-None-Match} matches is answered with 304 before any JSON is written.
+ */
+final class ETags {
+
+    private ETags() {}
+
+    /**
+     * Builds an ETag from a version number.
+     *
+     * @param resource a name distinguishing the kind of representation
+     * @param version  the version of the representation
+     * @return the quoted ETag
+     */
+    static String ofVersion(String resource, long version) {
+        return "\"" + resource + "-" + version + "\"";
+    }
+
+    /**
+     * Starts an ETag hashed from the fields of a representation.
+     *
+     * @param resource a name distinguishing the kind of representation
+     * @return a hasher to add the fields to
+     */
+    static Hasher hash(String resource) {
+        return new Hasher().add(resource);
+    }
+
+    /**
+     * Checks whether an {@code If-None-Match} header matches an ETag, using the weak comparison
+     * prescribed for {@code If-None-Match}.
+     *
+     * @param ifNoneMatch the header value, may be null
+     * @param etag        the current quoted ETag
+     * @return true if the client already has the current representation
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the 304 response for a matching ETag.
+     *
+     * @param etag the current quoted ETag
+     * @return an empty response with status 304
+     */
+    static ResponseEntity<?> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    /**
+     * Accumulates the fields of a representation into a SHA-256 based ETag.
+     */
+    static final class Hasher {
+
+        private final MessageDigest digest;
+
+        private Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        /**
+         * Adds a field.
+         *
+         * @param value the field value, may be null
+         * @return this hasher
+         */
+        Hasher add(Object value) {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            // Separator, so that ("ab", "c") and ("a", "bc") hash differently
+            digest.update((byte) 0x1f);
+            return this;
+        }
+
+        /**
+         * Finishes the ETag.
+         *
+         * @return the quoted ETag
+         */
+        String toETag() {
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.controller;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import de.webstore.backend.dto.OutboxEventDTO;
+import de.webstore.backend.service.OutboxRelay;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+
+/**
+ * Controller for the change event stream.
+ *
+ * <p>Streams order, stock and product changes as Server-Sent Events, so clients no longer have to poll the
+ * listing endpoints to detect changes.
+ */
+@RestController
+@RequestMapping("/api/de/v1/events")
+public class EventController {
+
+    private final OutboxRelay outboxRelay;
+
+    /**
+     * Constructs an EventController with the specified OutboxRelay.
+     *
+     * @param outboxRelay the relay publishing the outbox events
+     */
+    @Autowired
+    public EventController(OutboxRelay outboxRelay) {
+        this.outboxRelay = outboxRelay;
+    }
+
+    /**
+     * Opens a stream of change events.
+     *
+     * <p>Each event carries its ID; a client reconnecting with the {@code Last-Event-ID} header (sent
+     * automatically by browsers) or the {@code since} parameter receives all events after that ID that are
+     * still retained. Without either, only new events are streamed.</p>
+     *
+     * @param lastEventId the ID of the last event received, sent by reconnecting clients
+     * @param since       the ID of the last event received, as an alternative to the header
+     * @param aggregates  optional filter: order, stock and/or product
+     * @return the event stream, or 503 if too many clients are connected
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream change events", responses = {
+            @ApiResponse(responseCode = "200", description = "Event stream opened",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = OutboxEventDTO.class))),
+            @ApiResponse(responseCode = "503", description = "Too many clients connected",
+                    content = @Content)
+    })
+    public ResponseEntity<SseEmitter> streamEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                   @RequestParam(required = false) Long since,
+                                                   @RequestParam(required = false) List<String> aggregates) {
+        Set<String> filter = aggregates != null ? new HashSet<>(aggregates) : Set.of();
+        try {
+            SseEmitter emitter = outboxRelay.subscribe(lastEventId != null ? lastEventId : since, filter);
+            if (emitter == null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+            }
+            return ResponseEntity.ok(emitter);
+        } catch (SQLException e) {
+            System.out.println("Error opening event stream: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+    }
+}
@@ -1,20 +1,34 @@
 /* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
 package de.webstore.backend.controller;
 
+import java.net.URI;
+import java.time.LocalDate;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import de.webstore.backend.dto.BulkOrderRequestDTO;
+import de.webstore.backend.dto.BulkOrderResultDTO;
+import de.webstore.backend.dto.CloseJobDTO;
 import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.OrderDetailDTO;
+import de.webstore.backend.dto.OrderLineDTO;
 import de.webstore.backend.dto.PositionDTO;
+import de.webstore.backend.exception.BulkheadFullException;
+import de.webstore.backend.exception.DeadlineExceededException;
 import de.webstore.backend.exception.ErrorResponse;
 import de.webstore.backend.exception.InsufficientStockException;
 import de.webstore.backend.exception.OrderClosedException;
 import de.webstore.backend.exception.OrderNotFoundException;
 import de.webstore.backend.exception.PositionNotFoundException;
+import de.webstore.backend.service.IdempotencyService;
+import de.webstore.backend.service.OrderCloseQueue;
 import de.webstore.backend.service.OrderService;
+import de.webstore.backend.service.OutboxRelay;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -27,58 +41,167 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 @RequestMapping("/api/de/v1/order")
 public class OrderController {
 
+    // Request header carrying the client-chosen idempotency key of a write request
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final OrderCloseQueue orderCloseQueue;
+    private final OutboxRelay outboxRelay;
 
     /**
      * Constructs an OrderController with the specified OrderService.
      *
+     * <p>All write endpoints honor an optional {@code Idempotency-Key} header: a retried request with the
+     * same key is answered with the stored response of the first request instead of being executed again.</p>
+     *
      * @param orderService the order service to use for order operations
+     * @param idempotencyService the service storing responses of requests with an idempotency key
+     * @param orderCloseQueue the queue for closing orders asynchronously
+     * @param outboxRelay the relay whose watermark versions the order list
      */
     @Autowired
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, IdempotencyService idempotencyService, OrderCloseQueue orderCloseQueue,
+                           OutboxRelay outboxRelay) {
         this.orderService = orderService;
+        this.idempotencyService = idempotencyService;
+        this.orderCloseQueue = orderCloseQueue;
+        this.outboxRelay = outboxRelay;
     }
 
     /**
-     * Retrieves all orders and returns them in a list.
-     * 
-     * <p>Returns HTTP status 200 along with the list of all order data.</p>
+     * Retrieves one page of orders, optionally filtered by status and date range.
+     *
+     * <p>Orders are sorted by date and order ID. To fetch the next page, pass the date and ID of the last
+     * order of the current page as {@code afterDate} and {@code afterId}.</p>
+     *
+     * <p>Every change to an order appends an outbox event, so the ETag is derived from the watermark of the
+     * outbox relay and the query parameters, and a matching {@code If-None-Match} is answered with 304 without
+     * running the query. A change becomes visible in the ETag once the relay has published its event, i.e.
+     * within one poll interval. Before the first poll the ETag is hashed from the page instead.</p>
      *
-     * @return a ResponseEntity containing a list of all OrderDTOs
+     * <p>Returns HTTP status 200 along with the page of order data, or HTTP status 400 for invalid filters.</p>
+     *
+     * @param status    only return orders with this status ("offen" or "geschlossen")
+     * @param from      only return orders placed on or after this date
+     * @param to        only return orders placed on or before this date
+     * @param afterDate the date of the last order of the previous page
+     * @param afterId   the ID of the last order of the previous page
+     * @param limit     the maximum number of orders to return
+     * @return a ResponseEntity containing a list of OrderDTOs
      */
     @GetMapping("/all")
-    @Operation(summary = "Retrieve all orders", responses = {
+    @Operation(summary = "Retrieve all orders",
+               description = "Returns one page of orders sorted by date and order ID. Pass the date and ID of the last order of a page as afterDate and afterId to fetch the next page.",
+               responses = {
         @ApiResponse(responseCode = "200", description = "List of all orders",
-                     content = @Content(mediaType = "application/json", 
-                     schema = @Schema(implementation = OrderDTO.class)))
+                     content = @Content(mediaType = "application/json",
+                     schema = @Schema(implementation = OrderDTO.class))),
+        @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                content = @Content),
+        @ApiResponse(responseCode = "400", description = "Unknown status or incomplete page cursor",
+                     content = @Content)
     })
-    public ResponseEntity<List<OrderDTO>> getAllOrders() {
-        List<OrderDTO> orders = orderService.findAll();
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<?> getAllOrders(@RequestParam(required = false) String status,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate afterDate,
+                                          @RequestParam(required = false) String afterId,
+                                          @RequestParam(required = false) Integer limit,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        try {
+            // Read the watermark before the data, so the ETag can never claim a newer state than the body
+            long watermark = outboxRelay.getWatermark();
+            if (watermark >= 0) {
+                String etag = ETags.hash("orders").add(watermark).add(status).add(from).add(to)
+                        .add(afterDate).add(afterId).add(limit).toETag();
+                if (ETags.matches(ifNoneMatch, etag)) {
+                    return ETags.notModified(etag);
+                }
+                List<OrderDTO> orders = orderService.findAll(status, from, to, afterDate, afterId, limit);
+                return ResponseEntity.ok().eTag(etag).body(orders);
+            }
+            List<OrderDTO> orders = orderService.findAll(status, from, to, afterDate, afterId, limit);
+            ETags.Hasher hasher = ETags.hash("orders");
+            for (OrderDTO order : orders) {
+                hasher.add(order.getOrderId()).add(order.getDate()).add(order.getStatus());
+            }
+            String etag = hasher.toETag();
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ETags.notModified(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(orders);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
     }
 
     /**
      * Retrieves a specific order by its ID.
-     * 
+     *
+     * <p>With {@code expand=positions} the order is returned together with its positions, line totals and
+     * the order total; {@code expand=positions,products} additionally embeds the product data of each line.
+     * Both are served by a single database query.</p>
+     *
      * <p>Returns HTTP status 200 along with the order data if found, otherwise returns HTTP status 404.</p>
      *
-     * @param id the ID of the order to retrieve
-     * @return a ResponseEntity containing the requested OrderDTO or a not found response
+     * @param orderId the ID of the order to retrieve
+     * @param expand the related data to include ("positions", "products")
+     * @return a ResponseEntity containing the requested OrderDTO or OrderDetailDTO, or a not found response
      */
     @GetMapping("/{orderId}")
-    @Operation(summary = "Retrieve a specific order by ID", responses = {
+    @Operation(summary = "Retrieve a specific order by ID",
+            description = "Use expand=positions to include the positions with line totals and the order total, and expand=positions,products to also include the product data of each position.",
+            responses = {
             @ApiResponse(responseCode = "200", description = "Order found",
                     content = @Content(mediaType = "application/json",
-                            schema = @Schema(implementation = OrderDTO.class))),
+                            schema = @Schema(implementation = OrderDetailDTO.class))),
+            @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Unknown expand value",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Order not found",
                     content = @Content)
     })
-    public ResponseEntity<?> getOrderById(@PathVariable String orderId) {
-        OrderDTO order = orderService.findById(orderId);
-        if (order != null) {
-            return ResponseEntity.ok(order);
-        } else {
-            return ResponseEntity.notFound().build();
+    public ResponseEntity<?> getOrderById(@PathVariable String orderId, @RequestParam(required = false) List<String> expand,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        try {
+            if (expand == null || expand.isEmpty()) {
+                // Closed orders come from the closed-order cache, so a revalidation does not reach the database
+                OrderDTO order = orderService.findById(orderId);
+                if (order != null) {
+                    String etag = ETags.hash("order").add(order.getOrderId()).add(order.getDate()).add(order.getStatus()).toETag();
+                    if (ETags.matches(ifNoneMatch, etag)) {
+                        return ETags.notModified(etag);
+                    }
+                    return ResponseEntity.ok().eTag(etag).body(order);
+                } else {
+                    return ResponseEntity.notFound().build();
+                }
+            }
+            for (String value : expand) {
+                if (!"positions".equals(value) && !"products".equals(value)) {
+                    return ResponseEntity.badRequest().body(new ErrorResponse("Unknown expand value: " + value));
+                }
+            }
+            // Products are attached to positions, so expanding products implies expanding positions
+            boolean includeProducts = expand.contains("products");
+            OrderDetailDTO order = orderService.findDetailById(orderId, includeProducts);
+            ETags.Hasher hasher = ETags.hash(includeProducts ? "order-products" : "order-positions")
+                    .add(order.getOrderId()).add(order.getDate()).add(order.getStatus()).add(order.getTotal());
+            for (OrderLineDTO line : order.getPositions()) {
+                hasher.add(line.getPositionId()).add(line.getProductId()).add(line.getQuantity()).add(line.getLineTotal());
+                if (line.getProduct() != null) {
+                    hasher.add(line.getProduct().getName()).add(line.getProduct().getUnit()).add(line.getProduct().getPrice());
+                }
+            }
+            String etag = hasher.toETag();
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ETags.notModified(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(order);
+        } catch (OrderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
         }
     }
 
@@ -86,6 +209,7 @@ public class OrderController {
      * Creates a new order and returns the created order with its assigned order ID.
      * If the creation process encounters any issue (e.g., validation errors), it responds with an appropriate HTTP status code.
      *
+     * @param idempotencyKey the optional idempotency key of the request
      * @param orderDTO the order data to create
      * @return a ResponseEntity containing the created OrderDTO on success, or an appropriate error response
      */
@@ -97,9 +221,15 @@ public class OrderController {
             @ApiResponse(responseCode = "400", description = "Bad request, validation errors or missing information",
                     content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error, could not process the request",
-                    content = @Content)
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
     })
-    public ResponseEntity<?> createOrder(@RequestBody OrderDTO orderDTO) {
+    public ResponseEntity<?> createOrder(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                         @RequestBody OrderDTO orderDTO) {
+        return idempotencyService.execute(idempotencyKey, "POST /order/add", orderDTO, () -> doCreateOrder(orderDTO));
+    }
+
+    private ResponseEntity<?> doCreateOrder(OrderDTO orderDTO) {
         try {
             OrderDTO createdOrder = orderService.createOrder(orderDTO);
             // Assuming createOrder throws an exception if order creation fails or returns null.
@@ -109,6 +239,11 @@ public class OrderController {
                 // In case the order creation process fails but does not throw an exception.
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Could not create the order due to an unexpected error."));
             }
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // Handling any exception that might occur during the order creation process.
             return ResponseEntity.badRequest().body(new OrderDTO()); // Adjust based on the error handling policy
@@ -119,6 +254,7 @@ public class OrderController {
      * Adds a new position to an existing order and returns the added position.
      * Responds with an appropriate HTTP status code based on the outcome of the operation.
      *
+     * @param idempotencyKey the optional idempotency key of the request
      * @param orderId the ID of the order to add the position to
      * @param positionDTO the position data to add
      * @return a ResponseEntity containing the added PositionDTO on success, or an appropriate error response
@@ -135,9 +271,16 @@ public class OrderController {
             @ApiResponse(responseCode = "409", description = "Order is closed",
                     content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error, could not process the request",
-                    content = @Content)
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
     })
-    public ResponseEntity<?> addOrderPosition(@PathVariable String orderId, @RequestBody PositionDTO positionDTO) {
+    public ResponseEntity<?> addOrderPosition(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                              @PathVariable String orderId, @RequestBody PositionDTO positionDTO) {
+        return idempotencyService.execute(idempotencyKey, "POST /order/" + orderId + "/add/new/position", positionDTO,
+                () -> doAddOrderPosition(orderId, positionDTO));
+    }
+
+    private ResponseEntity<?> doAddOrderPosition(String orderId, PositionDTO positionDTO) {
         try {
             // Verify if the order exists and is open
             if(!orderService.checkOrderExistsAndOpen(orderId)) {
@@ -150,6 +293,11 @@ public class OrderController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
         } catch (OrderClosedException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Could not process the request."));
         }
@@ -161,6 +309,7 @@ public class OrderController {
      * Verifies if the position belongs to the given order and deletes it if true.
      * If the position or order does not exist, appropriate exceptions are thrown.
      *
+     * @param idempotencyKey the optional idempotency key of the request
      * @param orderId    the ID of the order from which to delete the position
      * @param positionId the ID of the position to delete
      * @return a ResponseEntity indicating the result of the operation
@@ -171,9 +320,16 @@ public class OrderController {
                responses = {
                    @ApiResponse(responseCode = "200", description = "Position deleted successfully"),
                    @ApiResponse(responseCode = "404", description = "Position not found or does not belong to the specified order"),
-                   @ApiResponse(responseCode = "409", description = "Order is closed and cannot be modified")
+                   @ApiResponse(responseCode = "409", description = "Order is closed and cannot be modified"),
+                   @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
                })
-    public ResponseEntity<?> deleteOrderPosition(@PathVariable String orderId, @PathVariable String positionId) {
+    public ResponseEntity<?> deleteOrderPosition(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                 @PathVariable String orderId, @PathVariable String positionId) {
+        return idempotencyService.execute(idempotencyKey, "DELETE /order/order/" + orderId + "/position/" + positionId, null,
+                () -> doDeleteOrderPosition(orderId, positionId));
+    }
+
+    private ResponseEntity<?> doDeleteOrderPosition(String orderId, String positionId) {
         try {
             orderService.deleteOrderPosition(orderId, positionId);
             return ResponseEntity.ok().build();
@@ -181,6 +337,11 @@ public class OrderController {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
         } catch (PositionNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An unexpected error occurred."));
         }
@@ -190,6 +351,7 @@ public class OrderController {
      * Deletes an order identified by its unique ID. Validates that the order is not already closed before attempting deletion.
      * If the order is closed or does not exist, appropriate error responses are returned.
      *
+     * @param idempotencyKey the optional idempotency key of the request
      * @param orderId The unique identifier of the order to delete.
      * @return ResponseEntity indicating the result of the operation with appropriate HTTP status code and body.
      *         Returns OK (200) if the order was successfully deleted.
@@ -204,9 +366,16 @@ public class OrderController {
                    @ApiResponse(responseCode = "200", description = "Order successfully deleted"),
                    @ApiResponse(responseCode = "404", description = "Order not found"),
                    @ApiResponse(responseCode = "409", description = "Order is closed and cannot be deleted"),
-                   @ApiResponse(responseCode = "500", description = "Internal server error")
+                   @ApiResponse(responseCode = "500", description = "Internal server error"),
+                   @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
                })
-    public ResponseEntity<?> deleteOrder(@PathVariable String orderId) {
+    public ResponseEntity<?> deleteOrder(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                         @PathVariable String orderId) {
+        return idempotencyService.execute(idempotencyKey, "DELETE /order/order/delete/" + orderId, null,
+                () -> doDeleteOrder(orderId));
+    }
+
+    private ResponseEntity<?> doDeleteOrder(String orderId) {
         try {
             orderService.deleteOrder(orderId);
             return ResponseEntity.ok().build();
@@ -216,6 +385,11 @@ public class OrderController {
         } catch (OrderClosedException e) {
             // Handling case where the specified order is already closed and cannot be deleted.
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // Handling unexpected exceptions during the deletion process.
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred while deleting the order."));
@@ -228,7 +402,15 @@ public class OrderController {
      * Responds with OK status if the order is successfully closed. If preconditions, such as sufficient stock, are not met, or if the order does not exist,
      * appropriate error responses are returned.
      *
+     * <p>With {@code async=true} the order is only enqueued and HTTP status 202 is returned together with a
+     * close job. The order is then closed in the background together with other queued orders in one
+     * transaction; the outcome can be polled via {@code GET /close/job/{jobId}} or is POSTed to the optional
+     * {@code callbackUrl}, which must be on a host listed in {@code webstore.order.close.callback-allowed-hosts}.</p>
+     *
+     * @param idempotencyKey the optional idempotency key of the request
      * @param orderId the ID of the order to close
+     * @param async whether to close the order asynchronously
+     * @param callbackUrl the URL to POST the completed job to when closing asynchronously
      * @return a ResponseEntity indicating the result of the operation
      */
     @PutMapping("/close/{orderId}")
@@ -236,11 +418,41 @@ public class OrderController {
             description = "Closes an order by its ID after verifying all preconditions, such as sufficient stock levels, are met. If the order cannot be closed due to unmet preconditions, if the order is already closed, or if the order does not exist, appropriate error responses are indicated.",
             responses = {
                 @ApiResponse(responseCode = "200", description = "Order successfully closed"),
+                @ApiResponse(responseCode = "202", description = "Order enqueued for asynchronous closing",
+                        content = @Content(mediaType = "application/json",
+                                schema = @Schema(implementation = CloseJobDTO.class))),
+                @ApiResponse(responseCode = "400", description = "Invalid callback URL or host not allowed"),
                 @ApiResponse(responseCode = "404", description = "Order not found"),
                 @ApiResponse(responseCode = "409", description = "Order is already closed or preconditions for closing the order are not met (e.g., insufficient stock)"),
-                @ApiResponse(responseCode = "500", description = "Internal server error")
+                @ApiResponse(responseCode = "500", description = "Internal server error"),
+                @ApiResponse(responseCode = "503", description = "The queue for asynchronous closing is full"),
+                @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
             })
-    public ResponseEntity<?> closeOrder(@PathVariable String orderId) {
+    public ResponseEntity<?> closeOrder(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                        @PathVariable String orderId,
+                                        @RequestParam(defaultValue = "false") boolean async,
+                                        @RequestParam(required = false) String callbackUrl) {
+        if (!async) {
+            return idempotencyService.execute(idempotencyKey, "PUT /order/close/" + orderId, null,
+                    () -> doCloseOrder(orderId));
+        }
+        return idempotencyService.execute(idempotencyKey, "PUT /order/close/" + orderId + "?async=true&callbackUrl=" + callbackUrl, null,
+                () -> enqueueCloseOrder(orderId, callbackUrl));
+    }
+
+    private ResponseEntity<?> enqueueCloseOrder(String orderId, String callbackUrl) {
+        if (callbackUrl != null && !orderCloseQueue.isCallbackAllowed(callbackUrl)) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Callback URL must be an http or https URL on an allowed host."));
+        }
+        CloseJobDTO job = orderCloseQueue.submit(orderId, callbackUrl);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new ErrorResponse("Too many orders are waiting to be closed, please retry later."));
+        }
+        return ResponseEntity.accepted().location(URI.create("/api/de/v1/order/close/job/" + job.getJobId())).body(job);
+    }
+
+    private ResponseEntity<?> doCloseOrder(String orderId) {
         try {
             // Attempt to close the order
             orderService.closeOrder(orderId);
@@ -255,9 +467,99 @@ public class OrderController {
         } catch (InsufficientStockException e) {
             // If preconditions are not met, return 409 Conflict
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // For any other errors, return 500 Internal Server Error
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred while closing the order."));
         }
-    } 
-}
\ No newline at end of file
+    }
+
+    /**
+     * Retrieves the status of an asynchronous close job.
+     *
+     * <p>Returns HTTP status 200 along with the job if it is known, otherwise returns HTTP status 404.
+     * Completed jobs are retained for a limited time only.</p>
+     *
+     * @param jobId the ID of the close job
+     * @return a ResponseEntity containing the CloseJobDTO or a not found response
+     */
+    @GetMapping("/close/job/{jobId}")
+    @Operation(summary = "Retrieve the status of an asynchronous close job", responses = {
+            @ApiResponse(responseCode = "200", description = "Job found",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CloseJobDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Job not found or expired",
+                    content = @Content)
+    })
+    public ResponseEntity<?> getCloseJob(@PathVariable String jobId) {
+        CloseJobDTO job = orderCloseQueue.findJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse("Close job " + jobId + " not found."));
+        }
+    }
+
+    /**
+     * Closes several orders at once.
+     *
+     * <p>Orders are selected either by their IDs or as open orders older than a number of days and are closed
+     * in chunks, one transaction per chunk. Returns HTTP status 200 with the outcome of each order; orders
+     * that could not be closed are reported individually and do not fail the request.</p>
+     *
+     * @param idempotencyKey optional key to make retries of the request safe
+     * @param request        the selection of orders to close
+     * @return a ResponseEntity containing the BulkOrderResultDTO or a bad request response
+     */
+    @PostMapping("/bulk/close")
+    @Operation(summary = "Close several orders", responses = {
+            @ApiResponse(responseCode = "200", description = "Orders processed",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BulkOrderResultDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid order selection"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
+    })
+    public ResponseEntity<?> closeOrdersInBulk(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                               @RequestBody BulkOrderRequestDTO request) {
+        return idempotencyService.execute(idempotencyKey, "POST /order/bulk/close", request, () -> {
+            try {
+                return ResponseEntity.ok(orderService.closeOrdersInBulk(request));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Deletes several open orders and their positions at once.
+     *
+     * <p>Orders are selected either by their IDs or as open orders older than a number of days and are deleted
+     * in chunks, one transaction per chunk. Closed orders are skipped and reported in the result.</p>
+     *
+     * @param idempotencyKey optional key to make retries of the request safe
+     * @param request        the selection of orders to delete
+     * @return a ResponseEntity containing the BulkOrderResultDTO or a bad request response
+     */
+    @PostMapping("/bulk/delete")
+    @Operation(summary = "Delete several orders", responses = {
+            @ApiResponse(responseCode = "200", description = "Orders processed",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BulkOrderResultDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid order selection"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different request")
+    })
+    public ResponseEntity<?> deleteOrdersInBulk(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                @RequestBody BulkOrderRequestDTO request) {
+        return idempotencyService.execute(idempotencyKey, "POST /order/bulk/delete", request, () -> {
+            try {
+                return ResponseEntity.ok(orderService.deleteOrdersInBulk(request));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+            }
+        });
+    }
+}
@@ -4,12 +4,17 @@ package de.webstore.backend.controller;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import de.webstore.backend.cache.VersionedCache;
+import de.webstore.backend.dto.ProductChangesDTO;
 import de.webstore.backend.dto.ProductDTO;
 import de.webstore.backend.dto.ProductUpdateDTO;
+import de.webstore.backend.exception.BulkheadFullException;
+import de.webstore.backend.exception.DeadlineExceededException;
 import de.webstore.backend.exception.ErrorResponse;
 import de.webstore.backend.exception.ProductInOrderException;
 import de.webstore.backend.exception.ProductNotFoundException;
@@ -43,19 +48,68 @@ public class ProductController {
     /**
      * Retrieves all products and returns them in a list.
      * 
-     * <p>Returns HTTP status 200 along with the list of all product data.</p>
+     * <p>Returns HTTP status 200 along with the list of all product data. The ETag is the catalog version,
+     * so a matching {@code If-None-Match} is answered with 304 without reading the products.</p>
      *
+     * @param ifNoneMatch the ETag of the list the client already has
      * @return a ResponseEntity containing a list of all ProductDTOs
      */
     @GetMapping("/all")
     @Operation(summary = "Retrieve all products", responses = {
         @ApiResponse(responseCode = "200", description = "List of all products",
                      content = @Content(mediaType = "application/json", 
-                     schema = @Schema(implementation = ProductDTO.class)))
+                     schema = @Schema(implementation = ProductDTO.class))),
+        @ApiResponse(responseCode = "304", description = "The list has not changed")
     })
-    public ResponseEntity<List<ProductDTO>> getAllProducts() {
+    public ResponseEntity<?> getAllProducts(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Read the version before the data, so the ETag can never claim a newer state than the body
+        Long catalogVersion = productService.findCatalogVersion();
+        if (catalogVersion == null) {
+            return ResponseEntity.ok(productService.findAll());
+        }
+        String etag = ETags.ofVersion("products", catalogVersion);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         List<ProductDTO> products = productService.findAll();
-        return ResponseEntity.ok(products);
+        return ResponseEntity.ok().eTag(etag).body(products);
+    }
+
+    /**
+     * Retrieves the changes of the product catalog since a sync token.
+     *
+     * <p>Returns HTTP status 200 with the products created or updated and the IDs of the products deleted
+     * since the token, plus the token to pass on the next call. Without a token the whole catalog is returned.
+     * If {@code hasMore} is true, the client should call again right away with the new token.</p>
+     *
+     * @param since the token returned by the previous call
+     * @param limit the maximum number of changes to return
+     * @return a ResponseEntity containing the ProductChangesDTO or a bad request response
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Retrieve the changes of the product catalog since a sync token", responses = {
+        @ApiResponse(responseCode = "200", description = "Changes since the token",
+                     content = @Content(mediaType = "application/json",
+                     schema = @Schema(implementation = ProductChangesDTO.class))),
+        @ApiResponse(responseCode = "400", description = "Invalid token or limit",
+                     content = @Content)
+    })
+    public ResponseEntity<?> getProductChanges(@RequestParam(required = false) String since,
+                                               @RequestParam(defaultValue = "1000") int limit) {
+        long version;
+        try {
+            version = since == null || since.isBlank() ? 0 : Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Invalid sync token: " + since));
+        }
+        if (version < 0) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Invalid sync token: " + since));
+        }
+        try {
+            return ResponseEntity.ok(productService.findChanges(version, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
     }
 
     /**
@@ -71,12 +125,20 @@ public class ProductController {
     @Operation(summary = "Retrieve a product by its ID", responses = {
         @ApiResponse(responseCode = "200", description = "Product found",
                      content = @Content(schema = @Schema(implementation = ProductDTO.class))),
+        @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                content = @Content),
         @ApiResponse(responseCode = "404", description = "Product not found")
     })
-    public ResponseEntity<?> getProductById(@PathVariable String productId) {
-        ProductDTO product = productService.findById(productId);
-        if (product != null) {
-            return ResponseEntity.ok(product);
+    public ResponseEntity<?> getProductById(@PathVariable String productId,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // The version comes with the cached product, so a revalidation of a cached product needs no query
+        VersionedCache.Entry<ProductDTO> entry = productService.findVersionedById(productId);
+        if (entry != null) {
+            String etag = ETags.ofVersion("product-" + productId, entry.version());
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ETags.notModified(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(entry.value());
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse("Product ID " + productId + " not found."));
         }
@@ -114,6 +176,11 @@ public class ProductController {
         } catch (IllegalArgumentException e) {
             // Handle validation errors, e.g., missing name, unit, or price
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // Catch other exceptions, indicating possible internal errors
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred while creating the product."));
@@ -151,6 +218,11 @@ public class ProductController {
         } catch (DataAccessException e) {
             // Database error
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Database error occurred: " + e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // Other errors
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred: " + e.getMessage()));
@@ -182,6 +254,11 @@ public class ProductController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
         } catch (ProductInOrderException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             // Log the exception details here for further investigation if needed
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred while deleting the product."));
@@ -0,0 +1,89 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.controller;
+
+import java.time.LocalDate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import de.webstore.backend.dto.DailyRevenueDTO;
+import de.webstore.backend.dto.ProductSalesDTO;
+import de.webstore.backend.exception.ErrorResponse;
+import de.webstore.backend.service.SalesReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+
+/**
+ * Controller for sales reports.
+ *
+ * <p>Reports are served from rollup tables that are maintained when orders are closed, so open orders are
+ * not included.
+ */
+@RestController
+@RequestMapping("/api/de/v1/report")
+public class ReportController {
+
+    private final SalesReportService salesReportService;
+
+    /**
+     * Constructs a ReportController with the specified SalesReportService.
+     *
+     * @param salesReportService the service to read the sales rollups
+     */
+    @Autowired
+    public ReportController(SalesReportService salesReportService) {
+        this.salesReportService = salesReportService;
+    }
+
+    /**
+     * Retrieves the revenue per order date within a date range.
+     *
+     * @param from the first order date, inclusive
+     * @param to   the last order date, inclusive
+     * @return a ResponseEntity containing the sales per day or a bad request response
+     */
+    @GetMapping("/revenue/daily")
+    @Operation(summary = "Get the revenue per day", responses = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the revenue per day",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyRevenueDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid date range",
+                    content = @Content)
+    })
+    public ResponseEntity<?> getDailyRevenue(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(salesReportService.findDailyRevenue(from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Retrieves the best-selling products.
+     *
+     * @param sortBy either "revenue" or "quantity"
+     * @param limit  the number of products to return
+     * @return a ResponseEntity containing the best-selling products or a bad request response
+     */
+    @GetMapping("/products/top")
+    @Operation(summary = "Get the best-selling products", responses = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the best-selling products",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ProductSalesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid sort order or limit",
+                    content = @Content)
+    })
+    public ResponseEntity<?> getTopProducts(@RequestParam(defaultValue = "revenue") String sortBy,
+                                            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(salesReportService.findTopProducts(sortBy, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+}
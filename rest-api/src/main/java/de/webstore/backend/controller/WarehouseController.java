@@ -5,10 +5,13 @@ import java.util.List;
 
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import de.webstore.backend.dto.WarehouseDTO;
+import de.webstore.backend.exception.BulkheadFullException;
+import de.webstore.backend.exception.DeadlineExceededException;
 import de.webstore.backend.exception.ErrorResponse;
 import de.webstore.backend.exception.ProductNotFoundException;
 import de.webstore.backend.exception.WarehouseNotFoundException;
@@ -50,12 +53,22 @@ public class WarehouseController {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved list of all warehouse entries",
                     content = {@Content(mediaType = "application/json", 
                             schema = @Schema(implementation = WarehouseDTO.class))}),
+            @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                    content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error",
                     content = @Content)
     })
-    public ResponseEntity<List<WarehouseDTO>> getAllWarehouseEntries() {
+    public ResponseEntity<?> getAllWarehouseEntries(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         List<WarehouseDTO> warehouses = warehouseService.findAllActive();
-        return ResponseEntity.ok(warehouses);
+        ETags.Hasher hasher = ETags.hash("warehouses");
+        for (WarehouseDTO warehouse : warehouses) {
+            hasher.add(warehouse.getWarehouseNumber()).add(warehouse.getQuantity()).add(warehouse.getIsActive());
+        }
+        String etag = hasher.toETag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).body(warehouses);
     }
 
     /**
@@ -72,15 +85,23 @@ public class WarehouseController {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved the warehouse",
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = WarehouseDTO.class))),
+            @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Warehouse not found for the provided Number",
                     content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error occurred while processing the request",
                     content = @Content)
     })
-    public ResponseEntity<WarehouseDTO> getWarehouseById(@PathVariable int warehouseNumber) {
+    public ResponseEntity<?> getWarehouseById(@PathVariable int warehouseNumber,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         WarehouseDTO warehouse = warehouseService.findById(warehouseNumber);
         if (warehouse != null) {
-            return ResponseEntity.ok(warehouse);
+            String etag = ETags.hash("warehouse").add(warehouse.getWarehouseNumber()).add(warehouse.getQuantity())
+                    .add(warehouse.getIsActive()).toETag();
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ETags.notModified(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(warehouse);
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -119,6 +140,11 @@ public class WarehouseController {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
             } catch (IllegalArgumentException e) {
                 return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+            } catch (BulkheadFullException e) {
+                // Answered with 503 and Retry-After by the BulkheadFilter
+                throw e;
+            } catch (DeadlineExceededException e) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
             } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Failed to add product quantity."));
         }
@@ -157,6 +183,11 @@ public class WarehouseController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Failed to reduce product quantity."));
         }
@@ -175,17 +206,29 @@ public class WarehouseController {
             @ApiResponse(responseCode = "200", description = "Total quantity of the product across all warehouses",
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = Integer.class))),
+            @ApiResponse(responseCode = "304", description = "The representation has not changed since the given ETag",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Product not found",
                     content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error occurred while processing the request",
                     content = @Content)
     })
-    public ResponseEntity<?> getTotalProductQuantity(@PathVariable String productId) {
+    public ResponseEntity<?> getTotalProductQuantity(@PathVariable String productId,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
                 int totalQuantity = warehouseService.calculateTotalProductQuantity(productId);
-                return ResponseEntity.ok().body(totalQuantity);
+                String etag = ETags.hash("total").add(productId).add(totalQuantity).toETag();
+                if (ETags.matches(ifNoneMatch, etag)) {
+                    return ETags.notModified(etag);
+                }
+                return ResponseEntity.ok().eTag(etag).body(totalQuantity);
         } catch (ProductNotFoundException e) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(e.getMessage()));
+        } catch (BulkheadFullException e) {
+            // Answered with 503 and Retry-After by the BulkheadFilter
+            throw e;
+        } catch (DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("An error occurred while getting total product quantity across all warehouses."));
         }
@@ -0,0 +1,117 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.deadline;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.bulkhead.BulkheadGroup;
+import de.webstore.backend.exception.DeadlineExceededException;
+import de.webstore.backend.exception.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Sets the {@link RequestDeadline} of each API request and answers 504 when it passes.
+ * <p>
+ * The timeout is taken from the {@value #TIMEOUT_HEADER} header in milliseconds, capped at
+ * {@code webstore.deadline.max-ms}, or else the default of the request's {@link BulkheadGroup}. Runs before the
+ * admission and bulkhead filters, so the time spent waiting there counts against the deadline.
+ */
+@Component
+@Order(DeadlineFilter.ORDER)
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 5;
+    static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${webstore.deadline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${webstore.deadline.max-ms:60000}")
+    private long maxMs;
+
+    @Value("${webstore.deadline.catalog-ms:2000}")
+    private long catalogMs;
+
+    @Value("${webstore.deadline.stock-ms:5000}")
+    private long stockMs;
+
+    @Value("${webstore.deadline.order-ms:10000}")
+    private long orderMs;
+
+    @Value("${webstore.deadline.report-ms:30000}")
+    private long reportMs;
+
+    @Autowired
+    public DeadlineFilter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        BulkheadGroup group = enabled
+                ? BulkheadGroup.of(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()))
+                : null;
+        if (group == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestDeadline.start(timeoutMs(request.getHeader(TIMEOUT_HEADER), group));
+        try {
+            chain.doFilter(request, response);
+        } catch (ServletException | RuntimeException e) {
+            if (!causedByDeadline(e) || response.isCommitted()) {
+                throw e;
+            }
+            response.resetBuffer();
+            response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new ErrorResponse("The request deadline has passed."));
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    private long timeoutMs(String header, BulkheadGroup group) {
+        if (header != null) {
+            try {
+                long requested = Long.parseLong(header.trim());
+                if (requested > 0) {
+                    return Math.min(requested, maxMs);
+                }
+            } catch (NumberFormatException e) {
+                // Fall back to the default of the endpoint
+            }
+        }
+        return switch (group) {
+            case CATALOG -> catalogMs;
+            case STOCK -> stockMs;
+            case ORDER -> orderMs;
+            case REPORT -> reportMs;
+        };
+    }
+
+    private static boolean causedByDeadline(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
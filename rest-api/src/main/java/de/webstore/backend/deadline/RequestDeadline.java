@@ -0,0 +1,130 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.deadline;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import de.webstore.backend.exception.DeadlineExceededException;
+
+/**
+ * The deadline of the request handled by the current thread.
+ * <p>
+ * Set by the {@link DeadlineFilter}; threads without a request (scheduled jobs, workers) have none. Every JDBC
+ * statement run on the thread gets the remaining time as query timeout, see {@link #applyTo(Statement)}, so a
+ * query the client no longer waits for is cancelled by the driver and its connection freed.
+ */
+public final class RequestDeadline {
+
+    // System.nanoTime() at which the request expires
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Sets the deadline of the current thread's request.
+     *
+     * @param timeoutMs the time the request may take from now
+     */
+    public static void start(long timeoutMs) {
+        DEADLINE.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    /**
+     * Removes the deadline once the request is done.
+     */
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * Returns the time left until the deadline.
+     *
+     * @return the remaining milliseconds, at most 0 once it has passed, or {@link Long#MAX_VALUE} without deadline
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * Returns whether the current thread's request has a deadline that has passed.
+     *
+     * @return true if the deadline has passed
+     */
+    public static boolean isExceeded() {
+        return remainingMillis() <= 0;
+    }
+
+    /**
+     * Aborts the current work if the deadline has passed.
+     *
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public static void check() {
+        if (isExceeded()) {
+            throw new DeadlineExceededException("The request deadline has passed.");
+        }
+    }
+
+    /**
+     * Runs cleanup that must complete even after the deadline has passed, e.g. releasing a claim, without deadline.
+     *
+     * @param action the cleanup
+     */
+    public static void runWithout(Runnable action) {
+        Long deadline = DEADLINE.get();
+        DEADLINE.remove();
+        try {
+            action.run();
+        } finally {
+            if (deadline != null) {
+                DEADLINE.set(deadline);
+            }
+        }
+    }
+
+    /**
+     * Runs work shared with other requests, e.g. a coalesced read, under a deadline of its own instead of the
+     * current request's, so that one client's short timeout cannot fail it for all of them.
+     *
+     * @param timeoutMs the time the work may take from now
+     * @param action    the work
+     * @return the result of the work
+     */
+    public static <T> T callWithin(long timeoutMs, Supplier<T> action) {
+        Long deadline = DEADLINE.get();
+        start(timeoutMs);
+        try {
+            return action.get();
+        } finally {
+            if (deadline != null) {
+                DEADLINE.set(deadline);
+            } else {
+                DEADLINE.remove();
+            }
+        }
+    }
+
+    /**
+     * Limits a statement about to be executed to the time left. JDBC query timeouts are whole seconds, so the
+     * remaining time is rounded up.
+     *
+     * @param statement the statement
+     * @throws SQLException if the timeout cannot be set
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public static void applyTo(Statement statement) throws SQLException {
+        long remaining = remainingMillis();
+        if (remaining == Long.MAX_VALUE) {
+            return;
+        }
+        check();
+        statement.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) selecting the orders of a bulk operation.
+ * <p>
+ * Orders are selected either by an explicit list of order IDs or by a filter for open orders placed more
+ * than a given number of days ago. Exactly one of the two must be set.
+ */
+@Schema(description = "Data Transfer Object selecting the orders of a bulk operation")
+public class BulkOrderRequestDTO {
+
+    // Explicit list of order IDs
+    @Schema(description = "IDs of the orders to process")
+    private List<String> orderIds;
+
+    // Selects all open orders placed more than this many days ago
+    @Schema(description = "Process all open orders placed more than this many days ago", example = "30")
+    private Integer olderThanDays;
+
+    /**
+     * Default constructor.
+     */
+    public BulkOrderRequestDTO() {}
+
+    /**
+     * Gets the order IDs.
+     *
+     * @return the order IDs, or null if the filter is used
+     */
+    public List<String> getOrderIds() {
+        return orderIds;
+    }
+
+    /**
+     * Sets the order IDs.
+     *
+     * @param orderIds the order IDs to process
+     */
+    public void setOrderIds(List<String> orderIds) {
+        this.orderIds = orderIds;
+    }
+
+    /**
+     * Gets the minimum age in days of the open orders to process.
+     *
+     * @return the minimum age in days, or null if explicit order IDs are used
+     */
+    public Integer getOlderThanDays() {
+        return olderThanDays;
+    }
+
+    /**
+     * Sets the minimum age in days of the open orders to process.
+     *
+     * @param olderThanDays the minimum age in days
+     */
+    public void setOlderThanDays(Integer olderThanDays) {
+        this.olderThanDays = olderThanDays;
+    }
+
+    /**
+     * Returns a string representation of the BulkOrderRequestDTO.
+     *
+     * @return a string representation of the BulkOrderRequestDTO
+     */
+    @Override
+    public String toString() {
+        return "BulkOrderRequestDTO{" +
+                "orderIds=" + (orderIds != null ? orderIds.size() : null) +
+                ", olderThanDays=" + olderThanDays +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) summarizing a bulk operation on orders.
+ * <p>
+ * Contains the number of processed, succeeded and failed orders together with the outcome of each order.
+ */
+@Schema(description = "Data Transfer Object summarizing a bulk operation on orders")
+public class BulkOrderResultDTO {
+
+    // Number of orders processed
+    private int processed;
+
+    // Number of orders the operation succeeded for
+    private int succeeded;
+
+    // Number of orders the operation failed for
+    private int failed;
+
+    // Outcome of each order
+    private List<OrderResultDTO> results = new ArrayList<>();
+
+    /**
+     * Default constructor.
+     */
+    public BulkOrderResultDTO() {}
+
+    /**
+     * Adds the outcomes of a processed chunk of orders.
+     *
+     * @param chunkResults the outcomes to add
+     * @param success      the outcome that counts as success
+     */
+    public void addAll(List<OrderResultDTO> chunkResults, OrderResultDTO.Outcome success) {
+        for (OrderResultDTO result : chunkResults) {
+            results.add(result);
+            processed++;
+            if (result.getOutcome() == success) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of processed orders.
+     *
+     * @return the number of processed orders
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Gets the number of orders the operation succeeded for.
+     *
+     * @return the number of succeeded orders
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Gets the number of orders the operation failed for.
+     *
+     * @return the number of failed orders
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the outcome of each order.
+     *
+     * @return the outcomes
+     */
+    public List<OrderResultDTO> getResults() {
+        return results;
+    }
+
+    /**
+     * Returns a string representation of the BulkOrderResultDTO.
+     *
+     * @return a string representation of the BulkOrderResultDTO
+     */
+    @Override
+    public String toString() {
+        return "BulkOrderResultDTO{" +
+                "processed=" + processed +
+                ", succeeded=" + succeeded +
+                ", failed=" + failed +
+                '}';
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for an asynchronous order close job.
+ * <p>
+ * A job is created when an order is enqueued for closing and is updated by the close worker once the
+ * order has been processed. Clients poll it via the job-status endpoint or receive it through their callback.
+ */
+@Schema(description = "Data Transfer Object for an asynchronous order close job")
+public class CloseJobDTO {
+
+    /**
+     * Lifecycle states of a close job.
+     */
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE
+    }
+
+    // Unique identifier of the job
+    private String jobId;
+
+    // ID of the order to close
+    private String orderId;
+
+    // Current state of the job
+    @Schema(description = "Current state of the job", example = "QUEUED")
+    private volatile State state;
+
+    // Outcome once the job is done
+    @Schema(description = "Outcome once the job is done", example = "CLOSED")
+    private volatile OrderResultDTO.Outcome outcome;
+
+    // Detail message once the job is done
+    private volatile String message;
+
+    // Time the job was enqueued
+    private Instant submittedAt;
+
+    // Time the job was completed
+    private volatile Instant completedAt;
+
+    // URL that receives the completed job as a POST request
+    @JsonIgnore
+    private String callbackUrl;
+
+    /**
+     * Default constructor.
+     */
+    public CloseJobDTO() {}
+
+    /**
+     * Constructs a queued CloseJobDTO.
+     *
+     * @param jobId       the unique identifier of the job
+     * @param orderId     the ID of the order to close
+     * @param callbackUrl the URL to notify on completion, may be null
+     */
+    public CloseJobDTO(String jobId, String orderId, String callbackUrl) {
+        this.jobId = jobId;
+        this.orderId = orderId;
+        this.callbackUrl = callbackUrl;
+        this.state = State.QUEUED;
+        this.submittedAt = Instant.now();
+    }
+
+    /**
+     * Gets the job ID.
+     *
+     * @return the job ID
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Gets the order ID.
+     *
+     * @return the order ID
+     */
+    public String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * Gets the current state of the job.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Sets the current state of the job.
+     *
+     * @param state the state to set
+     */
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * Gets the outcome of the job.
+     *
+     * @return the outcome, or null while the job is not done
+     */
+    public OrderResultDTO.Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Gets the detail message of the job.
+     *
+     * @return the message, may be null
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the time the job was enqueued.
+     *
+     * @return the submission time
+     */
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    /**
+     * Gets the time the job was completed.
+     *
+     * @return the completion time, or null while the job is not done
+     */
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Gets the callback URL.
+     *
+     * @return the callback URL, may be null
+     */
+    public String getCallbackUrl() {
+        return callbackUrl;
+    }
+
+    /**
+     * Marks the job as done with the given result.
+     *
+     * @param result the result of closing the order
+     */
+    public void complete(OrderResultDTO result) {
+        this.outcome = result.getOutcome();
+        this.message = result.getMessage();
+        this.completedAt = Instant.now();
+        this.state = State.DONE;
+    }
+
+    /**
+     * Returns a string representation of the CloseJobDTO.
+     *
+     * @return a string representation of the CloseJobDTO
+     */
+    @Override
+    public String toString() {
+        return "CloseJobDTO{" +
+                "jobId=" + jobId +
+                ", orderId=" + orderId +
+                ", state=" + state +
+                ", outcome=" + outcome +
+                '}';
+    }
+}
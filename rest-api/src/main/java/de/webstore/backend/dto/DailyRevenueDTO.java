@@ -0,0 +1,101 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for the sales of closed orders placed on one day.
+ */
+@Schema(description = "Data Transfer Object for the sales of one day")
+public class DailyRevenueDTO {
+
+    // Date on which the orders were placed
+    @Schema(description = "Order date", example = "2024-03-05")
+    private LocalDate date;
+
+    // Number of closed orders placed on that day
+    @Schema(description = "Number of closed orders", example = "42")
+    private int orders;
+
+    // Total quantity of products sold
+    @Schema(description = "Total quantity sold", example = "310")
+    private long quantity;
+
+    // Revenue (price * quantity) of the closed orders
+    @Schema(description = "Revenue", example = "1234.50")
+    private BigDecimal revenue;
+
+    /**
+     * Default constructor.
+     */
+    public DailyRevenueDTO() {}
+
+    /**
+     * Constructs a DailyRevenueDTO with specified details.
+     *
+     * @param date     the order date
+     * @param orders   the number of closed orders
+     * @param quantity the total quantity sold
+     * @param revenue  the revenue
+     */
+    public DailyRevenueDTO(LocalDate date, int orders, long quantity, BigDecimal revenue) {
+        this.date = date;
+        this.orders = orders;
+        this.quantity = quantity;
+        this.revenue = revenue;
+    }
+
+    /**
+     * Gets the order date.
+     *
+     * @return the order date
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Gets the number of closed orders.
+     *
+     * @return the number of closed orders
+     */
+    public int getOrders() {
+        return orders;
+    }
+
+    /**
+     * Gets the total quantity sold.
+     *
+     * @return the total quantity sold
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the revenue.
+     *
+     * @return the revenue
+     */
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Returns a string representation of the DailyRevenueDTO.
+     *
+     * @return a string representation of the DailyRevenueDTO
+     */
+    @Override
+    public String toString() {
+        return "DailyRevenueDTO{" +
+                "date=" + date +
+                ", orders=" + orders +
+                ", quantity=" + quantity +
+                ", revenue=" + revenue +
+                '}';
+    }
+}
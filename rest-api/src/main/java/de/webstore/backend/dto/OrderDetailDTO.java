@@ -0,0 +1,150 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for an order expanded with its positions.
+ * <p>
+ * This class carries an order together with all of its lines and the order total, so that clients
+ * do not have to look up each position and product separately.
+ */
+@Schema(description = "Data Transfer Object for an order with its positions")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderDetailDTO {
+
+    // Order ID uniquely identifying the order
+    private String orderId;
+
+    // Date on which the order was placed
+    private LocalDate date;
+
+    // Status from the order
+    @Schema(description = "Order status", example = "offen")
+    private String status;
+
+    // Lines of the order
+    private List<OrderLineDTO> positions = new ArrayList<>();
+
+    // Sum of all line totals
+    @Schema(description = "Sum of all line totals", example = "23.96")
+    private BigDecimal total = BigDecimal.ZERO;
+
+    /**
+     * Default constructor.
+     */
+    public OrderDetailDTO() {}
+
+    /**
+     * Gets the order ID.
+     *
+     * @return the order ID
+     */
+    public String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * Sets the order ID.
+     *
+     * @param orderId the order ID to set
+     */
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    /**
+     * Gets the date the order was placed.
+     *
+     * @return the order date
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Sets the date the order was placed.
+     *
+     * @param date the order date to set
+     */
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    /**
+     * Gets the status of the order.
+     *
+     * @return the order status
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets the status of the order.
+     *
+     * @param status the order status to set
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * Gets the lines of the order.
+     *
+     * @return the order lines
+     */
+    public List<OrderLineDTO> getPositions() {
+        return positions;
+    }
+
+    /**
+     * Sets the lines of the order.
+     *
+     * @param positions the order lines to set
+     */
+    public void setPositions(List<OrderLineDTO> positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Gets the order total.
+     *
+     * @return the sum of all line totals
+     */
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    /**
+     * Sets the order total.
+     *
+     * @param total the order total to set
+     */
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    /**
+     * Returns a string representation of the OrderDetailDTO.
+     *
+     * @return a string representation of the OrderDetailDTO
+     */
+    @Override
+    public String toString() {
+        return "OrderDetailDTO{" +
+                "orderId=" + orderId +
+                ", status=" + status +
+                ", date=" + date +
+                ", positions=" + positions.size() +
+                ", total=" + total +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for a single line of an expanded order.
+ * <p>
+ * A line is an order position together with its line total and, if requested, the full product data.
+ */
+@Schema(description = "Data Transfer Object for a line of an expanded order")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderLineDTO {
+
+    // Unique identifier for the position
+    private String positionId;
+
+    // Product ID associated with this position
+    private String productId;
+
+    // Quantity of the product in this position
+    private int quantity;
+
+    // Price of the product multiplied by the quantity
+    @Schema(description = "Price of the product multiplied by the quantity", example = "11.97")
+    private BigDecimal lineTotal;
+
+    // Product data, only present if products were expanded
+    private ProductDTO product;
+
+    /**
+     * Default constructor.
+     */
+    public OrderLineDTO() {}
+
+    /**
+     * Gets the position ID.
+     *
+     * @return the position ID
+     */
+    public String getPositionId() {
+        return positionId;
+    }
+
+    /**
+     * Sets the position ID.
+     *
+     * @param positionId the new position ID
+     */
+    public void setPositionId(String positionId) {
+        this.positionId = positionId;
+    }
+
+    /**
+     * Gets the product ID.
+     *
+     * @return the product ID
+     */
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * Sets the product ID.
+     *
+     * @param productId the new product ID
+     */
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    /**
+     * Gets the quantity.
+     *
+     * @return the quantity
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Sets the quantity.
+     *
+     * @param quantity the new quantity
+     */
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    /**
+     * Gets the line total.
+     *
+     * @return the price of the product multiplied by the quantity
+     */
+    public BigDecimal getLineTotal() {
+        return lineTotal;
+    }
+
+    /**
+     * Sets the line total.
+     *
+     * @param lineTotal the new line total
+     */
+    public void setLineTotal(BigDecimal lineTotal) {
+        this.lineTotal = lineTotal;
+    }
+
+    /**
+     * Gets the product data.
+     *
+     * @return the product, or null if products were not expanded
+     */
+    public ProductDTO getProduct() {
+        return product;
+    }
+
+    /**
+     * Sets the product data.
+     *
+     * @param product the product
+     */
+    public void setProduct(ProductDTO product) {
+        this.product = product;
+    }
+
+    /**
+     * Returns a string representation of the OrderLineDTO.
+     *
+     * @return a string detailing the line's information
+     */
+    @Override
+    public String toString() {
+        return "OrderLineDTO{" +
+                "positionId=" + positionId +
+                ", productId=" + productId +
+                ", quantity=" + quantity +
+                ", lineTotal=" + lineTotal +
+                '}';
+    }
+}
@@ -0,0 +1,119 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for the outcome of an operation on a single order within a batch.
+ */
+@Schema(description = "Data Transfer Object for the outcome of an operation on a single order")
+public class OrderResultDTO {
+
+    /**
+     * Possible outcomes of an operation on a single order.
+     */
+    public enum Outcome {
+        CLOSED,
+        DELETED,
+        NOT_FOUND,
+        ALREADY_CLOSED,
+        INSUFFICIENT_STOCK,
+        FAILED
+    }
+
+    // ID of the order the outcome refers to
+    private String orderId;
+
+    // Outcome of the operation
+    @Schema(description = "Outcome of the operation", example = "CLOSED")
+    private Outcome outcome;
+
+    // Human-readable detail, e.g. the reason of a failure
+    private String message;
+
+    /**
+     * Default constructor.
+     */
+    public OrderResultDTO() {}
+
+    /**
+     * Constructs an OrderResultDTO with specified details.
+     *
+     * @param orderId the ID of the order
+     * @param outcome the outcome of the operation
+     * @param message a human-readable detail, may be null
+     */
+    public OrderResultDTO(String orderId, Outcome outcome, String message) {
+        this.orderId = orderId;
+        this.outcome = outcome;
+        this.message = message;
+    }
+
+    /**
+     * Gets the order ID.
+     *
+     * @return the order ID
+     */
+    public String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * Sets the order ID.
+     *
+     * @param orderId the order ID to set
+     */
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    /**
+     * Gets the outcome of the operation.
+     *
+     * @return the outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Sets the outcome of the operation.
+     *
+     * @param outcome the outcome to set
+     */
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * Gets the detail message.
+     *
+     * @return the message, may be null
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Sets the detail message.
+     *
+     * @param message the message to set
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns a string representation of the OrderResultDTO.
+     *
+     * @return a string representation of the OrderResultDTO
+     */
+    @Override
+    public String toString() {
+        return "OrderResultDTO{" +
+                "orderId=" + orderId +
+                ", outcome=" + outcome +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -0,0 +1,135 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for an event recorded in the outbox.
+ * <p>
+ * Events are numbered in ascending order; a client that stores the ID of the last event it received can
+ * resume the event stream from there.
+ */
+@Schema(description = "Data Transfer Object for a change event")
+public class OutboxEventDTO {
+
+    // Position of the event in the stream
+    @Schema(description = "Position of the event in the stream", example = "1042")
+    private long id;
+
+    // Kind of entity that changed: order, stock or product
+    @Schema(description = "Kind of entity that changed", example = "order")
+    private String aggregate;
+
+    // ID of the entity that changed
+    @Schema(description = "ID of the entity that changed")
+    private String aggregateId;
+
+    // What happened, e.g. ORDER_CLOSED
+    @Schema(description = "Event type", example = "ORDER_CLOSED")
+    private String type;
+
+    // Event details as JSON
+    @JsonRawValue
+    @Schema(description = "Event details")
+    private String payload;
+
+    // Time the event was recorded
+    private Instant createdAt;
+
+    /**
+     * Default constructor.
+     */
+    public OutboxEventDTO() {}
+
+    /**
+     * Constructs an OutboxEventDTO with specified details.
+     *
+     * @param id          the position of the event in the stream
+     * @param aggregate   the kind of entity that changed
+     * @param aggregateId the ID of the entity that changed
+     * @param type        the event type
+     * @param payload     the event details as JSON
+     * @param createdAt   the time the event was recorded
+     */
+    public OutboxEventDTO(long id, String aggregate, String aggregateId, String type, String payload, Instant createdAt) {
+        this.id = id;
+        this.aggregate = aggregate;
+        this.aggregateId = aggregateId;
+        this.type = type;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Gets the position of the event in the stream.
+     *
+     * @return the event ID
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the kind of entity that changed.
+     *
+     * @return the aggregate
+     */
+    public String getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * Gets the ID of the entity that changed.
+     *
+     * @return the aggregate ID
+     */
+    public String getAggregateId() {
+        return aggregateId;
+    }
+
+    /**
+     * Gets the event type.
+     *
+     * @return the event type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the event details as JSON.
+     *
+     * @return the payload
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets the time the event was recorded.
+     *
+     * @return the creation time
+     */
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns a string representation of the OutboxEventDTO.
+     *
+     * @return a string representation of the OutboxEventDTO
+     */
+    @Override
+    public String toString() {
+        return "OutboxEventDTO{" +
+                "id=" + id +
+                ", aggregate='" + aggregate + '\'' +
+                ", aggregateId='" + aggregateId + '\'' +
+                ", type='" + type + '\'' +
+                '}';
+    }
+}
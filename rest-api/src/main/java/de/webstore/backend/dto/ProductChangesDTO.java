@@ -0,0 +1,105 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for the changes of the product catalog since a sync token.
+ * <p>
+ * Contains the products created or updated and the IDs of the products deleted since the token, together
+ * with the token to pass on the next call.
+ */
+@Schema(description = "Data Transfer Object for the changes of the product catalog")
+public class ProductChangesDTO {
+
+    // Products created or updated since the token, in their current state
+    private List<ProductDTO> changed = new ArrayList<>();
+
+    // IDs of the products deleted since the token
+    private List<String> deleted = new ArrayList<>();
+
+    // Token to pass as 'since' on the next call
+    @Schema(description = "Token to pass as 'since' on the next call", example = "1042")
+    private String nextToken;
+
+    // Whether more changes are available right away
+    @Schema(description = "Whether more changes are available right away")
+    private boolean hasMore;
+
+    /**
+     * Default constructor.
+     */
+    public ProductChangesDTO() {}
+
+    /**
+     * Gets the products created or updated since the token.
+     *
+     * @return the changed products
+     */
+    public List<ProductDTO> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Gets the IDs of the products deleted since the token.
+     *
+     * @return the deleted product IDs
+     */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Gets the token to pass on the next call.
+     *
+     * @return the next token
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Sets the token to pass on the next call.
+     *
+     * @param nextToken the next token
+     */
+    public void setNextToken(String nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Gets whether more changes are available right away.
+     *
+     * @return true if the client should call again with the next token
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Sets whether more changes are available right away.
+     *
+     * @param hasMore true if the client should call again with the next token
+     */
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Returns a string representation of the ProductChangesDTO.
+     *
+     * @return a string representation of the ProductChangesDTO
+     */
+    @Override
+    public String toString() {
+        return "ProductChangesDTO{" +
+                "changed=" + changed.size() +
+                ", deleted=" + deleted.size() +
+                ", nextToken='" + nextToken + '\'' +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
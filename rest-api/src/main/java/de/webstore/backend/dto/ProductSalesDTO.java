@@ -0,0 +1,100 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.dto;
+
+import java.math.BigDecimal;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Data Transfer Object (DTO) for the accumulated sales of one product over all closed orders.
+ */
+@Schema(description = "Data Transfer Object for the sales of one product")
+public class ProductSalesDTO {
+
+    // Product ID
+    @Schema(description = "Product ID", example = "0a1b2c3d-0000-0000-0000-000000000000")
+    private String productId;
+
+    // Product name
+    @Schema(description = "Product name", example = "Apfel")
+    private String name;
+
+    // Total quantity sold
+    @Schema(description = "Total quantity sold", example = "120")
+    private long quantity;
+
+    // Revenue (price * quantity) of the product
+    @Schema(description = "Revenue", example = "360.00")
+    private BigDecimal revenue;
+
+    /**
+     * Default constructor.
+     */
+    public ProductSalesDTO() {}
+
+    /**
+     * Constructs a ProductSalesDTO with specified details.
+     *
+     * @param productId the product ID
+     * @param name      the product name
+     * @param quantity  the total quantity sold
+     * @param revenue   the revenue
+     */
+    public ProductSalesDTO(String productId, String name, long quantity, BigDecimal revenue) {
+        this.productId = productId;
+        this.name = name;
+        this.quantity = quantity;
+        this.revenue = revenue;
+    }
+
+    /**
+     * Gets the product ID.
+     *
+     * @return the product ID
+     */
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * Gets the product name.
+     *
+     * @return the product name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the total quantity sold.
+     *
+     * @return the total quantity sold
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the revenue.
+     *
+     * @return the revenue
+     */
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Returns a string representation of the ProductSalesDTO.
+     *
+     * @return a string representation of the ProductSalesDTO
+     */
+    @Override
+    public String toString() {
+        return "ProductSalesDTO{" +
+                "productId='" + productId + '\'' +
+                ", name='" + name + '\'' +
+                ", quantity=" + quantity +
+                ", revenue=" + revenue +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.exception;
+
+/**
+ * Thrown when the bulkhead of a request has no database connection left within its wait time.
+ * <p>
+ * It is unchecked so that it passes the {@code catch (SQLException e)} blocks of the services and ends the request
+ * with 503 instead of a wrong result.
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    // Constructor that accepts a message
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.exception;
+
+/**
+ * Thrown when the deadline of a request has passed before or while a database call ran.
+ * <p>
+ * It is unchecked so that it passes the {@code catch (SQLException e)} blocks of the services and ends the request
+ * with 504 instead of a partial result.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    // Constructor that accepts a message
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,341 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Instruments JDBC connections with Micrometer metrics.
+ * <p>
+ * Connections handed out by {@link de.webstore.backend.config.DatabaseConnection} and by the data source of the
+ * {@link org.springframework.jdbc.core.JdbcTemplate} are wrapped in proxies that record:
+ * <ul>
+ *   <li>{@code webstore.db.connection.acquire}: time to obtain a connection, by source</li>
+ *   <li>{@code webstore.db.query}: execution time of every statement, by query, statement and outcome</li>
+ *   <li>{@code webstore.db.query.rows}: rows read or written per execution, by query and statement</li>
+ *   <li>{@code webstore.db.transactions}: commits and rollbacks</li>
+ * </ul>
+ * The query name is the service method that issued the statement (e.g. {@code OrderService.lockForClose}), the
+ * statement name its verb and first table (e.g. {@code select auftrag}).
+ * <p>
+ * As every statement passes through here, it is also where the {@link RequestDeadline} of the current request is
+ * applied as query timeout; a statement cancelled at the deadline ends with {@link DeadlineExceededException}.
+ */
+@Component
+public class JdbcMetrics {
+
+    private static final String PACKAGE = "de.webstore.backend.";
+    private static final Pattern TABLE = Pattern.compile("\\b(?:from|into|update)\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final MeterRegistry registry;
+    private final Map<String, QueryMeters> queryMeters = new ConcurrentHashMap<>();
+    private final Map<String, String> statementNames = new ConcurrentHashMap<>();
+    private final Counter commits;
+    private final Counter rollbacks;
+
+    @Autowired
+    public JdbcMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.commits = Counter.builder("webstore.db.transactions").description("Committed and rolled back transactions")
+                .tag("outcome", "commit").register(registry);
+        this.rollbacks = Counter.builder("webstore.db.transactions").description("Committed and rolled back transactions")
+                .tag("outcome", "rollback").register(registry);
+    }
+
+    /**
+     * Obtains a connection, timing the acquisition, and instruments it.
+     *
+     * @param source    names where the connection comes from, used as metric tag
+     * @param connector obtains the connection
+     * @return the instrumented connection
+     * @throws SQLException if the connection cannot be obtained
+     */
+    public Connection acquire(String source, Connector connector) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = connector.connect();
+        Timer.builder("webstore.db.connection.acquire").description("Time to obtain a database connection")
+                .tag("source", source).register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return instrument(connection);
+    }
+
+    /**
+     * Wraps a data source, so that all its connections are instrumented.
+     *
+     * @param source     names the data source, used as metric tag
+     * @param dataSource the data source
+     * @return the instrumented data source
+     */
+    public DataSource instrument(String source, DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return acquire(source, () -> (Connection) invoke(dataSource, method, args));
+                    }
+                    return invoke(dataSource, method, args);
+                });
+    }
+
+    /**
+     * Instruments a connection.
+     *
+     * @param connection the connection
+     * @return the instrumented connection
+     */
+    public Connection instrument(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                        case "prepareCall": {
+                            Statement statement = (Statement) invoke(connection, method, args);
+                            return instrument(statement, method.getReturnType(), meters(callerName(), (String) args[0]));
+                        }
+                        case "createStatement": {
+                            Statement statement = (Statement) invoke(connection, method, args);
+                            return instrument(statement, method.getReturnType(), null);
+                        }
+                        case "commit": {
+                            Object result = invoke(connection, method, args);
+                            commits.increment();
+                            return result;
+                        }
+                        case "rollback": {
+                            Object result = invoke(connection, method, args);
+                            // Rolling back to a savepoint does not end the transaction
+                            if (args == null || args.length == 0) {
+                                rollbacks.increment();
+                            }
+                            return result;
+                        }
+                        default:
+                            return invoke(connection, method, args);
+                    }
+                });
+    }
+
+    private Statement instrument(Statement statement, Class<?> type, QueryMeters prepared) {
+        return (Statement) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {type},
+                new StatementHandler(statement, prepared));
+    }
+
+    /**
+     * Returns the meters of a query, creating them on first use.
+     */
+    private QueryMeters meters(String query, String sql) {
+        String statement = sql != null ? statementNames.computeIfAbsent(sql, JdbcMetrics::statementName) : "batch";
+        return queryMeters.computeIfAbsent(query + '|' + statement, key -> new QueryMeters(
+                Timer.builder("webstore.db.query").description("Execution time of SQL statements")
+                        .tags("query", query, "statement", statement, "outcome", "success").register(registry),
+                Timer.builder("webstore.db.query").description("Execution time of SQL statements")
+                        .tags("query", query, "statement", statement, "outcome", "error").register(registry),
+                DistributionSummary.builder("webstore.db.query.rows").description("Rows read or written per SQL statement")
+                        .tags("query", query, "statement", statement).register(registry)));
+    }
+
+    /**
+     * Names a statement by its verb and first table, e.g. {@code select produkt}.
+     */
+    private static String statementName(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String verb = trimmed.substring(0, end).toLowerCase(Locale.ROOT);
+        Matcher matcher = TABLE.matcher(trimmed);
+        return matcher.find() ? verb + " " + matcher.group(1).toLowerCase(Locale.ROOT) : verb;
+    }
+
+    /**
+     * Names the application method that issued a statement, e.g. {@code OrderService.lockForClose}.
+     */
+    private static String callerName() {
+        Optional<StackWalker.StackFrame> caller = STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(PACKAGE)
+                        && !frame.getClassName().startsWith(PACKAGE + "metrics.")
+                        && !frame.getClassName().startsWith(PACKAGE + "config."))
+                .findFirst());
+        if (caller.isEmpty()) {
+            return "other";
+        }
+        String className = caller.get().getClassName();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        int inner = simpleName.indexOf('$');
+        if (inner > 0) {
+            simpleName = simpleName.substring(0, inner);
+        }
+        // Lambdas are named lambda$method$0
+        String methodName = caller.get().getMethodName();
+        if (methodName.startsWith("lambda$")) {
+            int next = methodName.indexOf('$', 7);
+            methodName = methodName.substring(7, next > 0 ? next : methodName.length());
+        }
+        return simpleName + "." + methodName;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Obtains a connection.
+     */
+    @FunctionalInterface
+    public interface Connector {
+        Connection connect() throws SQLException;
+    }
+
+    private record QueryMeters(Timer success, Timer error, DistributionSummary rows) {}
+
+    /**
+     * Times the executions of a statement and counts the rows they read or write.
+     */
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final QueryMeters prepared;
+        private RowCounter openResultSet;
+
+        private StatementHandler(Statement target, QueryMeters prepared) {
+            this.target = target;
+            this.prepared = prepared;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                QueryMeters meters = prepared;
+                if (meters == null) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                    meters = meters(callerName(), sql);
+                }
+                return execute(meters, method, args);
+            }
+            if (name.equals("getResultSet")) {
+                ResultSet resultSet = (ResultSet) JdbcMetrics.invoke(target, method, args);
+                return resultSet != null && prepared != null ? count(resultSet, prepared) : resultSet;
+            }
+            if (name.equals("close")) {
+                finishResultSet();
+            }
+            return JdbcMetrics.invoke(target, method, args);
+        }
+
+        private Object execute(QueryMeters meters, Method method, Object[] args) throws Throwable {
+            finishResultSet();
+            RequestDeadline.applyTo(target);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = JdbcMetrics.invoke(target, method, args);
+            } catch (Throwable e) {
+                meters.error().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (e instanceof SQLTimeoutException && RequestDeadline.isExceeded()) {
+                    throw new DeadlineExceededException("The request deadline has passed during a query.");
+                }
+                throw e;
+            }
+            meters.success().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (result instanceof ResultSet resultSet) {
+                return count(resultSet, meters);
+            }
+            if (result instanceof Integer rows) {
+                meters.rows().record(rows);
+            } else if (result instanceof Long rows) {
+                meters.rows().record(rows);
+            } else if (result instanceof int[] batch) {
+                long rows = 0;
+                for (int count : batch) {
+                    rows += Math.max(count, 0);
+                }
+                meters.rows().record(rows);
+            }
+            return result;
+        }
+
+        private ResultSet count(ResultSet resultSet, QueryMeters meters) {
+            openResultSet = new RowCounter(resultSet, meters.rows());
+            return (ResultSet) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                    openResultSet);
+        }
+
+        private void finishResultSet() {
+            if (openResultSet != null) {
+                openResultSet.finish();
+                openResultSet = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the rows read from a result set and records them once it is exhausted or closed.
+     */
+    private static final class RowCounter implements InvocationHandler {
+
+        private final ResultSet target;
+        private final DistributionSummary rows;
+        private long count;
+        private boolean finished;
+
+        private RowCounter(ResultSet target, DistributionSummary rows) {
+            this.target = target;
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcMetrics.invoke(target, method, args);
+            if (method.getName().equals("next")) {
+                if (Boolean.TRUE.equals(result)) {
+                    count++;
+                } else {
+                    finish();
+                }
+            } else if (method.getName().equals("close")) {
+                finish();
+            }
+            return result;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                rows.record(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.metrics;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Instruments the data source of the {@link JdbcTemplate}, so the statements the services run through it are
+ * measured like those on connections of {@link de.webstore.backend.config.DatabaseConnection}.
+ * <p>
+ * Only the template is affected; the pool itself and its own metrics stay untouched. {@link JdbcMetrics} is
+ * looked up lazily, so the meter registry is not created while the post processors are being set up.
+ */
+@Component
+public class JdbcTemplateMetricsPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<JdbcMetrics> jdbcMetrics;
+
+    public JdbcTemplateMetricsPostProcessor(ObjectProvider<JdbcMetrics> jdbcMetrics) {
+        this.jdbcMetrics = jdbcMetrics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof JdbcTemplate jdbcTemplate) {
+            DataSource dataSource = jdbcTemplate.getDataSource();
+            if (dataSource != null) {
+                jdbcTemplate.setDataSource(jdbcMetrics.getObject().instrument("jdbc-template", dataSource));
+            }
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,520 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.replica;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.sqlite.SQLiteConfig;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import de.webstore.backend.cache.ProductCache;
+import de.webstore.backend.cache.StockCache;
+import de.webstore.backend.config.DatabaseConnection;
+import de.webstore.backend.config.SqlDialect;
+import de.webstore.backend.dto.OutboxEventDTO;
+import de.webstore.backend.metrics.JdbcMetrics;
+import de.webstore.backend.service.OutboxService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Local SQLite copy of the catalog and the stock, for store-front instances that mostly read.
+ * <p>
+ * When {@code webstore.replica.enabled} is set, the product and stock reads of {@code ProductService} and
+ * {@code WarehouseService} use {@link DatabaseConnection#getReadConnection()}, which is served from this replica
+ * once it has been loaded. Writes and the checks made by writes still go to the primary database.
+ * <p>
+ * The replica is filled with a full copy on first start and then kept up to date by periodic delta pulls:
+ * <ul>
+ *   <li>products by their version (migration 006): every product changed or deleted above the last version</li>
+ *   <li>stock by the outbox: the stock rows of every product named by a stock event or contained in a closed
+ *       order are copied again; like the {@code OutboxRelay}, the watermark waits up to
+ *       {@code webstore.replica.gap-timeout-ms} for events that are still being committed</li>
+ *   <li>the warehouses, few rows, completely on every pull</li>
+ * </ul>
+ * After each pull the affected entries of the local caches are invalidated. Reads are at most one sync interval
+ * behind the primary. The sync positions are stored in the replica file, so a restarted instance serves its last
+ * state right away, also while the primary cannot be reached, and continues where it stopped. If the outbox no
+ * longer holds the events since the last pull (retention exceeded), the replica is copied in full again.
+ */
+@Component
+@ConditionalOnProperty(name = "webstore.replica.enabled", havingValue = "true")
+public class ReadReplica {
+
+    private static final String PRODUCT_TOKEN = "produkt_version";
+    private static final String OUTBOX_TOKEN = "outbox";
+
+    // Tables copied from the primary, with their columns
+    private static final String[] PRODUCT_COLUMNS = {"produktnummer", "name", "einheit", "preis"};
+    private static final String[] VERSION_COLUMNS = {"produktnummer", "version", "geloescht"};
+    private static final String[] WAREHOUSE_COLUMNS = {"lagernummer", "menge", "aktiv"};
+    private static final String[] LAGERT_COLUMNS = {"produkt_fk", "lager_fk"};
+    private static final String[] STOCK_COLUMNS = {"produkt_fk", "lager_fk", "menge"};
+
+    // Products per IN list when copying stock rows
+    private static final int IN_LIST_SIZE = 500;
+
+    private final DatabaseConnection primary;
+    private final OutboxService outboxService;
+    private final ProductCache productCache;
+    private final StockCache stockCache;
+    private final JdbcMetrics jdbcMetrics;
+
+    // File of the SQLite database
+    @Value("${webstore.replica.path:webstore-replica.db}")
+    private String path;
+
+    // Connections serving reads
+    @Value("${webstore.replica.pool-size:8}")
+    private int poolSize;
+
+    // Rows per pull and per insert batch
+    @Value("${webstore.replica.batch-size:1000}")
+    private int batchSize;
+
+    // How long a pull waits for a missing outbox event ID before skipping it
+    @Value("${webstore.replica.gap-timeout-ms:5000}")
+    private long gapTimeoutMs;
+
+    private HikariDataSource readers;
+
+    // Used by the sync only, which runs on one scheduler thread at a time
+    private Connection writer;
+    private long productVersion = -1;
+    private long outboxWatermark = -1;
+    private long gapSince;
+
+    // Whether the replica holds a complete copy and may serve reads
+    private volatile boolean ready;
+
+    @Autowired
+    public ReadReplica(DatabaseConnection primary, OutboxService outboxService, ProductCache productCache,
+                       StockCache stockCache, JdbcMetrics jdbcMetrics) {
+        this.primary = primary;
+        this.outboxService = outboxService;
+        this.productCache = productCache;
+        this.stockCache = stockCache;
+        this.jdbcMetrics = jdbcMetrics;
+    }
+
+    /**
+     * Returns whether the replica has been loaded and serves reads.
+     *
+     * @return true once the first full copy is complete
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Obtains a read-only connection to the replica.
+     *
+     * @return an instrumented connection; close it after use
+     * @throws SQLException if no connection is available
+     */
+    public Connection getConnection() throws SQLException {
+        return jdbcMetrics.acquire("replica", readers::getConnection);
+    }
+
+    @PostConstruct
+    void open() throws SQLException {
+        String url = "jdbc:sqlite:" + path;
+        writer = DriverManager.getConnection(url + "?journal_mode=WAL&synchronous=NORMAL&busy_timeout=5000");
+        createSchema();
+        productVersion = readToken(PRODUCT_TOKEN);
+        outboxWatermark = readToken(OUTBOX_TOKEN);
+
+        // sqlite-jdbc fixes the read-only flag when the connection is opened and rejects any later change, so the
+        // connections are opened read-only by the driver and the pool's flag only repeats the same value
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setReadOnly(true);
+        sqlite.setBusyTimeout(5000);
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("replica");
+        config.setJdbcUrl(url);
+        config.setDataSourceProperties(sqlite.toProperties());
+        config.setReadOnly(true);
+        config.setMaximumPoolSize(poolSize);
+        readers = new HikariDataSource(config);
+
+        ready = productVersion >= 0 && outboxWatermark >= 0;
+        System.out.println("Read replica " + path + (ready ? " serves its last state" : " will be loaded from the primary"));
+    }
+
+    @PreDestroy
+    void close() {
+        ready = false;
+        if (readers != null) {
+            readers.close();
+        }
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error closing the read replica: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pulls the changes from the primary.
+     */
+    @Scheduled(fixedDelayString = "${webstore.replica.sync-interval-ms:1000}")
+    public void sync() {
+        try {
+            if (!ready) {
+                copyAll();
+                return;
+            }
+            syncProducts();
+            syncStock();
+        } catch (SQLException e) {
+            rollback();
+            System.out.println("Error synchronizing the read replica: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the replica with a full copy of the primary.
+     */
+    private void copyAll() throws SQLException {
+        long start = System.currentTimeMillis();
+        // Positions first: changes made during the copy are pulled again afterwards
+        long outboxId = outboxService.findLatestId();
+        long version = 0;
+        try (Connection conn = primary.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT wert FROM produkt_sequenz WHERE id = 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                version = rs.getLong("wert");
+            }
+        }
+
+        writer.setAutoCommit(false);
+        try (Statement stmt = writer.createStatement()) {
+            for (String table : List.of("produktlagermenge", "lagert", "produkt_version", "produkt", "lager")) {
+                stmt.executeUpdate("DELETE FROM " + table);
+            }
+        }
+        long rows = 0;
+        try (Connection conn = primary.getConnection()) {
+            rows += copy(conn, "produkt", PRODUCT_COLUMNS, null, List.of());
+            rows += copy(conn, "produkt_version", VERSION_COLUMNS, null, List.of());
+            rows += copy(conn, "lager", WAREHOUSE_COLUMNS, null, List.of());
+            rows += copy(conn, "lagert", LAGERT_COLUMNS, null, List.of());
+            rows += copy(conn, "produktlagermenge", STOCK_COLUMNS, null, List.of());
+        }
+        setProductVersion(version);
+        writeToken(OUTBOX_TOKEN, outboxId);
+        writer.commit();
+        writer.setAutoCommit(true);
+
+        productVersion = version;
+        outboxWatermark = outboxId;
+        gapSince = 0;
+        ready = true;
+        stockCache.invalidateAllLocally();
+        System.out.println("Read replica loaded: " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Applies the products created, updated or deleted since the last pull.
+     */
+    private void syncProducts() throws SQLException {
+        String sql = "SELECT v.produktnummer, v.version, v.geloescht, p.name, p.einheit, p.preis "
+                + "FROM produkt_version v LEFT JOIN produkt p ON p.produktnummer = v.produktnummer "
+                + "WHERE v.version > ? ORDER BY v.version LIMIT ?";
+        String upsertVersion = "INSERT INTO produkt_version (produktnummer, version, geloescht) VALUES (?, ?, ?)"
+                + SqlDialect.SQLITE.onConflictReplace(List.of("produktnummer"), "version", "geloescht");
+        String upsertProduct = "INSERT INTO produkt (produktnummer, name, einheit, preis) VALUES (?, ?, ?, ?)"
+                + SqlDialect.SQLITE.onConflictReplace(List.of("produktnummer"), "name", "einheit", "preis");
+
+        int pulled;
+        do {
+            List<String> productIds = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            writer.setAutoCommit(false);
+            try (Connection conn = primary.getConnection();
+                 PreparedStatement select = conn.prepareStatement(sql);
+                 PreparedStatement version = writer.prepareStatement(upsertVersion);
+                 PreparedStatement product = writer.prepareStatement(upsertProduct)) {
+                select.setLong(1, productVersion);
+                select.setInt(2, batchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        String productId = rs.getString("produktnummer");
+                        boolean deleted = rs.getBoolean("geloescht") || rs.getString("name") == null;
+                        version.setString(1, productId);
+                        version.setLong(2, rs.getLong("version"));
+                        version.setBoolean(3, deleted);
+                        version.executeUpdate();
+                        if (deleted) {
+                            deleteProduct(productId);
+                        } else {
+                            product.setString(1, productId);
+                            product.setString(2, rs.getString("name"));
+                            product.setString(3, rs.getString("einheit"));
+                            product.setBigDecimal(4, rs.getBigDecimal("preis"));
+                            product.executeUpdate();
+                        }
+                        productIds.add(productId);
+                        versions.add(rs.getLong("version"));
+                    }
+                }
+            }
+            pulled = productIds.size();
+            if (pulled > 0) {
+                setProductVersion(versions.get(pulled - 1));
+            }
+            writer.commit();
+            writer.setAutoCommit(true);
+
+            if (pulled > 0) {
+                productVersion = versions.get(pulled - 1);
+                for (int i = 0; i < pulled; i++) {
+                    productCache.invalidateLocally(productIds.get(i), versions.get(i));
+                }
+            }
+        } while (pulled == batchSize);
+    }
+
+    /**
+     * Copies the stock of the products changed since the last pull, and all warehouses.
+     */
+    private void syncStock() throws SQLException {
+        List<OutboxEventDTO> events = readPublishable(outboxWatermark);
+        if (!events.isEmpty() && events.get(0).getId() > outboxWatermark + 1 && eventsPurgedAfter(outboxWatermark)) {
+            System.out.println("Outbox events after " + outboxWatermark + " have been purged, copying the read replica again");
+            copyAll();
+            return;
+        }
+
+        Set<String> productIds = new LinkedHashSet<>();
+        List<String> closedOrders = new ArrayList<>();
+        for (OutboxEventDTO event : events) {
+            if (OutboxService.STOCK.equals(event.getAggregate())) {
+                productIds.add(event.getAggregateId());
+            } else if (OutboxService.ORDER_CLOSED.equals(event.getType())) {
+                closedOrders.add(event.getAggregateId());
+            }
+        }
+
+        writer.setAutoCommit(false);
+        try (Connection conn = primary.getConnection()) {
+            productIds.addAll(productsOfOrders(conn, closedOrders));
+            List<String> ids = new ArrayList<>(productIds);
+            for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+                String in = "produkt_fk IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                delete("produktlagermenge", in, chunk);
+                delete("lagert", in, chunk);
+                copy(conn, "lagert", LAGERT_COLUMNS, in, chunk);
+                copy(conn, "produktlagermenge", STOCK_COLUMNS, in, chunk);
+            }
+            delete("lager", null, List.of());
+            copy(conn, "lager", WAREHOUSE_COLUMNS, null, List.of());
+        }
+        if (!events.isEmpty()) {
+            writeToken(OUTBOX_TOKEN, events.get(events.size() - 1).getId());
+        }
+        writer.commit();
+        writer.setAutoCommit(true);
+
+        if (!events.isEmpty()) {
+            outboxWatermark = events.get(events.size() - 1).getId();
+            stockCache.invalidateAllLocally();
+        }
+    }
+
+    /**
+     * Reads the events above the watermark that can be applied, stopping at a gap that is still young.
+     */
+    private List<OutboxEventDTO> readPublishable(long after) throws SQLException {
+        List<OutboxEventDTO> publishable = new ArrayList<>();
+        long expected = after + 1;
+        for (OutboxEventDTO event : outboxService.findEvents(after, Long.MAX_VALUE, batchSize)) {
+            if (event.getId() != expected) {
+                // An earlier ID is not visible yet: still committing, or rolled back
+                long now = System.currentTimeMillis();
+                if (gapSince == 0) {
+                    gapSince = now;
+                }
+                if (now - gapSince < gapTimeoutMs) {
+                    break;
+                }
+            }
+            gapSince = 0;
+            publishable.add(event);
+            expected = event.getId() + 1;
+        }
+        return publishable;
+    }
+
+    private boolean eventsPurgedAfter(long watermark) throws SQLException {
+        try (Connection conn = primary.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(id) FROM outbox_ereignis");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() && rs.getLong(1) > watermark + 1;
+        }
+    }
+
+    private List<String> productsOfOrders(Connection conn, List<String> orderIds) throws SQLException {
+        List<String> productIds = new ArrayList<>();
+        for (int from = 0; from < orderIds.size(); from += IN_LIST_SIZE) {
+            List<String> chunk = orderIds.subList(from, Math.min(from + IN_LIST_SIZE, orderIds.size()));
+            String sql = "SELECT DISTINCT produktnummer FROM position WHERE auftragsnummer IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        productIds.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return productIds;
+    }
+
+    /**
+     * Copies the rows of a table from the primary into the replica.
+     *
+     * @return the number of rows copied
+     */
+    private long copy(Connection conn, String table, String[] columns, String where, List<String> parameters) throws SQLException {
+        String columnList = String.join(", ", columns);
+        String select = "SELECT " + columnList + " FROM " + table + (where != null ? " WHERE " + where : "");
+        String insert = "INSERT INTO " + table + " (" + columnList + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        long rows = 0;
+        try (PreparedStatement source = conn.prepareStatement(select);
+             PreparedStatement target = writer.prepareStatement(insert)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                source.setString(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = source.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 1; i <= columns.length; i++) {
+                        target.setObject(i, rs.getObject(i));
+                    }
+                    target.addBatch();
+                    if (++rows % batchSize == 0) {
+                        target.executeBatch();
+                    }
+                }
+            }
+            target.executeBatch();
+        }
+        return rows;
+    }
+
+    private void delete(String table, String where, List<String> parameters) throws SQLException {
+        try (PreparedStatement pstmt = writer.prepareStatement("DELETE FROM " + table + (where != null ? " WHERE " + where : ""))) {
+            for (int i = 0; i < parameters.size(); i++) {
+                pstmt.setString(i + 1, parameters.get(i));
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void deleteProduct(String productId) throws SQLException {
+        for (String sql : List.of("DELETE FROM produktlagermenge WHERE produkt_fk = ?", "DELETE FROM lagert WHERE produkt_fk = ?",
+                "DELETE FROM produkt WHERE produktnummer = ?")) {
+            try (PreparedStatement pstmt = writer.prepareStatement(sql)) {
+                pstmt.setString(1, productId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Stores the product version, both as sync position and as catalog version served to clients.
+     */
+    private void setProductVersion(long version) throws SQLException {
+        try (PreparedStatement pstmt = writer.prepareStatement("UPDATE produkt_sequenz SET wert = ? WHERE id = 1")) {
+            pstmt.setLong(1, version);
+            pstmt.executeUpdate();
+        }
+        writeToken(PRODUCT_TOKEN, version);
+    }
+
+    private long readToken(String name) throws SQLException {
+        try (PreparedStatement pstmt = writer.prepareStatement("SELECT wert FROM replika_stand WHERE schluessel = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private void writeToken(String name, long value) throws SQLException {
+        String sql = "INSERT INTO replika_stand (schluessel, wert) VALUES (?, ?)"
+                + SqlDialect.SQLITE.onConflictReplace(List.of("schluessel"), "wert");
+        try (PreparedStatement pstmt = writer.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.setLong(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Creates the tables of the SQLite schema that do not exist yet, and the table of the sync positions.
+     */
+    private void createSchema() throws SQLException {
+        String script;
+        try (InputStream in = ReadReplica.class.getClassLoader().getResourceAsStream("schema/sqlite.sql")) {
+            if (in == null) {
+                throw new SQLException("schema/sqlite.sql not found on the classpath");
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Cannot read schema/sqlite.sql: " + e.getMessage(), e);
+        }
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        try (Statement stmt = writer.createStatement()) {
+            for (String statement : withoutComments.toString().split(";")) {
+                if (!statement.isBlank()) {
+                    stmt.execute(statement);
+                }
+            }
+            stmt.execute("CREATE TABLE IF NOT EXISTS replika_stand (schluessel varchar(32) NOT NULL PRIMARY KEY, wert bigint NOT NULL)");
+        }
+    }
+
+    private void rollback() {
+        try {
+            if (!writer.getAutoCommit()) {
+                writer.rollback();
+                writer.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error during rollback of the read replica: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.cache.BoundedTtlCache;
+import de.webstore.backend.config.DatabaseConnection;
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.exception.ErrorResponse;
+
+/**
+ * Service for answering retried write requests from a store of earlier responses.
+ * <p>
+ * A client that sends an {@code Idempotency-Key} header gets exactly one execution of the request per key:
+ * the first request is executed and its response is stored together with a fingerprint of the request;
+ * retries with the same key and fingerprint are answered from the store without touching the order tables.
+ * Reusing a key for a different request is rejected, as is a retry that arrives while the first request is
+ * still running.
+ * <p>
+ * Responses are kept in a bounded, TTL-evicted in-memory store. Optionally they are also persisted in the
+ * {@code idempotenz_schluessel} table, which makes keys survive restarts and work across several instances.
+ * If the table cannot be read, the request is answered with 503 instead of being executed a second time. A key
+ * that is still pending after {@code webstore.idempotency.pending-lease-seconds}, e.g. because the instance
+ * running the request crashed, may be claimed again by a retry of the same request.
+ */
+@Service
+public class IdempotencyService {
+
+    // Response header marking a response that was answered from the store
+    public static final String REPLAY_HEADER = "Idempotent-Replayed";
+
+    private final DatabaseConnection databaseConnection;
+    private final ObjectMapper objectMapper;
+    private final BoundedTtlCache<String, StoredResponse> responses;
+    private final Duration ttl;
+
+    // Whether responses are also persisted in the database
+    @Value("${webstore.idempotency.persist:false}")
+    private boolean persist;
+
+    // Time after which a persisted claim that has not completed may be taken over; longer than any request may run
+    @Value("${webstore.idempotency.pending-lease-seconds:120}")
+    private long pendingLeaseSeconds;
+
+    @Autowired
+    public IdempotencyService(DatabaseConnection databaseConnection, ObjectMapper objectMapper,
+                              @Value("${webstore.idempotency.max-entries:10000}") int maxEntries,
+                              @Value("${webstore.idempotency.ttl-minutes:1440}") long ttlMinutes) {
+        this.databaseConnection = databaseConnection;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.responses = new BoundedTtlCache<>(maxEntries, ttl);
+    }
+
+    /**
+     * Executes a write request at most once per idempotency key.
+     *
+     * @param idempotencyKey the value of the {@code Idempotency-Key} header, or {@code null} to execute unconditionally
+     * @param operation      the method and path of the request, e.g. {@code "PUT /order/close/42"}
+     * @param requestBody    the request body, or {@code null} if the request has none
+     * @param action         executes the request and returns its response
+     * @return the response of the first execution for this key
+     */
+    public ResponseEntity<?> execute(String idempotencyKey, String operation, Object requestBody, Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        // Fingerprint before executing, the action may modify the request body
+        String fingerprint = fingerprint(operation, requestBody);
+        StoredResponse pending = StoredResponse.pending(fingerprint);
+
+        StoredResponse existing = responses.putIfAbsent(idempotencyKey, pending);
+        if (existing == null && persist) {
+            try {
+                existing = claimInDatabase(idempotencyKey, pending);
+            } catch (SQLException e) {
+                // Without the stored state the request might run a second time, so it is not run at all
+                System.out.println("Error claiming idempotency key: " + e.getMessage());
+                responses.remove(idempotencyKey);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(new ErrorResponse("The Idempotency-Key could not be checked, please retry later."));
+            } catch (RuntimeException e) {
+                // E.g. no connection left or the deadline passed: the key stays free for the retry
+                responses.remove(idempotencyKey);
+                throw e;
+            }
+            if (existing != null) {
+                // A pending claim of another instance must not be remembered, it completes there
+                if (existing.isPending()) {
+                    responses.remove(idempotencyKey);
+                } else {
+                    responses.put(idempotencyKey, existing);
+                }
+            }
+        }
+        if (existing != null) {
+            return replay(existing, fingerprint);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(idempotencyKey);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            // Server errors are not final, the client must be able to retry with the same key
+            release(idempotencyKey);
+            return response;
+        }
+
+        StoredResponse completed = StoredResponse.completed(fingerprint, response.getStatusCode().value(), response.getBody());
+        responses.put(idempotencyKey, completed);
+        if (persist) {
+            storeInDatabase(idempotencyKey, completed);
+        }
+        return response;
+    }
+
+    /**
+     * Removes persisted keys older than the configured TTL.
+     */
+    @Scheduled(fixedDelayString = "${webstore.idempotency.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!persist) {
+            return;
+        }
+        String sql = "DELETE FROM idempotenz_schluessel WHERE erstellt < ?";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.from(Instant.now().minus(ttl)));
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Error purging idempotency keys: " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String fingerprint) {
+        if (!stored.fingerprint().equals(fingerprint)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new ErrorResponse("Idempotency-Key was already used for a different request."));
+        }
+        if (stored.isPending()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse("A request with this Idempotency-Key is still being processed."));
+        }
+        return ResponseEntity.status(stored.status()).header(REPLAY_HEADER, "true").body(stored.body());
+    }
+
+    private void release(String idempotencyKey) {
+        responses.remove(idempotencyKey);
+        if (persist) {
+            // Also after a request that ran out of time, so the client can retry with the same key
+            RequestDeadline.runWithout(() -> {
+                String sql = "DELETE FROM idempotenz_schluessel WHERE schluessel = ?";
+                try (Connection conn = databaseConnection.getConnection();
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, idempotencyKey);
+                    pstmt.executeUpdate();
+                } catch (SQLException e) {
+                    System.out.println("Error releasing idempotency key: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Claims the key in the database by inserting a pending row, or by taking over a pending row of the same
+     * request whose lease has expired.
+     *
+     * @return {@code null} if the key was claimed, otherwise the response stored by an earlier request
+     * @throws SQLException if the claim could not be checked; the request must then not be executed
+     */
+    private StoredResponse claimInDatabase(String idempotencyKey, StoredResponse pending) throws SQLException {
+        String insertSql = "INSERT INTO idempotenz_schluessel (schluessel, fingerabdruck, erstellt) VALUES (?, ?, ?)";
+        // The row can be released by its owner between the insert and the read, so the insert is retried
+        for (int attempt = 0; attempt < 3; attempt++) {
+            try (Connection conn = databaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+                pstmt.setString(1, idempotencyKey);
+                pstmt.setString(2, pending.fingerprint());
+                pstmt.setTimestamp(3, Timestamp.from(Instant.now()));
+                pstmt.executeUpdate();
+                return null;
+            } catch (SQLException e) {
+                if (!databaseConnection.getDialect().isDuplicateKey(e)) {
+                    throw e;
+                }
+            }
+            // Another request (possibly on another instance) already owns this key
+            StoredResponse existing = loadFromDatabase(idempotencyKey);
+            if (existing == null) {
+                continue;
+            }
+            if (existing.isPending() && existing.fingerprint().equals(pending.fingerprint())
+                    && takeOverExpiredClaim(idempotencyKey, pending.fingerprint())) {
+                return null;
+            }
+            return existing;
+        }
+        throw new SQLException("Idempotency key " + idempotencyKey + " could not be claimed.");
+    }
+
+    /**
+     * Takes over a pending claim that is older than the lease, e.g. of an instance that crashed while running
+     * the request. Only one of several concurrent retries succeeds.
+     *
+     * @return true if the claim was taken over
+     */
+    private boolean takeOverExpiredClaim(String idempotencyKey, String fingerprint) throws SQLException {
+        String sql = "UPDATE idempotenz_schluessel SET erstellt = ? "
+                + "WHERE schluessel = ? AND fingerabdruck = ? AND status_code IS NULL AND erstellt < ?";
+        Instant now = Instant.now();
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.from(now));
+            pstmt.setString(2, idempotencyKey);
+            pstmt.setString(3, fingerprint);
+            pstmt.setTimestamp(4, Timestamp.from(now.minusSeconds(pendingLeaseSeconds)));
+            return pstmt.executeUpdate() == 1;
+        }
+    }
+
+    private StoredResponse loadFromDatabase(String idempotencyKey) throws SQLException {
+        String sql = "SELECT fingerabdruck, status_code, antwort FROM idempotenz_schluessel WHERE schluessel = ?";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, idempotencyKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                int status = rs.getInt("status_code");
+                if (rs.wasNull()) {
+                    return StoredResponse.pending(rs.getString("fingerabdruck"));
+                }
+                String body = rs.getString("antwort");
+                JsonNode json = null;
+                if (body != null) {
+                    try {
+                        json = objectMapper.readTree(body);
+                    } catch (JsonProcessingException e) {
+                        throw new SQLException("Stored response of idempotency key " + idempotencyKey + " is not valid JSON.", e);
+                    }
+                }
+                return StoredResponse.completed(rs.getString("fingerabdruck"), status, json);
+            }
+        }
+    }
+
+    private void storeInDatabase(String idempotencyKey, StoredResponse completed) {
+        String sql = "UPDATE idempotenz_schluessel SET status_code = ?, antwort = ? WHERE schluessel = ?";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, completed.status());
+            pstmt.setString(2, completed.body() != null ? objectMapper.writeValueAsString(completed.body()) : null);
+            pstmt.setString(3, idempotencyKey);
+            pstmt.executeUpdate();
+        } catch (SQLException | JsonProcessingException e) {
+            System.out.println("Error storing idempotency key: " + e.getMessage());
+        }
+    }
+
+    private String fingerprint(String operation, Object requestBody) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            if (requestBody != null) {
+                digest.update(objectMapper.writeValueAsBytes(requestBody));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Could not fingerprint request.", e);
+        }
+    }
+
+    /**
+     * A stored response; {@code status} is 0 while the first request is still running.
+     */
+    private record StoredResponse(String fingerprint, int status, Object body) {
+
+        static StoredResponse pending(String fingerprint) {
+            return new StoredResponse(fingerprint, 0, null);
+        }
+
+        static StoredResponse completed(String fingerprint, int status, Object body) {
+            return new StoredResponse(fingerprint, status, body);
+        }
+
+        boolean isPending() {
+            return status == 0;
+        }
+    }
+}
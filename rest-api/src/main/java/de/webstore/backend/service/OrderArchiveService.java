@@ -0,0 +1,180 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import de.webstore.backend.config.DatabaseConnection;
+
+/**
+ * Service moving old closed orders out of the live tables.
+ * <p>
+ * Closed orders older than {@code webstore.archive.min-age-days} are moved with their positions from
+ * {@code auftrag}/{@code position} to {@code auftrag_archiv}/{@code position_archiv}. Each chunk is moved in
+ * its own short transaction, so the job never holds locks on many rows at once and can be interrupted at any
+ * point without leaving an order half-archived. An {@code ORDER_ARCHIVED} event is appended for each moved
+ * order in the same transaction, as the order leaves the live order list.
+ */
+@Service
+public class OrderArchiveService {
+
+    private final DatabaseConnection databaseConnection;
+    private final OutboxService outboxService;
+
+    // Whether the scheduled archival runs at all
+    @Value("${webstore.archive.enabled:false}")
+    private boolean enabled;
+
+    // Closed orders placed more than this many days ago are archived
+    @Value("${webstore.archive.min-age-days:90}")
+    private int minAgeDays;
+
+    // Orders moved per transaction
+    @Value("${webstore.archive.chunk-size:500}")
+    private int chunkSize;
+
+    // Upper bound for the chunks moved per run, so a large backlog is worked off over several runs
+    @Value("${webstore.archive.max-chunks-per-run:100}")
+    private int maxChunksPerRun;
+
+    // Pause between two chunks to leave room for the regular workload
+    @Value("${webstore.archive.pause-ms:50}")
+    private long pauseMs;
+
+    @Autowired
+    public OrderArchiveService(DatabaseConnection databaseConnection, OutboxService outboxService) {
+        this.databaseConnection = databaseConnection;
+        this.outboxService = outboxService;
+    }
+
+    /**
+     * Runs the archival periodically if it is enabled.
+     */
+    @Scheduled(fixedDelayString = "${webstore.archive.interval-ms:3600000}")
+    public void archiveScheduled() {
+        if (!enabled) {
+            return;
+        }
+        int archived = archiveClosedOrders(LocalDate.now().minusDays(minAgeDays));
+        if (archived > 0) {
+            System.out.println("Archived " + archived + " closed orders.");
+        }
+    }
+
+    /**
+     * Moves closed orders placed before the given date into the archive tables, chunk by chunk.
+     *
+     * @param placedBefore orders placed before this date are archived
+     * @return the number of archived orders
+     */
+    public int archiveClosedOrders(LocalDate placedBefore) {
+        int archived = 0;
+        for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+            int moved;
+            try {
+                moved = archiveChunk(placedBefore);
+            } catch (SQLException e) {
+                System.out.println("Error archiving closed orders: " + e.getMessage());
+                break;
+            }
+            archived += moved;
+            if (moved < chunkSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Moves one chunk of closed orders in a single transaction.
+     * <p>
+     * The oldest closed orders are selected through the index on (status, datum, auftragsnummer) and locked,
+     * copied into the archive tables and then deleted from the live tables.
+     *
+     * @param placedBefore orders placed before this date are archived
+     * @return the number of orders moved
+     * @throws SQLException if a database access error occurs
+     */
+    private int archiveChunk(LocalDate placedBefore) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            List<String> orderIds = new ArrayList<>();
+            String selectSql = "SELECT auftragsnummer FROM auftrag WHERE status = 'geschlossen' AND datum < ? "
+                    + "ORDER BY datum, auftragsnummer LIMIT ?" + databaseConnection.getDialect().forUpdate();
+            try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                pstmt.setDate(1, java.sql.Date.valueOf(placedBefore));
+                pstmt.setInt(2, chunkSize);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        orderIds.add(rs.getString("auftragsnummer"));
+                    }
+                }
+            }
+            if (orderIds.isEmpty()) {
+                conn.commit();
+                return 0;
+            }
+
+            String placeholders = String.join(", ", Collections.nCopies(orderIds.size(), "?"));
+            List<String> statements = List.of(
+                    "INSERT INTO auftrag_archiv (auftragsnummer, datum, status) "
+                            + "SELECT auftragsnummer, datum, status FROM auftrag WHERE auftragsnummer IN (" + placeholders + ")",
+                    "INSERT INTO position_archiv (positionsnummer, produktnummer, auftragsnummer, menge) "
+                            + "SELECT positionsnummer, produktnummer, auftragsnummer, menge FROM position WHERE auftragsnummer IN (" + placeholders + ")",
+                    "DELETE FROM position WHERE auftragsnummer IN (" + placeholders + ")",
+                    "DELETE FROM auftrag WHERE auftragsnummer IN (" + placeholders + ")");
+            for (String sql : statements) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < orderIds.size(); i++) {
+                        pstmt.setString(i + 1, orderIds.get(i));
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+            for (String orderId : orderIds) {
+                outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.ORDER_ARCHIVED, Map.of("orderId", orderId));
+            }
+
+            conn.commit();
+            return orderIds.size();
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
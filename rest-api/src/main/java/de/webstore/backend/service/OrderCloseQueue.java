@@ -0,0 +1,238 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.cache.BoundedTtlCache;
+import de.webstore.backend.dto.CloseJobDTO;
+import de.webstore.backend.dto.OrderResultDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service for closing orders asynchronously.
+ * <p>
+ * Close requests are put on a bounded queue and answered immediately with a job. Worker threads drain the
+ * queue and close up to {@code batch-size} orders per database transaction via
+ * {@link OrderService#closeOrders(List)}, so the commit cost is shared by the whole batch. A worker that finds
+ * the queue almost empty lingers for a few milliseconds to let a batch fill up. Clients poll the job status
+ * or receive the completed job as a POST request to their callback URL.
+ */
+@Service
+public class OrderCloseQueue {
+
+    private final OrderService orderService;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<CloseJobDTO> queue;
+    private final BoundedTtlCache<String, CloseJobDTO> jobs;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    // Maximum number of orders closed per transaction
+    @Value("${webstore.order.close.batch-size:100}")
+    private int batchSize;
+
+    // Time a worker waits for a batch to fill up before closing what it has
+    @Value("${webstore.order.close.linger-ms:20}")
+    private long lingerMs;
+
+    // Number of worker threads draining the queue
+    @Value("${webstore.order.close.workers:1}")
+    private int workerCount;
+
+    // Hosts (host or host:port) that completed jobs may be POSTed to; callbacks are rejected while empty
+    @Value("${webstore.order.close.callback-allowed-hosts:}")
+    private String[] callbackAllowedHosts;
+
+    // Run the workers on virtual threads, like the requests
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    public OrderCloseQueue(OrderService orderService, ObjectMapper objectMapper,
+                           @Value("${webstore.order.close.queue-capacity:10000}") int queueCapacity,
+                           @Value("${webstore.order.close.job-retention-minutes:60}") long jobRetentionMinutes) {
+        this.orderService = orderService;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.jobs = new BoundedTtlCache<>(Math.max(queueCapacity * 10, 1000), Duration.ofMinutes(jobRetentionMinutes));
+    }
+
+    /**
+     * Enqueues an order for closing.
+     *
+     * @param orderId     the ID of the order to close
+     * @param callbackUrl a URL to POST the completed job to, or {@code null}
+     * @return the queued job, or {@code null} if the queue is full
+     */
+    public CloseJobDTO submit(String orderId, String callbackUrl) {
+        CloseJobDTO job = new CloseJobDTO(UUID.randomUUID().toString(), orderId, callbackUrl);
+        jobs.put(job.getJobId(), job);
+        if (!queue.offer(job)) {
+            jobs.remove(job.getJobId());
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Checks a callback URL against the configured hosts, so clients cannot make the server send requests to
+     * internal hosts, metadata endpoints or the actuator. The URL must be http or https without user info, and its
+     * host, or host and port, must be listed in {@code webstore.order.close.callback-allowed-hosts}.
+     *
+     * @param callbackUrl the URL given by the client
+     * @return true if completed jobs may be POSTed to it
+     */
+    public boolean isCallbackAllowed(String callbackUrl) {
+        URI uri;
+        try {
+            uri = new URI(callbackUrl);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        if (!scheme.equals("http") && !scheme.equals("https") || uri.getHost() == null || uri.getRawUserInfo() != null) {
+            return false;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        int port = uri.getPort() != -1 ? uri.getPort() : (scheme.equals("https") ? 443 : 80);
+        for (String allowed : callbackAllowedHosts) {
+            String entry = allowed.trim().toLowerCase(Locale.ROOT);
+            if (!entry.isEmpty() && (entry.equals(host) || entry.equals(host + ":" + port))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a job by its ID.
+     *
+     * @param jobId the job ID
+     * @return the job, or {@code null} if it is unknown or has expired
+     */
+    public CloseJobDTO findJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+            Thread worker = builder.name("order-close-worker-" + i).start(this::drain);
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                CloseJobDTO first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<CloseJobDTO> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                // Linger briefly so that a trickle of requests still forms batches
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    CloseJobDTO next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("Error in order close worker: " + e.getMessage());
+            }
+        }
+    }
+
+    private void process(List<CloseJobDTO> batch) {
+        List<String> orderIds = new ArrayList<>(batch.size());
+        for (CloseJobDTO job : batch) {
+            job.setState(CloseJobDTO.State.RUNNING);
+            orderIds.add(job.getOrderId());
+        }
+
+        Map<String, OrderResultDTO> resultsByOrder = new HashMap<>();
+        for (OrderResultDTO result : orderService.closeOrders(orderIds)) {
+            resultsByOrder.put(result.getOrderId(), result);
+        }
+
+        for (CloseJobDTO job : batch) {
+            OrderResultDTO result = resultsByOrder.get(job.getOrderId());
+            job.complete(result != null ? result
+                    : new OrderResultDTO(job.getOrderId(), OrderResultDTO.Outcome.FAILED, "No result for order."));
+            if (job.getCallbackUrl() != null) {
+                notifyCallback(job);
+            }
+        }
+    }
+
+    private void notifyCallback(CloseJobDTO job) {
+        if (!isCallbackAllowed(job.getCallbackUrl())) {
+            System.out.println("Close job callback not allowed: " + job.getCallbackUrl());
+            return;
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(job.getCallbackUrl()))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(job)))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .exceptionally(e -> {
+                        System.out.println("Error notifying close job callback " + job.getCallbackUrl() + ": " + e.getMessage());
+                        return null;
+                    });
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            System.out.println("Error notifying close job callback " + job.getCallbackUrl() + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,36 @@
 /* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
 package de.webstore.backend.service;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import de.webstore.backend.cache.ClosedOrderCache;
+import de.webstore.backend.cache.StockCache;
+import de.webstore.backend.dto.BulkOrderRequestDTO;
+import de.webstore.backend.dto.BulkOrderResultDTO;
 import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.OrderDetailDTO;
+import de.webstore.backend.dto.OrderLineDTO;
+import de.webstore.backend.dto.OrderResultDTO;
 import de.webstore.backend.dto.PositionDTO;
+import de.webstore.backend.dto.ProductDTO;
+import de.webstore.backend.exception.DeadlineExceededException;
 import de.webstore.backend.exception.InsufficientStockException;
 import de.webstore.backend.exception.OrderClosedException;
 import de.webstore.backend.exception.OrderNotFoundException;
@@ -24,6 +40,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import de.webstore.backend.config.DatabaseConnection;
 
 /**
@@ -38,34 +55,122 @@ public class OrderService {
     // Database connection dependency injected by Spring
     private final DatabaseConnection databaseConnection;
 
+    // Maintains the sales rollups within the closing transaction
+    private final SalesReportService salesReportService;
+
+    // Closed orders never change, so they are answered from memory once known
+    private final ClosedOrderCache closedOrderCache;
+
+    // Records an event for every change within the changing transaction
+    private final OutboxService outboxService;
+
+    // Closing an order deducts stock, which changes the cached stock aggregates
+    private final StockCache stockCache;
+
     @Autowired
-    public OrderService(DatabaseConnection databaseConnection) {
+    public OrderService(DatabaseConnection databaseConnection, SalesReportService salesReportService,
+                        ClosedOrderCache closedOrderCache, OutboxService outboxService, StockCache stockCache) {
         this.databaseConnection = databaseConnection;
+        this.salesReportService = salesReportService;
+        this.closedOrderCache = closedOrderCache;
+        this.outboxService = outboxService;
+        this.stockCache = stockCache;
     }
 
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
+    // Page size used by the order listing when the client does not ask for one
+    @Value("${webstore.order.page-size:100}")
+    private int defaultPageSize;
+
+    // Upper bound for the page size a client may request
+    @Value("${webstore.order.max-page-size:1000}")
+    private int maxPageSize;
+
+    // Orders processed per transaction by the bulk close and bulk delete operations
+    @Value("${webstore.order.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    // Upper bound for the number of orders a single bulk request may process
+    @Value("${webstore.order.bulk.max-orders:100000}")
+    private int bulkMaxOrders;
 
     /**
-     * Retrieves all orders from the database.
+     * Retrieves the first page of all orders, ordered by date and order ID.
      *
-     * @return a list of all orders
+     * @return the first page of orders
      */
     public List<OrderDTO> findAll() {
+        return findAll(null, null, null, null, null, null);
+    }
+
+    /**
+     * Retrieves one page of orders matching the given filters.
+     * <p>
+     * Orders are returned in ascending order of {@code (datum, auftragsnummer)}. Pagination is keyset based:
+     * to fetch the next page, pass the date and ID of the last order of the current page as
+     * {@code afterDate} and {@code afterId}. Unlike an offset, the cursor lets the database seek directly into
+     * the {@code idx_auftrag_status_datum} / {@code idx_auftrag_datum} indexes, so every page costs the same
+     * regardless of how deep into the table it lies.
+     *
+     * @param status    only return orders with this status ("offen" or "geschlossen"), or {@code null} for all
+     * @param from      only return orders placed on or after this date, or {@code null}
+     * @param to        only return orders placed on or before this date, or {@code null}
+     * @param afterDate the date of the last order of the previous page, or {@code null} for the first page
+     * @param afterId   the ID of the last order of the previous page, or {@code null} for the first page
+     * @param limit     the maximum number of orders to return, or {@code null} for the default page size;
+     *                  clamped to the configured maximum page size
+     * @return a list of at most {@code limit} orders
+     * @throws IllegalArgumentException if the status is unknown or only one half of the cursor is given
+     */
+    public List<OrderDTO> findAll(String status, LocalDate from, LocalDate to, LocalDate afterDate, String afterId, Integer limit) {
+        if (status != null && !"offen".equals(status) && !"geschlossen".equals(status)) {
+            throw new IllegalArgumentException("Unknown order status: " + status);
+        }
+        if ((afterDate == null) != (afterId == null)) {
+            throw new IllegalArgumentException("afterDate and afterId must be given together.");
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+
+        StringBuilder sql = new StringBuilder("SELECT auftragsnummer, datum, status FROM auftrag WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (status != null) {
+            sql.append(" AND status = ?");
+            params.add(status);
+        }
+        if (from != null) {
+            sql.append(" AND datum >= ?");
+            params.add(java.sql.Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND datum <= ?");
+            params.add(java.sql.Date.valueOf(to));
+        }
+        if (afterDate != null) {
+            // Expanded form of (datum, auftragsnummer) > (?, ?), which MySQL can turn into an index range scan
+            sql.append(" AND (datum > ? OR (datum = ? AND auftragsnummer > ?))");
+            params.add(java.sql.Date.valueOf(afterDate));
+            params.add(java.sql.Date.valueOf(afterDate));
+            params.add(afterId);
+        }
+        sql.append(" ORDER BY datum, auftragsnummer LIMIT ?");
+        params.add(pageSize);
+
         List<OrderDTO> orders = new ArrayList<>();
-        String sql = "SELECT * FROM auftrag";
 
         // Try-with-resources statement ensures that each resource is closed at the end of the statement
         try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
-            
-            while (rs.next()) {
-                OrderDTO order = new OrderDTO();
-                order.setOrderId(rs.getString("auftragsnummer"));
-                order.setDate(rs.getDate("Datum").toLocalDate());
-                order.setStatus(rs.getString("status"));
-                orders.add(order);
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    OrderDTO order = new OrderDTO();
+                    order.setOrderId(rs.getString("auftragsnummer"));
+                    order.setDate(rs.getDate("datum").toLocalDate());
+                    order.setStatus(rs.getString("status"));
+                    orders.add(order);
+                }
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
@@ -75,33 +180,175 @@ public class OrderService {
 
     /**
      * Finds a specific order by its ID and throws OrderNotFoundException if not found.
+     * Orders that have been archived are read from the archive. Closed orders are served from the
+     * {@link ClosedOrderCache} once they have been read.
      *
      * @param orderId the order ID
      * @return the found order
      * @throws OrderNotFoundException if the order with the given ID is not found
      */
     public OrderDTO findById(String orderId) {
-        OrderDTO order = null;
-        String sql = "SELECT * FROM auftrag WHERE auftragsnummer = ?";
+        OrderDTO order = closedOrderCache.getOrder(orderId);
+        if (order != null) {
+            return order;
+        }
+        if (closedOrderCache.isKnownMissing(orderId)) {
+            throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+        }
+
+        try (Connection conn = databaseConnection.getConnection()) {
+            for (String table : List.of("auftrag", "auftrag_archiv")) {
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM " + table + " WHERE auftragsnummer = ?")) {
+                    pstmt.setString(1, orderId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            order = new OrderDTO();
+                            order.setOrderId(rs.getString("auftragsnummer"));
+                            order.setStatus(rs.getString("status"));
+                            order.setDate(rs.getDate("datum").toLocalDate());
+                            break;
+                        }
+                    }
+                }
+            }
+            if (order == null) {
+                // If the order with the specified ID is not found, throw OrderNotFoundException
+                closedOrderCache.markMissing(orderId);
+                throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+            }
+            closedOrderCache.putOrder(order);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            // Consider wrapping and rethrowing SQLException as a runtime exception or a custom checked exception
+        }
+        return order;
+    }
 
+    /**
+     * Finds an order together with all of its positions, line totals and the order total.
+     * <p>
+     * The order, its positions and the referenced products are read with a single join, so the cost of
+     * this call does not grow with the number of positions. Orders that have been archived are read from
+     * the archive tables.
+     *
+     * @param orderId         the order ID
+     * @param includeProducts whether to attach the full product data to each line
+     * @return the order with its lines
+     * @throws OrderNotFoundException if the order with the given ID is not found
+     */
+    public OrderDetailDTO findDetailById(String orderId, boolean includeProducts) {
+        // Product data can change after the order was closed, so only the positions of details without products
+        // are cached and the totals are computed from the current prices
+        if (!includeProducts) {
+            OrderDetailDTO cached = closedOrderCache.getDetail(orderId);
+            if (cached != null && applyCurrentPrices(cached)) {
+                return cached;
+            }
+        }
+        if (closedOrderCache.isKnownMissing(orderId)) {
+            throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+        }
+
+        OrderDetailDTO order = findDetailById(orderId, includeProducts, "auftrag", "position");
+        if (order == null) {
+            order = findDetailById(orderId, includeProducts, "auftrag_archiv", "position_archiv");
+        }
+        if (order == null) {
+            closedOrderCache.markMissing(orderId);
+            throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+        }
+        if (includeProducts) {
+            closedOrderCache.putOrder(new OrderDTO(order.getOrderId(), order.getDate(), order.getStatus()));
+        } else {
+            closedOrderCache.putDetail(order);
+        }
+        return order;
+    }
+
+    /**
+     * Sets the line totals and the order total of cached order details from the current product prices.
+     *
+     * @return false if a price could not be read; the details must then be read from the database
+     */
+    private boolean applyCurrentPrices(OrderDetailDTO order) {
+        List<String> productIds = new ArrayList<>(new LinkedHashSet<>(
+                order.getPositions().stream().map(OrderLineDTO::getProductId).toList()));
+        Map<String, BigDecimal> prices = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            String sql = "SELECT produktnummer, preis FROM produkt WHERE produktnummer IN ("
+                    + String.join(", ", Collections.nCopies(productIds.size(), "?")) + ")";
+            try (Connection conn = databaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < productIds.size(); i++) {
+                    pstmt.setString(i + 1, productIds.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        prices.put(rs.getString("produktnummer"), rs.getBigDecimal("preis"));
+                    }
+                }
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+                return false;
+            }
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (OrderLineDTO line : order.getPositions()) {
+            BigDecimal price = prices.get(line.getProductId());
+            if (price == null) {
+                return false;
+            }
+            line.setLineTotal(price.multiply(BigDecimal.valueOf(line.getQuantity())));
+            total = total.add(line.getLineTotal());
+        }
+        order.setTotal(total);
+        return true;
+    }
+
+    private OrderDetailDTO findDetailById(String orderId, boolean includeProducts, String orderTable, String positionTable) {
+        String sql = """
+            SELECT a.auftragsnummer, a.datum, a.status,
+                   p.positionsnummer, p.produktnummer, p.menge,
+                   pr.name, pr.einheit, pr.preis
+            FROM %s a
+            LEFT JOIN %s p ON p.auftragsnummer = a.auftragsnummer
+            LEFT JOIN produkt pr ON pr.produktnummer = p.produktnummer
+            WHERE a.auftragsnummer = ?
+            ORDER BY p.positionsnummer""".formatted(orderTable, positionTable);
+
+        OrderDetailDTO order = null;
         try (Connection conn = databaseConnection.getConnection();
-            PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
             pstmt.setString(1, orderId);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    order = new OrderDTO();
-                    order.setOrderId(rs.getString("auftragsnummer"));
-                    order.setStatus(rs.getString("status"));
-                    order.setDate(rs.getDate("datum").toLocalDate());
-                } else {
-                    // If the order with the specified ID is not found, throw OrderNotFoundException
-                    throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+                while (rs.next()) {
+                    if (order == null) {
+                        order = new OrderDetailDTO();
+                        order.setOrderId(rs.getString("auftragsnummer"));
+                        order.setDate(rs.getDate("datum").toLocalDate());
+                        order.setStatus(rs.getString("status"));
+                    }
+                    // An order without positions yields exactly one row with NULL position columns
+                    String positionId = rs.getString("positionsnummer");
+                    if (positionId == null) {
+                        continue;
+                    }
+                    OrderLineDTO line = new OrderLineDTO();
+                    line.setPositionId(positionId);
+                    line.setProductId(rs.getString("produktnummer"));
+                    line.setQuantity(rs.getInt("menge"));
+                    BigDecimal price = rs.getBigDecimal("preis");
+                    line.setLineTotal(price.multiply(BigDecimal.valueOf(line.getQuantity())));
+                    if (includeProducts) {
+                        line.setProduct(new ProductDTO(line.getProductId(), rs.getString("name"), rs.getString("einheit"), price));
+                    }
+                    order.getPositions().add(line);
+                    order.setTotal(order.getTotal().add(line.getLineTotal()));
                 }
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
-            // Consider wrapping and rethrowing SQLException as a runtime exception or a custom checked exception
         }
         return order;
     }
@@ -117,21 +364,28 @@ public class OrderService {
         String uuid = UUID.randomUUID().toString();
         orderDTO.setOrderId(uuid); // Set autogenerated UUID as order ID
         String sql = "INSERT INTO auftrag (auftragsnummer, datum, status) VALUES (?, ?, ?)";
-        try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-            
-            pstmt.setString(1, uuid);
-            pstmt.setDate(2, java.sql.Date.valueOf(orderDTO.getDate()));
-            pstmt.setString(3, "offen");  // status is always 'offen' when creating a new order
-            pstmt.executeUpdate();
-            
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    orderDTO.setOrderId(generatedKeys.getString(1));
-                }
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            // The key is generated here; SQLite would report its internal row ID as generated key
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, uuid);
+                pstmt.setDate(2, java.sql.Date.valueOf(orderDTO.getDate()));
+                pstmt.setString(3, "offen");  // status is always 'offen' when creating a new order
+                pstmt.executeUpdate();
             }
+            orderDTO.setStatus("offen");
+            outboxService.append(conn, OutboxService.ORDER, uuid, OutboxService.ORDER_CREATED, orderDTO);
+
+            conn.commit();
+            closedOrderCache.clearMissing(uuid);
         } catch (SQLException e) {
+            rollback(conn);
             System.out.println(e.getMessage());
+        } finally {
+            close(conn);
         }
         return orderDTO;
     }
@@ -178,20 +432,30 @@ public class OrderService {
 
         // Proceed to add the position with either requested or adjusted quantity
         String sql = "INSERT INTO position (positionsnummer, produktnummer, auftragsnummer, menge) VALUES (?, ?, ?, ?)";
-        try (Connection conn = databaseConnection.getConnection();
-            PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, uuid);
-            pstmt.setString(2, positionDTO.getProductId());
-            pstmt.setString(3, positionDTO.getOrderId());
-            pstmt.setInt(4, positionDTO.getQuantity());
-            pstmt.executeUpdate();
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
 
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, uuid);
+                pstmt.setString(2, positionDTO.getProductId());
+                pstmt.setString(3, positionDTO.getOrderId());
+                pstmt.setInt(4, positionDTO.getQuantity());
+                pstmt.executeUpdate();
+            }
+            outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.POSITION_ADDED, positionDTO);
+
+            conn.commit();
             // Successfully added the position, return the PositionDTO (including any message about adjusted quantity)
             return positionDTO;
         } catch (SQLException e) {
+            rollback(conn);
             System.out.println("Error adding order position: " + e.getMessage());
             // In a real scenario, consider logging this error and potentially throwing a custom exception
             return null;
+        } finally {
+            close(conn);
         }
     }
 
@@ -223,14 +487,38 @@ public class OrderService {
      * @param positionId the ID of the position to delete
      */
     public void deleteOrderPosition(String positionId) {
-        String sql = "DELETE FROM position WHERE positionsnummer = ?";
-        try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, positionId);
-            pstmt.executeUpdate();
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            String orderId = null;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT auftragsnummer FROM position WHERE positionsnummer = ?"
+                    + databaseConnection.getDialect().forUpdate())) {
+                pstmt.setString(1, positionId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        orderId = rs.getString("auftragsnummer");
+                    }
+                }
+            }
+
+            String sql = "DELETE FROM position WHERE positionsnummer = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, positionId);
+                pstmt.executeUpdate();
+            }
+            if (orderId != null) {
+                outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.POSITION_DELETED,
+                        Map.of("orderId", orderId, "positionId", positionId));
+            }
+
+            conn.commit();
         } catch (SQLException e) {
+            rollback(conn);
             System.out.println(e.getMessage());
+        } finally {
+            close(conn);
         }
     }
 
@@ -240,22 +528,49 @@ public class OrderService {
      * @param orderId the ID of the order to delete
      * @throws OrderClosedException 
      */
-    @SuppressWarnings("deprecation")
     public void deleteOrder(String orderId) throws OrderClosedException {
         // Check if the order is closed
-        String statusSql = "SELECT status FROM auftrag WHERE auftragsnummer = ?";
-        String status = jdbcTemplate.queryForObject(statusSql, new Object[]{orderId}, String.class);
-        if ("geschlossen".equals(status)) {
+        if (closedOrderCache.isKnownClosed(orderId)) {
             throw new OrderClosedException("Order with ID " + orderId + " is closed and cannot be deleted.");
         }
 
-        // Delete associated positions
-        String sqlPosition = "DELETE FROM position WHERE auftragsnummer = ?";
-        jdbcTemplate.update(sqlPosition, orderId);
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            // Lock the order so that it cannot be closed while it is being deleted
+            String status = lockOrderStatus(conn, orderId);
+            if ("geschlossen".equals(status)) {
+                throw new OrderClosedException("Order with ID " + orderId + " is closed and cannot be deleted.");
+            }
+
+            // Delete associated positions
+            String sqlPosition = "DELETE FROM position WHERE auftragsnummer = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlPosition)) {
+                pstmt.setString(1, orderId);
+                pstmt.executeUpdate();
+            }
 
-        // Delete the order
-        String sqlOrder = "DELETE FROM auftrag WHERE auftragsnummer = ?";
-        jdbcTemplate.update(sqlOrder, orderId);
+            // Delete the order
+            String sqlOrder = "DELETE FROM auftrag WHERE auftragsnummer = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlOrder)) {
+                pstmt.setString(1, orderId);
+                pstmt.executeUpdate();
+            }
+            outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.ORDER_DELETED, Map.of("orderId", orderId));
+
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            System.out.println(e.getMessage());
+            throw new RuntimeException("Database error occurred while deleting the order.", e);
+        } catch (RuntimeException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            close(conn);
+        }
     }
 
     /**
@@ -272,24 +587,14 @@ public class OrderService {
         try {
             conn = databaseConnection.getConnection();
             conn.setAutoCommit(false);
-            
-            // Verify if the order exists and is not already closed
-            if (!isOrderOpen(conn, orderId)) {
-                throw new OrderNotFoundException("Order not found or already closed: " + orderId);
-            }
-            
-            // Check and prepare stock deduction for each product in the order
-            Map<String, Integer> stockDeductions = prepareStockDeductions(conn, orderId);
-            
-            // Deduct stock from 'produktlagermenge' for each product
-            for (Map.Entry<String, Integer> entry : stockDeductions.entrySet()) {
-                deductStockForProductAndUpdateLager(conn, entry.getKey(), entry.getValue());
-            }
-            
-            // Close the order
-            closeOrderInDatabase(conn, orderId);
-            
+
+            Map<String, Set<Integer>> stockLocations = new HashMap<>();
+            OrderDTO order = lockForClose(conn, List.of(orderId), stockLocations).get(orderId);
+            Set<String> deductedProducts = closeOrderInTransaction(conn, orderId);
+
             conn.commit();
+            invalidateStock(deductedProducts, stockLocations);
+            closedOrderCache.putOrder(new OrderDTO(orderId, order.getDate(), "geschlossen"));
             return true;
         } catch (SQLException e) {
             try {
@@ -309,7 +614,423 @@ public class OrderService {
             }
         }
     }
-	
+
+    /**
+     * Closes several orders in a single transaction (group commit).
+     * <p>
+     * All orders and the stock rows of all their products are locked up front in sorted key order, so
+     * concurrent batches cannot deadlock each other. Each order is then closed within its own savepoint:
+     * an order that cannot be closed (not found, already closed, insufficient stock) is rolled back to its
+     * savepoint without affecting the other orders of the batch. The whole batch is committed once, so the
+     * commit latency is paid per batch instead of per order. If the request deadline passes, the whole batch
+     * is rolled back and the {@link DeadlineExceededException} is thrown.
+     *
+     * @param orderIds the IDs of the orders to close; duplicates are closed once
+     * @return one result per distinct order ID, in the order of first occurrence
+     */
+    public List<OrderResultDTO> closeOrders(List<String> orderIds) {
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        List<OrderResultDTO> results = new ArrayList<>();
+        if (distinctIds.isEmpty()) {
+            return results;
+        }
+
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            Map<String, Set<Integer>> stockLocations = new HashMap<>();
+            Set<String> deductedProducts = new HashSet<>();
+            Map<String, OrderDTO> orders = lockForClose(conn, distinctIds, stockLocations);
+            for (String orderId : distinctIds) {
+                String status = orders.containsKey(orderId) ? orders.get(orderId).getStatus() : null;
+                if (status == null && isArchived(conn, orderId)) {
+                    status = "geschlossen";
+                }
+                if (status == null) {
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.NOT_FOUND, "Order with ID " + orderId + " not found."));
+                    continue;
+                }
+                if ("geschlossen".equals(status)) {
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.ALREADY_CLOSED, "Order with ID " + orderId + " is already closed."));
+                    continue;
+                }
+
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    Set<String> products = closeOrderInTransaction(conn, orderId);
+                    conn.releaseSavepoint(savepoint);
+                    deductedProducts.addAll(products);
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.CLOSED, null));
+                } catch (InsufficientStockException e) {
+                    conn.rollback(savepoint);
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.INSUFFICIENT_STOCK, e.getMessage()));
+                } catch (DeadlineExceededException e) {
+                    // Not a failure of this order: the whole chunk is rolled back below
+                    throw e;
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback(savepoint);
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.FAILED, e.getMessage()));
+                }
+            }
+
+            conn.commit();
+            invalidateStock(deductedProducts, stockLocations);
+            for (OrderResultDTO result : results) {
+                if (result.getOutcome() == OrderResultDTO.Outcome.CLOSED) {
+                    OrderDTO order = orders.get(result.getOrderId());
+                    closedOrderCache.putOrder(new OrderDTO(order.getOrderId(), order.getDate(), "geschlossen"));
+                }
+            }
+        } catch (SQLException e) {
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+            e.printStackTrace();
+            // Nothing of the batch has been committed
+            results.clear();
+            for (String orderId : distinctIds) {
+                results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.FAILED, "Database error: " + e.getMessage()));
+            }
+        } catch (RuntimeException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Closes the selected orders in chunks of {@code webstore.order.bulk.chunk-size} orders, each chunk in
+     * one transaction (see {@link #closeOrders(List)}).
+     *
+     * @param request selects the orders by ID or as open orders older than a number of days
+     * @return the outcome of each order
+     * @throws IllegalArgumentException if the request does not select orders in exactly one way
+     */
+    public BulkOrderResultDTO closeOrdersInBulk(BulkOrderRequestDTO request) {
+        return processInChunks(request, this::closeOrders, OrderResultDTO.Outcome.CLOSED);
+    }
+
+    /**
+     * Deletes the selected orders and their positions in chunks of {@code webstore.order.bulk.chunk-size}
+     * orders. Each chunk is deleted in one transaction with one set-based statement per table; closed
+     * orders are skipped.
+     *
+     * @param request selects the orders by ID or as open orders older than a number of days
+     * @return the outcome of each order
+     * @throws IllegalArgumentException if the request does not select orders in exactly one way
+     */
+    public BulkOrderResultDTO deleteOrdersInBulk(BulkOrderRequestDTO request) {
+        return processInChunks(request, this::deleteOrders, OrderResultDTO.Outcome.DELETED);
+    }
+
+    /**
+     * Applies a bulk operation to the selected orders chunk by chunk and sums up the outcomes.
+     * <p>
+     * When the request deadline passes, the current chunk has been rolled back but earlier chunks are committed.
+     * Those are still reported, so the result is returned instead of a 504; explicitly selected orders that were
+     * not processed are reported as failed. Only if no chunk has been committed yet is the deadline rethrown.
+     */
+    private BulkOrderResultDTO processInChunks(BulkOrderRequestDTO request,
+                                               Function<List<String>, List<OrderResultDTO>> action,
+                                               OrderResultDTO.Outcome success) {
+        BulkOrderResultDTO summary = new BulkOrderResultDTO();
+        try {
+            forEachChunk(request, chunk -> summary.addAll(action.apply(chunk), success));
+        } catch (DeadlineExceededException e) {
+            if (summary.getProcessed() == 0) {
+                throw e;
+            }
+            if (request.getOrderIds() != null) {
+                Set<String> processed = new HashSet<>();
+                for (OrderResultDTO result : summary.getResults()) {
+                    processed.add(result.getOrderId());
+                }
+                List<OrderResultDTO> skipped = new ArrayList<>();
+                for (String orderId : new LinkedHashSet<>(request.getOrderIds())) {
+                    if (!processed.contains(orderId)) {
+                        skipped.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.FAILED,
+                                "The request deadline passed before the order was processed."));
+                    }
+                }
+                summary.addAll(skipped, success);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Deletes several open orders and their positions in a single transaction.
+     *
+     * @param orderIds the IDs of the orders to delete; duplicates are deleted once
+     * @return one result per distinct order ID, in the order of first occurrence
+     */
+    private List<OrderResultDTO> deleteOrders(List<String> orderIds) {
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        List<OrderResultDTO> results = new ArrayList<>();
+        if (distinctIds.isEmpty()) {
+            return results;
+        }
+
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            // Lock the orders so that none of them can be closed while the chunk is being deleted
+            Map<String, String> statuses = new HashMap<>();
+            String lockSql = "SELECT auftragsnummer, status FROM auftrag WHERE auftragsnummer IN (" + placeholders(distinctIds.size()) + ") "
+                    + "ORDER BY auftragsnummer" + databaseConnection.getDialect().forUpdate();
+            try (PreparedStatement pstmt = conn.prepareStatement(lockSql)) {
+                setStrings(pstmt, distinctIds);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        statuses.put(rs.getString("auftragsnummer"), rs.getString("status"));
+                    }
+                }
+            }
+
+            List<String> openIds = new ArrayList<>();
+            for (String orderId : distinctIds) {
+                String status = statuses.get(orderId);
+                if (status == null && isArchived(conn, orderId)) {
+                    status = "geschlossen";
+                }
+                if (status == null) {
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.NOT_FOUND, "Order with ID " + orderId + " not found."));
+                } else if ("geschlossen".equals(status)) {
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.ALREADY_CLOSED, "Order with ID " + orderId + " is closed and cannot be deleted."));
+                } else {
+                    openIds.add(orderId);
+                    results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.DELETED, null));
+                }
+            }
+
+            if (!openIds.isEmpty()) {
+                String deletePositionsSql = "DELETE FROM position WHERE auftragsnummer IN (" + placeholders(openIds.size()) + ")";
+                String deleteOrdersSql = "DELETE FROM auftrag WHERE auftragsnummer IN (" + placeholders(openIds.size()) + ")";
+                for (String sql : List.of(deletePositionsSql, deleteOrdersSql)) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        setStrings(pstmt, openIds);
+                        pstmt.executeUpdate();
+                    }
+                }
+                for (String orderId : openIds) {
+                    outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.ORDER_DELETED, Map.of("orderId", orderId));
+                }
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+            e.printStackTrace();
+            results.clear();
+            for (String orderId : distinctIds) {
+                results.add(new OrderResultDTO(orderId, OrderResultDTO.Outcome.FAILED, "Database error: " + e.getMessage()));
+            }
+        } catch (RuntimeException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Passes the orders selected by a bulk request to the given action in chunks.
+     * <p>
+     * Explicit IDs are split into consecutive chunks. For the age filter, the open orders are read page by
+     * page with the keyset cursor of {@link #findAll(String, LocalDate, LocalDate, LocalDate, String, Integer)},
+     * so orders that stay open (e.g. for lack of stock) are not selected again.
+     */
+    private void forEachChunk(BulkOrderRequestDTO request, Consumer<List<String>> action) {
+        boolean byIds = request.getOrderIds() != null && !request.getOrderIds().isEmpty();
+        boolean byAge = request.getOlderThanDays() != null;
+        if (byIds == byAge) {
+            throw new IllegalArgumentException("Either orderIds or olderThanDays must be given.");
+        }
+
+        if (byIds) {
+            List<String> orderIds = request.getOrderIds();
+            if (orderIds.size() > bulkMaxOrders) {
+                throw new IllegalArgumentException("At most " + bulkMaxOrders + " orders can be processed per request.");
+            }
+            for (int from = 0; from < orderIds.size(); from += bulkChunkSize) {
+                action.accept(orderIds.subList(from, Math.min(from + bulkChunkSize, orderIds.size())));
+            }
+            return;
+        }
+
+        if (request.getOlderThanDays() < 0) {
+            throw new IllegalArgumentException("olderThanDays must not be negative.");
+        }
+        // "Older than N days" means placed strictly before today minus N days
+        LocalDate placedOnOrBefore = LocalDate.now().minusDays(request.getOlderThanDays() + 1L);
+        LocalDate afterDate = null;
+        String afterId = null;
+        int selected = 0;
+        while (selected < bulkMaxOrders) {
+            List<OrderDTO> page = findAll("offen", null, placedOnOrBefore, afterDate, afterId,
+                    Math.min(bulkChunkSize, bulkMaxOrders - selected));
+            if (page.isEmpty()) {
+                break;
+            }
+            List<String> chunk = new ArrayList<>(page.size());
+            for (OrderDTO order : page) {
+                chunk.add(order.getOrderId());
+            }
+            action.accept(chunk);
+            selected += page.size();
+            OrderDTO last = page.get(page.size() - 1);
+            afterDate = last.getDate();
+            afterId = last.getOrderId();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void setStrings(PreparedStatement pstmt, List<String> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            pstmt.setString(i + 1, values.get(i));
+        }
+    }
+
+    /**
+     * Closes a single order within the caller's transaction: checks that the order is open, verifies and
+     * deducts the stock of all its products, sets its status to 'geschlossen' and adds it to the sales rollups.
+     *
+     * @param conn    the connection of the surrounding transaction
+     * @param orderId the ID of the order to close
+     * @return the IDs of the products whose stock was deducted
+     * @throws SQLException if a database access error occurs
+     * @throws OrderNotFoundException if the order does not exist or is already closed
+     * @throws InsufficientStockException if there isn't enough stock to fulfill the order
+     */
+    private Set<String> closeOrderInTransaction(Connection conn, String orderId) throws SQLException {
+        // Verify if the order exists and is not already closed
+        if (!isOrderOpen(conn, orderId)) {
+            throw new OrderNotFoundException("Order not found or already closed: " + orderId);
+        }
+
+        // Check and prepare stock deduction for each product in the order
+        Map<String, Integer> stockDeductions = prepareStockDeductions(conn, orderId);
+
+        // Deduct stock from 'produktlagermenge' for each product
+        for (Map.Entry<String, Integer> entry : stockDeductions.entrySet()) {
+            deductStockForProductAndUpdateLager(conn, entry.getKey(), entry.getValue());
+        }
+
+        // Close the order
+        closeOrderInDatabase(conn, orderId);
+
+        // Add the order to the sales rollups
+        salesReportService.recordClosedOrder(conn, orderId);
+
+        // Record the close and the resulting stock changes
+        for (Map.Entry<String, Integer> entry : stockDeductions.entrySet()) {
+            outboxService.append(conn, OutboxService.STOCK, entry.getKey(), OutboxService.STOCK_REDUCED,
+                    Map.of("productId", entry.getKey(), "quantity", entry.getValue(), "orderId", orderId));
+        }
+        outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.ORDER_CLOSED,
+                Map.of("orderId", orderId, "stockDeductions", stockDeductions));
+        return stockDeductions.keySet();
+    }
+
+    /**
+     * Invalidates the cached stock aggregates of the products an order close deducted, in the warehouses that
+     * stock them; call after the commit.
+     *
+     * @param productIds     the IDs of the deducted products
+     * @param stockLocations the warehouses stocking each product, as locked by {@link #lockForClose}
+     */
+    private void invalidateStock(Set<String> productIds, Map<String, Set<Integer>> stockLocations) {
+        for (String productId : productIds) {
+            stockCache.invalidate(productId, stockLocations.getOrDefault(productId, Set.of()));
+        }
+    }
+
+    /**
+     * Locks the given orders and all stock rows their closing will touch, always in ascending key order.
+     * <p>
+     * Taking every lock up front and in a fixed order (orders, then 'produktlagermenge' by product and
+     * warehouse, then 'lager' by warehouse number, then the sales rollup rows) guarantees that two transactions closing overlapping
+     * sets of orders queue behind each other instead of deadlocking.
+     *
+     * @param conn           the connection of the surrounding transaction
+     * @param orderIds       the IDs of the orders to lock
+     * @param stockLocations receives the numbers of the warehouses stocking each product of the orders
+     * @return each locked order (ID, date and status) by order ID; missing orders are absent
+     * @throws SQLException if a database access error occurs
+     */
+    private Map<String, OrderDTO> lockForClose(Connection conn, List<String> orderIds,
+                                               Map<String, Set<Integer>> stockLocations) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(orderIds.size(), "?"));
+        String forUpdate = databaseConnection.getDialect().forUpdate();
+        String lockOrdersSql = "SELECT auftragsnummer, datum, status FROM auftrag WHERE auftragsnummer IN (" + placeholders + ") "
+                + "ORDER BY auftragsnummer" + forUpdate;
+        String productsOfOrders = "SELECT produktnummer FROM position WHERE auftragsnummer IN (" + placeholders + ")";
+        String lockStockSql = "SELECT produkt_fk, lager_fk FROM produktlagermenge WHERE produkt_fk IN (" + productsOfOrders + ") "
+                + "ORDER BY produkt_fk, lager_fk" + forUpdate;
+        String lockWarehousesSql = "SELECT lagernummer FROM lager WHERE lagernummer IN ("
+                + "SELECT lager_fk FROM produktlagermenge WHERE produkt_fk IN (" + productsOfOrders + ")) "
+                + "ORDER BY lagernummer" + forUpdate;
+
+        Map<String, OrderDTO> orders = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(lockOrdersSql)) {
+            for (int i = 0; i < orderIds.size(); i++) {
+                pstmt.setString(i + 1, orderIds.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String orderId = rs.getString("auftragsnummer");
+                    orders.put(orderId, new OrderDTO(orderId, rs.getDate("datum").toLocalDate(), rs.getString("status")));
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(lockStockSql)) {
+            setStrings(pstmt, orderIds);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stockLocations.computeIfAbsent(rs.getString("produkt_fk"), k -> new HashSet<>()).add(rs.getInt("lager_fk"));
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(lockWarehousesSql)) {
+            setStrings(pstmt, orderIds);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // Reading the rows is enough to hold their locks until the transaction ends
+                }
+            }
+        }
+        salesReportService.lockRollups(conn, orderIds);
+        return orders;
+    }
+
     /**
      * Checks if a given order exists in the database and if its status is "open".
      * <p>
@@ -329,6 +1050,9 @@ public class OrderService {
      *         query, problems with the database connection, or other related errors.
      */
     private boolean isOrderOpen(Connection conn, String orderId) throws SQLException {
+        if (closedOrderCache.isKnownClosed(orderId)) {
+            return false;
+        }
         // SQL query to check if the order exists and its status is "open"
         String query = "SELECT COUNT(*) FROM auftrag WHERE auftragsnummer = ? AND status = 'offen'";
         
@@ -424,11 +1148,8 @@ public class OrderService {
      */
     private void deductStockForProductAndUpdateLager(Connection conn, String productId, Integer quantity) throws SQLException, InsufficientStockException {
         // SQL query to deduct stock for the specified product ID from 'produktlagermenge'
-        String sql = """
-            UPDATE produktlagermenge
-            SET menge = GREATEST(0, menge - ?)
-            WHERE produkt_fk = ?
-            """;
+        String sql = "UPDATE produktlagermenge SET menge = " + databaseConnection.getDialect().atLeastZero("menge - ?")
+                + " WHERE produkt_fk = ?";
 
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, quantity);
@@ -516,6 +1237,22 @@ public class OrderService {
         }
     }
 
+    /**
+     * Checks whether an order has been moved to the archive. Archived orders are always closed.
+     *
+     * @param orderId the ID of the order
+     * @return true if the order is in the archive, false otherwise
+     */
+    private boolean isArchived(Connection conn, String orderId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM auftrag_archiv WHERE auftragsnummer = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, orderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
     /**
      * Checks if an order exists in the database.
      * 
@@ -531,7 +1268,7 @@ public class OrderService {
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
                     int count = rs.getInt(1);
-                    return count > 0;
+                    return count > 0 || isArchived(conn, orderId);
                 }
             }
         } catch (SQLException e) {
@@ -549,6 +1286,12 @@ public class OrderService {
      * @throws OrderClosedException if the order is closed.
      */
     public boolean checkOrderExistsAndOpen(String orderId) throws OrderNotFoundException, OrderClosedException {
+        if (closedOrderCache.isKnownClosed(orderId)) {
+            throw new OrderClosedException("Order with ID " + orderId + " is closed.");
+        }
+        if (closedOrderCache.isKnownMissing(orderId)) {
+            throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+        }
         String sql = "SELECT status FROM auftrag WHERE auftragsnummer = ?";
         try (Connection conn = databaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -562,7 +1305,10 @@ public class OrderService {
                     throw new OrderClosedException("Order with ID " + orderId + " is closed.");
                 }
                 return true; // Order exists and is open
+            } else if (isArchived(conn, orderId)) {
+                throw new OrderClosedException("Order with ID " + orderId + " is closed.");
             } else {
+                closedOrderCache.markMissing(orderId);
                 throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
             }
         } catch (SQLException e) {
@@ -582,32 +1328,91 @@ public class OrderService {
      * @throws ResponseStatusException With {@code HttpStatus.NOT_FOUND} if either the position does not exist
      *         or it does not belong to the specified order.
      */
-    @SuppressWarnings("deprecation")
     public void deleteOrderPosition(String orderId, String positionId) throws OrderClosedException {
         // Check if the order is open
+        if (closedOrderCache.isKnownClosed(orderId)) {
+            throw new OrderClosedException("Order with ID " + orderId + " is closed.");
+        }
+
+        Connection conn = null;
         try {
-            String orderStatusSql = "SELECT status FROM auftrag WHERE auftragsnummer = ?";
-            String status = jdbcTemplate.queryForObject(orderStatusSql, new Object[]{orderId}, String.class);
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            // Lock the order so that it cannot be closed while the position is being deleted
+            String status = lockOrderStatus(conn, orderId);
             if ("geschlossen".equals(status)) {
                 throw new OrderClosedException("Order with ID " + orderId + " is closed.");
             }
-        } catch (EmptyResultDataAccessException e) {
-            throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+
+            // Delete the position if it belongs to the given order
+            String deleteSql = "DELETE FROM position WHERE positionsnummer = ? AND auftragsnummer = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+                pstmt.setString(1, positionId);
+                pstmt.setString(2, orderId);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new PositionNotFoundException("Position not found or does not belong to the specified order.");
+                }
+            }
+            outboxService.append(conn, OutboxService.ORDER, orderId, OutboxService.POSITION_DELETED,
+                    Map.of("orderId", orderId, "positionId", positionId));
+
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            System.out.println(e.getMessage());
+            throw new RuntimeException("Database error occurred while deleting the order position.", e);
+        } catch (RuntimeException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            close(conn);
         }
+    }
 
-        // Verify if the position belongs to the given order
-        String verifySql = "SELECT COUNT(*) FROM position WHERE positionsnummer = ? AND auftragsnummer = ?";
-        int count = jdbcTemplate.queryForObject(verifySql, new Object[]{positionId, orderId}, Integer.class);
-        if (count == 0) {
-            throw new PositionNotFoundException("Position not found or does not belong to the specified order.");
+    /**
+     * Locks an order row for the rest of the transaction and returns its status.
+     *
+     * @param conn    the connection of the surrounding transaction
+     * @param orderId the ID of the order
+     * @return the status of the order
+     * @throws OrderClosedException if the order has been archived
+     * @throws OrderNotFoundException if the order does not exist
+     * @throws SQLException if a database access error occurs
+     */
+    private String lockOrderStatus(Connection conn, String orderId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT status FROM auftrag WHERE auftragsnummer = ?"
+                + databaseConnection.getDialect().forUpdate())) {
+            pstmt.setString(1, orderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("status");
+                }
+            }
+        }
+        if (isArchived(conn, orderId)) {
+            throw new OrderClosedException("Order with ID " + orderId + " is closed.");
         }
+        throw new OrderNotFoundException("Order with ID " + orderId + " not found.");
+    }
 
-        // Delete the position
-        String deleteSql = "DELETE FROM position WHERE positionsnummer = ?";
-        int affectedRows = jdbcTemplate.update(deleteSql, positionId);
-        if (affectedRows == 0) {
-            // This should not occur due to the checks above
-            throw new PositionNotFoundException("Failed to delete the position.");
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void close(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
\ No newline at end of file
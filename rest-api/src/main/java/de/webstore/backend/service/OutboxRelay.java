@@ -0,0 +1,204 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import de.webstore.backend.dto.OutboxEventDTO;
+
+/**
+ * Relay streaming outbox events to Server-Sent Events subscribers.
+ * <p>
+ * The relay polls the outbox and advances a watermark over the events that are safe to publish. Event IDs
+ * are assigned on insert but become visible on commit, so a transaction that commits late can leave a gap
+ * below events that are already visible. The relay waits up to {@code webstore.outbox.gap-timeout-ms} for
+ * such a gap to fill before it moves past it; after that, the gap is treated as a rolled back transaction.
+ * <p>
+ * Each subscriber has its own cursor. A subscriber resuming from an older event is first served from the
+ * outbox table, one batch per poll, until it has caught up with the live stream. All sending happens on the
+ * polling thread, so events reach each subscriber exactly once and in ID order.
+ */
+@Component
+public class OutboxRelay {
+
+    private final OutboxService outboxService;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Highest event ID published to live subscribers; -1 until the first poll
+    private volatile long watermark = -1;
+
+    // When the relay started waiting for the gap above the watermark, 0 if there is none
+    private long gapSince;
+
+    // Events read per poll and per catch-up batch
+    @Value("${webstore.outbox.batch-size:500}")
+    private int batchSize;
+
+    // How long the relay waits for a missing event ID before skipping it
+    @Value("${webstore.outbox.gap-timeout-ms:5000}")
+    private long gapTimeoutMs;
+
+    // Maximum number of concurrent subscribers
+    @Value("${webstore.outbox.max-subscribers:100}")
+    private int maxSubscribers;
+
+    // Lifetime of a subscription; clients reconnect with Last-Event-ID afterwards
+    @Value("${webstore.outbox.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    // Idle time after which a comment is sent to keep the connection open and detect gone clients
+    @Value("${webstore.outbox.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Autowired
+    public OutboxRelay(OutboxService outboxService) {
+        this.outboxService = outboxService;
+    }
+
+    /**
+     * Registers a new subscriber.
+     *
+     * @param since      the ID of the last event the client has received, or null to receive new events only
+     * @param aggregates the aggregates the client is interested in; empty for all
+     * @return the emitter streaming the events, or null if the maximum number of subscribers is reached
+     * @throws SQLException if the current position of the stream cannot be read
+     */
+    public SseEmitter subscribe(Long since, Set<String> aggregates) throws SQLException {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        long cursor = since != null ? since : (watermark >= 0 ? watermark : outboxService.findLatestId());
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, cursor, aggregates);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Returns the highest event ID published so far. Every event up to it has been committed or given up on
+     * as rolled back, so a read starting after this call sees at least the changes of these events.
+     *
+     * @return the watermark, or -1 before the first poll
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Publishes the events committed since the last poll.
+     */
+    @Scheduled(fixedDelayString = "${webstore.outbox.poll-ms:200}")
+    public void poll() {
+        try {
+            if (watermark < 0) {
+                watermark = outboxService.findLatestId();
+            }
+            long previous = watermark;
+            List<OutboxEventDTO> fresh = readPublishable(previous);
+            if (!fresh.isEmpty()) {
+                watermark = fresh.get(fresh.size() - 1).getId();
+            }
+            for (Subscriber subscriber : subscribers) {
+                deliver(subscriber, previous, fresh);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading outbox events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the events above the watermark that can be published, stopping at a gap that is still young.
+     */
+    private List<OutboxEventDTO> readPublishable(long after) throws SQLException {
+        List<OutboxEventDTO> publishable = new ArrayList<>();
+        long expected = after + 1;
+        for (OutboxEventDTO event : outboxService.findEvents(after, Long.MAX_VALUE, batchSize)) {
+            if (event.getId() != expected) {
+                // An earlier ID is not visible yet: still committing, or rolled back
+                long now = System.currentTimeMillis();
+                if (gapSince == 0) {
+                    gapSince = now;
+                }
+                if (now - gapSince < gapTimeoutMs) {
+                    break;
+                }
+            }
+            gapSince = 0;
+            publishable.add(event);
+            expected = event.getId() + 1;
+        }
+        return publishable;
+    }
+
+    private void deliver(Subscriber subscriber, long previous, List<OutboxEventDTO> fresh) throws SQLException {
+        try {
+            if (subscriber.cursor < previous) {
+                // Behind the live stream: send the next batch from the table and continue on the next poll
+                List<OutboxEventDTO> backlog = outboxService.findEvents(subscriber.cursor, previous, batchSize);
+                for (OutboxEventDTO event : backlog) {
+                    send(subscriber, event);
+                }
+                if (backlog.size() < batchSize) {
+                    subscriber.cursor = previous;
+                }
+                if (subscriber.cursor < previous) {
+                    return;
+                }
+            }
+            for (OutboxEventDTO event : fresh) {
+                if (event.getId() > subscriber.cursor) {
+                    send(subscriber, event);
+                }
+            }
+            if (System.currentTimeMillis() - subscriber.lastSent > heartbeatMs) {
+                subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                subscriber.lastSent = System.currentTimeMillis();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client has gone away
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private void send(Subscriber subscriber, OutboxEventDTO event) throws IOException {
+        if (subscriber.aggregates.isEmpty() || subscriber.aggregates.contains(event.getAggregate())) {
+            subscriber.emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.getId()))
+                    .name(event.getType())
+                    .data(event, MediaType.APPLICATION_JSON));
+            subscriber.lastSent = System.currentTimeMillis();
+        }
+        subscriber.cursor = event.getId();
+    }
+
+    /**
+     * A connected client and the ID of the last event it has been sent.
+     */
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<String> aggregates;
+        private long cursor;
+        private long lastSent = System.currentTimeMillis();
+
+        private Subscriber(SseEmitter emitter, long cursor, Set<String> aggregates) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+            this.aggregates = aggregates;
+        }
+    }
+}
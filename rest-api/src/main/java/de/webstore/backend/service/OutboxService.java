@@ -0,0 +1,152 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.config.DatabaseConnection;
+import de.webstore.backend.dto.OutboxEventDTO;
+
+/**
+ * Service writing and reading the transactional outbox.
+ * <p>
+ * Services append an event through {@link #append} using the connection of their own transaction, so an
+ * event is visible if and only if the change it describes has been committed. The {@link OutboxRelay}
+ * reads the events in ID order and streams them to subscribers.
+ */
+@Service
+public class OutboxService {
+
+    // Aggregates, i.e. the kinds of entities events refer to
+    public static final String ORDER = "order";
+    public static final String STOCK = "stock";
+    public static final String PRODUCT = "product";
+
+    // Event types
+    public static final String ORDER_CREATED = "ORDER_CREATED";
+    public static final String ORDER_DELETED = "ORDER_DELETED";
+    public static final String ORDER_CLOSED = "ORDER_CLOSED";
+    public static final String ORDER_ARCHIVED = "ORDER_ARCHIVED";
+    public static final String POSITION_ADDED = "POSITION_ADDED";
+    public static final String POSITION_DELETED = "POSITION_DELETED";
+    public static final String STOCK_ADDED = "STOCK_ADDED";
+    public static final String STOCK_REDUCED = "STOCK_REDUCED";
+    public static final String PRODUCT_CREATED = "PRODUCT_CREATED";
+    public static final String PRODUCT_UPDATED = "PRODUCT_UPDATED";
+    public static final String PRODUCT_DELETED = "PRODUCT_DELETED";
+
+    private final DatabaseConnection databaseConnection;
+    private final ObjectMapper objectMapper;
+
+    // How long events are kept for clients resuming the stream
+    @Value("${webstore.outbox.retention-hours:168}")
+    private long retentionHours;
+
+    @Autowired
+    public OutboxService(DatabaseConnection databaseConnection, ObjectMapper objectMapper) {
+        this.databaseConnection = databaseConnection;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Appends an event within the caller's transaction.
+     *
+     * @param conn        the connection of the transaction making the change
+     * @param aggregate   the kind of entity that changed, e.g. {@link #ORDER}
+     * @param aggregateId the ID of the entity that changed
+     * @param type        the event type, e.g. {@link #ORDER_CLOSED}
+     * @param payload     the event details; serialized as JSON
+     * @throws SQLException if a database access error occurs
+     */
+    public void append(Connection conn, String aggregate, String aggregateId, String type, Object payload) throws SQLException {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Event payload cannot be serialized: " + e.getMessage(), e);
+        }
+
+        String sql = "INSERT INTO outbox_ereignis (aggregat, aggregat_id, typ, nutzdaten) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, aggregate);
+            pstmt.setString(2, aggregateId);
+            pstmt.setString(3, type);
+            pstmt.setString(4, json);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads events in ID order.
+     *
+     * @param afterId only events with a greater ID are returned
+     * @param upToId  only events with this or a smaller ID are returned
+     * @param limit   the maximum number of events
+     * @return the events, ordered by ID
+     * @throws SQLException if a database access error occurs
+     */
+    public List<OutboxEventDTO> findEvents(long afterId, long upToId, int limit) throws SQLException {
+        List<OutboxEventDTO> events = new ArrayList<>();
+        String sql = "SELECT id, aggregat, aggregat_id, typ, nutzdaten, erstellt FROM outbox_ereignis "
+                + "WHERE id > ? AND id <= ? ORDER BY id LIMIT ?";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, afterId);
+            pstmt.setLong(2, upToId);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    events.add(new OutboxEventDTO(rs.getLong("id"), rs.getString("aggregat"), rs.getString("aggregat_id"),
+                            rs.getString("typ"), rs.getString("nutzdaten"), rs.getTimestamp("erstellt").toInstant()));
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Reads the ID of the latest event.
+     *
+     * @return the greatest event ID, or 0 if there are no events
+     * @throws SQLException if a database access error occurs
+     */
+    public long findLatestId() throws SQLException {
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM outbox_ereignis");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Removes events older than the configured retention, in chunks to keep the transactions short.
+     */
+    @Scheduled(fixedDelayString = "${webstore.outbox.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        String sql = databaseConnection.getDialect().deleteChunk("outbox_ereignis", "id", "erstellt < ?", 10000);
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.from(Instant.now().minus(Duration.ofHours(retentionHours))));
+            while (pstmt.executeUpdate() > 0) {
+                // Delete the next chunk
+            }
+        } catch (SQLException e) {
+            System.out.println("Error purging outbox events: " + e.getMessage());
+        }
+    }
+}
@@ -2,8 +2,16 @@
 package de.webstore.backend.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+
+import de.webstore.backend.cache.ProductCache;
+import de.webstore.backend.bulkhead.Bulkheads;
+import de.webstore.backend.cache.SingleFlight;
+import de.webstore.backend.cache.StockCache;
+import de.webstore.backend.cache.VersionedCache;
+import de.webstore.backend.dto.ProductChangesDTO;
 import de.webstore.backend.dto.ProductDTO;
 import de.webstore.backend.dto.ProductUpdateDTO;
 import de.webstore.backend.exception.ProductInOrderException;
@@ -15,8 +23,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.UUID;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 import de.webstore.backend.config.DatabaseConnection;
 
 /**
@@ -31,11 +43,36 @@ public class ProductService {
 
     private final DatabaseConnection databaseConnection;
     private final JdbcTemplate jdbcTemplate;
+    private final OutboxService outboxService;
+
+    // Concurrent reads of the same product share one query, limited to the default deadline of catalog requests
+    private final SingleFlight<String, VersionedCache.Entry<ProductDTO>> findByIdFlight;
+
+    // Deleting a product removes its stock, which changes the cached stock aggregates
+    private final StockCache stockCache;
+
+    // Products read by ID, invalidated on all instances by updates and deletes
+    private final ProductCache productCache;
+
+    // Maximum number of changes returned by one delta sync call
+    @Value("${webstore.product.changes.max-limit:5000}")
+    private int maxChangesLimit;
 
     @Autowired
-    public ProductService(DatabaseConnection databaseConnection, JdbcTemplate jdbcTemplate) {
+    public ProductService(DatabaseConnection databaseConnection, JdbcTemplate jdbcTemplate, OutboxService outboxService,
+                          MeterRegistry meterRegistry, StockCache stockCache, ProductCache productCache,
+                          @Value("${webstore.deadline.catalog-ms:2000}") long maxLoadMs,
+                          Bulkheads bulkheads, @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.databaseConnection = databaseConnection;
         this.jdbcTemplate = jdbcTemplate;
+        this.outboxService = outboxService;
+        this.stockCache = stockCache;
+        this.productCache = productCache;
+        // The loads run on a thread of their own so that the caller can give up at its deadline, within its bulkhead
+        ThreadFactory loadThreads = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true))
+                .name("product-find-by-id-", 0).factory();
+        this.findByIdFlight = new SingleFlight<>("product.findById", meterRegistry, maxLoadMs,
+                task -> loadThreads.newThread(bulkheads.propagate(task)).start());
     }
 
     /**
@@ -47,7 +84,7 @@ public class ProductService {
         List<ProductDTO> products = new ArrayList<>();
         String sql = "SELECT produktnummer, name, einheit, preis FROM produkt";
 
-        try (Connection conn = databaseConnection.getConnection();
+        try (Connection conn = databaseConnection.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
 
@@ -66,16 +103,48 @@ public class ProductService {
     }
 
     /**
-     * Finds a specific product by its ID.
+     * Finds a specific product by its ID, served from the product cache. Concurrent loads for the same ID
+     * share one query.
      *
      * @param productId the product ID
      * @return the found product or null if not found
      */
     public ProductDTO findById(String productId) {
+        VersionedCache.Entry<ProductDTO> entry = findVersionedById(productId);
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Finds a specific product by its ID together with its version, served from the product cache, so
+     * conditional requests for a cached product need no query. Concurrent loads for the same ID share one query.
+     *
+     * @param productId the product ID
+     * @return the found product and its version (0 for products not written since versions were introduced),
+     *         or null if not found
+     */
+    public VersionedCache.Entry<ProductDTO> findVersionedById(String productId) {
+        VersionedCache.Entry<ProductDTO> cached = productCache.getEntry(productId);
+        if (cached != null) {
+            return cached;
+        }
+        return findByIdFlight.execute(productId, () -> {
+            // Read the version first, so the cached entry is never labelled newer than its data
+            Long version = loadVersion(productId);
+            ProductDTO product = loadById(productId);
+            if (product == null) {
+                return null;
+            }
+            long productVersion = version != null ? version : 0;
+            productCache.put(product, productVersion);
+            return new VersionedCache.Entry<>(product, productVersion);
+        });
+    }
+
+    private ProductDTO loadById(String productId) {
         ProductDTO product = null;
         String sql = "SELECT produktnummer, name, einheit, preis FROM produkt WHERE produktnummer = ?";
 
-        try (Connection conn = databaseConnection.getConnection();
+        try (Connection conn = databaseConnection.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, productId);
@@ -105,26 +174,29 @@ public class ProductService {
         String uuid = UUID.randomUUID().toString();
         productDTO.setProductId(uuid); // Set autogenerated UUID as product ID
         String sql = "INSERT INTO produkt (produktnummer, name, einheit, preis) VALUES (?, ?, ?, ?)";
-        try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, uuid);
-            pstmt.setString(2, productDTO.getName());
-            pstmt.setString(3, productDTO.getUnit());
-            pstmt.setBigDecimal(4, productDTO.getPrice());
-            int affectedRows = pstmt.executeUpdate();
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
 
-            if (affectedRows > 0) {
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        productDTO.setProductId(generatedKeys.getString(1));
-                    }
-                }
+            // The key is generated here; SQLite would report its internal row ID as generated key
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, uuid);
+                pstmt.setString(2, productDTO.getName());
+                pstmt.setString(3, productDTO.getUnit());
+                pstmt.setBigDecimal(4, productDTO.getPrice());
+                pstmt.executeUpdate();
             }
+            outboxService.append(conn, OutboxService.PRODUCT, uuid, OutboxService.PRODUCT_CREATED, productDTO);
+            recordVersion(conn, uuid, false);
 
+            conn.commit();
         } catch (SQLException e) {
+            rollback(conn);
             System.out.println(e.getMessage());
             // Handle the exception appropriately
+        } finally {
+            close(conn);
         }
         return productDTO;
     }
@@ -138,16 +210,35 @@ public class ProductService {
      */
     public ProductUpdateDTO updateProduct(String productId, ProductUpdateDTO productUpdateDTO) {
         String sql = "UPDATE produkt SET name = ?, einheit = ?, preis = ? WHERE produktnummer = ?";
-        try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        Connection conn = null;
+        try {
+            conn = databaseConnection.getConnection();
+            conn.setAutoCommit(false);
 
-            pstmt.setString(1, productUpdateDTO.getName());
-            pstmt.setString(2, productUpdateDTO.getUnit());
-            pstmt.setBigDecimal(3, productUpdateDTO.getPrice());
-            pstmt.setString(4, productId);
-            pstmt.executeUpdate();
+            int affectedRows;
+            long version = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, productUpdateDTO.getName());
+                pstmt.setString(2, productUpdateDTO.getUnit());
+                pstmt.setBigDecimal(3, productUpdateDTO.getPrice());
+                pstmt.setString(4, productId);
+                affectedRows = pstmt.executeUpdate();
+            }
+            if (affectedRows > 0) {
+                outboxService.append(conn, OutboxService.PRODUCT, productId, OutboxService.PRODUCT_UPDATED,
+                        new ProductDTO(productId, productUpdateDTO.getName(), productUpdateDTO.getUnit(), productUpdateDTO.getPrice()));
+                version = recordVersion(conn, productId, false);
+            }
+
+            conn.commit();
+            if (version > 0) {
+                productCache.invalidate(productId, version);
+            }
         } catch (SQLException e) {
+            rollback(conn);
             System.out.println(e.getMessage());
+        } finally {
+            close(conn);
         }
         return productUpdateDTO;
     }
@@ -173,10 +264,12 @@ public class ProductService {
             conn = databaseConnection.getConnection();
             conn.setAutoCommit(false); // Start transaction
 
-            // Check whether the product is used in any order items
-            String checkPositionSql = "SELECT COUNT(*) AS count FROM position WHERE produktnummer = ?";
+            // Check whether the product is used in any order items, including archived ones
+            String checkPositionSql = "SELECT (SELECT COUNT(*) FROM position WHERE produktnummer = ?) "
+                    + "+ (SELECT COUNT(*) FROM position_archiv WHERE produktnummer = ?) AS count";
             checkPositionStmt = conn.prepareStatement(checkPositionSql);
             checkPositionStmt.setString(1, productId);
+            checkPositionStmt.setString(2, productId);
             rs = checkPositionStmt.executeQuery();
             if (rs.next() && rs.getInt("count") > 0) {
                 throw new ProductInOrderException("Product cannot be deleted as it occurs in order items.");
@@ -202,8 +295,12 @@ public class ProductService {
             if (affectedRows == 0) {
                 throw new ProductNotFoundException("No product with the ID: " + productId + " found.");
             }
+            outboxService.append(conn, OutboxService.PRODUCT, productId, OutboxService.PRODUCT_DELETED, Map.of("productId", productId));
+            long version = recordVersion(conn, productId, true);
 
             conn.commit(); // Commit transaction
+            productCache.invalidate(productId, version);
+            stockCache.invalidateAll();
         } catch (SQLException e) {
             try {
                 if (conn != null) conn.rollback(); // Rollback in the event of an error
@@ -234,6 +331,155 @@ public class ProductService {
         }
     }
 
+    /**
+     * Retrieves the changes of the product catalog after a sync token.
+     * <p>
+     * The token is the highest product version the client has seen. Each product appears at most once, in
+     * its current state; deleted products are reported by ID only.
+     *
+     * @param since the token of the previous call, or 0 for the whole catalog
+     * @param limit the maximum number of changes to return
+     * @return the changes and the token for the next call
+     * @throws IllegalArgumentException if the limit is out of range
+     */
+    public ProductChangesDTO findChanges(long since, int limit) {
+        if (limit < 1 || limit > maxChangesLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxChangesLimit + ".");
+        }
+
+        ProductChangesDTO changes = new ProductChangesDTO();
+        changes.setNextToken(String.valueOf(since));
+        String sql = "SELECT v.produktnummer, v.version, v.geloescht, p.name, p.einheit, p.preis "
+                + "FROM produkt_version v LEFT JOIN produkt p ON p.produktnummer = v.produktnummer "
+                + "WHERE v.version > ? ORDER BY v.version LIMIT ?";
+
+        try (Connection conn = databaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, since);
+            pstmt.setInt(2, limit + 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int count = 0;
+                while (rs.next()) {
+                    if (++count > limit) {
+                        changes.setHasMore(true);
+                        break;
+                    }
+                    String productId = rs.getString("produktnummer");
+                    if (rs.getBoolean("geloescht")) {
+                        changes.getDeleted().add(productId);
+                    } else {
+                        changes.getChanged().add(new ProductDTO(productId, rs.getString("name"), rs.getString("einheit"), rs.getBigDecimal("preis")));
+                    }
+                    changes.setNextToken(String.valueOf(rs.getLong("version")));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return changes;
+    }
+
+    private Long loadVersion(String productId) {
+        String sql = "SELECT version FROM produkt_version WHERE produktnummer = ? AND geloescht = 0";
+        try (Connection conn = databaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, productId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("version");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the current version of the whole catalog, i.e. the version of the latest product write.
+     *
+     * @return the catalog version, or null if it cannot be read
+     */
+    public Long findCatalogVersion() {
+        try (Connection conn = databaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT wert FROM produkt_sequenz WHERE id = 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getLong("wert");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Assigns the next catalog version to a product within the caller's transaction.
+     * <p>
+     * The sequence row stays locked until the transaction ends, so versions are committed in ascending
+     * order and a client that has seen version n will find every later change above n. It is taken as the
+     * last step of a write to keep the time it is held short.
+     * <p>
+     * This serializes product writes for about one commit each, on purpose. An auto-increment version would
+     * commit out of order, and unlike the outbox relay and the replica, which keep their position and wait
+     * for a gap to close, {@link #findChanges(long, int)} is stateless: a client token past a version still
+     * committing would skip that change for good, and a gap timeout only bounds how likely that is. Catalog
+     * writes are rare next to the reads of the terminals this serves.
+     *
+     * @param conn      the connection of the writing transaction
+     * @param productId the ID of the product that changed
+     * @param deleted   whether the product has been deleted
+     * @return the new version of the product
+     * @throws SQLException if a database access error occurs
+     */
+    private long recordVersion(Connection conn, String productId, boolean deleted) throws SQLException {
+        long version;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT wert FROM produkt_sequenz WHERE id = 1"
+                + databaseConnection.getDialect().forUpdate());
+             ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("Product sequence is missing; apply migration 006.");
+            }
+            version = rs.getLong("wert") + 1;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE produkt_sequenz SET wert = ? WHERE id = 1")) {
+            pstmt.setLong(1, version);
+            pstmt.executeUpdate();
+        }
+
+        String sql = "INSERT INTO produkt_version (produktnummer, version, geloescht) VALUES (?, ?, ?)"
+                + databaseConnection.getDialect().onConflictReplace(List.of("produktnummer"), "version", "geloescht");
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, productId);
+            pstmt.setLong(2, version);
+            pstmt.setBoolean(3, deleted);
+            pstmt.executeUpdate();
+        }
+        return version;
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void close(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Checks if a product with the specified ID exists in the database.
      * 
@@ -0,0 +1,182 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import de.webstore.backend.config.DatabaseConnection;
+import de.webstore.backend.dto.DailyRevenueDTO;
+import de.webstore.backend.dto.ProductSalesDTO;
+
+/**
+ * Service maintaining and reading the sales rollups.
+ * <p>
+ * The tables {@code umsatz_tag} (per order date) and {@code umsatz_produkt} (per product) are updated
+ * incrementally in the transaction that closes an order, so reports read a bounded number of rollup rows
+ * no matter how many orders have been placed.
+ */
+@Service
+public class SalesReportService {
+
+    private final DatabaseConnection databaseConnection;
+
+    // Longest date range a daily revenue report may span
+    @Value("${webstore.report.max-days:366}")
+    private int maxDays;
+
+    // Upper bound for the number of products in a top products report
+    @Value("${webstore.report.max-top-products:100}")
+    private int maxTopProducts;
+
+    @Autowired
+    public SalesReportService(DatabaseConnection databaseConnection) {
+        this.databaseConnection = databaseConnection;
+    }
+
+    /**
+     * Adds a closed order to the rollups. Must be called within the transaction that closes the order,
+     * so the rollups are committed or rolled back together with the order.
+     *
+     * @param conn    the connection of the closing transaction
+     * @param orderId the ID of the order that has been closed
+     * @throws SQLException if a database access error occurs
+     */
+    public void recordClosedOrder(Connection conn, String orderId) throws SQLException {
+        String dailySql = "INSERT INTO umsatz_tag (datum, auftraege, menge, umsatz) "
+                + "SELECT a.datum, 1, COALESCE(SUM(p.menge), 0), COALESCE(SUM(p.menge * pr.preis), 0) "
+                + "FROM auftrag a "
+                + "LEFT JOIN position p ON p.auftragsnummer = a.auftragsnummer "
+                + "LEFT JOIN produkt pr ON pr.produktnummer = p.produktnummer "
+                + "WHERE a.auftragsnummer = ? GROUP BY a.datum"
+                + databaseConnection.getDialect().onConflictAdd(List.of("datum"), "auftraege", "menge", "umsatz");
+        try (PreparedStatement pstmt = conn.prepareStatement(dailySql)) {
+            pstmt.setString(1, orderId);
+            pstmt.executeUpdate();
+        }
+
+        String productSql = "INSERT INTO umsatz_produkt (produkt_fk, menge, umsatz) "
+                + "SELECT p.produktnummer, SUM(p.menge), SUM(p.menge * pr.preis) "
+                + "FROM position p JOIN produkt pr ON pr.produktnummer = p.produktnummer "
+                + "WHERE p.auftragsnummer = ? GROUP BY p.produktnummer ORDER BY p.produktnummer"
+                + databaseConnection.getDialect().onConflictAdd(List.of("produkt_fk"), "menge", "umsatz");
+        try (PreparedStatement pstmt = conn.prepareStatement(productSql)) {
+            pstmt.setString(1, orderId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Locks the existing rollup rows that closing the given orders will update, in ascending key order.
+     * Called after the stock rows have been locked, so batches of closes updating the same days and
+     * products in a different order queue behind each other instead of deadlocking.
+     *
+     * @param conn     the connection of the closing transaction
+     * @param orderIds the IDs of the orders about to be closed
+     * @throws SQLException if a database access error occurs
+     */
+    public void lockRollups(Connection conn, List<String> orderIds) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(orderIds.size(), "?"));
+        String forUpdate = databaseConnection.getDialect().forUpdate();
+        String lockDaysSql = "SELECT datum FROM umsatz_tag WHERE datum IN ("
+                + "SELECT datum FROM auftrag WHERE auftragsnummer IN (" + placeholders + ")) ORDER BY datum" + forUpdate;
+        String lockProductsSql = "SELECT produkt_fk FROM umsatz_produkt WHERE produkt_fk IN ("
+                + "SELECT produktnummer FROM position WHERE auftragsnummer IN (" + placeholders + ")) ORDER BY produkt_fk" + forUpdate;
+        for (String sql : List.of(lockDaysSql, lockProductsSql)) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < orderIds.size(); i++) {
+                    pstmt.setString(i + 1, orderIds.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Reading the rows is enough to hold their locks until the transaction ends
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the sales per order date within a date range. Days without closed orders are omitted.
+     *
+     * @param from the first order date, inclusive
+     * @param to   the last order date, inclusive
+     * @return the sales per day, ordered by date
+     * @throws IllegalArgumentException if the range is empty or longer than {@code webstore.report.max-days}
+     */
+    public List<DailyRevenueDTO> findDailyRevenue(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to.");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new IllegalArgumentException("The date range must not span more than " + maxDays + " days.");
+        }
+
+        List<DailyRevenueDTO> days = new ArrayList<>();
+        String sql = "SELECT datum, auftraege, menge, umsatz FROM umsatz_tag WHERE datum BETWEEN ? AND ? ORDER BY datum";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, java.sql.Date.valueOf(from));
+            pstmt.setDate(2, java.sql.Date.valueOf(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    days.add(new DailyRevenueDTO(rs.getDate("datum").toLocalDate(), rs.getInt("auftraege"),
+                            rs.getLong("menge"), rs.getBigDecimal("umsatz")));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return days;
+    }
+
+    /**
+     * Retrieves the best-selling products.
+     *
+     * @param sortBy either "revenue" or "quantity"
+     * @param limit  the number of products to return
+     * @return the best-selling products in descending order
+     * @throws IllegalArgumentException if sortBy is unknown or limit is out of range
+     */
+    public List<ProductSalesDTO> findTopProducts(String sortBy, int limit) {
+        String sortColumn;
+        if ("revenue".equals(sortBy)) {
+            sortColumn = "u.umsatz";
+        } else if ("quantity".equals(sortBy)) {
+            sortColumn = "u.menge";
+        } else {
+            throw new IllegalArgumentException("Unknown sort order: " + sortBy + ". Use revenue or quantity.");
+        }
+        if (limit < 1 || limit > maxTopProducts) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxTopProducts + ".");
+        }
+
+        List<ProductSalesDTO> products = new ArrayList<>();
+        String sql = "SELECT u.produkt_fk, pr.name, u.menge, u.umsatz FROM umsatz_produkt u "
+                + "LEFT JOIN produkt pr ON pr.produktnummer = u.produkt_fk "
+                + "ORDER BY " + sortColumn + " DESC LIMIT ?";
+        try (Connection conn = databaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(new ProductSalesDTO(rs.getString("produkt_fk"), rs.getString("name"),
+                            rs.getLong("menge"), rs.getBigDecimal("umsatz")));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return products;
+    }
+}
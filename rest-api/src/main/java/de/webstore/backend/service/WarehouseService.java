@@ -2,14 +2,22 @@
 package de.webstore.backend.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import de.webstore.backend.bulkhead.Bulkheads;
+import de.webstore.backend.cache.SingleFlight;
+import de.webstore.backend.cache.StockCache;
 import de.webstore.backend.config.DatabaseConnection;
 import de.webstore.backend.dto.WarehouseDTO;
 import de.webstore.backend.exception.WarehouseNotFoundException;
@@ -24,24 +32,37 @@ public class WarehouseService {
     
     private final DatabaseConnection databaseConnection;
     private final JdbcTemplate jdbcTemplate;
-    private final ProductService productService;
+    private final OutboxService outboxService;
+
+    // Concurrent requests for the total of the same product share one query, limited to the default deadline
+    // of stock requests
+    private final SingleFlight<String, Integer> totalQuantityFlight;
+
+    // Stock aggregates, reloaded in the background before they expire
+    private final StockCache stockCache;
 
     @Autowired
-    public WarehouseService(DatabaseConnection databaseConnection, JdbcTemplate jdbcTemplate, ProductService productService) {
+    public WarehouseService(DatabaseConnection databaseConnection, JdbcTemplate jdbcTemplate,
+                            OutboxService outboxService, MeterRegistry meterRegistry, StockCache stockCache,
+                            @Value("${webstore.deadline.stock-ms:5000}") long maxLoadMs,
+                            Bulkheads bulkheads, @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.databaseConnection = databaseConnection;
         this.jdbcTemplate = jdbcTemplate;
-        this.productService = productService;
+        this.outboxService = outboxService;
+        this.stockCache = stockCache;
+        // The loads run on a thread of their own so that the caller can give up at its deadline, within its bulkhead
+        ThreadFactory loadThreads = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true))
+                .name("warehouse-total-quantity-", 0).factory();
+        this.totalQuantityFlight = new SingleFlight<>("warehouse.totalProductQuantity", meterRegistry, maxLoadMs,
+                task -> loadThreads.newThread(bulkheads.propagate(task)).start());
     }
 
 
     public void updateWarehouseQuantities() {
         // SQL to calculate total product quantities per warehouse
-        String updateSql = "UPDATE lager l JOIN " +
-                           "(SELECT lager_fk, SUM(menge) AS totalMenge " +
-                           "FROM produktlagermenge GROUP BY lager_fk) plm " +
-                           "ON l.lagernummer = plm.lager_fk " +
-                           "SET l.menge = plm.totalMenge " +
-                           "WHERE l.aktiv = 1;";
+        String updateSql = databaseConnection.getDialect().updateFrom("lager", "l",
+                "(SELECT lager_fk, SUM(menge) AS totalMenge FROM produktlagermenge GROUP BY lager_fk)", "plm",
+                "l.lagernummer = plm.lager_fk", "menge = plm.totalMenge", "l.aktiv = 1");
     
         try (Connection conn = databaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
@@ -54,18 +75,26 @@ public class WarehouseService {
     }
 
     /**
-     * Retrieves all warehouse entries from the database.
+     * Retrieves all warehouse entries, served from the stock cache.
      *
      * @return A list of all warehouse entries.
      */
     public List<WarehouseDTO> findAllActive() {
-        // Update warehouse quantities before fetching
-        updateWarehouseQuantities();
+        return stockCache.getActiveWarehouses(this::loadAllActive);
+    }
+
+    private List<WarehouseDTO> loadAllActive() {
+        // Update warehouse quantities before fetching. Not when reading from the replica: the recompute is a
+        // full-table update on the primary the replica would not see before its next sync, and the write paths
+        // keep 'lager.menge' in step with 'produktlagermenge' anyway
+        if (!databaseConnection.isReadFromReplica()) {
+            updateWarehouseQuantities();
+        }
     
         List<WarehouseDTO> warehouses = new ArrayList<>();
         String sql = "SELECT lagernummer, menge, aktiv FROM lager WHERE aktiv = 1";
     
-        try (Connection conn = databaseConnection.getConnection();
+        try (Connection conn = databaseConnection.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
     
@@ -77,22 +106,27 @@ public class WarehouseService {
                 warehouses.add(warehouse);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            // Thrown, not an empty list: the stock cache would serve it as "no warehouses" until it expires
+            throw new RuntimeException("Database error occurred while reading the warehouses.", e);
         }
         return warehouses;
     }
     
     /**
-     * Finds a specific warehouse entry by its ID.
+     * Finds a specific warehouse entry by its ID, served from the stock cache.
      *
      * @param warehouseNumber The ID of the warehouse to find.
      * @return The found warehouse entry or null if not found.
      */
     public WarehouseDTO findById(int warehouseNumber) {
+        return stockCache.getWarehouse(warehouseNumber, () -> loadById(warehouseNumber));
+    }
+
+    private WarehouseDTO loadById(int warehouseNumber) {
         WarehouseDTO warehouse = null;
         String sql = "SELECT * FROM lager WHERE lagernummer = ?";
 
-        try (Connection conn = databaseConnection.getConnection();
+        try (Connection conn = databaseConnection.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, warehouseNumber);
@@ -105,7 +139,8 @@ public class WarehouseService {
                 }
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            // Thrown, not null: a missing warehouse is answered with 404, a failed read must not be
+            throw new RuntimeException("Database error occurred while reading the warehouse.", e);
         }
         return warehouse;
     }
@@ -126,7 +161,8 @@ public class WarehouseService {
         PreparedStatement pstmtInsertLagert = null;
         String checkLagertSql = "SELECT COUNT(*) FROM lagert WHERE produkt_fk = ? AND lager_fk = ?";
         String updateWarehouseSql = "UPDATE lager SET menge = menge + ? WHERE lagernummer = ?";
-        String insertLagertSql = "INSERT INTO lagert (produkt_fk, lager_fk) VALUES (?, ?) ON DUPLICATE KEY UPDATE produkt_fk=VALUES(produkt_fk), lager_fk=VALUES(lager_fk)";
+        String insertLagertSql = "INSERT INTO lagert (produkt_fk, lager_fk) VALUES (?, ?)"
+                + databaseConnection.getDialect().onConflictReplace(List.of("produkt_fk", "lager_fk"));
 
         try {
             conn = databaseConnection.getConnection();
@@ -173,8 +209,11 @@ public class WarehouseService {
                     pstmtInsertLagert.executeUpdate();
                 }
             }
+            outboxService.append(conn, OutboxService.STOCK, productId, OutboxService.STOCK_ADDED,
+                    Map.of("productId", productId, "warehouseNumber", warehouseNumber, "quantity", menge));
 
             conn.commit();
+            stockCache.invalidate(productId, warehouseNumber);
         } catch (SQLException e) {
             try {
                 if (conn != null) conn.rollback();
@@ -220,7 +259,8 @@ public class WarehouseService {
             }
 
             // Reduce the product quantity in the warehouse
-            String reduceProductQuantitySql = "UPDATE produktlagermenge SET menge = GREATEST(0, menge - ?) WHERE produkt_fk = ? AND lager_fk = ?";
+            String reduceProductQuantitySql = "UPDATE produktlagermenge SET menge = "
+                    + databaseConnection.getDialect().atLeastZero("menge - ?") + " WHERE produkt_fk = ? AND lager_fk = ?";
             pstmtReduceProductQuantity = conn.prepareStatement(reduceProductQuantitySql);
             pstmtReduceProductQuantity.setInt(1, menge);
             pstmtReduceProductQuantity.setString(2, productId);
@@ -228,13 +268,17 @@ public class WarehouseService {
             pstmtReduceProductQuantity.executeUpdate();
 
             // Update the total quantity in the warehouse
-            String updateWarehouseSql = "UPDATE lager SET menge = GREATEST(0, menge - ?) WHERE lagernummer = ?";
+            String updateWarehouseSql = "UPDATE lager SET menge = "
+                    + databaseConnection.getDialect().atLeastZero("menge - ?") + " WHERE lagernummer = ?";
             pstmtUpdateWarehouse = conn.prepareStatement(updateWarehouseSql);
             pstmtUpdateWarehouse.setInt(1, menge);
             pstmtUpdateWarehouse.setInt(2, warehouseNumber);
             pstmtUpdateWarehouse.executeUpdate();
+            outboxService.append(conn, OutboxService.STOCK, productId, OutboxService.STOCK_REDUCED,
+                    Map.of("productId", productId, "warehouseNumber", warehouseNumber, "quantity", menge));
 
             conn.commit();
+            stockCache.invalidate(productId, warehouseNumber);
         } catch (SQLException e) {
             try {
                 if (conn != null) conn.rollback();
@@ -298,18 +342,35 @@ public class WarehouseService {
     
     /**
      * Calculates the total quantity of a specified product across all warehouses.
+     * The total is served from the stock cache; concurrent loads for the same product share one query.
      *
      * @param productId The ID of the product.
      * @return The total quantity of the product.
      */
-    @SuppressWarnings("deprecation")
     public int calculateTotalProductQuantity(String productId) throws ProductNotFoundException {
-        if (!productService.exists(productId)) {
-            throw new ProductNotFoundException("Product with ID " + productId + " not found.");
+        return stockCache.getTotalQuantity(productId,
+                () -> totalQuantityFlight.execute(productId, () -> loadTotalProductQuantity(productId)));
+    }
+
+    private int loadTotalProductQuantity(String productId) {
+        // Existence and total in one query, so both come from the read replica when it is enabled
+        String sql = "SELECT (SELECT COUNT(*) FROM produkt WHERE produktnummer = ?) AS anzahl, "
+                + "(SELECT SUM(menge) FROM produktlagermenge WHERE produkt_fk = ?) AS summe";
+        try (Connection conn = databaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, productId);
+            pstmt.setString(2, productId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getInt("anzahl") > 0) {
+                    return rs.getInt("summe");
+                }
+            }
+        } catch (SQLException e) {
+            // Thrown, not 0: the total would be shared with all waiting callers and cached as "out of stock"
+            throw new RuntimeException("Database error occurred while reading the total product quantity.", e);
         }
-        String sql = "SELECT SUM(menge) FROM produktlagermenge WHERE produkt_fk = ?";
-        Integer totalQuantity = jdbcTemplate.queryForObject(sql, new Object[]{productId}, Integer.class);
-        return totalQuantity != null ? totalQuantity : 0;
+        throw new ProductNotFoundException("Product with ID " + productId + " not found.");
     }
 
     /**
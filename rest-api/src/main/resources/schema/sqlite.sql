@@ -0,0 +1,128 @@
+-- --------------------------------------------------------
+-- Schema of warehouse_database_uuid_de.sql and migrations 001 to 007
+-- for an embedded SQLite database (SqlDialect.SQLITE).
+-- Keep in sync with the MySQL schema.
+--
+-- Idempotent, so it can run on every start:
+--   spring.sql.init.mode=always
+--   spring.sql.init.schema-locations=classpath:schema/sqlite.sql
+--
+-- The SQLite JDBC driver stores dates and timestamps as milliseconds
+-- since the epoch, so the defaults of the timestamp columns do as well.
+-- --------------------------------------------------------
+
+CREATE TABLE IF NOT EXISTS auftrag (
+  auftragsnummer varchar(36) NOT NULL PRIMARY KEY,
+  datum date NOT NULL,
+  status text NOT NULL DEFAULT 'offen' CHECK (status IN ('offen', 'geschlossen'))
+);
+CREATE INDEX IF NOT EXISTS idx_auftrag_status_datum ON auftrag (status, datum, auftragsnummer);
+CREATE INDEX IF NOT EXISTS idx_auftrag_datum ON auftrag (datum, auftragsnummer);
+
+CREATE TABLE IF NOT EXISTS lager (
+  lagernummer integer PRIMARY KEY AUTOINCREMENT,
+  menge int NOT NULL DEFAULT 0,
+  aktiv tinyint DEFAULT 1
+);
+
+CREATE TABLE IF NOT EXISTS produkt (
+  produktnummer varchar(36) NOT NULL PRIMARY KEY,
+  name varchar(100) NOT NULL,
+  einheit varchar(50) NOT NULL,
+  preis decimal(10,2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS lagert (
+  produkt_fk varchar(36) NOT NULL REFERENCES produkt (produktnummer),
+  lager_fk int NOT NULL REFERENCES lager (lagernummer),
+  PRIMARY KEY (produkt_fk, lager_fk)
+);
+CREATE INDEX IF NOT EXISTS lagert_lager_fk ON lagert (lager_fk);
+
+CREATE TABLE IF NOT EXISTS position (
+  positionsnummer varchar(36) NOT NULL PRIMARY KEY,
+  produktnummer varchar(36) NOT NULL REFERENCES produkt (produktnummer),
+  auftragsnummer varchar(36) NOT NULL REFERENCES auftrag (auftragsnummer),
+  menge int NOT NULL
+);
+CREATE INDEX IF NOT EXISTS position_produktnummer ON position (produktnummer);
+CREATE INDEX IF NOT EXISTS position_auftragsnummer ON position (auftragsnummer);
+
+CREATE TABLE IF NOT EXISTS produktlagermenge (
+  produkt_fk varchar(36) NOT NULL REFERENCES produkt (produktnummer),
+  lager_fk int NOT NULL REFERENCES lager (lagernummer),
+  menge int NOT NULL DEFAULT 0,
+  PRIMARY KEY (produkt_fk, lager_fk)
+);
+CREATE INDEX IF NOT EXISTS produktlagermenge_lager_fk ON produktlagermenge (lager_fk);
+
+CREATE TABLE IF NOT EXISTS idempotenz_schluessel (
+  schluessel varchar(255) NOT NULL PRIMARY KEY,
+  fingerabdruck char(64) NOT NULL,
+  status_code int DEFAULT NULL,
+  antwort text DEFAULT NULL,
+  erstellt timestamp NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_idempotenz_erstellt ON idempotenz_schluessel (erstellt);
+
+CREATE TABLE IF NOT EXISTS umsatz_tag (
+  datum date NOT NULL PRIMARY KEY,
+  auftraege int NOT NULL DEFAULT 0,
+  menge bigint NOT NULL DEFAULT 0,
+  umsatz decimal(15,2) NOT NULL DEFAULT 0.00
+);
+
+CREATE TABLE IF NOT EXISTS umsatz_produkt (
+  produkt_fk varchar(36) NOT NULL PRIMARY KEY,
+  menge bigint NOT NULL DEFAULT 0,
+  umsatz decimal(15,2) NOT NULL DEFAULT 0.00
+);
+CREATE INDEX IF NOT EXISTS idx_umsatz_produkt_umsatz ON umsatz_produkt (umsatz);
+CREATE INDEX IF NOT EXISTS idx_umsatz_produkt_menge ON umsatz_produkt (menge);
+
+CREATE TABLE IF NOT EXISTS auftrag_archiv (
+  auftragsnummer varchar(36) NOT NULL PRIMARY KEY,
+  datum date NOT NULL,
+  status text NOT NULL DEFAULT 'geschlossen' CHECK (status IN ('offen', 'geschlossen'))
+);
+CREATE INDEX IF NOT EXISTS idx_auftrag_archiv_datum ON auftrag_archiv (datum, auftragsnummer);
+
+CREATE TABLE IF NOT EXISTS position_archiv (
+  positionsnummer varchar(36) NOT NULL PRIMARY KEY,
+  produktnummer varchar(36) NOT NULL REFERENCES produkt (produktnummer),
+  auftragsnummer varchar(36) NOT NULL REFERENCES auftrag_archiv (auftragsnummer),
+  menge int NOT NULL
+);
+CREATE INDEX IF NOT EXISTS position_archiv_auftragsnummer ON position_archiv (auftragsnummer);
+
+CREATE TABLE IF NOT EXISTS outbox_ereignis (
+  id integer PRIMARY KEY AUTOINCREMENT,
+  aggregat varchar(32) NOT NULL,
+  aggregat_id varchar(36) NOT NULL,
+  typ varchar(64) NOT NULL,
+  nutzdaten text NOT NULL,
+  erstellt timestamp NOT NULL DEFAULT (CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER))
+);
+CREATE INDEX IF NOT EXISTS idx_outbox_erstellt ON outbox_ereignis (erstellt);
+
+CREATE TABLE IF NOT EXISTS produkt_sequenz (
+  id tinyint NOT NULL PRIMARY KEY,
+  wert bigint NOT NULL
+);
+INSERT OR IGNORE INTO produkt_sequenz (id, wert) VALUES (1, 0);
+
+CREATE TABLE IF NOT EXISTS produkt_version (
+  produktnummer varchar(36) NOT NULL PRIMARY KEY,
+  version bigint NOT NULL,
+  geloescht tinyint NOT NULL DEFAULT 0
+);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_produkt_version_version ON produkt_version (version);
+
+CREATE TABLE IF NOT EXISTS cache_invalidierung (
+  id integer PRIMARY KEY AUTOINCREMENT,
+  knoten varchar(64) NOT NULL,
+  bereich varchar(32) NOT NULL,
+  schluessel varchar(255) NOT NULL,
+  version bigint NOT NULL DEFAULT 0,
+  erstellt timestamp NOT NULL DEFAULT (CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER))
+);
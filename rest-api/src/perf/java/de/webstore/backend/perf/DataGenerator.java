@@ -0,0 +1,348 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Fills the database with a synthetic dataset for scale testing.
+ * <p>
+ * Generates warehouses, products with their stock ({@code lager}, {@code produkt}, {@code produkt_version},
+ * {@code lagert}, {@code produktlagermenge}) and orders with positions ({@code auftrag}, {@code position}), then
+ * recalculates the warehouse totals and the sales rollups. The data is skewed like real traffic:
+ * <ul>
+ *   <li>product popularity follows a Zipf distribution, so a few products appear in most positions</li>
+ *   <li>products are stocked preferably in a few hot warehouses, also Zipf distributed</li>
+ *   <li>only orders of the last 30 days can still be open</li>
+ * </ul>
+ * Rows are written with multi-row INSERT statements and foreign key checks disabled for the session, so a
+ * dataset of 10 million rows loads in minutes. The same seed always produces the same data.
+ * <p>
+ * Run with {@code ./gradlew generateData --args="--products=1000000 --orders=3000000"}; without {@code --url}
+ * the data source of {@code application.properties} is used. {@code --help} lists all options.
+ */
+public final class DataGenerator {
+
+    /**
+     * Options of a run, parsed from {@code --name=value} arguments.
+     */
+    public static final class Options {
+        public String url;
+        public String user;
+        public String password;
+        public int products = 100_000;
+        public int warehouses = 50;
+        public int orders = 1_000_000;
+        public double positionsPerOrder = 3;
+        public int maxWarehousesPerProduct = 3;
+        public double productSkew = 1.0;
+        public double warehouseSkew = 1.2;
+        public double openShare = 0.2;
+        public int days = 730;
+        public int rowsPerStatement = 1000;
+        public long seed = 42;
+        public boolean truncate;
+
+        static final String USAGE = String.join(System.lineSeparator(),
+                "Options (all optional):",
+                "  --url=<jdbc url> --user=<name> --password=<secret>   default: spring.datasource.* of application.properties",
+                "  --products=100000            number of products",
+                "  --warehouses=50              number of warehouses",
+                "  --orders=1000000             number of orders",
+                "  --positions-per-order=3      average number of positions per order",
+                "  --max-warehouses-per-product=3",
+                "  --product-skew=1.0           Zipf exponent of product popularity, 0 for uniform",
+                "  --warehouse-skew=1.2         Zipf exponent of warehouse popularity, 0 for uniform",
+                "  --open-share=0.2             share of open orders among the orders of the last 30 days",
+                "  --days=730                   orders are dated within this many days before today",
+                "  --rows-per-statement=1000    rows per multi-row INSERT",
+                "  --seed=42                    seed of the random generator",
+                "  --truncate                   delete all existing data first");
+
+        /**
+         * Parses the command line.
+         *
+         * @param args the arguments
+         * @return the options
+         * @throws IllegalArgumentException if an argument is unknown or invalid
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            Properties defaults = applicationProperties();
+            options.url = defaults.getProperty("spring.datasource.url");
+            options.user = defaults.getProperty("spring.datasource.username");
+            options.password = defaults.getProperty("spring.datasource.password");
+
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+                int eq = arg.indexOf('=');
+                String name = eq > 0 ? arg.substring(2, eq) : arg.substring(2);
+                String value = eq > 0 ? arg.substring(eq + 1) : "true";
+                switch (name) {
+                    case "url" -> options.url = value;
+                    case "user" -> options.user = value;
+                    case "password" -> options.password = value;
+                    case "products" -> options.products = Integer.parseInt(value);
+                    case "warehouses" -> options.warehouses = Integer.parseInt(value);
+                    case "orders" -> options.orders = Integer.parseInt(value);
+                    case "positions-per-order" -> options.positionsPerOrder = Double.parseDouble(value);
+                    case "max-warehouses-per-product" -> options.maxWarehousesPerProduct = Integer.parseInt(value);
+                    case "product-skew" -> options.productSkew = Double.parseDouble(value);
+                    case "warehouse-skew" -> options.warehouseSkew = Double.parseDouble(value);
+                    case "open-share" -> options.openShare = Double.parseDouble(value);
+                    case "days" -> options.days = Integer.parseInt(value);
+                    case "rows-per-statement" -> options.rowsPerStatement = Integer.parseInt(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    case "truncate" -> options.truncate = Boolean.parseBoolean(value);
+                    default -> throw new IllegalArgumentException("Unknown option: --" + name);
+                }
+            }
+            if (options.products <= 0 || options.warehouses <= 0 || options.orders < 0) {
+                throw new IllegalArgumentException("products and warehouses must be positive, orders must not be negative.");
+            }
+            options.maxWarehousesPerProduct = Math.max(1, Math.min(options.maxWarehousesPerProduct, options.warehouses));
+            return options;
+        }
+
+        private static Properties applicationProperties() {
+            Properties properties = new Properties();
+            try (InputStream in = DataGenerator.class.getClassLoader().getResourceAsStream("application.properties")) {
+                if (in != null) {
+                    properties.load(in);
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot read application.properties: " + e.getMessage());
+            }
+            return properties;
+        }
+    }
+
+    // Tables in the order they are emptied by --truncate
+    private static final List<String> TABLES = List.of(
+            "position", "position_archiv", "auftrag", "auftrag_archiv", "umsatz_tag", "umsatz_produkt",
+            "produktlagermenge", "lagert", "produkt_version", "produkt", "lager", "outbox_ereignis");
+
+    // Only orders of the last days can still be open
+    private static final int OPEN_DAYS = 30;
+
+    private final Connection conn;
+    private final Options options;
+    private final Random random;
+    private final boolean mysql;
+
+    private DataGenerator(Connection conn, Options options) throws SQLException {
+        this.conn = conn;
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.mysql = conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")
+                || conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mariadb");
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (List.of(args).contains("--help")) {
+            System.out.println(Options.USAGE);
+            return;
+        }
+        Options options = Options.parse(args);
+        try (Connection conn = DriverManager.getConnection(options.url, options.user, options.password)) {
+            generate(conn, options);
+        }
+    }
+
+    /**
+     * Generates a dataset.
+     *
+     * @param conn    the connection to the database; the schema must exist
+     * @param options what to generate
+     * @throws SQLException if a database access error occurs
+     */
+    public static void generate(Connection conn, Options options) throws SQLException {
+        new DataGenerator(conn, options).run();
+    }
+
+    private void run() throws SQLException {
+        long start = System.currentTimeMillis();
+        conn.setAutoCommit(true);
+        setConstraintChecks(false);
+        try {
+            if (options.truncate) {
+                truncate();
+            }
+            int firstWarehouse = queryLong("SELECT COALESCE(MAX(lagernummer), 0) FROM lager").intValue() + 1;
+            long firstVersion = queryLong("SELECT COALESCE(MAX(version), 0) FROM produkt_version") + 1;
+
+            long[] warehouseTotals = new long[options.warehouses];
+            String[] productIds = generateProducts(firstWarehouse, firstVersion, warehouseTotals);
+            generateWarehouses(firstWarehouse, warehouseTotals);
+            long positions = generateOrders(productIds);
+
+            System.out.println("Updating product sequence and sales rollups...");
+            updateProductSequence();
+            updateRollups();
+
+            long rows = options.warehouses + 2L * productIds.length + options.orders + positions;
+            System.out.println("Generated " + productIds.length + " products, " + options.warehouses + " warehouses, "
+                    + options.orders + " orders and " + positions + " positions (plus stock) in "
+                    + (System.currentTimeMillis() - start) / 1000 + " s, about " + rows + " rows.");
+        } finally {
+            setConstraintChecks(true);
+        }
+    }
+
+    private String[] generateProducts(int firstWarehouse, long firstVersion, long[] warehouseTotals) throws SQLException {
+        System.out.println("Generating " + options.products + " products...");
+        ZipfDistribution hotWarehouses = new ZipfDistribution(options.warehouses, options.warehouseSkew);
+        String[] productIds = new String[options.products];
+        int rows = options.rowsPerStatement;
+        try (MultiRowInsert products = new MultiRowInsert(conn, "produkt", rows, "produktnummer", "name", "einheit", "preis");
+             MultiRowInsert versions = new MultiRowInsert(conn, "produkt_version", rows, "produktnummer", "version", "geloescht");
+             MultiRowInsert lagert = new MultiRowInsert(conn, "lagert", rows, "produkt_fk", "lager_fk");
+             MultiRowInsert stock = new MultiRowInsert(conn, "produktlagermenge", rows, "produkt_fk", "lager_fk", "menge")) {
+            String[] units = {"Piece", "Package", "Tin", "Bottle", "Kilogram", "Paper"};
+            Set<Integer> stockedIn = new HashSet<>();
+            for (int i = 0; i < options.products; i++) {
+                String productId = randomUuid();
+                productIds[i] = productId;
+                products.add(productId, "Product " + i, units[random.nextInt(units.length)],
+                        BigDecimal.valueOf(50 + random.nextInt(20_000), 2));
+                versions.add(productId, firstVersion + i, 0);
+
+                stockedIn.clear();
+                int warehouseCount = 1 + random.nextInt(options.maxWarehousesPerProduct);
+                while (stockedIn.size() < warehouseCount) {
+                    stockedIn.add(hotWarehouses.sample(random));
+                }
+                for (int warehouse : stockedIn) {
+                    int quantity = random.nextInt(1000);
+                    lagert.add(productId, firstWarehouse + warehouse);
+                    stock.add(productId, firstWarehouse + warehouse, quantity);
+                    warehouseTotals[warehouse] += quantity;
+                }
+            }
+        }
+        return productIds;
+    }
+
+    private void generateWarehouses(int firstWarehouse, long[] warehouseTotals) throws SQLException {
+        System.out.println("Generating " + options.warehouses + " warehouses...");
+        try (MultiRowInsert warehouses = new MultiRowInsert(conn, "lager", options.rowsPerStatement, "lagernummer", "menge", "aktiv")) {
+            for (int i = 0; i < options.warehouses; i++) {
+                warehouses.add(firstWarehouse + i, (int) Math.min(warehouseTotals[i], Integer.MAX_VALUE), 1);
+            }
+        }
+    }
+
+    private long generateOrders(String[] productIds) throws SQLException {
+        System.out.println("Generating " + options.orders + " orders...");
+        ZipfDistribution popularity = new ZipfDistribution(productIds.length, options.productSkew);
+        LocalDate today = LocalDate.now();
+        int maxPositions = Math.max(1, (int) Math.round(2 * options.positionsPerOrder - 1));
+        long start = System.currentTimeMillis();
+        int rows = options.rowsPerStatement;
+        try (MultiRowInsert orders = new MultiRowInsert(conn, "auftrag", rows, "auftragsnummer", "datum", "status");
+             MultiRowInsert positions = new MultiRowInsert(conn, "position", rows, "positionsnummer", "produktnummer", "auftragsnummer", "menge")) {
+            for (int i = 0; i < options.orders; i++) {
+                String orderId = randomUuid();
+                int age = random.nextInt(options.days);
+                boolean open = age < OPEN_DAYS && random.nextDouble() < options.openShare;
+                orders.add(orderId, Date.valueOf(today.minusDays(age)), open ? "offen" : "geschlossen");
+
+                int positionCount = 1 + random.nextInt(maxPositions);
+                for (int p = 0; p < positionCount; p++) {
+                    // Mostly small quantities
+                    int quantity = 1 + (int) Math.min(99, -Math.log(1 - random.nextDouble()) * 3);
+                    positions.add(randomUuid(), productIds[popularity.sample(random)], orderId, quantity);
+                }
+
+                if ((i + 1) % 100_000 == 0) {
+                    long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+                    System.out.println("  " + (i + 1) + " orders, " + positions.getRowsInserted() + " positions, "
+                            + (i + 1) / seconds + " orders/s");
+                }
+            }
+            orders.close();
+            positions.close();
+            return positions.getRowsInserted();
+        }
+    }
+
+    private void updateProductSequence() throws SQLException {
+        long max = queryLong("SELECT COALESCE(MAX(version), 0) FROM produkt_version");
+        try (Statement stmt = conn.createStatement()) {
+            if (stmt.executeUpdate("UPDATE produkt_sequenz SET wert = " + max + " WHERE id = 1") == 0) {
+                stmt.executeUpdate("INSERT INTO produkt_sequenz (id, wert) VALUES (1, " + max + ")");
+            }
+        }
+    }
+
+    /**
+     * Recalculates the sales rollups of migration 003 from the closed orders.
+     */
+    private void updateRollups() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM umsatz_tag");
+            stmt.executeUpdate("DELETE FROM umsatz_produkt");
+            stmt.executeUpdate("INSERT INTO umsatz_tag (datum, auftraege, menge, umsatz) "
+                    + "SELECT a.datum, COUNT(DISTINCT a.auftragsnummer), COALESCE(SUM(p.menge), 0), COALESCE(SUM(p.menge * pr.preis), 0) "
+                    + "FROM auftrag a "
+                    + "LEFT JOIN position p ON p.auftragsnummer = a.auftragsnummer "
+                    + "LEFT JOIN produkt pr ON pr.produktnummer = p.produktnummer "
+                    + "WHERE a.status = 'geschlossen' GROUP BY a.datum");
+            stmt.executeUpdate("INSERT INTO umsatz_produkt (produkt_fk, menge, umsatz) "
+                    + "SELECT p.produktnummer, SUM(p.menge), SUM(p.menge * pr.preis) "
+                    + "FROM position p "
+                    + "JOIN auftrag a ON a.auftragsnummer = p.auftragsnummer "
+                    + "JOIN produkt pr ON pr.produktnummer = p.produktnummer "
+                    + "WHERE a.status = 'geschlossen' GROUP BY p.produktnummer");
+        }
+    }
+
+    private void truncate() throws SQLException {
+        System.out.println("Deleting existing data...");
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                stmt.executeUpdate(mysql ? "TRUNCATE TABLE " + table : "DELETE FROM " + table);
+            }
+        }
+    }
+
+    private void setConstraintChecks(boolean enabled) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (mysql) {
+                stmt.execute("SET SESSION foreign_key_checks = " + (enabled ? 1 : 0));
+                stmt.execute("SET SESSION unique_checks = " + (enabled ? 1 : 0));
+            } else if (conn.getMetaData().getDatabaseProductName().equalsIgnoreCase("H2")) {
+                stmt.execute("SET REFERENTIAL_INTEGRITY " + enabled);
+            }
+        }
+    }
+
+    private Long queryLong(String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    private String randomUuid() {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts rows into a table with multi-row {@code INSERT ... VALUES (...), (...)} statements.
+ * <p>
+ * Rows are buffered until {@code rowsPerStatement} rows are collected and then sent in one statement, which is
+ * far faster than one statement or one batch entry per row. {@link #close()} sends the remaining rows and may be called more than once.
+ */
+public class MultiRowInsert implements AutoCloseable {
+
+    private final Connection conn;
+    private final String table;
+    private final String[] columns;
+    private final int rowsPerStatement;
+    private final List<Object[]> buffer = new ArrayList<>();
+    private PreparedStatement fullStatement;
+    private long rowsInserted;
+
+    /**
+     * Creates an inserter.
+     *
+     * @param conn             the connection to insert with
+     * @param table            the table name
+     * @param rowsPerStatement the number of rows per statement
+     * @param columns          the column names
+     */
+    public MultiRowInsert(Connection conn, String table, int rowsPerStatement, String... columns) {
+        this.conn = conn;
+        this.table = table;
+        this.columns = columns;
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    /**
+     * Adds a row, sending the buffered rows once the statement is full.
+     *
+     * @param values the values, in the order of the columns
+     * @throws SQLException if a database access error occurs
+     */
+    public void add(Object... values) throws SQLException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values for " + table + ", got " + values.length);
+        }
+        buffer.add(values);
+        if (buffer.size() == rowsPerStatement) {
+            if (fullStatement == null) {
+                fullStatement = conn.prepareStatement(sql(rowsPerStatement));
+            }
+            send(fullStatement);
+        }
+    }
+
+    /**
+     * Returns the number of rows sent so far.
+     *
+     * @return the number of inserted rows
+     */
+    public long getRowsInserted() {
+        return rowsInserted;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!buffer.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql(buffer.size()))) {
+                    send(pstmt);
+                }
+            }
+        } finally {
+            if (fullStatement != null) {
+                fullStatement.close();
+                fullStatement = null;
+            }
+        }
+    }
+
+    private void send(PreparedStatement pstmt) throws SQLException {
+        int index = 1;
+        for (Object[] row : buffer) {
+            for (Object value : row) {
+                pstmt.setObject(index++, value);
+            }
+        }
+        pstmt.executeUpdate();
+        rowsInserted += buffer.size();
+        buffer.clear();
+    }
+
+    private String sql(int rows) {
+        String row = "(" + "?, ".repeat(columns.length - 1) + "?)";
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+}
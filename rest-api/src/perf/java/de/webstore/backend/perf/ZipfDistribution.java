@@ -0,0 +1,49 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf distribution over the ranks {@code 0 .. n-1}: rank {@code k} is drawn with a probability proportional to
+ * {@code 1 / (k + 1)^exponent}. An exponent of 0 gives a uniform distribution, around 1 a few ranks dominate.
+ * <p>
+ * The cumulative distribution is precomputed, so sampling is a binary search; memory is 8 bytes per rank.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    /**
+     * Creates a Zipf distribution.
+     *
+     * @param n        the number of ranks
+     * @param exponent the skew, 0 for uniform
+     */
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive.");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    /**
+     * Draws a rank.
+     *
+     * @param random the source of randomness
+     * @return a rank between 0 and n-1, small ranks being the most likely
+     */
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,76 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.load;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import de.webstore.backend.Application;
+import de.webstore.backend.perf.DataGenerator;
+
+/**
+ * The application with its web server on a random port, running against an embedded H2 database in MySQL mode
+ * that is filled by the {@link DataGenerator}.
+ * <p>
+ * The schema is the one of the JMH benchmarks ({@code benchmark/schema-h2.sql}).
+ */
+public class EmbeddedWebstore implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final String baseUrl;
+
+    private EmbeddedWebstore(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    /**
+     * Creates and fills the database and starts the application.
+     *
+     * @param data      the dataset to generate; URL and credentials are ignored
+     * @param arguments further Spring Boot arguments, e.g. {@code --webstore.cache.products.enabled=false}
+     * @return the running application
+     * @throws SQLException if the database cannot be filled
+     */
+    public static EmbeddedWebstore start(DataGenerator.Options data, String... arguments) throws SQLException {
+        String url = "jdbc:h2:mem:webstore-load;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("RUNSCRIPT FROM 'classpath:benchmark/schema-h2.sql'");
+            DataGenerator.generate(conn, data);
+        }
+
+        String[] defaults = {
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"};
+        String[] all = new String[defaults.length + arguments.length];
+        System.arraycopy(defaults, 0, all, 0, defaults.length);
+        // Later arguments take precedence
+        System.arraycopy(arguments, 0, all, defaults.length, arguments.length);
+        return new EmbeddedWebstore(new SpringApplicationBuilder(Application.class).run(all));
+    }
+
+    /**
+     * Returns the URL the application listens on.
+     *
+     * @return the URL, e.g. {@code http://localhost:54321}
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,114 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records the latencies and outcomes of the requests of a load test, per operation.
+ * <p>
+ * Latencies are recorded into HdrHistogram {@link Recorder}s, which are safe to write from many threads and can be
+ * read interval by interval without stopping the writers. Each interval is added to the totals of its operation
+ * unless recording is paused (during warm-up).
+ */
+public class LatencyRecorder {
+
+    // Latencies up to one hour with three significant digits
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private volatile boolean counting;
+
+    public LatencyRecorder() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            totals.put(operation, new Histogram(HIGHEST_TRACKABLE_NANOS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Records a request.
+     *
+     * @param operation    the operation
+     * @param latencyNanos the time from the intended start of the request until its response
+     * @param outcome      the HTTP status code, or a short error name if there was no response
+     * @param success      whether the request succeeded
+     */
+    public void record(Operation operation, long latencyNanos, String outcome, boolean success) {
+        recorders.get(operation).recordValue(Math.min(Math.max(latencyNanos, 0), HIGHEST_TRACKABLE_NANOS));
+        if (counting) {
+            if (!success) {
+                errors.get(operation).increment();
+            }
+            outcomes.computeIfAbsent(operation.label() + " " + outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Starts or pauses adding the recorded requests to the totals.
+     *
+     * @param counting whether to count the requests
+     */
+    public void setCounting(boolean counting) {
+        this.counting = counting;
+    }
+
+    /**
+     * Takes the requests recorded since the previous call, adding them to the totals if counting.
+     *
+     * @return the latencies of the interval over all operations
+     */
+    public Histogram interval() {
+        Histogram all = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        for (Operation operation : Operation.values()) {
+            Histogram interval = recorders.get(operation).getIntervalHistogram();
+            if (counting) {
+                totals.get(operation).add(interval);
+            }
+            all.add(interval);
+        }
+        return all;
+    }
+
+    /**
+     * Returns the latencies of an operation, counted since recording started.
+     *
+     * @param operation the operation
+     * @return the histogram, in nanoseconds
+     */
+    public Histogram total(Operation operation) {
+        return totals.get(operation);
+    }
+
+    /**
+     * Returns the number of failed requests of an operation.
+     *
+     * @param operation the operation
+     * @return the number of errors
+     */
+    public long errors(Operation operation) {
+        return errors.get(operation).sum();
+    }
+
+    /**
+     * Returns the number of requests by operation and outcome, e.g. {@code close 409}.
+     *
+     * @return the counts, sorted by key
+     */
+    public Map<String, Long> outcomes() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,329 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+import de.webstore.backend.perf.DataGenerator;
+
+/**
+ * Load test of the REST API at a constant target rate.
+ * <p>
+ * Requests are scheduled at fixed intervals, independent of how fast the application answers, and handed to a
+ * pool of workers. The latency of a request is measured from its scheduled start, not from the moment a worker
+ * sends it: if the application stalls, the requests queuing behind the stall are recorded with the time they
+ * waited. Measuring from the actual send would hide exactly these requests (coordinated omission) and report
+ * percentiles that are far too good.
+ * <p>
+ * Without {@code --url} the application is started on an embedded H2 database filled by the
+ * {@link DataGenerator}, so two builds can be compared on the same machine with the same data. The report goes to
+ * the console and, with {@code --report-dir}, to a text file plus one HdrHistogram percentile file per operation.
+ * <p>
+ * Run with {@code ./gradlew loadTest --args="--rate=500 --duration=120"}; {@code --help} lists all options.
+ * <p>
+ * To compare the thread modes of the application beyond Tomcat's 200 request threads, keep more requests in flight
+ * than that, e.g. against an instance on MySQL started once with and once without
+ * {@code spring.threads.virtual.enabled}:
+ * {@code --url=... --rate=3000 --workers=2000 --virtual-workers=true}. With platform threads the requests above 200
+ * wait in Tomcat's queue and the percentiles climb; with virtual threads they run concurrently and the latency stays
+ * at that of the database. The interval lines show the requests in flight. The default bulkheads and admission
+ * limit admit fewer than 200 requests in either mode; start the application with
+ * {@code --spring.config.additional-location=classpath:load-concurrency.properties} (file path for a separate
+ * instance) to raise them. The README describes the whole run.
+ */
+public final class LoadTest {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Options (all optional):",
+            "  --url=<base url>             test a running application, e.g. http://localhost:8080",
+            "  --rate=200                   target requests per second",
+            "  --duration=60                measured seconds",
+            "  --warmup=10                  seconds before measuring",
+            "  --workers=64                 maximum concurrent requests",
+            "  --virtual-workers=false      send from virtual threads, for thousands of concurrent requests",
+            "  --timeout=10                 request timeout in seconds",
+            "  --mix=product:50,stock:15,warehouse:5,create:10,position:15,close:5",
+            "  --product-skew=1.0           Zipf exponent of product popularity",
+            "  --report-dir=<dir>           write the report and percentile files there",
+            "Embedded application only:",
+            "  --products=10000 --warehouses=20 --orders=100000 --seed=42",
+            "  --app=<argument>             passed to the application, e.g. --app=--webstore.cache.products.enabled=false");
+
+    private final Options options;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private LoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (List.of(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        Options options = Options.parse(args);
+        if (options.url != null) {
+            new LoadTest(options).run(options.url);
+            return;
+        }
+        System.out.println("Starting the application on an embedded database...");
+        try (EmbeddedWebstore webstore = EmbeddedWebstore.start(options.data, options.appArguments.toArray(new String[0]))) {
+            new LoadTest(options).run(webstore.getBaseUrl());
+        }
+    }
+
+    private void run(String baseUrl) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(options.timeoutSeconds))
+                .executor(Executors.newCachedThreadPool(daemonThreads("load-http")))
+                .build();
+        Workload workload = new Workload(client, baseUrl, Duration.ofSeconds(options.timeoutSeconds), recorder);
+        workload.load(options.productSkew);
+        System.out.println("Testing " + baseUrl + " with " + workload.getProductCount() + " products and "
+                + workload.getWarehouseCount() + " warehouses: " + options.rate + " req/s for " + options.duration
+                + " s after " + options.warmup + " s warm-up, " + options.workers + " workers, mix " + options.mixText);
+
+        ThreadFactory workerThreads = options.virtualWorkers
+                ? Thread.ofVirtual().name("load-worker-", 1).factory() : daemonThreads("load-worker");
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(options.workers, options.workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), workerThreads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonThreads("load-reporter"));
+
+        long period = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.warmup);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.duration);
+        recorder.setCounting(options.warmup == 0);
+        reporter.scheduleAtFixedRate(() -> reportInterval(start, measureStart, workers), 1, 1, TimeUnit.SECONDS);
+
+        // Open loop: the schedule does not wait for responses
+        for (long i = 0; ; i++) {
+            long intendedStart = start + i * period;
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = options.pick(ThreadLocalRandom.current().nextInt(options.totalWeight));
+            workers.execute(() -> workload.execute(operation, intendedStart));
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(options.timeoutSeconds + 30L, TimeUnit.SECONDS)) {
+            System.out.println("Requests still running after the timeout, the report is incomplete.");
+        }
+        long finished = System.nanoTime();
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        // Collect the requests of the last partial interval
+        recorder.interval();
+        recorder.setCounting(false);
+
+        String report = report(baseUrl, (finished - measureStart) / 1e9);
+        System.out.println(report);
+        if (options.reportDir != null) {
+            writeReport(report);
+        }
+    }
+
+    private void reportInterval(long start, long measureStart, ThreadPoolExecutor workers) {
+        long now = System.nanoTime();
+        boolean warmingUp = now < measureStart;
+        Histogram interval = recorder.interval();
+        if (!warmingUp) {
+            recorder.setCounting(true);
+        }
+        int inFlight = workers.getActiveCount();
+        if (!warmingUp) {
+            peakInFlight.accumulateAndGet(inFlight, Math::max);
+        }
+        System.out.println(String.format(Locale.ROOT, "%5d s%s %6d req/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms  in flight %d  queued %d",
+                TimeUnit.NANOSECONDS.toSeconds(now - start), warmingUp ? " warm-up" : "", interval.getTotalCount(),
+                millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                millis(interval.getMaxValue()), inFlight, workers.getQueue().size()));
+    }
+
+    private String report(String baseUrl, double seconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Load test of %s: target %d req/s, %d %s workers, %d s measured after %d s warm-up, mix %s%n",
+                baseUrl, options.rate, options.workers, options.virtualWorkers ? "virtual" : "platform", options.duration,
+                options.warmup, options.mixText));
+        report.append(String.format(Locale.ROOT, "Peak requests in flight: %d%n", peakInFlight.get()));
+        report.append(String.format(Locale.ROOT, "%-10s %9s %8s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorder.total(operation);
+            all.add(histogram);
+            errors += recorder.errors(operation);
+            if (histogram.getTotalCount() > 0) {
+                appendRow(report, operation.label(), histogram, recorder.errors(operation), seconds);
+            }
+        }
+        appendRow(report, "all", all, errors, seconds);
+        report.append("Responses:");
+        recorder.outcomes().forEach((outcome, count) -> report.append("  ").append(outcome).append('=').append(count));
+        return report.append(System.lineSeparator()).toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, Histogram histogram, long errors, double seconds) {
+        report.append(String.format(Locale.ROOT, "%-10s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue())));
+    }
+
+    private void writeReport(String report) throws IOException {
+        Path dir = Path.of(options.reportDir);
+        Files.createDirectories(dir);
+        String name = "load-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Files.writeString(dir.resolve(name + ".txt"), report, StandardCharsets.UTF_8);
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorder.total(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            // Percentile distribution in milliseconds, readable by the HdrHistogram plotter
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PrintStream print = new PrintStream(out, true, StandardCharsets.UTF_8)) {
+                histogram.outputPercentileDistribution(print, 1_000_000.0);
+            }
+            Files.write(dir.resolve(name + "-" + operation.label() + ".hgrm"), out.toByteArray());
+        }
+        System.out.println("Report written to " + dir.resolve(name + ".txt").toAbsolutePath());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Options of a run, parsed from {@code --name=value} arguments.
+     */
+    static final class Options {
+        String url;
+        int rate = 200;
+        int duration = 60;
+        int warmup = 10;
+        int workers = 64;
+        boolean virtualWorkers;
+        int timeoutSeconds = 10;
+        String mixText = "product:50,stock:15,warehouse:5,create:10,position:15,close:5";
+        double productSkew = 1.0;
+        String reportDir = System.getProperty("load.reportDir");
+        final DataGenerator.Options data = new DataGenerator.Options();
+        final List<String> appArguments = new ArrayList<>();
+
+        private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        private Operation[] operations;
+        private int[] cumulativeWeights;
+        int totalWeight;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            options.data.products = 10_000;
+            options.data.warehouses = 20;
+            options.data.orders = 100_000;
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+                }
+                String name = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (name) {
+                    case "url" -> options.url = value;
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "duration" -> options.duration = Integer.parseInt(value);
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "workers" -> options.workers = Integer.parseInt(value);
+                    case "virtual-workers" -> options.virtualWorkers = Boolean.parseBoolean(value);
+                    case "timeout" -> options.timeoutSeconds = Integer.parseInt(value);
+                    case "mix" -> options.mixText = value;
+                    case "product-skew" -> options.productSkew = Double.parseDouble(value);
+                    case "report-dir" -> options.reportDir = value;
+                    case "products" -> options.data.products = Integer.parseInt(value);
+                    case "warehouses" -> options.data.warehouses = Integer.parseInt(value);
+                    case "orders" -> options.data.orders = Integer.parseInt(value);
+                    case "seed" -> options.data.seed = Long.parseLong(value);
+                    case "app" -> options.appArguments.add(value);
+                    default -> throw new IllegalArgumentException("Unknown option: --" + name);
+                }
+            }
+            if (options.rate <= 0 || options.workers <= 0 || options.duration <= 0) {
+                throw new IllegalArgumentException("rate, workers and duration must be positive.");
+            }
+            options.parseMix();
+            return options;
+        }
+
+        private void parseMix() {
+            for (String entry : mixText.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected operation:weight in the mix, got: " + entry);
+                }
+                mix.merge(Operation.ofLabel(parts[0].trim()), Integer.parseInt(parts[1].trim()), Integer::sum);
+            }
+            operations = mix.keySet().toArray(new Operation[0]);
+            cumulativeWeights = new int[operations.length];
+            for (int i = 0; i < operations.length; i++) {
+                totalWeight += mix.get(operations[i]);
+                cumulativeWeights[i] = totalWeight;
+            }
+            if (totalWeight <= 0) {
+                throw new IllegalArgumentException("The weights of the mix must add up to more than 0.");
+            }
+        }
+
+        /**
+         * Returns the operation for a random number between 0 and the total weight.
+         */
+        Operation pick(int random) {
+            for (int i = 0; i < operations.length; i++) {
+                if (random < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            return operations[operations.length - 1];
+        }
+    }
+}
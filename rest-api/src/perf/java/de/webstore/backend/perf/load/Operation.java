@@ -0,0 +1,47 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.load;
+
+/**
+ * The operations a load test sends, named by their label in the {@code --mix} option and in the reports.
+ */
+public enum Operation {
+
+    /** {@code GET /product/{productId}} */
+    PRODUCT("product"),
+    /** {@code GET /warehouse/product/{productId}/total} */
+    STOCK("stock"),
+    /** {@code GET /warehouse/{warehouseNumber}} */
+    WAREHOUSE("warehouse"),
+    /** {@code POST /order/add} */
+    CREATE("create"),
+    /** {@code POST /order/{orderId}/add/new/position} */
+    POSITION("position"),
+    /** {@code PUT /order/close/{orderId}} */
+    CLOSE("close");
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Returns the operation with a label.
+     *
+     * @param label the label
+     * @return the operation
+     * @throws IllegalArgumentException if there is no operation with the label
+     */
+    public static Operation ofLabel(String label) {
+        for (Operation operation : values()) {
+            if (operation.label.equals(label)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + label);
+    }
+}
@@ -0,0 +1,196 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.webstore.backend.perf.ZipfDistribution;
+
+/**
+ * Sends the requests of a load test to the REST API.
+ * <p>
+ * Reads pick products by a Zipf distribution, like {@link de.webstore.backend.perf.DataGenerator} does for
+ * positions, and warehouses uniformly. Orders go through their life cycle: {@code create} makes a new open order,
+ * {@code position} adds a product to an open order and {@code close} closes an order that has positions. When there
+ * is no suitable order yet, the operation falls back to the previous step of the life cycle and is recorded as
+ * that step.
+ */
+public class Workload {
+
+    private static final String API = "/api/de/v1";
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final LatencyRecorder recorder;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> productIds = new ArrayList<>();
+    private final List<Integer> warehouseNumbers = new ArrayList<>();
+    private final Queue<String> emptyOrders = new ConcurrentLinkedQueue<>();
+    private final Queue<String> filledOrders = new ConcurrentLinkedQueue<>();
+    private ZipfDistribution popularity;
+
+    /**
+     * Creates a workload.
+     *
+     * @param client   the HTTP client
+     * @param baseUrl  the URL of the application, e.g. {@code http://localhost:8080}
+     * @param timeout  the timeout of a request
+     * @param recorder records the requests
+     */
+    public Workload(HttpClient client, String baseUrl, Duration timeout, LatencyRecorder recorder) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Loads the products and active warehouses the requests refer to.
+     *
+     * @param productSkew the Zipf exponent of product popularity
+     * @throws IOException          if the application cannot be reached or returns an error
+     * @throws InterruptedException if interrupted while waiting for a response
+     */
+    public void load(double productSkew) throws IOException, InterruptedException {
+        for (JsonNode product : getJson("/product/all")) {
+            productIds.add(product.get("productId").asText());
+        }
+        for (JsonNode warehouse : getJson("/warehouse/all")) {
+            warehouseNumbers.add(warehouse.get("warehouseNumber").asInt());
+        }
+        if (productIds.isEmpty() || warehouseNumbers.isEmpty()) {
+            throw new IllegalStateException("The database has no products or no active warehouses.");
+        }
+        popularity = new ZipfDistribution(productIds.size(), productSkew);
+    }
+
+    public int getProductCount() {
+        return productIds.size();
+    }
+
+    public int getWarehouseCount() {
+        return warehouseNumbers.size();
+    }
+
+    /**
+     * Sends a request and records it.
+     *
+     * @param operation      the operation to send
+     * @param intendedStart  the {@link System#nanoTime()} at which the request should have been sent; the latency is
+     *                       measured from there, so time spent waiting for a free worker counts as well
+     */
+    public void execute(Operation operation, long intendedStart) {
+        Operation executed = operation;
+        String outcome;
+        boolean success;
+        try {
+            HttpResponse<String> response;
+            switch (operation) {
+                case PRODUCT -> response = send(get("/product/" + randomProduct()));
+                case STOCK -> response = send(get("/warehouse/product/" + randomProduct() + "/total"));
+                case WAREHOUSE -> response = send(get("/warehouse/" + randomWarehouse()));
+                default -> {
+                    String order;
+                    if (operation == Operation.CLOSE && (order = filledOrders.poll()) != null) {
+                        response = send(request("/order/close/" + order).PUT(HttpRequest.BodyPublishers.noBody()).build());
+                    } else if (operation != Operation.CREATE && (order = nextOrderForPosition()) != null) {
+                        executed = Operation.POSITION;
+                        response = addPosition(order);
+                    } else {
+                        executed = Operation.CREATE;
+                        response = createOrder();
+                    }
+                }
+            }
+            outcome = String.valueOf(response.statusCode());
+            success = response.statusCode() < 400;
+        } catch (HttpTimeoutException e) {
+            outcome = "timeout";
+            success = false;
+        } catch (IOException e) {
+            outcome = "io-error";
+            success = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        recorder.record(executed, System.nanoTime() - intendedStart, outcome, success);
+    }
+
+    private HttpResponse<String> createOrder() throws IOException, InterruptedException {
+        String body = "{\"date\":\"" + LocalDate.now() + "\"}";
+        HttpResponse<String> response = send(request("/order/add")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+        if (response.statusCode() == 200) {
+            JsonNode orderId = objectMapper.readTree(response.body()).get("orderId");
+            if (orderId != null && !orderId.isNull()) {
+                emptyOrders.offer(orderId.asText());
+            }
+        }
+        return response;
+    }
+
+    private HttpResponse<String> addPosition(String order) throws IOException, InterruptedException {
+        int quantity = 1 + ThreadLocalRandom.current().nextInt(3);
+        String body = "{\"productId\":\"" + randomProduct() + "\",\"quantity\":" + quantity + "}";
+        HttpResponse<String> response = send(request("/order/" + order + "/add/new/position")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+        if (response.statusCode() < 400) {
+            filledOrders.offer(order);
+        }
+        return response;
+    }
+
+    /**
+     * Returns an order to add a position to: preferably a new order, otherwise one that already has positions.
+     */
+    private String nextOrderForPosition() {
+        String order = emptyOrders.poll();
+        return order != null ? order : filledOrders.poll();
+    }
+
+    private String randomProduct() {
+        return productIds.get(popularity.sample(ThreadLocalRandom.current()));
+    }
+
+    private int randomWarehouse() {
+        return warehouseNumbers.get(ThreadLocalRandom.current().nextInt(warehouseNumbers.size()));
+    }
+
+    private JsonNode getJson(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(get(path));
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + path + " returned " + response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + API + path)).timeout(timeout);
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
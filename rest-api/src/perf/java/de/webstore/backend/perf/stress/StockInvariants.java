@@ -0,0 +1,117 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.stress;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The invariants of the stock, checked against the database after a stress run:
+ * <ul>
+ *   <li>no stock row and no warehouse total is negative</li>
+ *   <li>the total of every warehouse ({@code lager.menge}) is the sum of its stock rows</li>
+ *   <li>exactly the orders reported as closed are closed</li>
+ *   <li>no product was sold beyond the stock it had plus what was added (no oversold orders)</li>
+ *   <li>the stock of every product matches the ledger: before + added - reduced - sold. Reductions may be cut
+ *       short by the {@code GREATEST(0, ...)} clamps when stock runs out, so unless the run is {@code exact}
+ *       (stock never runs out) only the bounds are checked</li>
+ * </ul>
+ */
+final class StockInvariants {
+
+    private StockInvariants() {
+    }
+
+    /**
+     * Reads the stock of each product.
+     *
+     * @param conn the connection to the database
+     * @return the sum of the stock rows per product
+     * @throws SQLException if a database access error occurs
+     */
+    static Map<String, Long> stockByProduct(Connection conn) throws SQLException {
+        Map<String, Long> stock = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT produkt_fk, SUM(menge) FROM produktlagermenge GROUP BY produkt_fk");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                stock.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * Checks the invariants.
+     *
+     * @param conn   the connection to the database
+     * @param before the stock per product before the run
+     * @param ledger what the run did
+     * @param exact  whether the stock can never have run out, so reductions were never clamped
+     * @return the violations, empty if all invariants hold
+     * @throws SQLException if a database access error occurs
+     */
+    static List<String> check(Connection conn, Map<String, Long> before, StockLedger ledger, boolean exact) throws SQLException {
+        List<String> violations = new ArrayList<>();
+
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT produkt_fk, lager_fk, menge FROM produktlagermenge WHERE menge < 0");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                violations.add("Negative stock: product " + rs.getString(1) + " in warehouse " + rs.getInt(2) + " is " + rs.getInt(3));
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT lagernummer, menge FROM lager WHERE menge < 0");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                violations.add("Negative warehouse total: warehouse " + rs.getInt(1) + " is " + rs.getInt(2));
+            }
+        }
+
+        String totalsSql = "SELECT l.lagernummer, l.menge, COALESCE(SUM(p.menge), 0) AS summe "
+                + "FROM lager l LEFT JOIN produktlagermenge p ON p.lager_fk = l.lagernummer "
+                + "GROUP BY l.lagernummer, l.menge "
+                + "HAVING l.menge <> COALESCE(SUM(p.menge), 0)";
+        try (PreparedStatement pstmt = conn.prepareStatement(totalsSql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                violations.add("Warehouse total out of sync: lager.menge of warehouse " + rs.getInt(1) + " is " + rs.getLong(2)
+                        + ", its stock rows add up to " + rs.getLong(3));
+            }
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM auftrag WHERE status = 'geschlossen'");
+             ResultSet rs = pstmt.executeQuery()) {
+            long closed = rs.next() ? rs.getLong(1) : 0;
+            if (closed != ledger.closedOrders()) {
+                violations.add("Closed orders: " + ledger.closedOrders() + " were reported as closed, " + closed + " are closed");
+            }
+        }
+
+        Map<String, Long> after = stockByProduct(conn);
+        for (Map.Entry<String, Long> entry : before.entrySet()) {
+            String productId = entry.getKey();
+            long available = entry.getValue() + ledger.added(productId);
+            long sold = ledger.sold(productId);
+            long reduced = ledger.reduced(productId);
+            long actual = after.getOrDefault(productId, 0L);
+            long highest = available - sold;
+            long lowest = available - sold - reduced;
+
+            if (sold > available) {
+                violations.add("Oversold: product " + productId + " sold " + sold + " of at most " + available + " available");
+            }
+            if (exact && actual != lowest) {
+                violations.add("Stock of product " + productId + " is " + actual + ", expected " + lowest
+                        + " (before " + entry.getValue() + ", added " + ledger.added(productId) + ", reduced " + reduced + ", sold " + sold + ")");
+            } else if (!exact && (actual > highest || actual < Math.max(0, lowest))) {
+                violations.add("Stock of product " + productId + " is " + actual + ", expected between " + Math.max(0, lowest) + " and " + highest
+                        + " (before " + entry.getValue() + ", added " + ledger.added(productId) + ", reduced " + reduced + ", sold " + sold + ")");
+            }
+        }
+        return violations;
+    }
+}
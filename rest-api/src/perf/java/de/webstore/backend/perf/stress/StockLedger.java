@@ -0,0 +1,61 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.stress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the stress test did to the stock of each product, as seen by the callers of the services.
+ * <p>
+ * Together with the stock before the run this gives the stock the database should hold afterwards. Only
+ * operations the services reported as successful are counted; note that {@code addProductQuantityAndUpdateWarehouse}
+ * and {@code reduceProductQuantityAndUpdateWarehouse} only log database errors, so a rolled back call is counted
+ * as well and shows up as a difference.
+ */
+class StockLedger {
+
+    private final Map<String, LongAdder> added = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> reduced = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> sold = new ConcurrentHashMap<>();
+    private final LongAdder closedOrders = new LongAdder();
+
+    void added(String productId, int quantity) {
+        added.computeIfAbsent(productId, key -> new LongAdder()).add(quantity);
+    }
+
+    void reduced(String productId, int quantity) {
+        reduced.computeIfAbsent(productId, key -> new LongAdder()).add(quantity);
+    }
+
+    /**
+     * Records a successfully closed order.
+     *
+     * @param quantities the ordered quantity per product
+     */
+    void closed(Map<String, Integer> quantities) {
+        quantities.forEach((productId, quantity) -> sold.computeIfAbsent(productId, key -> new LongAdder()).add(quantity));
+        closedOrders.increment();
+    }
+
+    long added(String productId) {
+        return sum(added, productId);
+    }
+
+    long reduced(String productId) {
+        return sum(reduced, productId);
+    }
+
+    long sold(String productId) {
+        return sum(sold, productId);
+    }
+
+    long closedOrders() {
+        return closedOrders.sum();
+    }
+
+    private static long sum(Map<String, LongAdder> sums, String productId) {
+        LongAdder sum = sums.get(productId);
+        return sum != null ? sum.sum() : 0;
+    }
+}
@@ -0,0 +1,354 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.perf.stress;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import de.webstore.backend.Application;
+import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.PositionDTO;
+import de.webstore.backend.exception.InsufficientStockException;
+import de.webstore.backend.perf.DataGenerator;
+import de.webstore.backend.service.OrderService;
+import de.webstore.backend.service.WarehouseService;
+
+/**
+ * Concurrency stress test of the stock.
+ * <p>
+ * Many threads call {@code WarehouseService.addProductQuantityAndUpdateWarehouse},
+ * {@code WarehouseService.reduceProductQuantityAndUpdateWarehouse} and {@code OrderService.closeOrder} (on orders
+ * they create with a few positions) on a small set of products and warehouses, so the same rows are hit all the
+ * time. Afterwards the {@link StockInvariants} are checked against the database and the throughput of each
+ * operation is reported together with every violation. The process exits with status 1 if there are violations.
+ * <p>
+ * Two scenarios run one after the other, each on a freshly seeded database and a fresh application context:
+ * <ul>
+ *   <li>{@code contention}: plenty of stock, so nothing may be clamped and the stock must match the ledger exactly</li>
+ *   <li>{@code scarcity}: little stock, so closes fail with insufficient stock and reductions hit zero; nothing may be
+ *       oversold and no total may go negative</li>
+ * </ul>
+ * Without {@code --url} an embedded H2 database is used; its locking differs from MySQL, so results that matter
+ * should be confirmed with {@code --url} against a MySQL test database, which is emptied first ({@code --truncate}
+ * must be given to confirm).
+ * <p>
+ * Run with {@code ./gradlew stressTest --args="--threads=32 --duration=60"}; {@code --help} lists all options.
+ */
+public final class StockStressTest {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Options (all optional):",
+            "  --url=<jdbc url> --user=<name> --password=<secret> --truncate",
+            "                               run against this database, which is emptied first",
+            "  --scenario=all               contention, scarcity or all",
+            "  --threads=16                 concurrent callers",
+            "  --duration=30                seconds per scenario",
+            "  --products=10                products, each stocked in one or more warehouses",
+            "  --warehouses=4               warehouses",
+            "  --seed=42                    seed of the dataset");
+
+    private enum Call {
+        ADD, REDUCE, CLOSE
+    }
+
+    /**
+     * A scenario: how much stock each product has per warehouse and how often each call is made.
+     */
+    private enum Scenario {
+        CONTENTION(1_000_000, 30, 30, 40, true),
+        SCARCITY(20, 10, 30, 60, false);
+
+        final int stockPerWarehouse;
+        final int addWeight;
+        final int reduceWeight;
+        final int closeWeight;
+        final boolean exact;
+
+        Scenario(int stockPerWarehouse, int addWeight, int reduceWeight, int closeWeight, boolean exact) {
+            this.stockPerWarehouse = stockPerWarehouse;
+            this.addWeight = addWeight;
+            this.reduceWeight = reduceWeight;
+            this.closeWeight = closeWeight;
+            this.exact = exact;
+        }
+
+        Call pick(int random) {
+            int total = addWeight + reduceWeight + closeWeight;
+            int value = random % total;
+            if (value < addWeight) {
+                return Call.ADD;
+            }
+            return value < addWeight + reduceWeight ? Call.REDUCE : Call.CLOSE;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private String url;
+    private String user = "sa";
+    private String password = "";
+    private boolean truncate;
+    private String scenario = "all";
+    private int threads = 16;
+    private int duration = 30;
+    private final DataGenerator.Options data = new DataGenerator.Options();
+
+    private final Map<Call, Histogram> latencies = new EnumMap<>(Call.class);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    private StockStressTest() {
+        data.products = 10;
+        data.warehouses = 4;
+        data.orders = 0;
+        data.warehouseSkew = 0;
+        data.truncate = true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (List.of(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        StockStressTest test = new StockStressTest();
+        test.parse(args);
+        if (test.url != null && !test.truncate) {
+            System.out.println("--url empties the database, confirm with --truncate.");
+            System.exit(2);
+        }
+
+        int violations = 0;
+        for (Scenario candidate : Scenario.values()) {
+            if (test.scenario.equals("all") || test.scenario.equals(candidate.label())) {
+                violations += test.run(candidate);
+            }
+        }
+        System.out.println(violations == 0 ? "All invariants hold." : violations + " invariant violations.");
+        System.exit(violations == 0 ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String name = eq > 0 ? arg.substring(2, eq) : arg.substring(2);
+            String value = eq > 0 ? arg.substring(eq + 1) : "true";
+            switch (name) {
+                case "url" -> url = value;
+                case "user" -> user = value;
+                case "password" -> password = value;
+                case "truncate" -> truncate = Boolean.parseBoolean(value);
+                case "scenario" -> scenario = value;
+                case "threads" -> threads = Integer.parseInt(value);
+                case "duration" -> duration = Integer.parseInt(value);
+                case "products" -> data.products = Integer.parseInt(value);
+                case "warehouses" -> data.warehouses = Integer.parseInt(value);
+                case "seed" -> data.seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        // Products share warehouses, so the same warehouse totals are updated by all threads
+        data.maxWarehousesPerProduct = data.warehouses;
+    }
+
+    /**
+     * Runs a scenario and returns the number of violations.
+     */
+    private int run(Scenario scenario) throws Exception {
+        String jdbcUrl = url != null ? url
+                : "jdbc:h2:mem:webstore-stress-" + scenario.label() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        List<String[]> stockRows;
+        Map<String, Long> before;
+        try (Connection conn = DriverManager.getConnection(jdbcUrl, user, password)) {
+            stockRows = seed(conn, scenario, url == null);
+            before = StockInvariants.stockByProduct(conn);
+        }
+
+        latencies.clear();
+        outcomes.clear();
+        for (Call call : Call.values()) {
+            latencies.put(call, new ConcurrentHistogram(3));
+        }
+        StockLedger ledger = new StockLedger();
+
+        System.out.println("Scenario " + scenario.label() + ": " + threads + " threads for " + duration + " s on "
+                + before.size() + " products in " + data.warehouses + " warehouses, " + scenario.stockPerWarehouse + " each");
+        List<String> violations;
+        long elapsed;
+        try (ConfigurableApplicationContext context = start(jdbcUrl)) {
+            WarehouseService warehouseService = context.getBean(WarehouseService.class);
+            OrderService orderService = context.getBean(OrderService.class);
+
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < end) {
+                            call(scenario, stockRows, warehouseService, orderService, ledger);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }, "stress-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            done.await();
+            elapsed = System.nanoTime() - start;
+
+            try (Connection conn = DriverManager.getConnection(jdbcUrl, user, password)) {
+                violations = StockInvariants.check(conn, before, ledger, scenario.exact);
+            }
+        }
+
+        report(elapsed / 1e9);
+        if (violations.isEmpty()) {
+            System.out.println("  No violations.");
+        } else {
+            System.out.println("  " + violations.size() + " violations:");
+            violations.forEach(violation -> System.out.println("    " + violation));
+        }
+        return violations.size();
+    }
+
+    private void call(Scenario scenario, List<String[]> stockRows, WarehouseService warehouseService,
+                      OrderService orderService, StockLedger ledger) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Call call = scenario.pick(random.nextInt(Integer.MAX_VALUE));
+        String[] row = stockRows.get(random.nextInt(stockRows.size()));
+        String productId = row[0];
+        int warehouseNumber = Integer.parseInt(row[1]);
+        int quantity = 1 + random.nextInt(5);
+
+        long start = System.nanoTime();
+        String outcome;
+        try {
+            switch (call) {
+                case ADD -> {
+                    warehouseService.addProductQuantityAndUpdateWarehouse(productId, warehouseNumber, quantity);
+                    ledger.added(productId, quantity);
+                    outcome = "ok";
+                }
+                case REDUCE -> {
+                    warehouseService.reduceProductQuantityAndUpdateWarehouse(productId, warehouseNumber, quantity);
+                    ledger.reduced(productId, quantity);
+                    outcome = "ok";
+                }
+                default -> outcome = closeOrder(stockRows, orderService, ledger, random);
+            }
+        } catch (InsufficientStockException e) {
+            outcome = "insufficient stock";
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+        }
+        latencies.get(call).recordValue(System.nanoTime() - start);
+        outcomes.computeIfAbsent(call.name().toLowerCase(Locale.ROOT) + " " + outcome, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Creates an order with one to three positions and closes it.
+     */
+    private String closeOrder(List<String[]> stockRows, OrderService orderService, StockLedger ledger, ThreadLocalRandom random) {
+        OrderDTO order = orderService.createOrder(new OrderDTO(null, LocalDate.now(), null));
+        if (order == null || order.getOrderId() == null) {
+            return "create failed";
+        }
+        Map<String, Integer> quantities = new HashMap<>();
+        int positions = 1 + random.nextInt(3);
+        for (int i = 0; i < positions; i++) {
+            String productId = stockRows.get(random.nextInt(stockRows.size()))[0];
+            int quantity = 1 + random.nextInt(5);
+            orderService.addOrderPosition(order.getOrderId(), new PositionDTO(null, productId, null, quantity));
+            quantities.merge(productId, quantity, Integer::sum);
+        }
+        if (!orderService.closeOrder(order.getOrderId())) {
+            return "close failed";
+        }
+        ledger.closed(quantities);
+        return "ok";
+    }
+
+    private void report(double seconds) {
+        System.out.println(String.format(Locale.ROOT, "  %-8s %9s %9s %9s %9s", "call", "count", "calls/s", "p50 ms", "p99 ms"));
+        for (Call call : Call.values()) {
+            Histogram histogram = latencies.get(call);
+            System.out.println(String.format(Locale.ROOT, "  %-8s %9d %9.1f %9.2f %9.2f",
+                    call.name().toLowerCase(Locale.ROOT), histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6));
+        }
+        StringBuilder line = new StringBuilder("  Outcomes:");
+        new TreeMap<>(outcomes).forEach((outcome, count) -> line.append("  ").append(outcome).append('=').append(count.sum()));
+        System.out.println(line);
+    }
+
+    /**
+     * Fills the database and sets every stock row to the amount of the scenario.
+     *
+     * @return the stock rows as pairs of product ID and warehouse number
+     */
+    private List<String[]> seed(Connection conn, Scenario scenario, boolean createSchema) throws SQLException {
+        if (createSchema) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("RUNSCRIPT FROM 'classpath:benchmark/schema-h2.sql'");
+            }
+        }
+        DataGenerator.generate(conn, data);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE produktlagermenge SET menge = " + scenario.stockPerWarehouse);
+            stmt.executeUpdate("UPDATE lager SET menge = (SELECT COALESCE(SUM(p.menge), 0) FROM produktlagermenge p WHERE p.lager_fk = lager.lagernummer)");
+        }
+        List<String[]> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT produkt_fk, lager_fk FROM produktlagermenge ORDER BY produkt_fk, lager_fk");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new String[] {rs.getString(1), String.valueOf(rs.getInt(2))});
+            }
+        }
+        return rows;
+    }
+
+    private ConfigurableApplicationContext start(String jdbcUrl) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=" + user,
+                "--spring.datasource.password=" + password,
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                // No background work besides the stress threads
+                "--webstore.outbox.poll-ms=3600000"));
+        if (url == null) {
+            arguments.add("--spring.datasource.driver-class-name=org.h2.Driver");
+        }
+        return new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments.toArray(new String[0]));
+    }
+}
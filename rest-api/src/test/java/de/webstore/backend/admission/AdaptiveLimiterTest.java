@@ -0,0 +1,73 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdaptiveLimiterTest {
+
+    // Limit 10 between 2 and 20, backoff to half; every release closes the window
+    private final AdaptiveLimiter limiter = new AdaptiveLimiter(new SimpleMeterRegistry(), true,
+            10, 2, 20, 2.0, 0.5, 0, 1, 0.5, 0.2);
+
+    @Test
+    void lowerPrioritiesAreLimitedToTheirShare() {
+        assertTrue(limiter.tryAcquire(Priority.LOW));
+        assertTrue(limiter.tryAcquire(Priority.LOW));
+        assertFalse(limiter.tryAcquire(Priority.LOW));
+
+        for (int i = 2; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        }
+        assertFalse(limiter.tryAcquire(Priority.NORMAL));
+
+        for (int i = 5; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        }
+        assertFalse(limiter.tryAcquire(Priority.CRITICAL));
+    }
+
+    @Test
+    void dropsShrinkTheLimit() {
+        assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        limiter.release(1_000_000, true);
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void latencyAboveTheBaselineShrinksTheLimit() {
+        assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        limiter.release(1_000_000, false);
+        assertEquals(10, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        limiter.release(10_000_000, false);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void busyLimitGrowsWhileLatencyIsStable() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        }
+        limiter.release(1_000_000, false);
+
+        assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+            limiter.release(1_000_000, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+}
@@ -0,0 +1,30 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class PriorityTest {
+
+    @Test
+    void closingOrdersAndChangingStockAreCritical() {
+        assertEquals(Priority.CRITICAL, Priority.of("PUT", "/api/de/v1/order/close/A1"));
+        assertEquals(Priority.CRITICAL, Priority.of("POST", "/api/de/v1/order/bulk/close"));
+        assertEquals(Priority.CRITICAL, Priority.of("POST", "/api/de/v1/warehouse/add/product/P1/warehouse/1"));
+    }
+
+    @Test
+    void pollingACloseJobIsNormal() {
+        assertEquals(Priority.NORMAL, Priority.of("GET", "/api/de/v1/order/close/job/J1"));
+        assertEquals(Priority.NORMAL, Priority.of("POST", "/api/de/v1/order/add"));
+        assertEquals(Priority.NORMAL, Priority.of("GET", "/api/de/v1/product/P1"));
+    }
+
+    @Test
+    void reportsAreLow() {
+        assertEquals(Priority.LOW, Priority.of("GET", "/api/de/v1/order/all"));
+        assertNull(Priority.of("GET", "/actuator/health"));
+    }
+}
@@ -0,0 +1,46 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.bulkhead;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class BulkheadGroupTest {
+
+    @Test
+    void fullListsAndReportsAreReports() {
+        assertEquals(BulkheadGroup.REPORT, BulkheadGroup.of("GET", "/api/de/v1/product/all"));
+        assertEquals(BulkheadGroup.REPORT, BulkheadGroup.of("GET", "/api/de/v1/warehouse/all"));
+        assertEquals(BulkheadGroup.REPORT, BulkheadGroup.of("GET", "/api/de/v1/order/all"));
+        assertEquals(BulkheadGroup.REPORT, BulkheadGroup.of("GET", "/api/de/v1/report/revenue/daily"));
+    }
+
+    @Test
+    void warehouseReadsAreCatalogAndWritesAreStock() {
+        assertEquals(BulkheadGroup.CATALOG, BulkheadGroup.of("GET", "/api/de/v1/warehouse/1"));
+        assertEquals(BulkheadGroup.CATALOG, BulkheadGroup.of("HEAD", "/api/de/v1/warehouse/product/P1/total"));
+        assertEquals(BulkheadGroup.STOCK, BulkheadGroup.of("POST", "/api/de/v1/warehouse/add/product/P1/warehouse/1"));
+        assertEquals(BulkheadGroup.STOCK, BulkheadGroup.of("POST", "/api/de/v1/warehouse/reduce/product/P1/warehouse/1"));
+    }
+
+    @Test
+    void productsAreCatalog() {
+        assertEquals(BulkheadGroup.CATALOG, BulkheadGroup.of("GET", "/api/de/v1/product/P1"));
+        assertEquals(BulkheadGroup.CATALOG, BulkheadGroup.of("PUT", "/api/de/v1/product/update/P1"));
+    }
+
+    @Test
+    void ordersAreOrder() {
+        assertEquals(BulkheadGroup.ORDER, BulkheadGroup.of("POST", "/api/de/v1/order/add"));
+        assertEquals(BulkheadGroup.ORDER, BulkheadGroup.of("PUT", "/api/de/v1/order/close/A1"));
+        assertEquals(BulkheadGroup.ORDER, BulkheadGroup.of("GET", "/api/de/v1/order/close/job/J1"));
+    }
+
+    @Test
+    void otherRequestsAreOutsideTheBulkheads() {
+        assertNull(BulkheadGroup.of("GET", "/api/de/v1/events"));
+        assertNull(BulkheadGroup.of("GET", "/actuator/health"));
+        assertNull(BulkheadGroup.of("GET", "/swagger-ui/index.html"));
+    }
+}
@@ -0,0 +1,51 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedTtlCacheTest {
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        BoundedTtlCache<String, String> cache = new BoundedTtlCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    void insertionSweepsExpiredEntriesThatWereReadRecently() throws InterruptedException {
+        BoundedTtlCache<String, String> cache = new BoundedTtlCache<>(100, Duration.ofMillis(200));
+        cache.put("old", "1");
+        Thread.sleep(120);
+        cache.put("newer", "2");
+        // Moves the older entry behind the newer one in access order
+        assertEquals("1", cache.get("old"));
+        Thread.sleep(120);
+
+        cache.put("new", "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("old"));
+        assertEquals("2", cache.get("newer"));
+    }
+
+    @Test
+    void putIfAbsentKeepsTheLiveValue() {
+        BoundedTtlCache<String, String> cache = new BoundedTtlCache<>(10);
+
+        assertNull(cache.putIfAbsent("a", "1"));
+        assertEquals("1", cache.putIfAbsent("a", "2"));
+        assertEquals("1", cache.get("a"));
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class InvalidationBusTest {
+
+    // Delivers every message to all started transports, the sender's own included
+    private final List<Consumer<InvalidationMessage>> network = new ArrayList<>();
+
+    private final InvalidationBus first = new InvalidationBus(new NetworkTransport(), "first");
+    private final InvalidationBus second = new InvalidationBus(new NetworkTransport(), "second");
+    private final List<String> firstReceived = new ArrayList<>();
+    private final List<String> secondReceived = new ArrayList<>();
+
+    InvalidationBusTest() {
+        first.register("product", (key, version) -> firstReceived.add(key + "@" + version));
+        second.register("product", (key, version) -> secondReceived.add(key + "@" + version));
+        first.start();
+        second.start();
+    }
+
+    @Test
+    void invalidationReachesTheOtherInstances() {
+        first.publish("product", "P1", 7);
+
+        assertEquals(List.of("P1@7"), secondReceived);
+    }
+
+    @Test
+    void ownMessagesAreDropped() {
+        first.publish("product", "P1", 7);
+
+        assertTrue(firstReceived.isEmpty());
+    }
+
+    @Test
+    void otherRegionsAreNotInvalidated() {
+        second.register("stock", (key, version) -> secondReceived.add("stock:" + key));
+
+        first.publish("stock", "P1/1", 0);
+
+        assertEquals(List.of("stock:P1/1"), secondReceived);
+    }
+
+    @Test
+    void failingHandlerDoesNotStopTheBus() {
+        second.register("stock", (key, version) -> {
+            throw new IllegalStateException("broken");
+        });
+
+        first.publish("stock", "P1/1", 0);
+        first.publish("product", "P1", 8);
+
+        assertEquals(List.of("P1@8"), secondReceived);
+    }
+
+    private final class NetworkTransport implements InvalidationTransport {
+
+        @Override
+        public void start(Consumer<InvalidationMessage> receiver) {
+            network.add(receiver);
+        }
+
+        @Override
+        public void send(InvalidationMessage message) {
+            network.forEach(receiver -> receiver.accept(message));
+        }
+
+        @Override
+        public void stop() {
+            // Nothing to release
+        }
+    }
+}
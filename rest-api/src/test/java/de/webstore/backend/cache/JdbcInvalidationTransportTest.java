@@ -0,0 +1,117 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.webstore.backend.config.DatabaseConnection;
+
+/**
+ * Runs against an embedded H2 database with the schema of the benchmarks.
+ */
+class JdbcInvalidationTransportTest {
+
+    private final String url = "jdbc:h2:mem:invalidation-" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private final JdbcInvalidationTransport transport = new JdbcInvalidationTransport(new DatabaseConnection(null, null, null) {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return DriverManager.getConnection(url, "sa", "");
+        }
+    });
+    private final List<String> received = new ArrayList<>();
+
+    JdbcInvalidationTransportTest() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("RUNSCRIPT FROM 'classpath:benchmark/schema-h2.sql'");
+        }
+        ReflectionTestUtils.setField(transport, "batchSize", 500);
+        ReflectionTestUtils.setField(transport, "gapTimeoutMs", 60_000L);
+        transport.start(message -> received.add(message.key()));
+    }
+
+    @Test
+    void sentMessagesAreDelivered() {
+        transport.poll();
+        transport.send(new InvalidationMessage("first", "product", "P1", 4));
+        transport.send(new InvalidationMessage("first", "product", "P2", 5));
+
+        transport.poll();
+
+        assertEquals(List.of("P1", "P2"), received);
+    }
+
+    @Test
+    void messagesWrittenBeforeTheFirstPollAreSkipped() {
+        transport.send(new InvalidationMessage("first", "product", "P1", 4));
+
+        transport.poll();
+        transport.send(new InvalidationMessage("first", "product", "P2", 5));
+        transport.poll();
+
+        assertEquals(List.of("P2"), received);
+    }
+
+    @Test
+    void gapIsWaitedFor() throws SQLException {
+        transport.poll();
+        insert(1, "P1");
+        insert(3, "P3");
+
+        transport.poll();
+        assertEquals(List.of("P1"), received);
+
+        // The transaction writing row 2 commits
+        insert(2, "P2");
+        transport.poll();
+        assertEquals(List.of("P1", "P2", "P3"), received);
+    }
+
+    @Test
+    void gapIsSkippedAfterTheTimeout() throws Exception {
+        ReflectionTestUtils.setField(transport, "gapTimeoutMs", 50L);
+        transport.poll();
+        insert(1, "P1");
+        insert(3, "P3");
+
+        transport.poll();
+        assertEquals(List.of("P1"), received);
+
+        // Row 2 was rolled back
+        Thread.sleep(100);
+        transport.poll();
+        assertEquals(List.of("P1", "P3"), received);
+    }
+
+    @Test
+    void stoppedTransportDeliversNothing() {
+        transport.poll();
+        transport.send(new InvalidationMessage("first", "product", "P1", 4));
+        transport.stop();
+
+        transport.poll();
+
+        assertEquals(List.of(), received);
+    }
+
+    private void insert(long id, String key) throws SQLException {
+        String sql = "INSERT INTO cache_invalidierung (id, knoten, bereich, schluessel, version) VALUES (?, 'first', 'product', ?, 0)";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            pstmt.setString(2, key);
+            pstmt.executeUpdate();
+        }
+    }
+}
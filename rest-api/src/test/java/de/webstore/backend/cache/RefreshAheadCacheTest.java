@@ -0,0 +1,97 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RefreshAheadCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void freshEntryIsServedWithoutLoading() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void entryDueForRefreshIsServedAndReloadedInTheBackground() {
+        // Refresh-ahead as long as the TTL: every hit starts a reload, run synchronously here
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofMinutes(5), Duration.ofMinutes(5), Runnable::run);
+
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.get("P1", loads::incrementAndGet));
+    }
+
+    @Test
+    void invalidatedEntryIsLoadedAgain() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        cache.get("P1", loads::incrementAndGet);
+        cache.invalidate("P1");
+
+        assertEquals(2, cache.get("P1", loads::incrementAndGet));
+    }
+
+    @Test
+    void valueLoadedDuringInvalidationIsNotStored() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        assertEquals(1, cache.get("P1", () -> {
+            // A write invalidates the cache while the value is being read
+            cache.invalidateAll();
+            return loads.incrementAndGet();
+        }));
+
+        assertEquals(2, cache.get("P1", loads::incrementAndGet));
+    }
+
+    @Test
+    void invalidationOfAnotherKeyKeepsTheLoadedValue() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        assertEquals(1, cache.get("P1", () -> {
+            cache.invalidate("P2");
+            return loads.incrementAndGet();
+        }));
+
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("P1", () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+    }
+
+    @Test
+    void nullIsNotCached() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>(100, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Runnable::run);
+
+        assertNull(cache.get("P1", () -> null));
+        assertEquals(1, cache.get("P1", loads::incrementAndGet));
+    }
+}
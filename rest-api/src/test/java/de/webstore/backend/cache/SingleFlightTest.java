@@ -0,0 +1,163 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> flight = new SingleFlight<>("test", registry, 10_000, task -> new Thread(task).start());
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        RequestDeadline.clear();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Future<String> leader = executor.submit(() -> flight.execute("P1", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        }));
+        awaitLoads(loads, 1);
+        Future<String> follower = executor.submit(() -> flight.execute("P1", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failureIsSharedButNotKept() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        IllegalStateException failure = new IllegalStateException("boom");
+        Future<String> leader = executor.submit(() -> flight.execute("P1", () -> {
+            loads.incrementAndGet();
+            await(release);
+            throw failure;
+        }));
+        awaitLoads(loads, 1);
+        Future<String> follower = executor.submit(() -> flight.execute("P1", () -> "other"));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals("again", flight.execute("P1", () -> "again"));
+    }
+
+    @Test
+    void loadRunsUnderItsOwnDeadline() {
+        SingleFlight<String, Long> remainingFlight = new SingleFlight<>("remaining", registry, 10_000, task -> new Thread(task).start());
+        RequestDeadline.start(50);
+
+        long remaining = remainingFlight.execute("P1", RequestDeadline::remainingMillis);
+
+        assertTrue(remaining > 50, "the load must not inherit the caller's deadline");
+        assertTrue(RequestDeadline.remainingMillis() <= 50, "the caller's deadline must be restored");
+    }
+
+    @Test
+    void waitingCallerGivesUpAtItsOwnDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Future<String> leader = executor.submit(() -> flight.execute("P1", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        }));
+        awaitLoads(loads, 1);
+        Future<String> follower = executor.submit(() -> {
+            RequestDeadline.start(50);
+            try {
+                return flight.execute("P1", () -> "other");
+            } finally {
+                RequestDeadline.clear();
+            }
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+        release.countDown();
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void leaderGivesUpAtItsOwnDeadlineWhileTheLoadGoesOn() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Future<String> leader = executor.submit(() -> {
+            RequestDeadline.start(50);
+            try {
+                return flight.execute("P1", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "value";
+                });
+            } finally {
+                RequestDeadline.clear();
+            }
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+        Future<String> follower = executor.submit(() -> flight.execute("P1", () -> "other"));
+        awaitCoalesced(1);
+        release.countDown();
+        assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    private void awaitCoalesced(double count) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("webstore.singleflight.calls").tag("result", "coalesced").counter().count() < count) {
+            assertTrue(System.nanoTime() < end, "no caller was coalesced");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitLoads(AtomicInteger loads, int count) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loads.get() < count) {
+            assertTrue(System.nanoTime() < end, "the load did not start");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
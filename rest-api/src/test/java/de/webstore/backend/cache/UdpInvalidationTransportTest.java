@@ -0,0 +1,99 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Two instances on one machine, talking over the loopback interface.
+ */
+class UdpInvalidationTransportTest {
+
+    private final int firstPort = freePort();
+    private final int secondPort = freePort();
+    private final UdpInvalidationTransport first = new UdpInvalidationTransport("127.0.0.1", firstPort,
+            List.of("127.0.0.1:" + secondPort));
+    private final UdpInvalidationTransport second = new UdpInvalidationTransport("127.0.0.1", secondPort,
+            List.of("127.0.0.1:" + firstPort, " "));
+    private final BlockingQueue<InvalidationMessage> firstReceived = new LinkedBlockingQueue<>();
+    private final BlockingQueue<InvalidationMessage> secondReceived = new LinkedBlockingQueue<>();
+
+    UdpInvalidationTransportTest() {
+        first.start(firstReceived::add);
+        second.start(secondReceived::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    void messagesAreSentToThePeers() throws InterruptedException {
+        InvalidationMessage message = new InvalidationMessage("first", "stock", "P1/1,2", 0);
+
+        first.send(message);
+        second.send(new InvalidationMessage("second", "product", "P2", 3));
+
+        assertEquals(message, secondReceived.poll(5, TimeUnit.SECONDS));
+        assertEquals(new InvalidationMessage("second", "product", "P2", 3), firstReceived.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void keyMayContainTheSeparator() throws InterruptedException {
+        InvalidationMessage message = new InvalidationMessage("first", "product", "a\tb", 1);
+
+        first.send(message);
+
+        assertEquals(message, secondReceived.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tooLargeMessagesAreNotSent() throws InterruptedException {
+        first.send(new InvalidationMessage("first", "product", "P".repeat(2000), 1));
+        first.send(new InvalidationMessage("first", "product", "P1", 2));
+
+        assertEquals("P1", secondReceived.poll(5, TimeUnit.SECONDS).key());
+        assertNull(secondReceived.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void busOverUdpDropsItsOwnMessages() throws InterruptedException {
+        // The transport sends to its own port, so the bus receives its own messages as well
+        int port = freePort();
+        UdpInvalidationTransport transport = new UdpInvalidationTransport("127.0.0.1", port, List.of("127.0.0.1:" + port));
+        InvalidationBus bus = new InvalidationBus(transport, "self");
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        bus.register("product", (key, version) -> received.add(key));
+        bus.start();
+        try {
+            transport.send(new InvalidationMessage("other", "product", "P2", 1));
+            bus.publish("product", "P1", 1);
+            transport.send(new InvalidationMessage("other", "product", "P3", 1));
+
+            assertEquals("P2", received.poll(5, TimeUnit.SECONDS));
+            assertEquals("P3", received.poll(5, TimeUnit.SECONDS));
+        } finally {
+            bus.stop();
+        }
+    }
+
+    private static int freePort() {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        } catch (SocketException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
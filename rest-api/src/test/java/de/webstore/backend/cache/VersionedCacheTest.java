@@ -0,0 +1,59 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class VersionedCacheTest {
+
+    private final VersionedCache<String, String> cache = new VersionedCache<>(100, Duration.ofMinutes(5));
+
+    @Test
+    void returnsValueWithItsVersion() {
+        cache.put("P1", "a", 3);
+
+        assertEquals("a", cache.get("P1"));
+        assertEquals(new VersionedCache.Entry<>("a", 3), cache.getEntry("P1"));
+        assertNull(cache.get("P2"));
+        assertNull(cache.getEntry("P2"));
+    }
+
+    @Test
+    void olderValueDoesNotReplaceNewerOne() {
+        cache.put("P1", "new", 5);
+        cache.put("P1", "old", 4);
+
+        assertEquals("new", cache.get("P1"));
+    }
+
+    @Test
+    void invalidationRemovesOlderEntry() {
+        cache.put("P1", "a", 3);
+        cache.invalidate("P1", 4);
+
+        assertNull(cache.get("P1"));
+    }
+
+    @Test
+    void valueReadBeforeInvalidationIsNotStored() {
+        cache.invalidate("P1", 4);
+        cache.put("P1", "stale", 3);
+        assertNull(cache.get("P1"));
+
+        cache.put("P1", "current", 4);
+        assertEquals("current", cache.get("P1"));
+    }
+
+    @Test
+    void lateInvalidationKeepsNewerEntry() {
+        cache.put("P1", "new", 5);
+        cache.invalidate("P1", 4);
+        cache.invalidate("P1", 5);
+
+        assertEquals("new", cache.get("P1"));
+    }
+}
@@ -0,0 +1,150 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SqlDialectTest {
+
+    private static final String TOTALS = "(SELECT lager_fk, SUM(menge) AS totalMenge FROM produktlagermenge GROUP BY lager_fk)";
+
+    @Test
+    void dialectFollowsTheUrl() {
+        assertEquals(SqlDialect.MYSQL, SqlDialect.fromUrl("jdbc:mysql://localhost:3306/webstore"));
+        assertEquals(SqlDialect.H2, SqlDialect.fromUrl("jdbc:h2:mem:webstore;MODE=MySQL"));
+        assertEquals(SqlDialect.SQLITE, SqlDialect.fromUrl("JDBC:SQLITE:webstore.db"));
+        assertEquals(SqlDialect.MYSQL, SqlDialect.fromUrl(null));
+    }
+
+    @Test
+    void upsertsOfEachDialect() {
+        assertEquals(" ON DUPLICATE KEY UPDATE version = VALUES(version), geloescht = VALUES(geloescht)",
+                SqlDialect.MYSQL.onConflictReplace(List.of("produktnummer"), "version", "geloescht"));
+        assertEquals(" ON DUPLICATE KEY UPDATE menge = menge + VALUES(menge), umsatz = umsatz + VALUES(umsatz)",
+                SqlDialect.H2.onConflictAdd(List.of("produkt_fk"), "menge", "umsatz"));
+        assertEquals(" ON DUPLICATE KEY UPDATE schluessel = schluessel", SqlDialect.MYSQL.onConflictReplace(List.of("schluessel")));
+
+        assertEquals(" ON CONFLICT (produktnummer) DO UPDATE SET version = excluded.version, geloescht = excluded.geloescht",
+                SqlDialect.SQLITE.onConflictReplace(List.of("produktnummer"), "version", "geloescht"));
+        assertEquals(" ON CONFLICT (produkt_fk, lager_fk) DO UPDATE SET menge = menge + excluded.menge",
+                SqlDialect.SQLITE.onConflictAdd(List.of("produkt_fk", "lager_fk"), "menge"));
+        assertEquals(" ON CONFLICT (schluessel) DO NOTHING", SqlDialect.SQLITE.onConflictReplace(List.of("schluessel")));
+    }
+
+    @Test
+    void updatesFromAJoinedTableOfEachDialect() {
+        assertEquals("UPDATE lager l JOIN " + TOTALS + " plm ON l.lagernummer = plm.lager_fk SET l.menge = plm.totalMenge WHERE l.aktiv = 1",
+                updateTotals(SqlDialect.MYSQL, "l.aktiv = 1"));
+        assertEquals("UPDATE lager l JOIN " + TOTALS + " plm ON l.lagernummer = plm.lager_fk SET l.menge = plm.totalMenge",
+                updateTotals(SqlDialect.MYSQL, null));
+        assertEquals("MERGE INTO lager l USING " + TOTALS + " plm ON (l.lagernummer = plm.lager_fk AND l.aktiv = 1)"
+                + " WHEN MATCHED THEN UPDATE SET menge = plm.totalMenge", updateTotals(SqlDialect.H2, "l.aktiv = 1"));
+        assertEquals("UPDATE lager AS l SET menge = plm.totalMenge FROM " + TOTALS + " AS plm"
+                + " WHERE l.lagernummer = plm.lager_fk AND l.aktiv = 1", updateTotals(SqlDialect.SQLITE, "l.aktiv = 1"));
+    }
+
+    @Test
+    void clampsLocksAndChunkedDeletesOfEachDialect() {
+        assertEquals("GREATEST(0, menge - ?)", SqlDialect.MYSQL.atLeastZero("menge - ?"));
+        assertEquals("MAX(0, menge - ?)", SqlDialect.SQLITE.atLeastZero("menge - ?"));
+        assertEquals(" FOR UPDATE", SqlDialect.H2.forUpdate());
+        assertEquals("", SqlDialect.SQLITE.forUpdate());
+        assertEquals("DELETE FROM outbox_ereignis WHERE erstellt < ? ORDER BY id LIMIT 100",
+                SqlDialect.MYSQL.deleteChunk("outbox_ereignis", "id", "erstellt < ?", 100));
+        assertEquals("DELETE FROM outbox_ereignis WHERE id IN (SELECT id FROM outbox_ereignis WHERE erstellt < ? ORDER BY id LIMIT 100)",
+                SqlDialect.SQLITE.deleteChunk("outbox_ereignis", "id", "erstellt < ?", 100));
+    }
+
+    @Test
+    void statementsRunOnTheEmbeddedDatabases() throws SQLException {
+        assertStatementsRun(SqlDialect.H2, "jdbc:h2:mem:dialect;MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+        assertStatementsRun(SqlDialect.SQLITE, "jdbc:sqlite::memory:");
+    }
+
+    private static String updateTotals(SqlDialect dialect, String where) {
+        return dialect.updateFrom("lager", "l", TOTALS, "plm", "l.lagernummer = plm.lager_fk", "menge = plm.totalMenge", where);
+    }
+
+    /**
+     * Runs the upserts, the update from a subquery, the clamp and the chunked delete of a dialect on its database.
+     */
+    private static void assertStatementsRun(SqlDialect dialect, String url) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE lager (lagernummer int PRIMARY KEY, menge int NOT NULL, aktiv int NOT NULL)");
+            stmt.execute("CREATE TABLE produktlagermenge (produkt_fk varchar(36) NOT NULL, lager_fk int NOT NULL, "
+                    + "menge int NOT NULL, PRIMARY KEY (produkt_fk, lager_fk))");
+            stmt.execute("INSERT INTO lager (lagernummer, menge, aktiv) VALUES (1, 0, 1), (2, 0, 0)");
+
+            String add = "INSERT INTO produktlagermenge (produkt_fk, lager_fk, menge) VALUES (?, ?, ?)"
+                    + dialect.onConflictAdd(List.of("produkt_fk", "lager_fk"), "menge");
+            for (Object[] row : List.of(new Object[] {"P1", 1, 5}, new Object[] {"P1", 1, 3}, new Object[] {"P2", 1, 2},
+                    new Object[] {"P1", 2, 7})) {
+                try (PreparedStatement pstmt = conn.prepareStatement(add)) {
+                    pstmt.setString(1, (String) row[0]);
+                    pstmt.setInt(2, (Integer) row[1]);
+                    pstmt.setInt(3, (Integer) row[2]);
+                    pstmt.executeUpdate();
+                }
+            }
+            assertEquals(8, queryInt(conn, "SELECT menge FROM produktlagermenge WHERE produkt_fk = 'P1' AND lager_fk = 1"));
+
+            stmt.executeUpdate("INSERT INTO produktlagermenge (produkt_fk, lager_fk, menge) VALUES ('P2', 1, 4)"
+                    + dialect.onConflictReplace(List.of("produkt_fk", "lager_fk"), "menge"));
+            stmt.executeUpdate("INSERT INTO produktlagermenge (produkt_fk, lager_fk, menge) VALUES ('P2', 1, 9)"
+                    + dialect.onConflictReplace(List.of("produkt_fk", "lager_fk")));
+            assertEquals(4, queryInt(conn, "SELECT menge FROM produktlagermenge WHERE produkt_fk = 'P2' AND lager_fk = 1"));
+
+            stmt.executeUpdate(updateTotals(dialect, "l.aktiv = 1"));
+            assertEquals(12, queryInt(conn, "SELECT menge FROM lager WHERE lagernummer = 1"));
+            // Inactive warehouses are left as they are
+            assertEquals(0, queryInt(conn, "SELECT menge FROM lager WHERE lagernummer = 2"));
+
+            stmt.executeUpdate("UPDATE produktlagermenge SET menge = " + dialect.atLeastZero("menge - 10") + " WHERE lager_fk = 1");
+            assertEquals(0, queryInt(conn, "SELECT SUM(menge) FROM produktlagermenge WHERE lager_fk = 1"));
+
+            String deleteChunk = dialect.deleteChunk("lager", "lagernummer", "aktiv = 1 OR aktiv = 0", 1);
+            assertEquals(1, stmt.executeUpdate(deleteChunk));
+            assertEquals(1, stmt.executeUpdate(deleteChunk));
+            assertEquals(0, stmt.executeUpdate(deleteChunk));
+        }
+    }
+
+    private static int queryInt(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void recognizesDuplicateKeysOfEachDatabase() {
+        assertTrue(SqlDialect.MYSQL.isDuplicateKey(new SQLException("Duplicate entry 'k' for key 'PRIMARY'", "23000", 1062)));
+        assertTrue(SqlDialect.H2.isDuplicateKey(new SQLException("Unique index or primary key violation", "23505", 23505)));
+        assertTrue(SqlDialect.SQLITE.isDuplicateKey(new SQLException(
+                "[SQLITE_CONSTRAINT] Abort due to constraint violation (UNIQUE constraint failed: idempotenz_schluessel.schluessel)", null, 19)));
+        assertTrue(SqlDialect.SQLITE.isDuplicateKey(new SQLException("[SQLITE_CONSTRAINT_PRIMARYKEY]", null, 1555)));
+    }
+
+    @Test
+    void otherErrorsAreNoDuplicateKeys() {
+        // Foreign key and NOT NULL violations share the SQLState class 23
+        assertFalse(SqlDialect.MYSQL.isDuplicateKey(new SQLException("Cannot add or update a child row", "23000", 1452)));
+        assertFalse(SqlDialect.SQLITE.isDuplicateKey(new SQLException(
+                "[SQLITE_CONSTRAINT] Abort due to constraint violation (NOT NULL constraint failed: idempotenz_schluessel.erstellt)", null, 19)));
+        assertFalse(SqlDialect.SQLITE.isDuplicateKey(new SQLException("[SQLITE_BUSY] The database file is locked", null, 5)));
+        assertFalse(SqlDialect.MYSQL.isDuplicateKey(new SQLException("Communications link failure", "08S01", 0)));
+    }
+}
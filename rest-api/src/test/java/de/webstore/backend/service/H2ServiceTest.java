@@ -0,0 +1,66 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Base of the service tests against an embedded H2 database in MySQL mode with the schema of the benchmarks.
+ * <p>
+ * All subclasses share one application context and so one database; each test creates the rows it needs with
+ * keys of its own, e.g. order dates no other test uses.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=jdbc:h2:mem:webstore-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:benchmark/schema-h2.sql",
+        // Keep the outbox relay from polling during the tests
+        "webstore.outbox.poll-ms=3600000"
+})
+abstract class H2ServiceTest {
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    protected void insertOrder(String orderId, LocalDate date, String status) {
+        jdbcTemplate.update("INSERT INTO auftrag (auftragsnummer, datum, status) VALUES (?, ?, ?)",
+                orderId, java.sql.Date.valueOf(date), status);
+    }
+
+    protected void insertProduct(String productId, String price) {
+        jdbcTemplate.update("INSERT INTO produkt (produktnummer, name, einheit, preis) VALUES (?, ?, 'Stk', ?)",
+                productId, "Product " + productId, new BigDecimal(price));
+    }
+
+    protected void insertPosition(String positionId, String orderId, String productId, int quantity) {
+        jdbcTemplate.update("INSERT INTO position (positionsnummer, produktnummer, auftragsnummer, menge) VALUES (?, ?, ?, ?)",
+                positionId, productId, orderId, quantity);
+    }
+
+    protected void insertWarehouse(int warehouseNumber) {
+        jdbcTemplate.update("INSERT INTO lager (lagernummer, menge, aktiv) VALUES (?, 0, 1)", warehouseNumber);
+    }
+
+    protected void insertStock(String productId, int warehouseNumber, int quantity) {
+        jdbcTemplate.update("INSERT INTO produktlagermenge (produkt_fk, lager_fk, menge) VALUES (?, ?, ?)",
+                productId, warehouseNumber, quantity);
+        jdbcTemplate.update("INSERT INTO lagert (produkt_fk, lager_fk) VALUES (?, ?)", productId, warehouseNumber);
+    }
+
+    protected int stockOf(String productId) {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(menge), 0) FROM produktlagermenge WHERE produkt_fk = ?",
+                Integer.class, productId);
+    }
+
+    protected String statusOf(String orderId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM auftrag WHERE auftragsnummer = ?", String.class, orderId);
+    }
+}
@@ -0,0 +1,279 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.h2.api.Trigger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.webstore.backend.deadline.RequestDeadline;
+import de.webstore.backend.dto.BulkOrderRequestDTO;
+import de.webstore.backend.dto.BulkOrderResultDTO;
+import de.webstore.backend.dto.OrderDTO;
+import de.webstore.backend.dto.OrderDetailDTO;
+import de.webstore.backend.dto.OrderLineDTO;
+import de.webstore.backend.dto.OrderResultDTO;
+import de.webstore.backend.dto.OrderResultDTO.Outcome;
+import de.webstore.backend.exception.DeadlineExceededException;
+import de.webstore.backend.exception.OrderNotFoundException;
+
+class OrderServiceTest extends H2ServiceTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @AfterEach
+    void tearDown() {
+        CloseHook.ACTIONS.clear();
+        RequestDeadline.clear();
+    }
+
+    @Test
+    void pagesFollowTheCursorAcrossOrdersOfTheSameDay() {
+        LocalDate first = LocalDate.of(2001, 3, 1);
+        LocalDate second = LocalDate.of(2001, 3, 2);
+        insertOrder("page-c", first, "offen");
+        insertOrder("page-a", first, "offen");
+        insertOrder("page-b", first, "geschlossen");
+        insertOrder("page-d", second, "offen");
+        insertOrder("page-e", second, "offen");
+
+        List<String> seen = new ArrayList<>();
+        List<OrderDTO> page = orderService.findAll(null, first, second, null, null, 2);
+        while (!page.isEmpty()) {
+            page.forEach(order -> seen.add(order.getOrderId()));
+            OrderDTO last = page.get(page.size() - 1);
+            page = orderService.findAll(null, first, second, last.getDate(), last.getOrderId(), 2);
+        }
+
+        assertEquals(List.of("page-a", "page-b", "page-c", "page-d", "page-e"), seen);
+    }
+
+    @Test
+    void ordersAreFilteredByStatusAndDate() {
+        LocalDate day = LocalDate.of(2001, 4, 1);
+        insertOrder("filter-a", day.minusDays(1), "offen");
+        insertOrder("filter-b", day, "offen");
+        insertOrder("filter-c", day, "geschlossen");
+        insertOrder("filter-d", day.plusDays(1), "offen");
+
+        assertEquals(List.of("filter-b"), ids(orderService.findAll("offen", day, day, null, null, 10)));
+        assertEquals(List.of("filter-c"), ids(orderService.findAll("geschlossen", day, day, null, null, 10)));
+        assertEquals(List.of("filter-b", "filter-c", "filter-d"), ids(orderService.findAll(null, day, day.plusDays(1), null, null, 10)));
+    }
+
+    @Test
+    void pageSizeIsCappedAtTheMaximum() {
+        LocalDate day = LocalDate.of(2001, 5, 1);
+        List<Object[]> orders = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            orders.add(new Object[] {String.format("cap-%04d", i), java.sql.Date.valueOf(day), "offen"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO auftrag (auftragsnummer, datum, status) VALUES (?, ?, ?)", orders);
+
+        assertEquals(1000, orderService.findAll(null, day, day, null, null, 5000).size());
+        assertEquals(1, orderService.findAll(null, day, day, null, null, 0).size());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        LocalDate day = LocalDate.of(2001, 6, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> orderService.findAll("storniert", null, null, null, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> orderService.findAll(null, null, null, day, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> orderService.findAll(null, null, null, null, "page-a", 10));
+    }
+
+    @Test
+    void detailHasLineTotalsAndTheOrderTotal() {
+        insertProduct("detail-p1", "2.50");
+        insertProduct("detail-p2", "10.00");
+        insertOrder("detail-a", LocalDate.of(2001, 7, 1), "offen");
+        insertPosition("detail-a-2", "detail-a", "detail-p2", 1);
+        insertPosition("detail-a-1", "detail-a", "detail-p1", 3);
+
+        OrderDetailDTO detail = orderService.findDetailById("detail-a", false);
+
+        assertEquals(List.of("detail-a-1", "detail-a-2"), detail.getPositions().stream().map(OrderLineDTO::getPositionId).toList());
+        assertEquals(new BigDecimal("7.50"), detail.getPositions().get(0).getLineTotal());
+        assertEquals(new BigDecimal("17.50"), detail.getTotal());
+        assertNull(detail.getPositions().get(0).getProduct());
+
+        OrderDetailDTO withProducts = orderService.findDetailById("detail-a", true);
+        assertEquals("Product detail-p1", withProducts.getPositions().get(0).getProduct().getName());
+        assertEquals(new BigDecimal("2.50"), withProducts.getPositions().get(0).getProduct().getPrice());
+    }
+
+    @Test
+    void orderWithoutPositionsHasAZeroTotal() {
+        insertOrder("detail-empty", LocalDate.of(2001, 7, 2), "offen");
+
+        OrderDetailDTO detail = orderService.findDetailById("detail-empty", true);
+
+        assertTrue(detail.getPositions().isEmpty());
+        assertEquals(0, detail.getTotal().signum());
+    }
+
+    @Test
+    void cachedDetailOfAClosedOrderUsesTheCurrentPrices() {
+        insertProduct("detail-p3", "4.00");
+        insertOrder("detail-closed", LocalDate.of(2001, 7, 3), "geschlossen");
+        insertPosition("detail-closed-1", "detail-closed", "detail-p3", 2);
+        assertEquals(new BigDecimal("8.00"), orderService.findDetailById("detail-closed", false).getTotal());
+
+        jdbcTemplate.update("UPDATE produkt SET preis = 5.00 WHERE produktnummer = 'detail-p3'");
+
+        assertEquals(new BigDecimal("10.00"), orderService.findDetailById("detail-closed", false).getTotal());
+    }
+
+    @Test
+    void archivedOrderIsReadFromTheArchive() {
+        insertProduct("detail-p4", "1.25");
+        jdbcTemplate.update("INSERT INTO auftrag_archiv (auftragsnummer, datum, status) VALUES ('detail-archived', '2001-07-04', 'geschlossen')");
+        jdbcTemplate.update("INSERT INTO position_archiv (positionsnummer, produktnummer, auftragsnummer, menge) "
+                + "VALUES ('detail-archived-1', 'detail-p4', 'detail-archived', 4)");
+
+        OrderDetailDTO detail = orderService.findDetailById("detail-archived", false);
+
+        assertEquals("geschlossen", detail.getStatus());
+        assertEquals(new BigDecimal("5.00"), detail.getTotal());
+    }
+
+    @Test
+    void unknownOrderIsNotFound() {
+        assertThrows(OrderNotFoundException.class, () -> orderService.findDetailById("detail-unknown", false));
+    }
+
+    @Test
+    void orderThatCannotBeClosedIsRolledBackToItsSavepoint() {
+        LocalDate day = LocalDate.of(2001, 8, 1);
+        insertWarehouse(301);
+        insertProduct("close-p1", "1.00");
+        insertProduct("close-p2", "1.00");
+        insertStock("close-p1", 301, 10);
+        insertStock("close-p2", 301, 1);
+        insertOrder("close-a", day, "offen");
+        insertPosition("close-a-1", "close-a", "close-p1", 2);
+        insertOrder("close-b", day, "offen");
+        insertPosition("close-b-1", "close-b", "close-p2", 5);
+        insertOrder("close-c", day, "offen");
+        insertPosition("close-c-1", "close-c", "close-p1", 3);
+        insertOrder("close-d", day, "offen");
+        insertPosition("close-d-1", "close-d", "close-p1", 4);
+        insertOrder("close-e", day, "geschlossen");
+        installCloseHook();
+        // Fails after the stock of the order has been deducted
+        CloseHook.ACTIONS.put("close-c", "fail");
+
+        List<OrderResultDTO> results = orderService.closeOrders(
+                List.of("close-a", "close-b", "close-c", "close-d", "close-e", "close-missing", "close-a"));
+
+        assertEquals(List.of(Outcome.CLOSED, Outcome.INSUFFICIENT_STOCK, Outcome.FAILED, Outcome.CLOSED,
+                Outcome.ALREADY_CLOSED, Outcome.NOT_FOUND), results.stream().map(OrderResultDTO::getOutcome).toList());
+        assertEquals("geschlossen", statusOf("close-a"));
+        assertEquals("offen", statusOf("close-b"));
+        assertEquals("offen", statusOf("close-c"));
+        assertEquals("geschlossen", statusOf("close-d"));
+        assertEquals(4, stockOf("close-p1"));
+        assertEquals(1, stockOf("close-p2"));
+    }
+
+    @Test
+    void wholeChunkIsRolledBackWhenTheDeadlinePasses() {
+        LocalDate day = LocalDate.of(2001, 8, 2);
+        insertWarehouse(302);
+        insertProduct("deadline-p1", "1.00");
+        insertStock("deadline-p1", 302, 10);
+        insertOrder("deadline-a", day, "offen");
+        insertPosition("deadline-a-1", "deadline-a", "deadline-p1", 2);
+        insertOrder("deadline-b", day, "offen");
+        insertPosition("deadline-b-1", "deadline-b", "deadline-p1", 3);
+        installCloseHook();
+        // Closing the second order takes until the deadline has passed
+        CloseHook.ACTIONS.put("deadline-b", "wait");
+
+        RequestDeadline.start(500);
+        assertThrows(DeadlineExceededException.class, () -> orderService.closeOrders(List.of("deadline-a", "deadline-b")));
+
+        assertEquals("offen", statusOf("deadline-a"));
+        assertEquals("offen", statusOf("deadline-b"));
+        assertEquals(10, stockOf("deadline-p1"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM umsatz_tag WHERE datum = ?", Integer.class,
+                java.sql.Date.valueOf(day)));
+    }
+
+    @Test
+    void bulkDeleteRemovesOpenOrdersWithTheirPositions() {
+        LocalDate day = LocalDate.of(2001, 8, 3);
+        insertProduct("delete-p1", "1.00");
+        insertOrder("delete-a", day, "offen");
+        insertPosition("delete-a-1", "delete-a", "delete-p1", 1);
+        insertOrder("delete-b", day, "geschlossen");
+        insertPosition("delete-b-1", "delete-b", "delete-p1", 1);
+        BulkOrderRequestDTO request = new BulkOrderRequestDTO();
+        request.setOrderIds(List.of("delete-a", "delete-b", "delete-missing"));
+
+        BulkOrderResultDTO result = orderService.deleteOrdersInBulk(request);
+
+        assertEquals(List.of(Outcome.DELETED, Outcome.ALREADY_CLOSED, Outcome.NOT_FOUND),
+                result.getResults().stream().map(OrderResultDTO::getOutcome).toList());
+        assertEquals(1, result.getSucceeded());
+        assertEquals(0, count("SELECT COUNT(*) FROM auftrag WHERE auftragsnummer = 'delete-a'"));
+        assertEquals(0, count("SELECT COUNT(*) FROM position WHERE auftragsnummer = 'delete-a'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM position WHERE auftragsnummer = 'delete-b'"));
+    }
+
+    private int count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Integer.class);
+    }
+
+    private void installCloseHook() {
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS close_hook BEFORE UPDATE ON auftrag FOR EACH ROW CALL \""
+                + CloseHook.class.getName() + "\"");
+    }
+
+    /**
+     * Lets the status update of selected orders fail or take until the request deadline has passed.
+     */
+    public static class CloseHook implements Trigger {
+
+        static final Map<String, String> ACTIONS = new ConcurrentHashMap<>();
+
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            String action = ACTIONS.getOrDefault((String) newRow[0], "");
+            if (action.equals("fail")) {
+                throw new SQLException("Closing the order failed.");
+            }
+            if (action.equals("wait")) {
+                while (!RequestDeadline.isExceeded()) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> ids(List<OrderDTO> orders) {
+        return orders.stream().map(OrderDTO::getOrderId).toList();
+    }
+}
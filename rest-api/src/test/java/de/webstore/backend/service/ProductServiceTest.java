@@ -0,0 +1,71 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.webstore.backend.dto.ProductChangesDTO;
+import de.webstore.backend.dto.ProductDTO;
+import de.webstore.backend.dto.ProductUpdateDTO;
+
+class ProductServiceTest extends H2ServiceTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void changesHoldEachProductOnceAndTombstonesForDeletes() {
+        long since = productService.findCatalogVersion();
+        String kept = add("Kept");
+        String deleted = add("Deleted");
+        productService.updateProduct(kept, new ProductUpdateDTO("Renamed", "Stk", new BigDecimal("2.00")));
+        productService.deleteProduct(deleted);
+
+        ProductChangesDTO changes = productService.findChanges(since, 10);
+
+        assertEquals(List.of(kept), changes.getChanged().stream().map(ProductDTO::getProductId).toList());
+        assertEquals("Renamed", changes.getChanged().get(0).getName());
+        assertEquals(List.of(deleted), changes.getDeleted());
+        assertFalse(changes.isHasMore());
+        assertEquals(String.valueOf(productService.findCatalogVersion()), changes.getNextToken());
+    }
+
+    @Test
+    void changesArePagedWithHasMore() {
+        long since = productService.findCatalogVersion();
+        String first = add("First");
+        String second = add("Second");
+        String third = add("Third");
+
+        ProductChangesDTO page = productService.findChanges(since, 2);
+        assertEquals(List.of(first, second), page.getChanged().stream().map(ProductDTO::getProductId).toList());
+        assertTrue(page.isHasMore());
+        assertEquals(String.valueOf(since + 2), page.getNextToken());
+
+        ProductChangesDTO next = productService.findChanges(Long.parseLong(page.getNextToken()), 2);
+        assertEquals(List.of(third), next.getChanged().stream().map(ProductDTO::getProductId).toList());
+        assertFalse(next.isHasMore());
+
+        ProductChangesDTO none = productService.findChanges(Long.parseLong(next.getNextToken()), 2);
+        assertTrue(none.getChanged().isEmpty());
+        assertEquals(next.getNextToken(), none.getNextToken());
+    }
+
+    @Test
+    void limitOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> productService.findChanges(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> productService.findChanges(0, 5001));
+    }
+
+    private String add(String name) {
+        return productService.addProduct(new ProductDTO(null, name, "Stk", new BigDecimal("1.00"))).getProductId();
+    }
+}
@@ -0,0 +1,75 @@
+/* Copyright Davain Pablo Edwards core8@gmx.net. Licensed https://creativecommons.org/licenses/by-nc-sa/4.0/deed.en */
+package de.webstore.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.webstore.backend.dto.DailyRevenueDTO;
+import de.webstore.backend.dto.ProductSalesDTO;
+
+class SalesReportServiceTest extends H2ServiceTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private SalesReportService salesReportService;
+
+    @Test
+    void closedOrdersAreAddedToTheRollups() {
+        LocalDate first = LocalDate.of(2001, 9, 1);
+        LocalDate second = LocalDate.of(2001, 9, 2);
+        insertWarehouse(311);
+        // Far larger sales than those of the other tests, so these products lead the top lists
+        insertProduct("rollup-p1", "1000.00");
+        insertProduct("rollup-p2", "500.00");
+        insertStock("rollup-p1", 311, 100);
+        insertStock("rollup-p2", 311, 100);
+        insertOrder("rollup-a", first, "offen");
+        insertPosition("rollup-a-1", "rollup-a", "rollup-p1", 20);
+        insertPosition("rollup-a-2", "rollup-a", "rollup-p2", 10);
+        insertOrder("rollup-b", first, "offen");
+        insertPosition("rollup-b-1", "rollup-b", "rollup-p1", 10);
+        insertOrder("rollup-c", second, "offen");
+        insertPosition("rollup-c-1", "rollup-c", "rollup-p2", 40);
+        insertOrder("rollup-open", second, "offen");
+        insertPosition("rollup-open-1", "rollup-open", "rollup-p2", 1);
+
+        assertTrue(orderService.closeOrder("rollup-a"));
+        orderService.closeOrders(List.of("rollup-b", "rollup-c"));
+
+        List<DailyRevenueDTO> days = salesReportService.findDailyRevenue(first.minusDays(1), second);
+        assertEquals(List.of(first, second), days.stream().map(DailyRevenueDTO::getDate).toList());
+        assertEquals(2, days.get(0).getOrders());
+        assertEquals(40, days.get(0).getQuantity());
+        assertEquals(new BigDecimal("35000.00"), days.get(0).getRevenue());
+        assertEquals(1, days.get(1).getOrders());
+        assertEquals(new BigDecimal("20000.00"), days.get(1).getRevenue());
+
+        List<ProductSalesDTO> byRevenue = salesReportService.findTopProducts("revenue", 2);
+        assertEquals(List.of("rollup-p1", "rollup-p2"), byRevenue.stream().map(ProductSalesDTO::getProductId).toList());
+        assertEquals(new BigDecimal("30000.00"), byRevenue.get(0).getRevenue());
+        List<ProductSalesDTO> byQuantity = salesReportService.findTopProducts("quantity", 2);
+        assertEquals(List.of("rollup-p2", "rollup-p1"), byQuantity.stream().map(ProductSalesDTO::getProductId).toList());
+        assertEquals(50, byQuantity.get(0).getQuantity());
+    }
+
+    @Test
+    void invalidReportArgumentsAreRejected() {
+        LocalDate day = LocalDate.of(2001, 9, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> salesReportService.findDailyRevenue(day, day.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> salesReportService.findDailyRevenue(day, day.plusDays(366)));
+        assertThrows(IllegalArgumentException.class, () -> salesReportService.findTopProducts("margin", 10));
+        assertThrows(IllegalArgumentException.class, () -> salesReportService.findTopProducts("revenue", 0));
+        assertThrows(IllegalArgumentException.class, () -> salesReportService.findTopProducts("revenue", 101));
+    }
+}